@@ -0,0 +1,37 @@
+plugins {
+    id("java")
+}
+
+group = "org.jnvim"
+version = "1.0"
+
+repositories {
+    mavenCentral()
+}
+
+val jmhVersion = "1.37"
+
+// Benchmarks live in their own source set, so they are compiled only when they are run
+val jmh: SourceSet by sourceSets.creating
+
+dependencies {
+    "jmhImplementation"(project(":core-rpc"))
+    "jmhImplementation"("org.msgpack:jackson-dataformat-msgpack:0.9.8")
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:$jmhVersion")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+}
+
+// Runs the benchmarks with the GC profiler, reporting allocation per operation next to throughput,
+// and -Pjmh.include=<regex> limits the run to the benchmarks matching the regex.
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs JMH benchmarks with the GC profiler"
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val results = layout.buildDirectory.file("reports/jmh/results.json")
+    outputs.file(results)
+    outputs.upToDateWhen { false }
+    args("-prof", "gc", "-rf", "json", "-rff", results.get().asFile.path)
+    providers.gradleProperty("jmh.include").orNull?.let { args(it) }
+    doFirst { results.get().asFile.parentFile.mkdirs() }
+}
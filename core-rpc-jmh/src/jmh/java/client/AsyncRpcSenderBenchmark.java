@@ -0,0 +1,57 @@
+package client;
+
+import message.Message;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of outgoing messages by {@link AsyncRpcSender}
+ *
+ * <p>Sender runs its tasks on the calling thread and writes to a discarding stream, so only
+ * queueing, serialization and writing of the batch is measured
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncRpcSenderBenchmark {
+
+    @Param({"SINGLE_WRITER", "TASK_PER_MESSAGE"})
+    public AsyncRpcSender.SendMode sendMode;
+
+    @Param({"request", "response", "notification"})
+    public String messageType;
+
+    @Param({"1", "16", "256"})
+    public int size;
+
+    private AsyncRpcSender sender;
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        sender = new AsyncRpcSender(new DirectExecutorService(), Benchmarks.objectMapper(), sendMode);
+        sender.attach(OutputStream.nullOutputStream());
+        message = Benchmarks.message(messageType, size);
+    }
+
+    @Benchmark
+    public void send() {
+        sender.send(message);
+    }
+}
@@ -0,0 +1,74 @@
+package client;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of incoming frames by {@link BackgroundRpcListener}
+ *
+ * <p>Each invocation reads a stream of {@link #FRAMES} identical frames on the calling thread, so
+ * results are reported per frame Requests and notifications are passed to callbacks consuming
+ * them, while responses have no callback waiting, so they are only decoded and looked up
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BackgroundRpcListenerBenchmark {
+    static final int FRAMES = 1000;
+
+    @Param({"STREAMING", "TREE"})
+    public BackgroundRpcListener.DecodeMode decodeMode;
+
+    @Param({"request", "response", "notification"})
+    public String messageType;
+
+    @Param({"1", "16", "256"})
+    public int size;
+
+    private BackgroundRpcListener listener;
+    private byte[] frames;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws IOException {
+        var objectMapper = Benchmarks.objectMapper();
+        listener =
+                new BackgroundRpcListener.Builder(new DirectExecutorService(), objectMapper)
+                        .withDecodeMode(decodeMode)
+                        .build();
+        listener.listenForRequests(blackhole::consume);
+        listener.listenForNotifications(blackhole::consume);
+        var frame = objectMapper.writeValueAsBytes(Benchmarks.message(messageType, size));
+        var stream = new ByteArrayOutputStream(frame.length * FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            stream.write(frame);
+        }
+        frames = stream.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void decode() {
+        // listener runs until the end of the stream on this thread, then it is reset
+        listener.start(new ByteArrayInputStream(frames));
+        listener.stop();
+    }
+}
@@ -0,0 +1,61 @@
+package client;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.Message;
+import message.NotificationMessage;
+import message.RequestMessage;
+import message.ResponseMessage;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.util.ArrayList;
+
+/** Shared setup of benchmarks */
+final class Benchmarks {
+
+    private Benchmarks() {}
+
+    /**
+     * Creates the msgpack {@link ObjectMapper}, configured the same way as the default one of
+     * {@link RpcClient}
+     *
+     * @return new {@link ObjectMapper}
+     */
+    static ObjectMapper objectMapper() {
+        var factory = new MessagePackFactory();
+        factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return new ObjectMapper(factory);
+    }
+
+    /**
+     * Creates a message of given type, with given number of arguments (or elements of the result)
+     * resembling Neovim traffic - short strings and small integers
+     *
+     * @param type one of "request", "response" or "notification"
+     * @param size number of arguments
+     * @return new {@link Message}
+     */
+    static Message message(String type, int size) {
+        var values = new ArrayList<Object>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(i % 2 == 0 ? "line of text " + i : i);
+        }
+        switch (type) {
+            case "request":
+                return new RequestMessage.Builder("nvim_buf_set_lines")
+                        .addArguments(values)
+                        .withId(1)
+                        .build();
+            case "response":
+                return new ResponseMessage.Builder(values).withId(1).build();
+            case "notification":
+                return new NotificationMessage.Builder("redraw").addArguments(values).build();
+            default:
+                throw new IllegalArgumentException("Unknown message type: " + type);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package client;
+
+import message.NotificationMessage;
+import message.RequestMessage;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * End-to-end round trips between two {@link RpcClient}s, exercising the whole default stack
+ * ({@link PackStream}, {@link AsyncRpcSender} and {@link BackgroundRpcListener}) over a real
+ * transport
+ *
+ * <p>Peer is a {@link LoopbackServer}, connected by one of the transports: * piped streams within
+ * this JVM * TCP socket on the loopback interface * standard streams of a child JVM, using {@link
+ * ProcessRpcConnection}
+ *
+ * <p>{@link #latency()} samples round trips of single requests, reporting percentiles of latency
+ * More concurrent callers may be simulated with JMH threads (-t) {@link #requests(Load,
+ * Counters)} and {@link #notifications(Load, Counters)} keep given number of messages in flight and
+ * report sustained throughput of requests and notifications
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoopbackBenchmark {
+    private static final long TIMEOUT_SECONDS = 30;
+
+    @Param({"piped", "tcp", "process"})
+    public String transport;
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private RpcClient client;
+
+    /** Number of messages kept in flight by the throughput benchmarks */
+    @State(Scope.Benchmark)
+    public static class Load {
+        @Param({"1", "16", "256"})
+        public int inFlight;
+    }
+
+    /** Counts of processed messages, reported as throughput */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long requests;
+        public long notifications;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        client = newClient();
+        switch (transport) {
+            case "piped":
+                connectPiped();
+                break;
+            case "tcp":
+                connectTcp();
+                break;
+            case "process":
+                connectProcess();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown transport: " + transport);
+        }
+        // wait until the peer answers, a child JVM takes a while to start
+        await(echo());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.stop();
+        for (var resource : resources) {
+            resource.close();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object latency() throws Exception {
+        return await(echo());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void requests(Load load, Counters counters) throws Exception {
+        var futures = new CompletableFuture<?>[load.inFlight];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = echo();
+        }
+        await(CompletableFuture.allOf(futures));
+        counters.requests += futures.length;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void notifications(Load load, Counters counters) throws Exception {
+        for (int i = 0; i < load.inFlight; i++) {
+            client.send(
+                    new NotificationMessage.Builder(LoopbackServer.TICK).addArgument(i).build());
+        }
+        // messages are handled in order, so once the request is answered, notifications were too
+        await(echo());
+        counters.notifications += load.inFlight;
+    }
+
+    private CompletableFuture<Integer> echo() {
+        return client.sendAsync(
+                new RequestMessage.Builder(LoopbackServer.ECHO).addArgument(42), Integer.class);
+    }
+
+    private static <T> T await(CompletableFuture<T> future)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void connectPiped() throws IOException {
+        var clientToServer = new PipedOutputStream();
+        var serverToClient = new PipedOutputStream();
+        var server = newClient();
+        new LoopbackServer().serve(server);
+        server.attach(connection(new PipedInputStream(clientToServer, 1 << 16), serverToClient));
+        client.attach(connection(new PipedInputStream(serverToClient, 1 << 16), clientToServer));
+        resources.add(server::stop);
+    }
+
+    private void connectTcp() throws IOException {
+        try (var serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            var clientSocket =
+                    new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+            var serverSocketConnection = serverSocket.accept();
+            clientSocket.setTcpNoDelay(true);
+            serverSocketConnection.setTcpNoDelay(true);
+            var server = newClient();
+            new LoopbackServer().serve(server);
+            server.attach(new TcpSocketRpcConnection(serverSocketConnection));
+            client.attach(new TcpSocketRpcConnection(clientSocket));
+            resources.add(server::stop);
+            resources.add(clientSocket);
+            resources.add(serverSocketConnection);
+        }
+    }
+
+    private void connectProcess() throws IOException {
+        var java = ProcessHandle.current().info().command().orElse("java");
+        var process =
+                new ProcessBuilder(
+                                java,
+                                "-cp",
+                                System.getProperty("java.class.path"),
+                                LoopbackServer.class.getName())
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+        var connection = new ProcessRpcConnection(process, true);
+        client.attach(connection);
+        resources.add(connection);
+    }
+
+    // each client gets its own threads, so that both sides of the loopback do not share them
+    private RpcClient newClient() {
+        ExecutorService executorService =
+                Executors.newFixedThreadPool(
+                        4,
+                        task -> {
+                            var thread = new Thread(task, "loopback-" + resources.size());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        resources.add(executorService::shutdownNow);
+        return new RpcClient.Builder()
+                .withObjectMapper(Benchmarks.objectMapper())
+                .withExecutorService(executorService)
+                .build();
+    }
+
+    private static RpcConnection connection(InputStream input, OutputStream output) {
+        return new RpcConnection() {
+            @Override
+            public InputStream getIncomingStream() {
+                return input;
+            }
+
+            @Override
+            public OutputStream getOutgoingStream() {
+                return output;
+            }
+
+            @Override
+            public void close() throws IOException {
+                input.close();
+                output.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,39 @@
+package client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Peer of {@link LoopbackBenchmark}, answering "echo" requests with their first argument and
+ * counting "tick" notifications
+ *
+ * <p>It is used in-process, or as the main class of a child JVM serving its standard streams
+ */
+public final class LoopbackServer {
+    static final String ECHO = "echo";
+    static final String TICK = "tick";
+
+    private final AtomicLong ticks = new AtomicLong();
+
+    /**
+     * Registers handlers of this server on given client
+     *
+     * @param rpcClient client to serve requests and notifications of
+     */
+    void serve(RpcClient rpcClient) {
+        rpcClient.addRequestResponder(ECHO, request -> request.getArgument(0));
+        rpcClient.addNotificationCallback(TICK, notification -> ticks.incrementAndGet());
+    }
+
+    /**
+     * Serves the standard input and output of this JVM, until the other side kills it
+     *
+     * @param args not used
+     * @throws InterruptedException if interrupted while serving
+     */
+    public static void main(String[] args) throws InterruptedException {
+        var rpcClient = new RpcClient.Builder().withObjectMapper(Benchmarks.objectMapper()).build();
+        new LoopbackServer().serve(rpcClient);
+        rpcClient.attach(new StdIoRpcConnection());
+        Thread.currentThread().join();
+    }
+}
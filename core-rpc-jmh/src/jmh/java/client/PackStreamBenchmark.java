@@ -0,0 +1,136 @@
+package client;
+
+import message.NotificationMessage;
+import message.RequestMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out of incoming messages to callbacks registered on {@link PackStream}
+ *
+ * <p>Compares callbacks receiving every message (each of them filtering by name) with requests
+ * routed to handlers by method and notifications dispatched to subscriptions by name
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackStreamBenchmark {
+
+    @Param({"1", "8", "64"})
+    public int callbacks;
+
+    private final CapturingListener listener = new CapturingListener();
+    private final CapturingListener routingListener = new CapturingListener();
+    private RequestMessage request;
+    private NotificationMessage notification;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        var sender = new AsyncRpcSender(new DirectExecutorService(), Benchmarks.objectMapper());
+        var packStream = new PackStream(sender, listener);
+        var routingPackStream = new PackStream(sender, routingListener);
+        var target = "name" + (callbacks - 1);
+        for (int i = 0; i < callbacks; i++) {
+            var name = "name" + i;
+            packStream.addRequestCallback(
+                    message -> {
+                        if (message.getMethod().equals(name)) {
+                            blackhole.consume(message);
+                        }
+                    });
+            packStream.addNotificationCallback(
+                    message -> {
+                        if (message.getName().equals(name)) {
+                            blackhole.consume(message);
+                        }
+                    });
+            routingPackStream.addRequestHandler(name, blackhole::consume);
+            routingPackStream.addNotificationCallback(name, blackhole::consume);
+        }
+        packStream.attach(listener);
+        routingPackStream.attach(routingListener);
+        // a new instance of the name, as if it was just decoded
+        request = new RequestMessage.Builder(new String(target)).withId(1).build();
+        notification = new NotificationMessage.Builder(new String(target)).build();
+    }
+
+    @Benchmark
+    public void requestToAllCallbacks() {
+        listener.requestCallback.requestReceived(request);
+    }
+
+    @Benchmark
+    public void requestRoutedByMethod() {
+        routingListener.requestCallback.requestReceived(request);
+    }
+
+    @Benchmark
+    public void notificationToAllCallbacks() {
+        listener.notificationCallback.notificationReceived(notification);
+    }
+
+    @Benchmark
+    public void notificationToSubscriptions() {
+        routingListener.notificationCallback.notificationReceived(notification);
+    }
+
+    // captures callbacks of PackStream, so that messages may be passed to it directly
+    private static final class CapturingListener implements RpcListener, RpcConnection {
+        private RequestCallback requestCallback;
+        private NotificationCallback notificationCallback;
+
+        @Override
+        public void start(InputStream inputStream) {}
+
+        @Override
+        public void stop() {}
+
+        @Override
+        public void listenForResponse(int id, ResponseCallback callback) {}
+
+        @Override
+        public void listenForResponse(int id, ResponseCallback callback, Duration timeout) {}
+
+        @Override
+        public void listenForNotifications(NotificationCallback notificationCallback) {
+            this.notificationCallback = notificationCallback;
+        }
+
+        @Override
+        public void listenForRequests(RequestCallback requestCallback) {
+            this.requestCallback = requestCallback;
+        }
+
+        @Override
+        public InputStream getIncomingStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public OutputStream getOutgoingStream() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -2,7 +2,10 @@ package client;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import message.ExtensionRegistry;
 import message.Message;
+import message.MessagePackWriter;
+import message.RequestMessage;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,14 +14,28 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of {@link RpcSender} utilizing {@link ExecutorService} for asynchronous work
  *
- * <p>Messages are sent using the {@link ExecutorService}, meaning order of execution is not handled
- * by this class
+ * <p>Messages are sent using the {@link ExecutorService}, according to {@link SendMode}. In {@link
+ * SendMode#TASK_PER_MESSAGE} mode (used by default) each message is a separate task, meaning order
+ * of execution is not handled by this class. In {@link SendMode#SINGLE_WRITER} mode messages are
+ * put into a bounded lock-free queue, which is drained by a single task at a time, so messages are
+ * written in the order they were sent and never concurrently
  *
- * <p>Messages are serialized using {@link ObjectMapper} passed in the constructor
+ * <p>In {@link SendMode#SINGLE_WRITER} mode writes are also coalesced: all messages queued at the
+ * moment are serialized into a single reusable buffer, which is then written and flushed at once.
+ * When idle, a message is flushed right away, while under load messages accumulate during each
+ * write, so bursts cost a few writes instead of one per message
+ *
+ * <p>Messages are serialized using a reusable {@link MessagePackWriter}, one per writing thread, so
+ * steady-state sending does not allocate. {@link ObjectMapper} passed in the constructor is used
+ * only for values {@link MessagePackWriter} does not support natively
+ *
+ * <p>Messages and bytes sent, depth of the outbound queue and time tasks waited in the {@link
+ * ExecutorService} may be reported to {@link RpcMetrics}, configured through {@link Builder}
  *
  * <p>Prior to using this class, {@link #attach(OutputStream)} must be called in order to pick
  * {@link OutputStream} to write data to {@link #send(Message)} will throw an Exception otherwise
@@ -36,6 +53,14 @@ import java.util.concurrent.ExecutorService;
  * ObjectMapper objectMapper = new ObjectMapper(factory);
  *
  * RpcSender sender = new AsyncRpcSender(executorService, objectMapper);
+ * // Or, keeping the order of messages
+ * RpcSender orderedSender =
+ *         new AsyncRpcSender(executorService, objectMapper, AsyncRpcSender.SendMode.SINGLE_WRITER);
+ * // Or, with additional configuration
+ * RpcSender configuredSender = new AsyncRpcSender.Builder(executorService, objectMapper)
+ *         .withSendMode(AsyncRpcSender.SendMode.SINGLE_WRITER)
+ *         .withMetrics(metrics)
+ *         .build();
  * sender.attach(outputStream); // an existing OutputStream
  * sender.send(message); // fire and forget
  *
@@ -44,10 +69,35 @@ import java.util.concurrent.ExecutorService;
 public final class AsyncRpcSender implements RpcSender {
     private static final Logger log = LoggerFactory.getLogger(AsyncRpcSender.class);
 
+    private static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    /** Defines how messages are handed over to the {@link ExecutorService} */
+    public enum SendMode {
+        /** Each message is submitted as a separate task - messages may be written in any order */
+        TASK_PER_MESSAGE,
+        /**
+         * Messages are queued and a single task at a time drains the queue onto the stream,
+         * preserving the order and coalescing writes. If the queue is full, senders drain it
+         * themselves, or wait for space while the task is running
+         */
+        SINGLE_WRITER
+    }
+
     private final ExecutorService executorService;
     private final ObjectMapper msgPacker;
+    private final SendMode sendMode;
+
+    // used in SINGLE_WRITER mode
+    private final MessageBatcher batcher;
+    // used by tasks in TASK_PER_MESSAGE mode
+    private final ThreadLocal<MessagePackWriter> messageWriters;
+    private final RequestLatencies requestLatencies;
+    private final RpcMetrics metrics;
+    private final RpcTracer tracer;
+    // only counted if metrics are enabled
+    private final AtomicInteger outboundMessages;
 
-    private OutputStream outgoingStream;
+    private volatile OutputStream outgoingStream;
 
     /**
      * Creates a new {@link AsyncRpcSender} with given {@link ObjectMapper} for mapping requests
@@ -58,25 +108,127 @@ public final class AsyncRpcSender implements RpcSender {
      * @throws NullPointerException if any parameter is null
      */
     public AsyncRpcSender(ExecutorService executorService, ObjectMapper msgPacker) {
-        Objects.requireNonNull(
-                executorService, "executorService must be provided to enable background work");
-        Objects.requireNonNull(
-                msgPacker, "msgPacker must be provided for serialization of messages");
-        this.executorService = executorService;
-        this.msgPacker = msgPacker;
+        this(new Builder(executorService, msgPacker));
+    }
+
+    /**
+     * Creates a new {@link AsyncRpcSender} with given {@link ObjectMapper} for mapping requests
+     * using {@link ExecutorService} for background work, handing messages over per given {@link
+     * SendMode}
+     *
+     * @param executorService service used for background work
+     * @param msgPacker {@link ObjectMapper} for mapping requests (outgoing)
+     * @param sendMode {@link SendMode} used to hand messages over to {@link ExecutorService}
+     * @throws NullPointerException if any parameter is null
+     */
+    public AsyncRpcSender(
+            ExecutorService executorService, ObjectMapper msgPacker, SendMode sendMode) {
+        this(new Builder(executorService, msgPacker).withSendMode(sendMode));
+    }
+
+    AsyncRpcSender(
+            ExecutorService executorService,
+            ObjectMapper msgPacker,
+            SendMode sendMode,
+            int queueCapacity) {
+        this(
+                new Builder(executorService, msgPacker)
+                        .withSendMode(sendMode)
+                        .withQueueCapacity(queueCapacity));
+    }
+
+    private AsyncRpcSender(Builder builder) {
+        this.executorService = builder.executorService;
+        this.msgPacker = builder.msgPacker;
+        this.sendMode = builder.sendMode;
+        this.batcher =
+                sendMode == SendMode.SINGLE_WRITER
+                        ? new MessageBatcher(
+                                builder.queueCapacity,
+                                new MessagePackWriter(msgPacker).withExtensions(builder.extensions),
+                                builder.requestLatencies,
+                                builder.metrics,
+                                builder.tracer,
+                                executorService,
+                                () -> false,
+                                true,
+                                MessageBatcher.streamSink(() -> outgoingStream))
+                        : null;
+        var extensions = builder.extensions;
+        this.messageWriters =
+                sendMode == SendMode.TASK_PER_MESSAGE
+                        ? ThreadLocal.withInitial(
+                                () -> new MessagePackWriter(msgPacker).withExtensions(extensions))
+                        : null;
+        this.requestLatencies = builder.requestLatencies;
+        this.metrics = builder.metrics;
+        this.tracer = builder.tracer;
+        this.outboundMessages = metrics != RpcMetrics.none() ? new AtomicInteger() : null;
     }
 
     /**
-     * Sends messages per {@link RpcSender#send(Message)} specification Order of execution is
-     * handled by {@link ExecutorService}, this class just submits the task of actual serializing
-     * and writing to stream
+     * Sends messages per {@link RpcSender#send(Message)} specification
+     *
+     * <p>In {@link SendMode#TASK_PER_MESSAGE} mode, order of execution is handled by {@link
+     * ExecutorService}, this class just submits the task of actual serializing and writing to
+     * stream
+     *
+     * <p>In {@link SendMode#SINGLE_WRITER} mode, message is queued and a drain task is submitted
+     * only if one is not already running. If the queue is full, this method drains the queue
+     * itself, unless the drain task is already running, in which case it waits until it makes
+     * space
      *
      * @throws IllegalStateException thrown if {@link #attach(OutputStream)} was not used - thrown
-     *     by the submitted task
+     *     by the submitted task in {@link SendMode#TASK_PER_MESSAGE} mode, or right away in {@link
+     *     SendMode#SINGLE_WRITER} mode
+     * @throws java.util.concurrent.RejectedExecutionException if {@link ExecutorService} rejects
+     *     the drain task in {@link SendMode#SINGLE_WRITER} mode - queued messages are dropped then
      */
     @Override
     public void send(Message message) {
-        this.executorService.submit(() -> sendMessage(message));
+        if (sendMode == SendMode.TASK_PER_MESSAGE) {
+            if (outboundMessages != null) {
+                metrics.outboundQueueDepth(outboundMessages.incrementAndGet());
+                var submittedAt = System.nanoTime();
+                this.executorService.submit(
+                        () -> {
+                            metrics.executorQueueWait(System.nanoTime() - submittedAt);
+                            metrics.outboundQueueDepth(outboundMessages.decrementAndGet());
+                            sendMessage(message);
+                        });
+            } else {
+                this.executorService.submit(() -> sendMessage(message));
+            }
+            return;
+        }
+
+        if (this.outgoingStream == null) {
+            throw new IllegalStateException(
+                    "Can't find a connection to send message to. Did you forget to call attach?");
+        }
+        batcher.send(message);
+    }
+
+    /**
+     * Sends messages per {@link RpcSender#sendPriority(Message)} specification In {@link
+     * SendMode#SINGLE_WRITER} mode, message is queued ahead of messages not written yet, while in
+     * {@link SendMode#TASK_PER_MESSAGE} mode, it is the same as {@link #send(Message)}, since
+     * messages are not ordered anyway
+     *
+     * @throws IllegalStateException thrown if {@link #attach(OutputStream)} was not used
+     */
+    @Override
+    public void sendPriority(Message message) {
+        if (sendMode == SendMode.TASK_PER_MESSAGE) {
+            send(message);
+            return;
+        }
+
+        if (this.outgoingStream == null) {
+            throw new IllegalStateException(
+                    "Can't find a connection to send message to. Did you forget to call attach?");
+        }
+        batcher.sendPriority(message);
     }
 
     /**
@@ -103,12 +255,129 @@ public final class AsyncRpcSender implements RpcSender {
                     "Can't find a connection to send message to. Did you forget to call attach?");
         }
 
+        var messageWriter = messageWriters.get();
         try {
-            log.info("Sending message: {}", message);
-            msgPacker.writer().writeValue(outgoingStream, message);
+            log.debug("Sending message: {}", message);
+            messageWriter.writeMessage(message);
+            messageWriter.writeTo(outgoingStream);
+            outgoingStream.flush();
+            metrics.messageSent(message.getType(), messageWriter.size());
+            MessageTracing.trace(tracer, RpcTracer.Event.SENT, message, messageWriter.size());
+            if (requestLatencies != null && message instanceof RequestMessage) {
+                requestLatencies.requestWritten(((RequestMessage) message).getId());
+            }
         } catch (IOException e) {
             log.error("Failed sending message!", e);
             throw new RuntimeException(e);
+        } finally {
+            messageWriter.reset();
+        }
+    }
+
+    /**
+     * Builder for {@link AsyncRpcSender} {@link ExecutorService} and {@link ObjectMapper} are
+     * required, while everything else is optional: * {@link SendMode} ({@link
+     * SendMode#TASK_PER_MESSAGE} by default) * {@link RequestLatencies} recording latencies of
+     * requests (none by default) * {@link RpcMetrics} ({@link RpcMetrics#none()} by default) *
+     * {@link RpcTracer} ({@link RpcTracer#none()} by default) * {@link ExtensionRegistry} ({@link
+     * ExtensionRegistry#empty()} by default)
+     */
+    public static class Builder {
+        private final ExecutorService executorService;
+        private final ObjectMapper msgPacker;
+        private SendMode sendMode = SendMode.TASK_PER_MESSAGE;
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        private RequestLatencies requestLatencies;
+        private RpcMetrics metrics = RpcMetrics.none();
+        private RpcTracer tracer = RpcTracer.none();
+        private ExtensionRegistry extensions = ExtensionRegistry.empty();
+
+        /**
+         * Creates a new {@link Builder} with required dependencies
+         *
+         * @param executorService service used for background work
+         * @param msgPacker {@link ObjectMapper} for mapping requests (outgoing)
+         * @throws NullPointerException if any parameter is null
+         */
+        public Builder(ExecutorService executorService, ObjectMapper msgPacker) {
+            Objects.requireNonNull(
+                    executorService, "executorService must be provided to enable background work");
+            Objects.requireNonNull(
+                    msgPacker, "msgPacker must be provided for serialization of messages");
+            this.executorService = executorService;
+            this.msgPacker = msgPacker;
+        }
+
+        /**
+         * Changes {@link SendMode} used to hand messages over to {@link ExecutorService}
+         *
+         * @param sendMode {@link SendMode} to use
+         * @throws NullPointerException if sendMode is null
+         */
+        public Builder withSendMode(SendMode sendMode) {
+            Objects.requireNonNull(sendMode, "sendMode must be provided to send messages");
+            this.sendMode = sendMode;
+            return this;
+        }
+
+        /**
+         * Reports requests written out to given {@link RequestLatencies}
+         *
+         * @param requestLatencies {@link RequestLatencies} of the connection
+         * @throws NullPointerException if requestLatencies is null
+         */
+        public Builder withRequestLatencies(RequestLatencies requestLatencies) {
+            Objects.requireNonNull(requestLatencies, "requestLatencies may not be null");
+            this.requestLatencies = requestLatencies;
+            return this;
+        }
+
+        /**
+         * Reports messages and bytes sent, depth of the outbound queue and time tasks waited in
+         * the {@link ExecutorService} to given {@link RpcMetrics}
+         *
+         * @param metrics {@link RpcMetrics} of the connection
+         * @throws NullPointerException if metrics is null
+         */
+        public Builder withMetrics(RpcMetrics metrics) {
+            Objects.requireNonNull(metrics, "metrics may not be null");
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Encodes values of types registered in given {@link ExtensionRegistry} as extension
+         * values
+         *
+         * @param extensions {@link ExtensionRegistry} of the connection
+         * @throws NullPointerException if extensions is null
+         */
+        public Builder withExtensions(ExtensionRegistry extensions) {
+            Objects.requireNonNull(extensions, "extensions may not be null");
+            this.extensions = extensions;
+            return this;
+        }
+
+        /**
+         * Passes events of messages sent to given {@link RpcTracer}
+         *
+         * @param tracer {@link RpcTracer} of the connection
+         * @throws NullPointerException if tracer is null
+         */
+        public Builder withTracer(RpcTracer tracer) {
+            Objects.requireNonNull(tracer, "tracer may not be null");
+            this.tracer = tracer;
+            return this;
+        }
+
+        Builder withQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /** Creates a new {@link AsyncRpcSender} with given configuration */
+        public AsyncRpcSender build() {
+            return new AsyncRpcSender(this);
         }
     }
 }
@@ -4,19 +4,24 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 
+import message.ExtensionRegistry;
+import message.Message;
 import message.MessageType;
+import message.NotificationDecoder;
 import message.NotificationMessage;
 import message.RequestMessage;
 import message.ResponseMessage;
+import message.RpcError;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
@@ -27,7 +32,21 @@ import java.util.concurrent.Future;
  * which constantly waits for and reads messages from the attached stream It may be stopped using
  * {@link #stop()}
  *
- * <p>Messages are deserialized using {@link ObjectMapper} passed in the constructor
+ * <p>Messages are decoded according to {@link DecodeMode}. In {@link DecodeMode#TREE} mode (used by
+ * default) each message is read into a tree and then deserialized using {@link ObjectMapper} passed
+ * in the constructor. In {@link DecodeMode#STREAMING} mode a single {@link StreamingMessageReader}
+ * is kept for the whole life of the stream and messages are bound token by token, without any
+ * intermediate tree
+ *
+ * <p>Responses may have a deadline, either per request, using {@link #listenForResponse(int,
+ * ResponseCallback, Duration)}, or by default for all requests, configured through {@link Builder}.
+ * Deadlines are tracked by a {@link TimeoutWheel} (shared one by default), so no task is scheduled
+ * per request. When a deadline passes, the callback is notified with a {@link
+ * RpcError.Type#TIMEOUT} error on the expiry executor of the wheel and its id is forgotten
+ *
+ * <p>Once the stream ends (or reading it fails, or listener is stopped), responses can not arrive
+ * anymore, so all pending response callbacks are notified with a {@link RpcError.Type#CLOSED}
+ * error right away, instead of waiting for a timeout that may never come
  *
  * <p>This class supports 3 types of callbacks required by {@link RpcListener}: - {@link
  * RpcListener.RequestCallback} - {@link RpcListener.ResponseCallback} with a specific id to respond
@@ -41,6 +60,16 @@ import java.util.concurrent.Future;
  * RpcListener.RequestCallback}, with the exception that {@link RpcListener.RequestCallback} will
  * only be called for messages with matching id
  *
+ * <p>To keep slow callbacks from stalling responses behind them, requests and notifications may be
+ * handed over to their own executors instead, configured through {@link Builder}. Each of them then
+ * goes through a separate bounded lane, keeping its order, while responses are still completed
+ * right on the reading thread
+ *
+ * <p>In {@link DecodeMode#STREAMING} mode, notifications of chosen names may be passed to a {@link
+ * NotificationDecoder} instead, configured through {@link Builder}. Their arguments are then read
+ * straight from the frame on the reading thread, without building a {@link NotificationMessage},
+ * and they never reach the notification callback or its executor
+ *
  * <p>Example:
  *
  * <pre>{@code
@@ -54,6 +83,11 @@ import java.util.concurrent.Future;
  * ObjectMapper objectMapper = new ObjectMapper(factory);
  *
  * RpcListener rpcListener = new BackgroundRpcListener(executorService, objectMapper);
+ * // Or, with additional configuration
+ * RpcListener configuredListener = new BackgroundRpcListener.Builder(executorService, objectMapper)
+ *         .withDecodeMode(BackgroundRpcListener.DecodeMode.STREAMING)
+ *         .withDefaultResponseTimeout(Duration.ofSeconds(30))
+ *         .build();
  * // Registering callbacks
  * rpcListener.listenForRequests(request -> System.out.println(request));
  * rpcListener.listenForNotifications(notification -> System.out.println(notification));
@@ -72,18 +106,38 @@ import java.util.concurrent.Future;
 public final class BackgroundRpcListener implements RpcListener {
     public static final Logger log = LoggerFactory.getLogger(BackgroundRpcListener.class);
 
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /** Defines how incoming bytes are turned into messages */
+    public enum DecodeMode {
+        /**
+         * Each message is read into a {@link JsonNode} tree, which is then bound to a message using
+         * {@link ObjectMapper}
+         */
+        TREE,
+        /**
+         * A single long-lived {@link StreamingMessageReader} is used for the whole stream and
+         * messages are bound token by token, without any intermediate tree Arguments and results
+         * are kept as raw msgpack and decoded only when accessed
+         */
+        STREAMING
+    }
+
     private final ExecutorService executorService;
     private final ObjectMapper responseObjectMapper;
-
-    private NotificationCallback notificationCallback;
-    private RequestCallback requestCallback;
-    private Map<Integer, ResponseCallback> responseCallbacks = new ConcurrentHashMap<>();
+    private final DecodeMode decodeMode;
+    private final MessageDispatcher dispatcher;
+    private final RpcMetrics metrics;
+    private final ExtensionRegistry extensions;
+    private final RpcTracer tracer;
+    private final Map<String, NotificationDecoder> notificationDecoders;
+    private final int maxFrameSize;
 
     private Future<?> listener;
 
     /**
      * Creates a new {@link BackgroundRpcListener} using {@link ExecutorService} for background work
-     * and given {@link ObjectMapper} for mapping responses
+     * and given {@link ObjectMapper} for mapping responses Uses {@link DecodeMode#TREE} for decoding
      *
      * @param executorService service used for background work
      * @param responseObjectMapper mapper used for mapping responses
@@ -91,12 +145,42 @@ public final class BackgroundRpcListener implements RpcListener {
      */
     public BackgroundRpcListener(
             ExecutorService executorService, ObjectMapper responseObjectMapper) {
-        Objects.requireNonNull(
-                executorService, "executorService must be provided to enable background work");
-        Objects.requireNonNull(
-                responseObjectMapper, "responseObjectMapper must be provided to deserialize");
-        this.executorService = executorService;
-        this.responseObjectMapper = responseObjectMapper;
+        this(executorService, responseObjectMapper, DecodeMode.TREE);
+    }
+
+    /**
+     * Creates a new {@link BackgroundRpcListener} using {@link ExecutorService} for background work
+     * and given {@link ObjectMapper} for mapping responses, decoding messages per given {@link
+     * DecodeMode}
+     *
+     * @param executorService service used for background work
+     * @param responseObjectMapper mapper used for mapping responses
+     * @param decodeMode {@link DecodeMode} used to turn incoming bytes into messages
+     * @throws NullPointerException if any parameter is null
+     */
+    public BackgroundRpcListener(
+            ExecutorService executorService,
+            ObjectMapper responseObjectMapper,
+            DecodeMode decodeMode) {
+        this(new Builder(executorService, responseObjectMapper).withDecodeMode(decodeMode));
+    }
+
+    private BackgroundRpcListener(Builder builder) {
+        this.executorService = builder.executorService;
+        // tree decoding goes through the mapper, so it has to decode extensions too
+        this.responseObjectMapper = builder.extensions.applyTo(builder.responseObjectMapper);
+        this.extensions = builder.extensions;
+        this.decodeMode = builder.decodeMode;
+        this.dispatcher =
+                builder.newDispatcher(
+                        builder.defaultResponseTimeout,
+                        builder.timeoutWheel,
+                        builder.requestLatencies,
+                        builder.metrics);
+        this.metrics = builder.metrics;
+        this.tracer = builder.tracer;
+        this.notificationDecoders = Map.copyOf(builder.notificationDecoders);
+        this.maxFrameSize = builder.maxFrameSize;
     }
 
     /**
@@ -119,28 +203,37 @@ public final class BackgroundRpcListener implements RpcListener {
             return;
         }
 
+        dispatcher.open();
         listener =
                 executorService.submit(
                         () -> {
                             try {
                                 log.info("Started listening on stream");
                                 listenForMessages(inputStream);
-                            } catch (IOException e) {
+                                log.info("Stream closed by the other side");
+                            } catch (IOException | IllegalArgumentException e) {
                                 log.error("Listening to messages failed!", e);
                                 throw new RuntimeException(e);
+                            } finally {
+                                // stop() closes the dispatcher of cancelled listeners itself
+                                if (!Thread.currentThread().isInterrupted()) {
+                                    dispatcher.close();
+                                }
                             }
                         });
     }
 
     /**
      * Stops current listener by killing the task submitted to executor If listener is currently not
-     * started, this method has no effect
+     * started, this method has no effect Pending response callbacks are notified with a {@link
+     * RpcError.Type#CLOSED} error, since their responses are not read anymore
      */
     @Override
     public void stop() {
         if (listener != null) {
             listener.cancel(true);
             listener = null;
+            dispatcher.close();
             log.info("Stopped listening on stream");
         }
     }
@@ -153,15 +246,42 @@ public final class BackgroundRpcListener implements RpcListener {
      * <p>Only single {@link RpcListener.ResponseCallback} is supported per message id. If multiple
      * callbacks are required, consider delegating to them through a single callback.
      *
+     * <p>Callbacks are held in a {@link PendingResponseTable}, so registering and completing them
+     * does not allocate and each callback is claimed exactly once
+     *
+     * <p>Default response timeout is used, if it was configured
+     *
      * @param id ID of the response to listen to (it should match request id)
      * @param callback {@link ResponseCallback} that should be notified once response arrives
      */
     @Override
     public void listenForResponse(int id, ResponseCallback callback) {
-        log.debug("Added listener for id: {}", id);
-        if (callback != null) {
-            responseCallbacks.put(id, callback);
-        }
+        dispatcher.listenForResponse(id, callback);
+    }
+
+    /**
+     * Same as {@link #listenForResponse(int, ResponseCallback)}, but with given timeout instead of
+     * the default one Once it passes, callback is notified with a {@link RpcError.Type#TIMEOUT}
+     * error, on the expiry executor of the {@link TimeoutWheel}. Whichever comes first (response
+     * or timeout) is the only one delivered
+     *
+     * @param id ID of the response to listen to (it should match request id)
+     * @param callback {@link ResponseCallback} that should be notified once response arrives
+     * @param timeout time to wait for the response - zero or negative means no timeout
+     * @throws NullPointerException if timeout is null
+     */
+    @Override
+    public void listenForResponse(int id, ResponseCallback callback, Duration timeout) {
+        dispatcher.listenForResponse(id, callback, timeout);
+    }
+
+    /**
+     * Drops callback and timeout registered for given id per {@link
+     * RpcListener#forgetResponse(int)} specification
+     */
+    @Override
+    public void forgetResponse(int id) {
+        dispatcher.forgetResponse(id);
     }
 
     /**
@@ -180,8 +300,7 @@ public final class BackgroundRpcListener implements RpcListener {
      */
     @Override
     public void listenForNotifications(NotificationCallback callback) {
-        log.debug("Added notification listener");
-        this.notificationCallback = callback;
+        dispatcher.listenForNotifications(callback);
     }
 
     /**
@@ -202,12 +321,36 @@ public final class BackgroundRpcListener implements RpcListener {
      */
     @Override
     public void listenForRequests(RequestCallback callback) {
-        log.debug("Added request listener");
-        this.requestCallback = callback;
+        dispatcher.listenForRequests(callback);
     }
 
     // executes on background thread
     private void listenForMessages(InputStream inputStream) throws IOException {
+        if (decodeMode == DecodeMode.STREAMING) {
+            streamMessages(inputStream);
+        } else {
+            readMessageTrees(inputStream);
+        }
+    }
+
+    private void streamMessages(InputStream inputStream) throws IOException {
+        var messageReader =
+                new StreamingMessageReader(
+                        inputStream,
+                        responseObjectMapper,
+                        READ_BUFFER_SIZE,
+                        maxFrameSize,
+                        extensions,
+                        notificationDecoders,
+                        metrics,
+                        tracer);
+        Message message;
+        while ((message = messageReader.read()) != null) {
+            dispatcher.dispatch(message);
+        }
+    }
+
+    private void readMessageTrees(InputStream inputStream) throws IOException {
         var objectReader = responseObjectMapper.reader();
         JsonNode readNode;
         while ((readNode = objectReader.readTree(inputStream)) != null) {
@@ -217,6 +360,7 @@ public final class BackgroundRpcListener implements RpcListener {
                     || !(readNode instanceof ArrayNode)
                     || readNode.size() < 3
                     || readNode.size() > 4) {
+                metrics.decodeError();
                 log.warn("Received a bad message: {}", readNode);
                 continue;
             }
@@ -224,41 +368,212 @@ public final class BackgroundRpcListener implements RpcListener {
             var arrayNode = (ArrayNode) readNode;
 
             var messageType = MessageType.fromInt(arrayNode.get(0).asInt());
-            // Pop off the type
-            arrayNode.remove(0);
+            // Tree is read without exposing frame boundaries, so size is not known
+            metrics.messageReceived(messageType, -1);
+            // Skip the type, without modifying the read tree
+            var messageNode = arrayNode.arrayNode(arrayNode.size() - 1);
+            for (int i = 1; i < arrayNode.size(); i++) {
+                messageNode.add(arrayNode.get(i));
+            }
 
             switch (messageType) {
                 case REQUEST:
                     var requestMessage =
-                            responseObjectMapper.treeToValue(arrayNode, RequestMessage.class);
-                    if (requestCallback != null) {
-                        log.debug("Notifying request callback with: {}", requestMessage);
-                        requestCallback.requestReceived(requestMessage);
-                    }
+                            responseObjectMapper.treeToValue(messageNode, RequestMessage.class);
+                    MessageTracing.trace(tracer, RpcTracer.Event.RECEIVED, requestMessage, -1);
+                    dispatcher.dispatch(requestMessage);
                     break;
                 case RESPONSE:
                     var responseMessage =
-                            responseObjectMapper.treeToValue(arrayNode, ResponseMessage.class);
-                    if (responseCallbacks.containsKey(responseMessage.getId())) {
-                        log.debug(
-                                "Notifying response callback for id({}) with: {}",
-                                responseMessage.getId(),
-                                responseMessage);
-                        responseCallbacks
-                                .get(responseMessage.getId())
-                                .responseReceived(responseMessage.getId(), responseMessage);
-                        responseCallbacks.remove(responseMessage.getId());
-                    }
+                            responseObjectMapper.treeToValue(messageNode, ResponseMessage.class);
+                    MessageTracing.trace(tracer, RpcTracer.Event.RECEIVED, responseMessage, -1);
+                    dispatcher.dispatch(responseMessage);
                     break;
                 case NOTIFICATION:
                     var notificationMessage =
-                            responseObjectMapper.treeToValue(arrayNode, NotificationMessage.class);
-                    if (notificationCallback != null) {
-                        log.debug("Notifying notification callback with: {}", notificationMessage);
-                        notificationCallback.notificationReceived(notificationMessage);
-                    }
+                            responseObjectMapper.treeToValue(
+                                    messageNode, NotificationMessage.class);
+                    MessageTracing.trace(
+                            tracer, RpcTracer.Event.RECEIVED, notificationMessage, -1);
+                    dispatcher.dispatch(notificationMessage);
                     break;
             }
         }
     }
+
+    /**
+     * Builder for {@link BackgroundRpcListener} {@link ExecutorService} and {@link ObjectMapper}
+     * are required, while everything else is optional: * {@link DecodeMode} ({@link
+     * DecodeMode#TREE} by default) * Default response timeout (none by default) * {@link
+     * TimeoutWheel} tracking response timeouts (shared {@link TimeoutWheel#getDefault()} by
+     * default) * Executors for requests and notifications (callbacks are notified on the reading
+     * thread by default) * {@link RequestLatencies} recording latencies of requests (none by
+     * default) * {@link RpcMetrics} ({@link RpcMetrics#none()} by default) * {@link RpcTracer}
+     * ({@link RpcTracer#none()} by default) * {@link ExtensionRegistry} ({@link
+     * ExtensionRegistry#empty()} by default) * {@link NotificationDecoder}s by notification name
+     * (none by default) * Maximum frame size ({@link StreamingMessageReader#DEFAULT_MAX_FRAME_SIZE}
+     * by default)
+     */
+    public static class Builder extends DispatchingBuilder<Builder> {
+        private final ExecutorService executorService;
+        private final ObjectMapper responseObjectMapper;
+        private DecodeMode decodeMode = DecodeMode.TREE;
+        private Duration defaultResponseTimeout = Duration.ZERO;
+        private TimeoutWheel timeoutWheel;
+        private RequestLatencies requestLatencies;
+        private RpcMetrics metrics = RpcMetrics.none();
+        private RpcTracer tracer = RpcTracer.none();
+        private ExtensionRegistry extensions = ExtensionRegistry.empty();
+        private final Map<String, NotificationDecoder> notificationDecoders = new HashMap<>();
+        private int maxFrameSize = StreamingMessageReader.DEFAULT_MAX_FRAME_SIZE;
+
+        /**
+         * Creates a new {@link Builder} with required dependencies
+         *
+         * @param executorService service used for background work
+         * @param responseObjectMapper mapper used for mapping responses
+         * @throws NullPointerException if any parameter is null
+         */
+        public Builder(ExecutorService executorService, ObjectMapper responseObjectMapper) {
+            Objects.requireNonNull(
+                    executorService, "executorService must be provided to enable background work");
+            Objects.requireNonNull(
+                    responseObjectMapper, "responseObjectMapper must be provided to deserialize");
+            this.executorService = executorService;
+            this.responseObjectMapper = responseObjectMapper;
+        }
+
+        /**
+         * Changes {@link DecodeMode} used to turn incoming bytes into messages
+         *
+         * @param decodeMode {@link DecodeMode} to use
+         * @throws NullPointerException if decodeMode is null
+         */
+        public Builder withDecodeMode(DecodeMode decodeMode) {
+            Objects.requireNonNull(decodeMode, "decodeMode must be provided to decode messages");
+            this.decodeMode = decodeMode;
+            return this;
+        }
+
+        /**
+         * Changes timeout used for responses registered without an explicit one
+         *
+         * @param defaultResponseTimeout timeout to use - zero or negative means no timeout
+         * @throws NullPointerException if defaultResponseTimeout is null
+         */
+        public Builder withDefaultResponseTimeout(Duration defaultResponseTimeout) {
+            Objects.requireNonNull(defaultResponseTimeout, "defaultResponseTimeout may not be null");
+            this.defaultResponseTimeout = defaultResponseTimeout;
+            return this;
+        }
+
+        /**
+         * Changes {@link TimeoutWheel} used to track response timeouts
+         *
+         * @param timeoutWheel {@link TimeoutWheel} to use
+         * @throws NullPointerException if timeoutWheel is null
+         */
+        public Builder withTimeoutWheel(TimeoutWheel timeoutWheel) {
+            Objects.requireNonNull(timeoutWheel, "timeoutWheel may not be null");
+            this.timeoutWheel = timeoutWheel;
+            return this;
+        }
+
+        /**
+         * Reports responses read and passed to their callbacks to given {@link RequestLatencies}
+         *
+         * @param requestLatencies {@link RequestLatencies} of the connection
+         * @throws NullPointerException if requestLatencies is null
+         */
+        public Builder withRequestLatencies(RequestLatencies requestLatencies) {
+            Objects.requireNonNull(requestLatencies, "requestLatencies may not be null");
+            this.requestLatencies = requestLatencies;
+            return this;
+        }
+
+        /**
+         * Reports messages and bytes received, decode errors, number of pending responses and
+         * time dispatch tasks waited in their executors to given {@link RpcMetrics}
+         *
+         * @param metrics {@link RpcMetrics} of the connection
+         * @throws NullPointerException if metrics is null
+         */
+        public Builder withMetrics(RpcMetrics metrics) {
+            Objects.requireNonNull(metrics, "metrics may not be null");
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Decodes extension values of registered types in incoming messages into their value
+         * types, using given {@link ExtensionRegistry}
+         *
+         * @param extensions {@link ExtensionRegistry} of the connection
+         * @throws NullPointerException if extensions is null
+         */
+        public Builder withExtensions(ExtensionRegistry extensions) {
+            Objects.requireNonNull(extensions, "extensions may not be null");
+            this.extensions = extensions;
+            return this;
+        }
+
+        /**
+         * Passes events of messages received to given {@link RpcTracer}
+         *
+         * @param tracer {@link RpcTracer} of the connection
+         * @throws NullPointerException if tracer is null
+         */
+        public Builder withTracer(RpcTracer tracer) {
+            Objects.requireNonNull(tracer, "tracer may not be null");
+            this.tracer = tracer;
+            return this;
+        }
+
+        /**
+         * Passes notifications with given name to given {@link NotificationDecoder}, instead of
+         * notifying the notification callback Decoder is called on the reading thread, even if
+         * notifications are dispatched to an executor, so it is not ordered with other
+         * notifications handed over to it. Only supported in {@link DecodeMode#STREAMING} mode
+         *
+         * @param name name of the notifications, such as {@code redraw}
+         * @param decoder decoder of their arguments
+         * @throws NullPointerException if any parameter is null
+         */
+        public Builder withNotificationDecoder(String name, NotificationDecoder decoder) {
+            Objects.requireNonNull(name, "name may not be null");
+            Objects.requireNonNull(decoder, "decoder may not be null");
+            this.notificationDecoders.put(name, decoder);
+            return this;
+        }
+
+        /**
+         * Changes maximum size of a single incoming frame Once a larger frame starts arriving, the
+         * stream is abandoned, since its remaining bytes can not be framed anymore. Only used in
+         * {@link DecodeMode#STREAMING} mode
+         *
+         * @param maxFrameSize maximum size in bytes
+         * @throws IllegalArgumentException if maxFrameSize is not positive
+         */
+        public Builder withMaxFrameSize(int maxFrameSize) {
+            if (maxFrameSize <= 0) {
+                throw new IllegalArgumentException("maxFrameSize must be positive");
+            }
+            this.maxFrameSize = maxFrameSize;
+            return this;
+        }
+
+        /**
+         * Creates a new {@link BackgroundRpcListener} with given configuration
+         *
+         * @throws IllegalStateException if notification decoders are used without {@link
+         *     DecodeMode#STREAMING} mode
+         */
+        public BackgroundRpcListener build() {
+            if (!notificationDecoders.isEmpty() && decodeMode != DecodeMode.STREAMING) {
+                throw new IllegalStateException(
+                        "Notification decoders are only supported in STREAMING decode mode");
+            }
+            return new BackgroundRpcListener(this);
+        }
+    }
 }
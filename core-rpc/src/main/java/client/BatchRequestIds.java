@@ -0,0 +1,55 @@
+package client;
+
+import message.Message;
+import message.RequestMessage;
+
+import java.util.Arrays;
+
+/**
+ * Ids of requests in a batch of a sender, reported to {@link RequestLatencies} once the batch is
+ * written out
+ *
+ * <p>Array of ids is reused between batches Not thread safe, it is meant to be used by the single
+ * thread writing batches
+ */
+final class BatchRequestIds {
+    private final RequestLatencies requestLatencies;
+    private int[] ids = new int[64];
+    private int size;
+
+    /**
+     * Creates a new {@link BatchRequestIds}
+     *
+     * @param requestLatencies latencies to report written requests to
+     */
+    BatchRequestIds(RequestLatencies requestLatencies) {
+        this.requestLatencies = requestLatencies;
+    }
+
+    /**
+     * Adds given message to the batch, if it is a request
+     *
+     * @param message message added to the batch
+     */
+    void add(Message message) {
+        if (message instanceof RequestMessage) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = ((RequestMessage) message).getId();
+        }
+    }
+
+    /** Reports all requests of the batch as written and clears the batch */
+    void written() {
+        for (int i = 0; i < size; i++) {
+            requestLatencies.requestWritten(ids[i]);
+        }
+        size = 0;
+    }
+
+    /** Clears the batch without reporting it */
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,22 @@
+package client;
+
+import java.nio.channels.SocketChannel;
+
+/**
+ * {@link RpcConnection} backed by a {@link SocketChannel}, which allows it to be served by a {@link
+ * NioEventLoop} instead of blocking streams
+ *
+ * <p>Streams of such connection are still usable by stream based {@link RpcListener} and {@link
+ * RpcSender} implementations, as long as the channel is in blocking mode. Channel based
+ * implementations ({@link NioRpcListener}, {@link NioRpcSender}) switch the channel to
+ * non-blocking mode, after which streams may no longer be used
+ */
+public interface ChannelRpcConnection extends RpcConnection {
+
+    /**
+     * Underlying channel of this connection
+     *
+     * @return {@link SocketChannel} used for communication
+     */
+    SocketChannel getChannel();
+}
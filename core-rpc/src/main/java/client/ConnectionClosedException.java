@@ -0,0 +1,21 @@
+package client;
+
+import message.RpcError;
+
+import java.io.IOException;
+
+/**
+ * Exception used to fail typed futures returned by {@link RpcStreamer} when connection was closed
+ * before response arrived, reported by listeners as a {@link RpcError.Type#CLOSED} error
+ */
+public final class ConnectionClosedException extends IOException {
+
+    /**
+     * Creates a new {@link ConnectionClosedException} with given message
+     *
+     * @param message description of the closed connection
+     */
+    public ConnectionClosedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,174 @@
+package client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, ordered hand-off of messages from a reading thread to an {@link Executor}
+ *
+ * <p>Messages are put into a bounded lock-free queue and a single task at a time drains it, calling
+ * the handler for each message in the order they were dispatched. Reading thread therefore never
+ * runs user code. If the lane is full, a thread of its own may wait using {@link #dispatch(Object)}
+ * until the handler catches up, while a shared thread (such as an event loop thread) uses {@link
+ * #offer(Object, Runnable)}, which never waits, and it is told once there is space again
+ *
+ * <p>Failures of the handler are logged and do not stop the lane If the executor rejects the drain
+ * task, queued messages are dropped and logged, since nobody would ever handle them
+ *
+ * <p>Time each drain task waited in the executor is reported to {@link RpcMetrics}
+ *
+ * @param <T> type of messages
+ */
+final class DispatchLane<T> {
+    private static final Logger log = LoggerFactory.getLogger(DispatchLane.class);
+
+    private final String name;
+    private final Executor executor;
+    private final Consumer<T> handler;
+    private final MpscQueue<T> queue;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final AtomicReference<Runnable> spaceListener = new AtomicReference<>();
+    private final Runnable drainTask = this::drain;
+    private final RpcMetrics metrics;
+    private final boolean timed;
+    private volatile long drainScheduledAt;
+
+    /**
+     * Creates a new {@link DispatchLane}
+     *
+     * @param name name of the lane, used for logging
+     * @param executor executor running the handler
+     * @param capacity maximum number of queued messages
+     * @param handler handler of messages
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    DispatchLane(String name, Executor executor, int capacity, Consumer<T> handler) {
+        this(name, executor, capacity, handler, RpcMetrics.none());
+    }
+
+    /**
+     * Creates a new {@link DispatchLane}, reporting time drain tasks waited in the executor to
+     * given {@link RpcMetrics}
+     *
+     * @param name name of the lane, used for logging
+     * @param executor executor running the handler
+     * @param capacity maximum number of queued messages
+     * @param handler handler of messages
+     * @param metrics {@link RpcMetrics} of the connection
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    DispatchLane(
+            String name,
+            Executor executor,
+            int capacity,
+            Consumer<T> handler,
+            RpcMetrics metrics) {
+        Objects.requireNonNull(executor, "executor must be provided to dispatch messages");
+        Objects.requireNonNull(handler, "handler must be provided to dispatch messages");
+        Objects.requireNonNull(metrics, "metrics may not be null");
+        this.name = name;
+        this.executor = executor;
+        this.handler = handler;
+        this.queue = new MpscQueue<>(capacity);
+        this.metrics = metrics;
+        this.timed = metrics != RpcMetrics.none();
+    }
+
+    /**
+     * Queues given message for the handler, waiting for space if the lane is full Only meant for
+     * threads which do nothing else than reading, since they may be parked for a while
+     *
+     * @param message message to dispatch
+     */
+    void dispatch(T message) {
+        if (!queue.offer(message)) {
+            log.warn("{} lane is full, waiting for handler to catch up", name);
+            do {
+                scheduleDrain();
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+            } while (!queue.offer(message));
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Queues given message for the handler, unless the lane is full, in which case given listener
+     * is called once the handler makes space (on the executor thread), so that the message can be
+     * offered again Only the listener of the last failed offer is called
+     *
+     * @param message message to dispatch
+     * @param whenSpace listener called once there is space again, if the lane is full
+     * @return true if message was queued, false if the lane is full
+     */
+    boolean offer(T message, Runnable whenSpace) {
+        if (!queue.offer(message)) {
+            spaceListener.set(whenSpace);
+            // Handler may have made space right before the listener was set
+            if (!queue.offer(message)) {
+                log.debug("{} lane is full, waiting for handler to catch up", name);
+                scheduleDrain();
+                return false;
+            }
+        }
+        scheduleDrain();
+        return true;
+    }
+
+    private void scheduleDrain() {
+        if (!drainScheduled.get() && drainScheduled.compareAndSet(false, true)) {
+            if (timed) {
+                drainScheduledAt = System.nanoTime();
+            }
+            try {
+                executor.execute(drainTask);
+            } catch (RuntimeException e) {
+                // Nobody will drain the lane - drop its messages, so that reading does not stop
+                var dropped = 0;
+                while (queue.poll() != null) {
+                    dropped++;
+                }
+                drainScheduled.set(false);
+                log.error("{} lane rejected by executor, dropped {} messages", name, dropped, e);
+            }
+        }
+    }
+
+    // executes on executor thread - only one drain task runs at a time
+    private void drain() {
+        if (timed) {
+            metrics.executorQueueWait(System.nanoTime() - drainScheduledAt);
+        }
+        do {
+            T message;
+            while ((message = queue.poll()) != null) {
+                notifySpace();
+                try {
+                    handler.accept(message);
+                } catch (RuntimeException e) {
+                    log.error("{} handler failed for message: {}", name, message, e);
+                }
+            }
+            drainScheduled.set(false);
+            // A message may have been published right before the flag was cleared
+        } while (!queue.isEmpty() && drainScheduled.compareAndSet(false, true));
+    }
+
+    private void notifySpace() {
+        var listener = spaceListener.get();
+        if (listener != null && spaceListener.compareAndSet(listener, null)) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.error("{} lane failed notifying about space", name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package client;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Base of builders of {@link RpcListener}s dispatching through a {@link MessageDispatcher}, holding
+ * executors requests, notifications and responses are handed over to, shared by {@link
+ * BackgroundRpcListener.Builder} and {@link NioRpcListener.Builder}
+ *
+ * @param <B> type of the builder, returned by its methods
+ */
+abstract class DispatchingBuilder<B extends DispatchingBuilder<B>> {
+    Executor requestExecutor;
+    int requestCapacity;
+    Executor notificationExecutor;
+    int notificationCapacity;
+    Executor responseExecutor;
+    int responseCapacity;
+
+    /**
+     * Hands requests over to given {@link Executor}, instead of notifying the request callback on
+     * the reading thread Requests are queued in a lane of given capacity and the callback is
+     * notified for one at a time, in the order they arrived. If the lane is full, reading stops
+     * until there is space - a thread reading a stream waits, while an event loop just stops
+     * reading the channel, keeping the rest of its channels served
+     *
+     * @param executor executor notifying the request callback
+     * @param capacity maximum number of queued requests
+     * @throws NullPointerException if executor is null
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public B withRequestDispatch(Executor executor, int capacity) {
+        this.requestExecutor = requireLane(executor, capacity);
+        this.requestCapacity = capacity;
+        return self();
+    }
+
+    /**
+     * Hands notifications over to given {@link Executor}, instead of notifying the notification
+     * callback on the reading thread Same as {@link #withRequestDispatch(Executor, int)}, but for
+     * notifications, in a separate lane
+     *
+     * @param executor executor notifying the notification callback
+     * @param capacity maximum number of queued notifications
+     * @throws NullPointerException if executor is null
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public B withNotificationDispatch(Executor executor, int capacity) {
+        this.notificationExecutor = requireLane(executor, capacity);
+        this.notificationCapacity = capacity;
+        return self();
+    }
+
+    /**
+     * Hands responses over to given {@link Executor}, instead of notifying response callbacks on
+     * the reading thread Same as {@link #withRequestDispatch(Executor, int)}, but for responses,
+     * in a separate lane, so that callbacks blocking on other requests do not stop reading
+     * Responses are reported to {@link RequestLatencies} as dispatched once their callback starts
+     * on the executor
+     *
+     * @param executor executor notifying response callbacks
+     * @param capacity maximum number of queued responses
+     * @throws NullPointerException if executor is null
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public B withResponseDispatch(Executor executor, int capacity) {
+        this.responseExecutor = requireLane(executor, capacity);
+        this.responseCapacity = capacity;
+        return self();
+    }
+
+    /**
+     * Creates a {@link MessageDispatcher} with lanes configured in this builder
+     *
+     * @param defaultResponseTimeout timeout of responses registered without one
+     * @param timeoutWheel wheel tracking response timeouts, or null to use the shared one
+     * @param requestLatencies {@link RequestLatencies} of the connection, or null
+     * @param metrics {@link RpcMetrics} of the connection
+     * @return new {@link MessageDispatcher}
+     */
+    MessageDispatcher newDispatcher(
+            Duration defaultResponseTimeout,
+            TimeoutWheel timeoutWheel,
+            RequestLatencies requestLatencies,
+            RpcMetrics metrics) {
+        return new MessageDispatcher(
+                defaultResponseTimeout,
+                timeoutWheel,
+                requestExecutor,
+                requestCapacity,
+                notificationExecutor,
+                notificationCapacity,
+                responseExecutor,
+                responseCapacity,
+                requestLatencies,
+                metrics);
+    }
+
+    @SuppressWarnings("unchecked")
+    private B self() {
+        return (B) this;
+    }
+
+    private static Executor requireLane(Executor executor, int capacity) {
+        Objects.requireNonNull(executor, "executor may not be null");
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        return executor;
+    }
+}
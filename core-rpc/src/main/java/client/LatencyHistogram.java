@@ -0,0 +1,143 @@
+package client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free, fixed size histogram of latencies in nanoseconds
+ *
+ * <p>Buckets are log-linear - each power of two is split into {@value #SUB_BUCKETS} linear
+ * buckets, so that any value from a nanosecond up to centuries is kept with a relative error of at
+ * most 1/{@value #SUB_BUCKETS} Recording is a few atomic increments on preallocated counters, so it
+ * never locks nor allocates and may be called from any thread
+ *
+ * <p>Reading is not atomic with respect to recording, meaning values read while recording is in
+ * progress may be off by the values being recorded
+ */
+public final class LatencyHistogram {
+    static final int SUB_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 4;
+    // values below SUB_BUCKETS have a bucket each, then each power of two up to 2^62 has SUB_BUCKETS
+    static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Creates a new empty {@link LatencyHistogram} */
+    public LatencyHistogram() {}
+
+    /**
+     * Records a single latency
+     *
+     * @param nanos latency in nanoseconds - negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        var value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        var currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Number of recorded latencies
+     *
+     * @return count of recorded values
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Largest recorded latency
+     *
+     * @return maximum in nanoseconds, or zero if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Average of recorded latencies
+     *
+     * @return mean in nanoseconds, or zero if nothing was recorded
+     */
+    public double getMean() {
+        var currentCount = count.get();
+        return currentCount == 0 ? 0 : (double) sum.get() / currentCount;
+    }
+
+    /**
+     * Latency below or at which given percentage of recorded latencies falls
+     *
+     * @param percentile percentile between 0 and 100, such as 99.9
+     * @return upper bound of the bucket holding given percentile in nanoseconds, never above {@link
+     *     #getMax()}, or zero if nothing was recorded
+     * @throws IllegalArgumentException if percentile is not between 0 and 100
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        var target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        var exponent = 63 - Long.numberOfLeadingZeros(value);
+        var subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        var shift = bucket / SUB_BUCKETS - 1;
+        var lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{"
+                + "count="
+                + getCount()
+                + ", mean="
+                + micros((long) getMean())
+                + "us, p50="
+                + micros(getValueAtPercentile(50))
+                + "us, p99="
+                + micros(getValueAtPercentile(99))
+                + "us, max="
+                + micros(getMax())
+                + "us}";
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,336 @@
+package client;
+
+import message.Message;
+import message.MessagePackWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Single writer of outgoing messages, shared by {@link AsyncRpcSender} in {@link
+ * AsyncRpcSender.SendMode#SINGLE_WRITER} mode and {@link NioRpcSender}, which only decide where
+ * batches are written and which executor drains them
+ *
+ * <p>Messages are put into a bounded lock-free queue and a drain is scheduled on the executor, only
+ * if one is not already pending. The drain serializes all queued messages into a single reusable
+ * {@link MessagePackWriter} and passes it to a {@link Sink}, at least once every {@link
+ * #MAX_BATCH_BYTES}. A sink may accept only a part of the batch (such as a full non-blocking
+ * channel), in which case the drain stops and the rest is written once {@link #drain()} is called
+ * again, while the drain is still considered pending
+ *
+ * <p>If the queue is full, senders wait for space, except on threads where messages may be buffered
+ * right away (such as the event loop thread of a {@link NioRpcSender}, where waiting would never
+ * end) If callers are allowed to drain, a sender finding the queue full runs the drain itself,
+ * unless one is already running, since the pending drain may be queued behind the sender on its
+ * own executor (such as when sending from a task of a single threaded executor)
+ *
+ * <p>Messages sent using {@link #sendPriority(Message)} are put into a queue of their own, which
+ * the drain always takes from first, so they are written ahead of messages already queued
+ *
+ * <p>If the executor rejects the drain, all queued messages are dropped and the rejection is thrown
+ * to the sender, so that a later drain can be scheduled again
+ */
+final class MessageBatcher {
+    private static final Logger log = LoggerFactory.getLogger(MessageBatcher.class);
+
+    private static final int MAX_BATCH_BYTES = 64 * 1024;
+
+    /** Destination of batches written by a {@link MessageBatcher} */
+    @FunctionalInterface
+    interface Sink {
+        /**
+         * Writes bytes of given batch, starting at given offset
+         *
+         * @param batch batch of serialized messages
+         * @param offset offset of the first byte not written yet
+         * @return offset of the first byte still not written - size of the batch if all of it was
+         *     written
+         * @throws IOException if batch can not be written - it is dropped then
+         */
+        int write(MessagePackWriter batch, int offset) throws IOException;
+    }
+
+    private final MpscQueue<Message> queue;
+    private final MpscQueue<Message> priorityQueue;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Runnable drainTask = this::drain;
+    private final Executor drainExecutor;
+    private final BooleanSupplier buffersInline;
+    private final boolean callerDrains;
+    private final Sink sink;
+
+    // only used by the drain
+    private final MessagePackWriter batchWriter;
+    private int written;
+    private int batchSize;
+    private final BatchRequestIds batchRequestIds;
+
+    private final RpcMetrics metrics;
+    private final RpcTracer tracer;
+    // only counted if metrics are enabled
+    private final AtomicInteger outboundMessages;
+    private volatile long drainScheduledAt;
+
+    /**
+     * Creates a new {@link MessageBatcher}
+     *
+     * @param queueCapacity capacity of the queue of outgoing messages
+     * @param batchWriter writer batches are serialized into
+     * @param requestLatencies {@link RequestLatencies} to report written requests to, or null
+     * @param metrics {@link RpcMetrics} of the connection
+     * @param tracer {@link RpcTracer} of the connection
+     * @param drainExecutor executor running the drain
+     * @param buffersInline whether current thread should buffer messages right away if the queue
+     *     is full, since it is the one the drain runs on
+     * @param callerDrains whether senders finding the queue full may run the drain themselves -
+     *     the sink has to accept writes from any thread then
+     * @param sink destination of batches
+     */
+    MessageBatcher(
+            int queueCapacity,
+            MessagePackWriter batchWriter,
+            RequestLatencies requestLatencies,
+            RpcMetrics metrics,
+            RpcTracer tracer,
+            Executor drainExecutor,
+            BooleanSupplier buffersInline,
+            boolean callerDrains,
+            Sink sink) {
+        this.queue = new MpscQueue<>(queueCapacity);
+        this.priorityQueue = new MpscQueue<>(queueCapacity);
+        this.batchWriter = batchWriter;
+        this.batchRequestIds =
+                requestLatencies != null ? new BatchRequestIds(requestLatencies) : null;
+        this.metrics = metrics;
+        this.tracer = tracer;
+        this.outboundMessages = metrics != RpcMetrics.none() ? new AtomicInteger() : null;
+        this.drainExecutor = drainExecutor;
+        this.buffersInline = buffersInline;
+        this.callerDrains = callerDrains;
+        this.sink = sink;
+    }
+
+    /**
+     * Creates a {@link Sink} writing whole batches to the stream given by supplier and flushing it
+     *
+     * @param outputStream supplier of the stream to write to
+     * @return new {@link Sink}
+     */
+    static Sink streamSink(Supplier<OutputStream> outputStream) {
+        return (batch, offset) -> {
+            var stream = outputStream.get();
+            stream.write(batch.buffer(), offset, batch.size() - offset);
+            stream.flush();
+            return batch.size();
+        };
+    }
+
+    /**
+     * Queues given message and schedules a drain, if one is not already pending
+     *
+     * @param message message to send
+     * @throws RejectedExecutionException if the drain executor rejected the drain - queued
+     *     messages are dropped then
+     */
+    void send(Message message) {
+        send(queue, message);
+    }
+
+    /**
+     * Same as {@link #send(Message)}, but given message is written ahead of messages queued using
+     * {@link #send(Message)}
+     *
+     * @param message message to send
+     * @throws RejectedExecutionException if the drain executor rejected the drain - queued
+     *     messages are dropped then
+     */
+    void sendPriority(Message message) {
+        send(priorityQueue, message);
+    }
+
+    private void send(MpscQueue<Message> target, Message message) {
+        if (outboundMessages != null) {
+            // Counted before publishing, so that the drain never sees it negative
+            metrics.outboundQueueDepth(outboundMessages.incrementAndGet());
+        }
+        while (!target.offer(message)) {
+            if (buffersInline.getAsBoolean()) {
+                // Nobody else can make space - buffer everything right away, keeping the order
+                Message queued;
+                while ((queued = poll()) != null) {
+                    bufferMessage(queued);
+                }
+                bufferMessage(message);
+                break;
+            }
+            // Queue is full - make sure a drain is pending and wait for space
+            scheduleDrain();
+            if (callerDrains && tryDrain()) {
+                // Pending drain may be queued behind this very thread - drained here instead
+                continue;
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Buffers and writes all queued messages, as well as the rest of a partially written batch
+     * Executes on the drain executor, or wherever the sink is known to accept more bytes, or on a
+     * sender finding the queue full, but never concurrently - it returns right away if a drain is
+     * already running, which then takes care of all queued messages
+     */
+    void drain() {
+        tryDrain();
+    }
+
+    private boolean tryDrain() {
+        if (!draining.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            drainQueue();
+        } finally {
+            draining.set(false);
+        }
+        return true;
+    }
+
+    private void drainQueue() {
+        var scheduledAt = drainScheduledAt;
+        if (scheduledAt != 0) {
+            // Only once per scheduled drain, not when resumed after a partial write
+            drainScheduledAt = 0;
+            metrics.executorQueueWait(System.nanoTime() - scheduledAt);
+        }
+        do {
+            Message message;
+            while ((message = poll()) != null) {
+                bufferMessage(message);
+                if (batchWriter.size() - written >= MAX_BATCH_BYTES && !writeBatch()) {
+                    // Sink is full - the rest is written once drain is called again
+                    return;
+                }
+            }
+            // Nothing else is queued - write right away instead of waiting for more
+            if (!writeBatch()) {
+                return;
+            }
+            drainScheduled.set(false);
+            // A message may have been published right before the flag was cleared
+        } while (!isEmpty() && drainScheduled.compareAndSet(false, true));
+    }
+
+    // consumer only - priority messages first
+    private Message poll() {
+        var message = priorityQueue.poll();
+        return message != null ? message : queue.poll();
+    }
+
+    // consumer only
+    private boolean isEmpty() {
+        return priorityQueue.isEmpty() && queue.isEmpty();
+    }
+
+    private void scheduleDrain() {
+        if (!drainScheduled.get() && drainScheduled.compareAndSet(false, true)) {
+            if (outboundMessages != null) {
+                drainScheduledAt = System.nanoTime();
+            }
+            try {
+                drainExecutor.execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                // Nobody will drain the queue - drop its messages, so that senders do not wait
+                // A running drain still takes care of the queue, so only the consumer drops it
+                if (draining.compareAndSet(false, true)) {
+                    try {
+                        dropQueued();
+                    } finally {
+                        draining.set(false);
+                    }
+                }
+                drainScheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void dropQueued() {
+        var dropped = 0;
+        while (poll() != null) {
+            dropped++;
+            if (outboundMessages != null) {
+                metrics.outboundQueueDepth(outboundMessages.decrementAndGet());
+            }
+        }
+        log.error("Drain rejected by executor, dropped {} queued messages", dropped);
+    }
+
+    private void bufferMessage(Message message) {
+        if (outboundMessages != null) {
+            metrics.outboundQueueDepth(outboundMessages.decrementAndGet());
+        }
+        var size = batchWriter.size();
+        try {
+            log.debug("Sending message: {}", message);
+            batchWriter.writeMessage(message);
+            batchSize++;
+            var bytes = batchWriter.size() - size;
+            metrics.messageSent(message.getType(), bytes);
+            MessageTracing.trace(tracer, RpcTracer.Event.SENT, message, bytes);
+            if (batchRequestIds != null) {
+                batchRequestIds.add(message);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Drop only the broken message, keeping the rest of the batch
+            batchWriter.truncate(size);
+            log.error("Failed serializing message: {}", message, e);
+        }
+    }
+
+    /** Writes as much of the batch as the sink accepts, returning true if all was written */
+    private boolean writeBatch() {
+        if (batchWriter.size() == written) {
+            return true;
+        }
+        try {
+            written = sink.write(batchWriter, written);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed sending {} messages!", batchSize, e);
+            resetBatch();
+            return true;
+        }
+        if (written < batchWriter.size()) {
+            return false;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Wrote {} messages ({} bytes)", batchSize, written);
+        }
+        if (batchRequestIds != null) {
+            batchRequestIds.written();
+        }
+        resetBatch();
+        return true;
+    }
+
+    private void resetBatch() {
+        batchWriter.reset();
+        written = 0;
+        batchSize = 0;
+        if (batchRequestIds != null) {
+            batchRequestIds.clear();
+        }
+    }
+}
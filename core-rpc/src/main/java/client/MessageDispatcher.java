@@ -0,0 +1,383 @@
+package client;
+
+import message.Message;
+import message.NotificationMessage;
+import message.RequestMessage;
+import message.ResponseMessage;
+import message.RpcError;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Dispatcher of incoming messages to the callbacks of a {@link RpcListener}, shared by {@link
+ * BackgroundRpcListener} and {@link NioRpcListener}, which only read messages and pass them to
+ * {@link #dispatch(Message)}
+ *
+ * <p>Response callbacks are held in a {@link PendingResponseTable}, with their deadlines tracked by
+ * a {@link TimeoutWheel}. Requests, notifications and responses are passed to their callbacks right
+ * away, or handed over to executors through {@link DispatchLane}s, if they were configured. Failures
+ * of callbacks are logged, so that they never stop the reading thread
+ *
+ * <p>Responses are reported to {@link RequestLatencies} as read on the reading thread, and as
+ * dispatched right before their callback is called, on whichever thread calls it, so that time
+ * queued in the response lane counts as dispatch time
+ *
+ * <p>Threads reading a stream of their own use {@link #dispatch(Message)}, which waits if a lane is
+ * full, while event loops use {@link #tryDispatch(Message, Runnable)}, which never waits, so that
+ * they can stop reading just the channel whose lane is full
+ *
+ * <p>Once the connection is closed, {@link #close()} fails all pending response callbacks with a
+ * {@link RpcError.Type#CLOSED} error, since their responses can never arrive. Callbacks registered
+ * afterwards fail right away, until the dispatcher is reopened by starting the listener again
+ */
+final class MessageDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(MessageDispatcher.class);
+
+    private final Duration defaultResponseTimeout;
+    private final TimeoutWheel timeoutWheel;
+    private final TimeoutWheel.Target responseTimeoutTarget =
+            new TimeoutWheel.Target() {
+                @Override
+                public void expire(int id) {
+                    responseTimedOut(id);
+                }
+
+                @Override
+                public boolean isPending(int id) {
+                    return responseCallbacks.isPending(id);
+                }
+            };
+    private final Consumer<RequestMessage> requestNotifier = this::notifyRequestCallback;
+    private final Consumer<NotificationMessage> notificationNotifier =
+            this::notifyNotificationCallback;
+    private final Consumer<ClaimedResponse> responseNotifier = this::notifyResponseCallback;
+    private final DispatchLane<RequestMessage> requestLane;
+    private final DispatchLane<NotificationMessage> notificationLane;
+    private final DispatchLane<ClaimedResponse> responseLane;
+    private final RequestLatencies requestLatencies;
+    private final RpcMetrics metrics;
+
+    private volatile RpcListener.NotificationCallback notificationCallback;
+    private volatile RpcListener.RequestCallback requestCallback;
+    private final PendingResponseTable responseCallbacks = new PendingResponseTable();
+    private volatile boolean closed;
+
+    /**
+     * Creates a new {@link MessageDispatcher}
+     *
+     * @param defaultResponseTimeout timeout of responses registered without one - zero or negative
+     *     means no timeout
+     * @param timeoutWheel wheel tracking response timeouts, or null to use the shared one
+     * @param requestExecutor executor notifying the request callback, or null to notify it on the
+     *     reading thread
+     * @param requestCapacity maximum number of requests queued for the request executor
+     * @param notificationExecutor executor notifying the notification callback, or null to notify
+     *     it on the reading thread
+     * @param notificationCapacity maximum number of notifications queued for the notification
+     *     executor
+     * @param responseExecutor executor notifying response callbacks, or null to notify them on the
+     *     reading thread
+     * @param responseCapacity maximum number of responses queued for the response executor
+     * @param requestLatencies {@link RequestLatencies} of the connection, or null
+     * @param metrics {@link RpcMetrics} of the connection
+     */
+    MessageDispatcher(
+            Duration defaultResponseTimeout,
+            TimeoutWheel timeoutWheel,
+            Executor requestExecutor,
+            int requestCapacity,
+            Executor notificationExecutor,
+            int notificationCapacity,
+            Executor responseExecutor,
+            int responseCapacity,
+            RequestLatencies requestLatencies,
+            RpcMetrics metrics) {
+        this.defaultResponseTimeout = defaultResponseTimeout;
+        this.timeoutWheel = timeoutWheel != null ? timeoutWheel : TimeoutWheel.getDefault();
+        this.requestLane =
+                requestExecutor != null
+                        ? new DispatchLane<>(
+                                "Request",
+                                requestExecutor,
+                                requestCapacity,
+                                requestNotifier,
+                                metrics)
+                        : null;
+        this.notificationLane =
+                notificationExecutor != null
+                        ? new DispatchLane<>(
+                                "Notification",
+                                notificationExecutor,
+                                notificationCapacity,
+                                notificationNotifier,
+                                metrics)
+                        : null;
+        this.responseLane =
+                responseExecutor != null
+                        ? new DispatchLane<>(
+                                "Response",
+                                responseExecutor,
+                                responseCapacity,
+                                responseNotifier,
+                                metrics)
+                        : null;
+        this.requestLatencies = requestLatencies;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Registers callback per {@link RpcListener#listenForResponse(int,
+     * RpcListener.ResponseCallback)}, with the default timeout
+     */
+    void listenForResponse(int id, RpcListener.ResponseCallback callback) {
+        listenForResponse(id, callback, defaultResponseTimeout);
+    }
+
+    /**
+     * Registers callback per {@link RpcListener#listenForResponse(int,
+     * RpcListener.ResponseCallback, Duration)}
+     */
+    void listenForResponse(int id, RpcListener.ResponseCallback callback, Duration timeout) {
+        Objects.requireNonNull(timeout, "timeout may not be null");
+        log.debug("Added listener for id: {}", id);
+        if (callback != null) {
+            responseCallbacks.register(id, callback);
+            metrics.pendingResponses(responseCallbacks.size());
+            if (closed) {
+                // Closed while registering - the response will never arrive
+                failIfPending(id);
+                return;
+            }
+            if (!timeout.isNegative() && !timeout.isZero()) {
+                timeoutWheel.schedule(responseTimeoutTarget, id, timeout);
+            }
+        }
+    }
+
+    /**
+     * Drops callback and timeout registered for given id per {@link
+     * RpcListener#forgetResponse(int)} The timeout is searched for only if the callback was still
+     * pending, so forgetting a completed id costs a single lookup
+     */
+    void forgetResponse(int id) {
+        if (responseCallbacks.complete(id) != null) {
+            metrics.pendingResponses(responseCallbacks.size());
+            timeoutWheel.cancel(responseTimeoutTarget, id);
+            log.debug("Forgot listener for id: {}", id);
+        }
+    }
+
+    /** Replaces the notification callback - null removes it */
+    void listenForNotifications(RpcListener.NotificationCallback callback) {
+        log.debug("Added notification listener");
+        this.notificationCallback = callback;
+    }
+
+    /** Replaces the request callback - null removes it */
+    void listenForRequests(RpcListener.RequestCallback callback) {
+        log.debug("Added request listener");
+        this.requestCallback = callback;
+    }
+
+    /**
+     * Passes given message to its callback, waiting for space if its lane is full Failures of
+     * callbacks are logged and do not propagate
+     *
+     * @param message message read from the connection
+     */
+    void dispatch(Message message) {
+        dispatch(message, null);
+    }
+
+    /**
+     * Passes given message to its callback, unless its lane is full, in which case given listener
+     * is called once there is space again (on the executor of the lane) Failures of callbacks are
+     * logged and do not propagate
+     *
+     * @param message message read from the connection
+     * @param whenSpace listener called once there is space again, if the lane is full
+     * @return true if message was dispatched, false if its lane is full and it has to be
+     *     dispatched again later
+     */
+    boolean tryDispatch(Message message, Runnable whenSpace) {
+        Objects.requireNonNull(whenSpace, "whenSpace may not be null");
+        return dispatch(message, whenSpace);
+    }
+
+    private boolean dispatch(Message message, Runnable whenSpace) {
+        log.debug("Received message: {}", message);
+        try {
+            switch (message.getType()) {
+                case REQUEST:
+                    return toLane(
+                            requestLane,
+                            (RequestMessage) message,
+                            whenSpace,
+                            requestNotifier);
+                case RESPONSE:
+                    return responseReceived((ResponseMessage) message, whenSpace);
+                case NOTIFICATION:
+                    return toLane(
+                            notificationLane,
+                            (NotificationMessage) message,
+                            whenSpace,
+                            notificationNotifier);
+            }
+        } catch (RuntimeException e) {
+            // A failing callback should not take the whole connection down
+            log.error("Callback failed for message: {}", message, e);
+        }
+        return true;
+    }
+
+    /** Allows registering response callbacks again, once the listener is started again */
+    void open() {
+        closed = false;
+    }
+
+    /**
+     * Fails all pending response callbacks with a {@link RpcError.Type#CLOSED} error, as well as
+     * callbacks registered until {@link #open()} is called
+     */
+    void close() {
+        closed = true;
+        var failed = responseCallbacks.completeAll(this::notifyClosed);
+        if (failed > 0) {
+            metrics.pendingResponses(responseCallbacks.size());
+            log.info("Connection closed, failed {} pending responses", failed);
+        }
+    }
+
+    private void failIfPending(int id) {
+        var responseCallback = responseCallbacks.complete(id);
+        if (responseCallback != null) {
+            metrics.pendingResponses(responseCallbacks.size());
+            notifyClosed(id, responseCallback);
+        }
+    }
+
+    private void notifyClosed(int id, RpcListener.ResponseCallback responseCallback) {
+        try {
+            responseCallback.responseReceived(
+                    id,
+                    new ResponseMessage.Builder(
+                                    RpcError.closed("Connection closed before response arrived"))
+                            .withId(id)
+                            .build());
+        } catch (RuntimeException e) {
+            log.error("Response callback failed for id({})", id, e);
+        }
+    }
+
+    private static <T> boolean toLane(
+            DispatchLane<T> lane, T message, Runnable whenSpace, Consumer<T> callback) {
+        if (lane == null) {
+            callback.accept(message);
+            return true;
+        }
+        if (whenSpace == null) {
+            lane.dispatch(message);
+            return true;
+        }
+        return lane.offer(message, whenSpace);
+    }
+
+    private void notifyRequestCallback(RequestMessage requestMessage) {
+        var requestCallback = this.requestCallback;
+        if (requestCallback != null) {
+            log.debug("Notifying request callback with: {}", requestMessage);
+            requestCallback.requestReceived(requestMessage);
+        }
+    }
+
+    private boolean responseReceived(ResponseMessage responseMessage, Runnable whenSpace) {
+        var id = responseMessage.getId();
+        if (responseLane == null) {
+            if (requestLatencies != null) {
+                requestLatencies.responseRead(id);
+            }
+            var responseCallback = responseCallbacks.complete(id);
+            if (responseCallback != null) {
+                metrics.pendingResponses(responseCallbacks.size());
+                notifyResponseCallback(id, responseCallback, responseMessage);
+            }
+            return true;
+        }
+        if (requestLatencies != null) {
+            requestLatencies.responseRead(id);
+        }
+        // Claimed right away, so that closing the connection does not fail a response already read
+        var responseCallback = responseCallbacks.complete(id);
+        if (responseCallback == null) {
+            return true;
+        }
+        var claimed = new ClaimedResponse(id, responseCallback, responseMessage);
+        if (whenSpace == null) {
+            responseLane.dispatch(claimed);
+        } else if (!responseLane.offer(claimed, whenSpace)) {
+            // Pending again until it is dispatched again, so that it may still time out or fail
+            responseCallbacks.register(id, responseCallback);
+            if (closed) {
+                failIfPending(id);
+            }
+            return false;
+        }
+        metrics.pendingResponses(responseCallbacks.size());
+        return true;
+    }
+
+    private void notifyResponseCallback(ClaimedResponse response) {
+        notifyResponseCallback(response.id, response.callback, response.message);
+    }
+
+    private void notifyResponseCallback(
+            int id, RpcListener.ResponseCallback responseCallback, ResponseMessage responseMessage) {
+        log.debug("Notifying response callback for id({}) with: {}", id, responseMessage);
+        if (requestLatencies != null) {
+            requestLatencies.responseDispatched(id);
+        }
+        responseCallback.responseReceived(id, responseMessage);
+    }
+
+    // executes on expiry executor of the timeout wheel
+    private void responseTimedOut(int id) {
+        var responseCallback = responseCallbacks.complete(id);
+        if (responseCallback != null) {
+            metrics.pendingResponses(responseCallbacks.size());
+            log.debug("Response for id({}) timed out", id);
+            responseCallback.responseReceived(
+                    id,
+                    new ResponseMessage.Builder(RpcError.timeout("Response timed out"))
+                            .withId(id)
+                            .build());
+        }
+    }
+
+    private void notifyNotificationCallback(NotificationMessage notificationMessage) {
+        var notificationCallback = this.notificationCallback;
+        if (notificationCallback != null) {
+            log.debug("Notifying notification callback with: {}", notificationMessage);
+            notificationCallback.notificationReceived(notificationMessage);
+        }
+    }
+
+    /** Response read from the connection, together with the callback claimed for it */
+    private static final class ClaimedResponse {
+        private final int id;
+        private final RpcListener.ResponseCallback callback;
+        private final ResponseMessage message;
+
+        private ClaimedResponse(
+                int id, RpcListener.ResponseCallback callback, ResponseMessage message) {
+            this.id = id;
+            this.callback = callback;
+            this.message = message;
+        }
+    }
+}
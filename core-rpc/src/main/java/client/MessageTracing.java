@@ -0,0 +1,62 @@
+package client;
+
+import message.IdentifiableMessage;
+import message.Message;
+import message.MessageType;
+import message.NotificationMessage;
+import message.RequestMessage;
+
+/** Turns {@link Message}s into {@link RpcTracer} events, doing nothing if they are not sampled */
+final class MessageTracing {
+
+    private MessageTracing() {}
+
+    /**
+     * Passes given event to the tracer, if the message is sampled
+     *
+     * @param tracer tracer of the connection
+     * @param event point in the life of the message
+     * @param message traced message
+     * @param bytes size of the serialized message, or -1 if it is not known
+     */
+    static void trace(RpcTracer tracer, RpcTracer.Event event, Message message, int bytes) {
+        if (tracer == RpcTracer.none()) {
+            return;
+        }
+        var type = message.getType();
+        var id =
+                message instanceof IdentifiableMessage
+                        ? ((IdentifiableMessage) message).getId()
+                        : -1;
+        var sampled =
+                message instanceof NotificationMessage && tracer instanceof SamplingRpcTracer
+                        ? ((SamplingRpcTracer) tracer).isSampled(message)
+                        : tracer.isSampled(type, id);
+        if (!sampled) {
+            return;
+        }
+        String method = null;
+        if (message instanceof RequestMessage) {
+            method = ((RequestMessage) message).getMethod();
+        } else if (message instanceof NotificationMessage) {
+            method = ((NotificationMessage) message).getName();
+        }
+        tracer.trace(event, type, id, method, bytes, System.nanoTime());
+    }
+
+    /**
+     * Same as {@link #trace(RpcTracer, RpcTracer.Event, Message, int)}, for notifications which
+     * were decoded without building a {@link Message}
+     *
+     * @param tracer tracer of the connection
+     * @param event point in the life of the notification
+     * @param name name of the notification
+     * @param bytes size of the serialized notification, or -1 if it is not known
+     */
+    static void traceNotification(RpcTracer tracer, RpcTracer.Event event, String name, int bytes) {
+        if (tracer == RpcTracer.none() || !tracer.isSampled(MessageType.NOTIFICATION, -1)) {
+            return;
+        }
+        tracer.trace(event, MessageType.NOTIFICATION, -1, name, bytes, System.nanoTime());
+    }
+}
@@ -0,0 +1,96 @@
+package client;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer single-consumer queue
+ *
+ * <p>It is an array ring where each slot has a sequence number telling whether it is free for the
+ * producer of a given position or published for the consumer. Producers claim positions with a
+ * single compare-and-set on the tail, while the consumer only does plain reads and writes, since
+ * there is only one. Nothing is allocated per element
+ *
+ * <p>{@link #poll()} and {@link #isEmpty()} may only be used by a single thread at a time (the
+ * consumer), with proper happens-before ordering between consecutive consumers
+ *
+ * @param <E> type of elements
+ */
+final class MpscQueue<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    /**
+     * Creates a new {@link MpscQueue} with given capacity
+     *
+     * @param capacity maximum number of elements - it is rounded up to a power of two, but at
+     *     least two, since a single slot could not tell a published element from a free one
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    MpscQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        var size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element to the end of the queue, if there is space
+     *
+     * @param element element to add
+     * @return true if element was added, false if queue is full
+     */
+    boolean offer(E element) {
+        while (true) {
+            var position = tail.get();
+            var slot = (int) (position & mask);
+            var difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.set(slot, element);
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Takes the first published element of the queue - consumer only
+     *
+     * @return first element or null if there is none (or if it is not published yet)
+     */
+    E poll() {
+        var slot = (int) (head & mask);
+        if (sequences.get(slot) != head + 1) {
+            return null;
+        }
+        var element = elements.get(slot);
+        elements.set(slot, null);
+        sequences.set(slot, head + mask + 1);
+        head++;
+        return element;
+    }
+
+    /**
+     * Checks whether there is a published element to take - consumer only
+     *
+     * @return true if {@link #poll()} would return null
+     */
+    boolean isEmpty() {
+        return sequences.get((int) (head & mask)) != head + 1;
+    }
+}
@@ -0,0 +1,324 @@
+package client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single I/O thread serving any number of non-blocking {@link SocketChannel}s using a {@link
+ * Selector}
+ *
+ * <p>Channels are registered by {@link NioRpcListener} and {@link NioRpcSender}. A channel has a
+ * single registration per event loop, shared by its reader and writer, which are called on the
+ * event loop thread when the channel is readable and writable respectively. Writability is only
+ * watched while a writer has data it could not write right away
+ *
+ * <p>Other work may be run on the event loop thread using {@link #execute(Runnable)} Tasks and
+ * handlers should never block, since that stalls all channels of the loop
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * NioEventLoop eventLoop = new NioEventLoop();
+ *
+ * RpcListener listener = new NioRpcListener(eventLoop, objectMapper);
+ * RpcSender sender = new NioRpcSender(eventLoop, objectMapper);
+ *
+ * // ...
+ *
+ * // End
+ * eventLoop.stop(); // stops the thread and deregisters all channels
+ *
+ * }</pre>
+ */
+public final class NioEventLoop {
+    private static final Logger log = LoggerFactory.getLogger(NioEventLoop.class);
+
+    private static final String DEFAULT_THREAD_NAME = "rpc-nio-event-loop";
+
+    /** Handler of channel readiness - called on the event loop thread */
+    interface ReadyHandler {
+        /**
+         * Notifies handler that the channel is ready for its operation
+         *
+         * @throws IOException if channel fails - the channel is deregistered in that case
+         */
+        void ready() throws IOException;
+    }
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<SocketChannel, Registration> registrations =
+            new ConcurrentHashMap<>();
+    // true while the loop is not blocked in select, so no wakeup is needed
+    private final AtomicBoolean awake = new AtomicBoolean(true);
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates a new {@link NioEventLoop} and starts its thread
+     *
+     * @throws RuntimeException if selector can not be opened
+     */
+    public NioEventLoop() {
+        this(DEFAULT_THREAD_NAME);
+    }
+
+    /**
+     * Creates a new {@link NioEventLoop} and starts its thread, using given name for the thread
+     *
+     * @param threadName name of the event loop thread
+     * @throws NullPointerException if threadName is null
+     * @throws RuntimeException if selector can not be opened
+     */
+    public NioEventLoop(String threadName) {
+        Objects.requireNonNull(threadName, "threadName may not be null");
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            log.error("Failed to open selector", e);
+            throw new RuntimeException(e);
+        }
+        this.thread = new Thread(this::run, threadName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Runs given task on the event loop thread, after tasks submitted before it
+     *
+     * @param task task to run - it should not block
+     * @throws NullPointerException if task is null
+     * @throws IllegalStateException if event loop was stopped
+     */
+    public void execute(Runnable task) {
+        Objects.requireNonNull(task, "task may not be null");
+        if (!running) {
+            throw new IllegalStateException("Event loop is stopped");
+        }
+        tasks.add(task);
+        if (!inEventLoop() && awake.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Checks whether current thread is the event loop thread
+     *
+     * @return true if called from the event loop thread
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Number of channels currently registered with this event loop
+     *
+     * @return number of channels
+     */
+    public int registeredChannels() {
+        return registrations.size();
+    }
+
+    /**
+     * Stops the event loop thread All channels are deregistered, but not closed If event loop is
+     * already stopped, this method has no effect
+     */
+    public void stop() {
+        if (running) {
+            running = false;
+            selector.wakeup();
+            log.info("Stopping event loop");
+        }
+    }
+
+    /**
+     * Gets the registration of given channel, registering it if it is not registered yet Channel is
+     * switched to non-blocking mode on the event loop thread
+     */
+    Registration register(SocketChannel channel) {
+        Objects.requireNonNull(channel, "channel may not be null");
+        return registrations.computeIfAbsent(
+                channel,
+                newChannel -> {
+                    var registration = new Registration(newChannel);
+                    execute(registration::open);
+                    return registration;
+                });
+    }
+
+    private void run() {
+        log.info("Event loop started");
+        try {
+            while (running) {
+                runTasks();
+                awake.set(false);
+                if (tasks.isEmpty()) {
+                    selector.select(this::processKey);
+                } else {
+                    selector.selectNow(this::processKey);
+                }
+                awake.set(true);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Event loop failed!", e);
+        } finally {
+            running = false;
+            tasks.clear();
+            registrations.clear();
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.error("Failed closing selector", e);
+            }
+            log.info("Event loop stopped");
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Event loop task failed!", e);
+            }
+        }
+    }
+
+    private void processKey(SelectionKey key) {
+        ((Registration) key.attachment()).ready(key);
+    }
+
+    /**
+     * Registration of a single channel with this event loop, holding its reader and writer Except
+     * for the setters, it may only be used on the event loop thread
+     */
+    final class Registration {
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private ReadyHandler reader;
+        private ReadyHandler writer;
+        private boolean readInterest = true;
+        private boolean writeInterest;
+        private boolean closed;
+
+        private Registration(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /** Registered channel */
+        SocketChannel channel() {
+            return channel;
+        }
+
+        /** Event loop of this registration */
+        NioEventLoop eventLoop() {
+            return NioEventLoop.this;
+        }
+
+        /** Sets (or removes, if null) handler called when channel is readable */
+        void setReader(ReadyHandler reader) {
+            execute(
+                    () -> {
+                        this.reader = reader;
+                        updateInterest();
+                    });
+        }
+
+        /** Sets (or removes, if null) handler called when channel is writable */
+        void setWriter(ReadyHandler writer) {
+            execute(
+                    () -> {
+                        this.writer = writer;
+                        updateInterest();
+                    });
+        }
+
+        /** Starts or stops watching readability, watched by default - event loop thread only */
+        void setReadInterest(boolean readInterest) {
+            if (this.readInterest != readInterest) {
+                this.readInterest = readInterest;
+                updateInterest();
+            }
+        }
+
+        /** Starts or stops watching writability - event loop thread only */
+        void setWriteInterest(boolean writeInterest) {
+            if (this.writeInterest != writeInterest) {
+                this.writeInterest = writeInterest;
+                updateInterest();
+            }
+        }
+
+        /** Deregisters the channel, without closing it - event loop thread only */
+        void close() {
+            if (!closed) {
+                closed = true;
+                if (key != null) {
+                    key.cancel();
+                }
+                registrations.remove(channel, this);
+                log.info("Deregistered channel: {}", channel);
+            }
+        }
+
+        private void open() {
+            try {
+                channel.configureBlocking(false);
+                key = channel.register(selector, interestOps(), this);
+                log.info("Registered channel: {}", channel);
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed registering channel: {}", channel, e);
+                close();
+            }
+        }
+
+        private void ready(SelectionKey key) {
+            var readyOps = key.readyOps();
+            try {
+                if ((readyOps & SelectionKey.OP_READ) != 0 && reader != null) {
+                    reader.ready();
+                }
+                if ((readyOps & SelectionKey.OP_WRITE) != 0 && writer != null && key.isValid()) {
+                    writer.ready();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed serving channel: {}", channel, e);
+                close();
+            }
+        }
+
+        private void updateInterest() {
+            if (closed) {
+                return;
+            }
+            if (reader == null && writer == null) {
+                close();
+            } else if (key != null && key.isValid()) {
+                key.interestOps(interestOps());
+            }
+        }
+
+        private int interestOps() {
+            var ops = 0;
+            if (reader != null && readInterest) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (writer != null && writeInterest) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            return ops;
+        }
+    }
+}
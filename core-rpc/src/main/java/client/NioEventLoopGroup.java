@@ -0,0 +1,108 @@
+package client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed group of {@link NioEventLoop}s, multiplexing any number of connections over a few I/O
+ * threads
+ *
+ * <p>Connections are spread over the loops by handing them out in turns using {@link #next()}
+ * Each connection stays on its loop for its whole life, so all of its reading and writing happens
+ * on a single thread, while different connections are served in parallel. The number of threads
+ * therefore depends on the number of cores, not on the number of connections
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * NioEventLoopGroup eventLoopGroup = new NioEventLoopGroup(2);
+ *
+ * // Each client keeps its own message ids and callbacks, while sharing the I/O threads
+ * for (Path socketPath : socketPaths) {
+ *     RpcClient client = new RpcClient.Builder()
+ *             .withEventLoopGroup(eventLoopGroup)
+ *             .build();
+ *     client.attach(UnixDomainSocketRpcConnection.connect(socketPath));
+ * }
+ *
+ * // ...
+ *
+ * // End
+ * eventLoopGroup.stop(); // stops all the loops
+ *
+ * }</pre>
+ */
+public final class NioEventLoopGroup {
+    private static final Logger log = LoggerFactory.getLogger(NioEventLoopGroup.class);
+
+    private static final String DEFAULT_THREAD_NAME_PREFIX = "rpc-nio-event-loop-";
+
+    private final List<NioEventLoop> eventLoops;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    /** Creates a new {@link NioEventLoopGroup} with one loop per available processor */
+    public NioEventLoopGroup() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new {@link NioEventLoopGroup} with given number of loops
+     *
+     * @param threads number of loops (threads)
+     * @throws IllegalArgumentException if threads is not positive
+     */
+    public NioEventLoopGroup(int threads) {
+        this(threads, DEFAULT_THREAD_NAME_PREFIX);
+    }
+
+    /**
+     * Creates a new {@link NioEventLoopGroup} with given number of loops, naming their threads
+     * with given prefix followed by the index of the loop
+     *
+     * @param threads number of loops (threads)
+     * @param threadNamePrefix prefix of thread names
+     * @throws IllegalArgumentException if threads is not positive
+     * @throws NullPointerException if threadNamePrefix is null
+     */
+    public NioEventLoopGroup(int threads, String threadNamePrefix) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        Objects.requireNonNull(threadNamePrefix, "threadNamePrefix may not be null");
+        var loops = new NioEventLoop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new NioEventLoop(threadNamePrefix + i);
+        }
+        this.eventLoops = List.of(loops);
+        log.info("Started {} event loops", threads);
+    }
+
+    /**
+     * Picks the loop for the next connection, going through the loops in turns
+     *
+     * @return one of the loops of this group
+     */
+    public NioEventLoop next() {
+        return eventLoops.get(Math.floorMod(nextIndex.getAndIncrement(), eventLoops.size()));
+    }
+
+    /**
+     * Loops of this group
+     *
+     * @return unmodifiable list of loops
+     */
+    public List<NioEventLoop> eventLoops() {
+        return eventLoops;
+    }
+
+    /** Stops all loops of this group All channels are deregistered, but not closed */
+    public void stop() {
+        for (var eventLoop : eventLoops) {
+            eventLoop.stop();
+        }
+    }
+}
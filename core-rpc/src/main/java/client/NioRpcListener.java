@@ -0,0 +1,517 @@
+package client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.ExtensionRegistry;
+import message.FrameScanner;
+import message.Message;
+import message.MessageDecoder;
+import message.NotificationDecoder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Implementation of {@link RpcListener} reading from a non-blocking {@link
+ * java.nio.channels.SocketChannel} on a {@link NioEventLoop}
+ *
+ * <p>Whenever the channel is readable, available bytes are read into the buffer of a {@link
+ * StreamingMessageReader}, which is grown only when a message does not fit into it, up to a maximum
+ * frame size. Frames are found by a {@link FrameScanner}, so a partial frame is not rescanned from
+ * its start on every read, and complete frames are decoded right away using {@link MessageDecoder},
+ * same as {@link BackgroundRpcListener} does in {@link BackgroundRpcListener.DecodeMode#STREAMING}
+ * mode, and partial frames are kept for the next read. No thread is ever blocked waiting for data
+ *
+ * <p>It is meant to be started on a {@link ChannelRpcConnection} (such as {@link
+ * NioSocketRpcConnection}), using {@link #start(ChannelRpcConnection)} It may also be started on a
+ * plain {@link InputStream}, using {@link #start(InputStream)}, which can only be read by blocking,
+ * so the stream is then read on a thread of its own instead of the event loop
+ *
+ * <p>Callbacks are run on the event loop thread (or the stream reading thread) by default, so they
+ * should not block. Requests and notifications may be handed over to their own executors instead,
+ * configured through {@link Builder}, same as in {@link BackgroundRpcListener}, except that the
+ * event loop never waits for a full lane - it stops reading just that channel until the lane has
+ * space again, while other channels of the event loop are still served. Response deadlines
+ * are handled the same way as in {@link BackgroundRpcListener}, using a {@link TimeoutWheel}, and
+ * so is closing of the connection - pending response callbacks are notified with a {@link
+ * message.RpcError.Type#CLOSED} error once the channel ends or the listener is stopped
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * NioEventLoop eventLoop = new NioEventLoop();
+ *
+ * RpcListener rpcListener = new NioRpcListener(eventLoop, objectMapper);
+ * // Or, with additional configuration
+ * RpcListener configuredListener = new NioRpcListener.Builder(eventLoop, objectMapper)
+ *         .withReadBufferSize(64 * 1024)
+ *         .withDefaultResponseTimeout(Duration.ofSeconds(30))
+ *         .build();
+ *
+ * rpcListener.start(connection); // an existing ChannelRpcConnection
+ *
+ * }</pre>
+ */
+public final class NioRpcListener implements RpcListener {
+    private static final Logger log = LoggerFactory.getLogger(NioRpcListener.class);
+
+    private static final int DEFAULT_READ_BUFFER_SIZE = 8192;
+
+    private final NioEventLoop eventLoop;
+    private final ObjectMapper responseObjectMapper;
+    private final ExtensionRegistry extensions;
+    private final int readBufferSize;
+    private final int maxFrameSize;
+    private final Map<String, NotificationDecoder> notificationDecoders;
+    private final MessageDispatcher dispatcher;
+    private final RpcMetrics metrics;
+    private final RpcTracer tracer;
+
+    private volatile NioEventLoop.Registration registration;
+    private ExecutorService streamExecutor;
+    private Future<?> streamListener;
+
+    /**
+     * Creates a new {@link NioRpcListener} reading on given {@link NioEventLoop} and using given
+     * {@link ObjectMapper} for binding responses
+     *
+     * @param eventLoop event loop serving the channel
+     * @param responseObjectMapper mapper used for binding responses
+     * @throws NullPointerException if any parameter is null
+     */
+    public NioRpcListener(NioEventLoop eventLoop, ObjectMapper responseObjectMapper) {
+        this(new Builder(eventLoop, responseObjectMapper));
+    }
+
+    private NioRpcListener(Builder builder) {
+        this.eventLoop = builder.eventLoop;
+        this.responseObjectMapper = builder.extensions.applyTo(builder.responseObjectMapper);
+        this.extensions = builder.extensions;
+        this.readBufferSize = builder.readBufferSize;
+        this.maxFrameSize = builder.maxFrameSize;
+        this.notificationDecoders = Map.copyOf(builder.notificationDecoders);
+        this.dispatcher =
+                builder.newDispatcher(
+                        builder.defaultResponseTimeout,
+                        builder.timeoutWheel,
+                        builder.requestLatencies,
+                        builder.metrics);
+        this.metrics = builder.metrics;
+        this.tracer = builder.tracer;
+    }
+
+    /**
+     * Starts listening on given input stream Since a stream can only be read by blocking, it is
+     * read on a thread of its own (a virtual thread, if supported), not on the {@link
+     * NioEventLoop}, while messages are decoded and dispatched the same way as for channels
+     *
+     * <p>Calling start multiple times has no effect - only first one is considered It can be called
+     * again only after calling {@link #stop()}
+     *
+     * @param inputStream {@link InputStream} to listen to
+     * @throws NullPointerException if inputStream is null
+     */
+    @Override
+    public void start(InputStream inputStream) {
+        Objects.requireNonNull(inputStream, "inputStream may not be null");
+        if (registration != null || streamListener != null) {
+            log.info("Already listening, ignoring");
+            return;
+        }
+
+        var messageReader = newMessageReader(inputStream);
+        dispatcher.open();
+        streamExecutor = VirtualThreads.newThreadPerTaskExecutor("rpc-nio-reader-");
+        streamListener =
+                streamExecutor.submit(
+                        () -> {
+                            try {
+                                log.info("Started listening on stream");
+                                Message message;
+                                while ((message = messageReader.read()) != null) {
+                                    dispatcher.dispatch(message);
+                                }
+                                log.info("Stream closed by the other side");
+                            } catch (IOException | IllegalArgumentException e) {
+                                log.error("Listening to messages failed!", e);
+                                throw new RuntimeException(e);
+                            } finally {
+                                // stop() closes the dispatcher of cancelled listeners itself
+                                if (!Thread.currentThread().isInterrupted()) {
+                                    dispatcher.close();
+                                }
+                            }
+                        });
+    }
+
+    /**
+     * Starts listening on the channel of given connection, by registering it with the {@link
+     * NioEventLoop} The channel is switched to non-blocking mode
+     *
+     * <p>Calling start multiple times has no effect - only first one is considered It can be called
+     * again only after calling {@link #stop()}
+     *
+     * @param rpcConnection connection to listen on
+     * @throws NullPointerException if rpcConnection is null
+     */
+    @Override
+    public void start(ChannelRpcConnection rpcConnection) {
+        Objects.requireNonNull(rpcConnection, "rpcConnection may not be null");
+        if (registration != null || streamListener != null) {
+            log.info("Already listening, ignoring");
+            return;
+        }
+
+        var messageReader = newMessageReader(null);
+        dispatcher.open();
+        var channelRegistration = eventLoop.register(rpcConnection.getChannel());
+        channelRegistration.setReader(new ChannelReader(channelRegistration, messageReader));
+        registration = channelRegistration;
+        log.info("Started listening on channel: {}", rpcConnection.getChannel());
+    }
+
+    /**
+     * Stops reading from the channel (or stream) If listener is currently not started, this method
+     * has no effect The channel itself is not closed, while pending response callbacks are notified
+     * with a {@link message.RpcError.Type#CLOSED} error, since their responses are not read anymore
+     */
+    @Override
+    public void stop() {
+        if (registration != null) {
+            registration.setReader(null);
+            registration = null;
+            dispatcher.close();
+            log.info("Stopped listening on channel");
+        }
+        if (streamListener != null) {
+            streamListener.cancel(true);
+            streamListener = null;
+            streamExecutor.shutdown();
+            streamExecutor = null;
+            dispatcher.close();
+            log.info("Stopped listening on stream");
+        }
+    }
+
+    /**
+     * Prepares a {@link RpcListener.ResponseCallback} per {@link
+     * BackgroundRpcListener#listenForResponse(int, ResponseCallback)} specification Default
+     * response timeout is used, if it was configured
+     */
+    @Override
+    public void listenForResponse(int id, ResponseCallback callback) {
+        dispatcher.listenForResponse(id, callback);
+    }
+
+    /**
+     * Prepares a {@link RpcListener.ResponseCallback} with given timeout per {@link
+     * BackgroundRpcListener#listenForResponse(int, ResponseCallback, Duration)} specification
+     *
+     * @throws NullPointerException if timeout is null
+     */
+    @Override
+    public void listenForResponse(int id, ResponseCallback callback, Duration timeout) {
+        dispatcher.listenForResponse(id, callback, timeout);
+    }
+
+    /**
+     * Drops callback and timeout registered for given id per {@link
+     * RpcListener#forgetResponse(int)} specification
+     */
+    @Override
+    public void forgetResponse(int id) {
+        dispatcher.forgetResponse(id);
+    }
+
+    /**
+     * Prepares a {@link RpcListener.NotificationCallback} It is called on the event loop thread, so
+     * it should not block
+     *
+     * <p><b>null</b> is supported and can be used to effectively remove current callback
+     */
+    @Override
+    public void listenForNotifications(NotificationCallback callback) {
+        dispatcher.listenForNotifications(callback);
+    }
+
+    /**
+     * Prepares a {@link RpcListener.RequestCallback} It is called on the event loop thread, so it
+     * should not block
+     *
+     * <p><b>null</b> is supported and can be used to effectively remove current callback
+     */
+    @Override
+    public void listenForRequests(RequestCallback callback) {
+        dispatcher.listenForRequests(callback);
+    }
+
+    private StreamingMessageReader newMessageReader(InputStream inputStream) {
+        return new StreamingMessageReader(
+                inputStream,
+                responseObjectMapper,
+                readBufferSize,
+                maxFrameSize,
+                extensions,
+                notificationDecoders,
+                metrics,
+                tracer);
+    }
+
+    /**
+     * Reader of a registered channel, which stops reading it while a dispatch lane is full Except
+     * for the space listener, it is only used on the event loop thread
+     */
+    private final class ChannelReader implements NioEventLoop.ReadyHandler {
+        private final NioEventLoop.Registration channelRegistration;
+        private final StreamingMessageReader messageReader;
+        private final Runnable resume = this::resume;
+        private final Runnable whenSpace = () -> eventLoop.execute(resume);
+        // message which did not fit into its full lane
+        private Message pausedMessage;
+
+        private ChannelReader(
+                NioEventLoop.Registration channelRegistration,
+                StreamingMessageReader messageReader) {
+            this.channelRegistration = channelRegistration;
+            this.messageReader = messageReader;
+        }
+
+        @Override
+        public void ready() throws IOException {
+            try {
+                while (true) {
+                    if (!dispatchBuffered()) {
+                        return;
+                    }
+                    var read = messageReader.fill(channelRegistration.channel());
+                    if (read < 0) {
+                        if (messageReader.hasPartialMessage()) {
+                            log.warn("Channel closed in the middle of a message");
+                        }
+                        log.info("Channel closed by the other side");
+                        channelRegistration.close();
+                        dispatcher.close();
+                        return;
+                    }
+                    if (!dispatchBuffered()) {
+                        return;
+                    }
+                    // Buffer was not filled, so nothing more is available right now
+                    if (!messageReader.isBufferFull()) {
+                        return;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Event loop abandons the channel, so no more responses arrive
+                dispatcher.close();
+                throw e;
+            }
+        }
+
+        // returns false if reading was paused, since a lane is full
+        private boolean dispatchBuffered() throws IOException {
+            var message = pausedMessage != null ? pausedMessage : messageReader.poll();
+            while (message != null) {
+                if (!dispatcher.tryDispatch(message, whenSpace)) {
+                    // Stop reading only this channel, until its lane has space again
+                    pausedMessage = message;
+                    channelRegistration.setReadInterest(false);
+                    return false;
+                }
+                message = messageReader.poll();
+            }
+            pausedMessage = null;
+            return true;
+        }
+
+        // once a full lane has space again
+        private void resume() {
+            if (registration != channelRegistration || pausedMessage == null) {
+                return;
+            }
+            channelRegistration.setReadInterest(true);
+            try {
+                // Messages already buffered are dispatched right away, not once more bytes arrive
+                ready();
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed serving channel: {}", channelRegistration.channel(), e);
+                channelRegistration.close();
+            }
+        }
+    }
+
+    /**
+     * Builder for {@link NioRpcListener} {@link NioEventLoop} and {@link ObjectMapper} are
+     * required, while everything else is optional: * Initial read buffer size (8KB by default) *
+     * Default response timeout (none by default) * {@link TimeoutWheel} tracking response timeouts
+     * (shared {@link TimeoutWheel#getDefault()} by default) * Executors for requests and
+     * notifications (callbacks are notified on the event loop thread by default) * {@link
+     * RequestLatencies} recording latencies of requests (none by default) * {@link RpcMetrics}
+     * ({@link RpcMetrics#none()} by default) * {@link RpcTracer} ({@link RpcTracer#none()} by
+     * default) * {@link ExtensionRegistry} ({@link ExtensionRegistry#empty()} by default) *
+     * {@link NotificationDecoder}s by notification name (none by default) * Maximum frame size
+     * ({@link StreamingMessageReader#DEFAULT_MAX_FRAME_SIZE} by default)
+     */
+    public static class Builder extends DispatchingBuilder<Builder> {
+        private final NioEventLoop eventLoop;
+        private final ObjectMapper responseObjectMapper;
+        private int readBufferSize = DEFAULT_READ_BUFFER_SIZE;
+        private Duration defaultResponseTimeout = Duration.ZERO;
+        private TimeoutWheel timeoutWheel;
+        private RequestLatencies requestLatencies;
+        private RpcMetrics metrics = RpcMetrics.none();
+        private RpcTracer tracer = RpcTracer.none();
+        private ExtensionRegistry extensions = ExtensionRegistry.empty();
+        private final Map<String, NotificationDecoder> notificationDecoders = new HashMap<>();
+        private int maxFrameSize = StreamingMessageReader.DEFAULT_MAX_FRAME_SIZE;
+
+        /**
+         * Creates a new {@link Builder} with required dependencies
+         *
+         * @param eventLoop event loop serving the channel
+         * @param responseObjectMapper mapper used for binding responses
+         * @throws NullPointerException if any parameter is null
+         */
+        public Builder(NioEventLoop eventLoop, ObjectMapper responseObjectMapper) {
+            Objects.requireNonNull(eventLoop, "eventLoop must be provided to read from channel");
+            Objects.requireNonNull(
+                    responseObjectMapper, "responseObjectMapper must be provided to deserialize");
+            this.eventLoop = eventLoop;
+            this.responseObjectMapper = responseObjectMapper;
+        }
+
+        /**
+         * Changes initial size of the read buffer It is grown when a message does not fit into it
+         *
+         * @param readBufferSize initial size in bytes
+         * @throws IllegalArgumentException if readBufferSize is not positive
+         */
+        public Builder withReadBufferSize(int readBufferSize) {
+            if (readBufferSize <= 0) {
+                throw new IllegalArgumentException("readBufferSize must be positive");
+            }
+            this.readBufferSize = readBufferSize;
+            return this;
+        }
+
+        /**
+         * Passes notifications with given name to given {@link NotificationDecoder}, instead of
+         * notifying the notification callback Decoder is called on the event loop thread, even if
+         * notifications are dispatched to an executor, so it is not ordered with other
+         * notifications handed over to it
+         *
+         * @param name name of the notifications, such as {@code redraw}
+         * @param decoder decoder of their arguments
+         * @throws NullPointerException if any parameter is null
+         */
+        public Builder withNotificationDecoder(String name, NotificationDecoder decoder) {
+            Objects.requireNonNull(name, "name may not be null");
+            Objects.requireNonNull(decoder, "decoder may not be null");
+            this.notificationDecoders.put(name, decoder);
+            return this;
+        }
+
+        /**
+         * Changes maximum size of a single incoming frame Once a larger frame starts arriving, the
+         * channel is abandoned, since its remaining bytes can not be framed anymore
+         *
+         * @param maxFrameSize maximum size in bytes
+         * @throws IllegalArgumentException if maxFrameSize is not positive
+         */
+        public Builder withMaxFrameSize(int maxFrameSize) {
+            if (maxFrameSize <= 0) {
+                throw new IllegalArgumentException("maxFrameSize must be positive");
+            }
+            this.maxFrameSize = maxFrameSize;
+            return this;
+        }
+
+        /**
+         * Changes timeout used for responses registered without an explicit one
+         *
+         * @param defaultResponseTimeout timeout to use - zero or negative means no timeout
+         * @throws NullPointerException if defaultResponseTimeout is null
+         */
+        public Builder withDefaultResponseTimeout(Duration defaultResponseTimeout) {
+            Objects.requireNonNull(defaultResponseTimeout, "defaultResponseTimeout may not be null");
+            this.defaultResponseTimeout = defaultResponseTimeout;
+            return this;
+        }
+
+        /**
+         * Changes {@link TimeoutWheel} used to track response timeouts
+         *
+         * @param timeoutWheel {@link TimeoutWheel} to use
+         * @throws NullPointerException if timeoutWheel is null
+         */
+        public Builder withTimeoutWheel(TimeoutWheel timeoutWheel) {
+            Objects.requireNonNull(timeoutWheel, "timeoutWheel may not be null");
+            this.timeoutWheel = timeoutWheel;
+            return this;
+        }
+
+        /**
+         * Reports responses read and passed to their callbacks to given {@link RequestLatencies}
+         *
+         * @param requestLatencies {@link RequestLatencies} of the connection
+         * @throws NullPointerException if requestLatencies is null
+         */
+        public Builder withRequestLatencies(RequestLatencies requestLatencies) {
+            Objects.requireNonNull(requestLatencies, "requestLatencies may not be null");
+            this.requestLatencies = requestLatencies;
+            return this;
+        }
+
+        /**
+         * Reports messages and bytes received, decode errors, number of pending responses and
+         * time dispatch tasks waited in their executors to given {@link RpcMetrics}
+         *
+         * @param metrics {@link RpcMetrics} of the connection
+         * @throws NullPointerException if metrics is null
+         */
+        public Builder withMetrics(RpcMetrics metrics) {
+            Objects.requireNonNull(metrics, "metrics may not be null");
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Decodes extension values of registered types in incoming messages into their value
+         * types, using given {@link ExtensionRegistry}
+         *
+         * @param extensions {@link ExtensionRegistry} of the connection
+         * @throws NullPointerException if extensions is null
+         */
+        public Builder withExtensions(ExtensionRegistry extensions) {
+            Objects.requireNonNull(extensions, "extensions may not be null");
+            this.extensions = extensions;
+            return this;
+        }
+
+        /**
+         * Passes events of messages received to given {@link RpcTracer}
+         *
+         * @param tracer {@link RpcTracer} of the connection
+         * @throws NullPointerException if tracer is null
+         */
+        public Builder withTracer(RpcTracer tracer) {
+            Objects.requireNonNull(tracer, "tracer may not be null");
+            this.tracer = tracer;
+            return this;
+        }
+
+        /** Creates a new {@link NioRpcListener} with given configuration */
+        public NioRpcListener build() {
+            return new NioRpcListener(this);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.ExtensionRegistry;
+import message.Message;
+import message.MessagePackWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Implementation of {@link RpcSender} writing to a non-blocking {@link
+ * java.nio.channels.SocketChannel} on a {@link NioEventLoop}
+ *
+ * <p>Messages are put into a bounded lock-free queue and a flush is scheduled on the event loop,
+ * only if one is not already pending. The flush serializes all queued messages into a single
+ * reusable {@link MessagePackWriter} and writes as much as the channel accepts. Whatever is left is
+ * written once the channel becomes writable again, so the event loop thread never blocks on a slow
+ * reader. Messages are written in the order they were sent and writes are coalesced, same as in
+ * {@link AsyncRpcSender.SendMode#SINGLE_WRITER} mode of {@link AsyncRpcSender}
+ *
+ * <p>If the queue is full, senders wait for space, except on the event loop thread itself, where
+ * waiting would never end - such messages are buffered right away
+ *
+ * <p>Messages and bytes sent, depth of the outbound queue and time flushes waited on the event
+ * loop may be reported to {@link RpcMetrics}, configured through {@link Builder}
+ *
+ * <p>It is meant to be attached to a {@link ChannelRpcConnection} (such as {@link
+ * NioSocketRpcConnection}), using {@link #attach(ChannelRpcConnection)} It may also be attached to
+ * a plain {@link OutputStream}, using {@link #attach(OutputStream)}, which can only be written by
+ * blocking, so batches are then written on a thread of their own instead of the event loop, same as
+ * {@link AsyncRpcSender} does in {@link AsyncRpcSender.SendMode#SINGLE_WRITER} mode
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * NioEventLoop eventLoop = new NioEventLoop();
+ *
+ * RpcSender sender = new NioRpcSender(eventLoop, objectMapper);
+ * // Or, with additional configuration
+ * RpcSender configuredSender = new NioRpcSender.Builder(eventLoop, objectMapper)
+ *         .withMetrics(metrics)
+ *         .build();
+ * sender.attach(connection); // an existing ChannelRpcConnection
+ * sender.send(message); // fire and forget
+ *
+ * }</pre>
+ */
+public final class NioRpcSender implements RpcSender {
+    private static final Logger log = LoggerFactory.getLogger(NioRpcSender.class);
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
+    private final NioEventLoop eventLoop;
+    private final MessageBatcher batcher;
+
+    // only used on the event loop thread
+    private ByteBuffer writeBuffer;
+
+    private volatile NioEventLoop.Registration registration;
+    private volatile OutputStream outputStream;
+    private volatile ExecutorService streamExecutor;
+    private final MessageBatcher.Sink streamSink = MessageBatcher.streamSink(() -> outputStream);
+
+    /**
+     * Creates a new {@link NioRpcSender} writing on given {@link NioEventLoop} and using given
+     * {@link ObjectMapper} for values not supported by {@link MessagePackWriter} natively
+     *
+     * @param eventLoop event loop serving the channel
+     * @param msgPacker {@link ObjectMapper} for mapping requests (outgoing)
+     * @throws NullPointerException if any parameter is null
+     */
+    public NioRpcSender(NioEventLoop eventLoop, ObjectMapper msgPacker) {
+        this(new Builder(eventLoop, msgPacker));
+    }
+
+    NioRpcSender(NioEventLoop eventLoop, ObjectMapper msgPacker, int queueCapacity) {
+        this(new Builder(eventLoop, msgPacker).withQueueCapacity(queueCapacity));
+    }
+
+    private NioRpcSender(Builder builder) {
+        this.eventLoop = builder.eventLoop;
+        this.batcher =
+                new MessageBatcher(
+                        builder.queueCapacity,
+                        new MessagePackWriter(builder.msgPacker).withExtensions(builder.extensions),
+                        builder.requestLatencies,
+                        builder.metrics,
+                        builder.tracer,
+                        this::executeDrain,
+                        () -> outputStream == null && eventLoop.inEventLoop(),
+                        false,
+                        this::writeBatch);
+    }
+
+    /**
+     * Sends messages per {@link RpcSender#send(Message)} specification Message is queued and
+     * written by the event loop thread (or the stream writing thread)
+     *
+     * @throws IllegalStateException if neither {@link #attach(ChannelRpcConnection)} nor {@link
+     *     #attach(OutputStream)} was used, or if event loop was stopped
+     */
+    @Override
+    public void send(Message message) {
+        if (registration == null && outputStream == null) {
+            throw new IllegalStateException(
+                    "Can't find a connection to send message to. Did you forget to call attach?");
+        }
+        batcher.send(message);
+    }
+
+    /**
+     * Sends messages per {@link RpcSender#sendPriority(Message)} specification Message is queued
+     * ahead of messages not written yet
+     *
+     * @throws IllegalStateException if neither {@link #attach(ChannelRpcConnection)} nor {@link
+     *     #attach(OutputStream)} was used, or if event loop was stopped
+     */
+    @Override
+    public void sendPriority(Message message) {
+        if (registration == null && outputStream == null) {
+            throw new IllegalStateException(
+                    "Can't find a connection to send message to. Did you forget to call attach?");
+        }
+        batcher.sendPriority(message);
+    }
+
+    /**
+     * Attaches to given {@link OutputStream} Since a stream can only be written by blocking,
+     * batches are written on a thread of their own (a virtual thread, if supported), not on the
+     * {@link NioEventLoop}, while messages are still queued and coalesced the same way as for
+     * channels
+     *
+     * @param outputStream {@link OutputStream} to write to
+     * @throws NullPointerException if outputStream is null
+     */
+    @Override
+    public void attach(OutputStream outputStream) {
+        Objects.requireNonNull(outputStream, "outputStream may not be null");
+        if (streamExecutor == null) {
+            streamExecutor = VirtualThreads.newThreadPerTaskExecutor("rpc-nio-writer-");
+        }
+        this.outputStream = outputStream;
+        log.info("Attached to output stream!");
+    }
+
+    /**
+     * Attaches to the channel of given connection, by registering it with the {@link
+     * NioEventLoop} Required for using {@link #send(Message)} The channel is switched to
+     * non-blocking mode
+     *
+     * @param rpcConnection connection to write to
+     * @throws NullPointerException if rpcConnection is null
+     */
+    @Override
+    public void attach(ChannelRpcConnection rpcConnection) {
+        Objects.requireNonNull(rpcConnection, "rpcConnection may not be null");
+        var channelRegistration = eventLoop.register(rpcConnection.getChannel());
+        channelRegistration.setWriter(batcher::drain);
+        registration = channelRegistration;
+        log.info("Attached to channel: {}", rpcConnection.getChannel());
+    }
+
+    /**
+     * Detaches from the channel (or stream) Messages which were not written yet are dropped The
+     * channel (or stream) itself is not closed, nor is the {@link NioEventLoop} stopped
+     */
+    @Override
+    public void stop() {
+        var current = registration;
+        if (current != null) {
+            registration = null;
+            current.setWriter(null);
+        }
+        var executor = streamExecutor;
+        if (executor != null) {
+            outputStream = null;
+            streamExecutor = null;
+            executor.shutdown();
+        }
+    }
+
+    private void executeDrain(Runnable drainTask) {
+        var executor = streamExecutor;
+        if (executor != null && outputStream != null) {
+            executor.execute(drainTask);
+        } else {
+            eventLoop.execute(drainTask);
+        }
+    }
+
+    // executes on event loop thread (or stream writing thread) - as part of the batcher drain
+    private int writeBatch(MessagePackWriter batch, int offset) throws IOException {
+        if (outputStream != null) {
+            return streamSink.write(batch, offset);
+        }
+        var current = registration;
+        if (current == null) {
+            throw new IOException("Not attached anymore");
+        }
+
+        var bytes = batch.buffer();
+        if (writeBuffer == null || writeBuffer.array() != bytes) {
+            writeBuffer = ByteBuffer.wrap(bytes);
+        }
+        writeBuffer.limit(batch.size()).position(offset);
+        try {
+            while (writeBuffer.hasRemaining() && current.channel().write(writeBuffer) > 0) {
+                // keep writing while channel accepts data
+            }
+        } catch (IOException e) {
+            current.setWriteInterest(false);
+            throw e;
+        }
+        // Whatever is left is written once the channel is writable again
+        current.setWriteInterest(writeBuffer.hasRemaining());
+        return writeBuffer.position();
+    }
+
+    /**
+     * Builder for {@link NioRpcSender} {@link NioEventLoop} and {@link ObjectMapper} are required,
+     * while everything else is optional: * {@link RequestLatencies} recording latencies of requests
+     * (none by default) * {@link RpcMetrics} ({@link RpcMetrics#none()} by default) * {@link
+     * RpcTracer} ({@link RpcTracer#none()} by default) * {@link ExtensionRegistry} ({@link
+     * ExtensionRegistry#empty()} by default)
+     */
+    public static class Builder {
+        private final NioEventLoop eventLoop;
+        private final ObjectMapper msgPacker;
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        private RequestLatencies requestLatencies;
+        private RpcMetrics metrics = RpcMetrics.none();
+        private RpcTracer tracer = RpcTracer.none();
+        private ExtensionRegistry extensions = ExtensionRegistry.empty();
+
+        /**
+         * Creates a new {@link Builder} with required dependencies
+         *
+         * @param eventLoop event loop serving the channel
+         * @param msgPacker {@link ObjectMapper} for mapping requests (outgoing)
+         * @throws NullPointerException if any parameter is null
+         */
+        public Builder(NioEventLoop eventLoop, ObjectMapper msgPacker) {
+            Objects.requireNonNull(eventLoop, "eventLoop must be provided to write to channel");
+            Objects.requireNonNull(
+                    msgPacker, "msgPacker must be provided for serialization of messages");
+            this.eventLoop = eventLoop;
+            this.msgPacker = msgPacker;
+        }
+
+        /**
+         * Reports requests written out to given {@link RequestLatencies}
+         *
+         * @param requestLatencies {@link RequestLatencies} of the connection
+         * @throws NullPointerException if requestLatencies is null
+         */
+        public Builder withRequestLatencies(RequestLatencies requestLatencies) {
+            Objects.requireNonNull(requestLatencies, "requestLatencies may not be null");
+            this.requestLatencies = requestLatencies;
+            return this;
+        }
+
+        /**
+         * Reports messages and bytes sent, depth of the outbound queue and time flushes waited on
+         * the event loop to given {@link RpcMetrics}
+         *
+         * @param metrics {@link RpcMetrics} of the connection
+         * @throws NullPointerException if metrics is null
+         */
+        public Builder withMetrics(RpcMetrics metrics) {
+            Objects.requireNonNull(metrics, "metrics may not be null");
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Encodes values of types registered in given {@link ExtensionRegistry} as extension
+         * values
+         *
+         * @param extensions {@link ExtensionRegistry} of the connection
+         * @throws NullPointerException if extensions is null
+         */
+        public Builder withExtensions(ExtensionRegistry extensions) {
+            Objects.requireNonNull(extensions, "extensions may not be null");
+            this.extensions = extensions;
+            return this;
+        }
+
+        /**
+         * Passes events of messages sent to given {@link RpcTracer}
+         *
+         * @param tracer {@link RpcTracer} of the connection
+         * @throws NullPointerException if tracer is null
+         */
+        public Builder withTracer(RpcTracer tracer) {
+            Objects.requireNonNull(tracer, "tracer may not be null");
+            this.tracer = tracer;
+            return this;
+        }
+
+        Builder withQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /** Creates a new {@link NioRpcSender} with given configuration */
+        public NioRpcSender build() {
+            return new NioRpcSender(this);
+        }
+    }
+}
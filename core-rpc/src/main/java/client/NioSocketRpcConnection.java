@@ -0,0 +1,206 @@
+package client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+
+/**
+ * Implementation of {@link RpcConnection} based on a TCP {@link SocketChannel}
+ *
+ * <p>It is meant to be used together with {@link NioRpcListener} and {@link NioRpcSender}, which
+ * serve the channel from a {@link NioEventLoop}, so a single I/O thread may serve the connection
+ * without blocking. It may still be used with stream based listeners and senders, in which case it
+ * behaves like {@link TcpSocketRpcConnection}
+ *
+ * <p>Socket options (TCP_NODELAY, buffer sizes) are configured through {@link Builder}
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * NioSocketRpcConnection connection =
+ *         new NioSocketRpcConnection.Builder(new InetSocketAddress("127.0.0.1", 1234))
+ *                 .withTcpNoDelay(true)
+ *                 .withReceiveBufferSize(64 * 1024)
+ *                 .connect();
+ *
+ * NioEventLoop eventLoop = new NioEventLoop();
+ * RpcStreamer rpcStreamer =
+ *         new PackStream(
+ *                 new NioRpcSender(eventLoop, objectMapper),
+ *                 new NioRpcListener(eventLoop, objectMapper));
+ * rpcStreamer.attach(connection);
+ * rpcStreamer.send(message); // send a message to local app on port 1234
+ *
+ * }</pre>
+ */
+public final class NioSocketRpcConnection implements ChannelRpcConnection {
+    public static final Logger log = LoggerFactory.getLogger(NioSocketRpcConnection.class);
+
+    private final SocketChannel channel;
+
+    private InputStream incomingStream;
+    private OutputStream outgoingStream;
+
+    /**
+     * Creates a new {@link NioSocketRpcConnection} based on passed connected {@link SocketChannel}
+     * Its options are left as they are
+     *
+     * @param channel instance of {@link SocketChannel} to use for communication
+     * @throws NullPointerException if channel is null
+     */
+    public NioSocketRpcConnection(SocketChannel channel) {
+        Objects.requireNonNull(
+                channel, "channel is required to properly implement a RpcConnection");
+        this.channel = channel;
+    }
+
+    /**
+     * Gets the underlying {@link SocketChannel}
+     *
+     * @return {@link SocketChannel} of this connection
+     */
+    @Override
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Gets a blocking {@link InputStream} reading from the underlying {@link SocketChannel} It may
+     * only be used while the channel is in blocking mode
+     *
+     * @return {@link InputStream} of the underlying {@link SocketChannel}
+     */
+    @Override
+    public synchronized InputStream getIncomingStream() {
+        if (incomingStream == null) {
+            incomingStream = SocketChannelStreams.inputStream(channel);
+        }
+        return incomingStream;
+    }
+
+    /**
+     * Gets a blocking {@link OutputStream} writing to the underlying {@link SocketChannel} It may
+     * only be used while the channel is in blocking mode
+     *
+     * @return {@link OutputStream} of the underlying {@link SocketChannel}
+     */
+    @Override
+    public synchronized OutputStream getOutgoingStream() {
+        if (outgoingStream == null) {
+            outgoingStream = SocketChannelStreams.outputStream(channel);
+        }
+        return outgoingStream;
+    }
+
+    /**
+     * Closes underlying {@link SocketChannel} Communication is no longer possible after this call
+     *
+     * @throws IOException when underlying channel throws {@link IOException}
+     */
+    @Override
+    public void close() throws IOException {
+        log.info("Closing channel: {}", channel);
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return "NioSocketRpcConnection{" + "channel=" + channel + '}';
+    }
+
+    /**
+     * Builder for {@link NioSocketRpcConnection} Address to connect to is required, while socket
+     * options are optional: * TCP_NODELAY (enabled by default, since messages are small and latency
+     * sensitive) * Receive buffer size (system default by default) * Send buffer size (system
+     * default by default)
+     */
+    public static class Builder {
+        private final SocketAddress address;
+        private boolean tcpNoDelay = true;
+        private int receiveBufferSize;
+        private int sendBufferSize;
+
+        /**
+         * Creates a new {@link Builder} for connecting to given address
+         *
+         * @param address address to connect to
+         * @throws NullPointerException if address is null
+         */
+        public Builder(SocketAddress address) {
+            Objects.requireNonNull(address, "address must be provided to connect");
+            this.address = address;
+        }
+
+        /**
+         * Enables or disables TCP_NODELAY (Nagle's algorithm)
+         *
+         * @param tcpNoDelay true to send small messages right away
+         */
+        public Builder withTcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        /**
+         * Changes size of the socket receive buffer
+         *
+         * @param receiveBufferSize size in bytes
+         * @throws IllegalArgumentException if receiveBufferSize is not positive
+         */
+        public Builder withReceiveBufferSize(int receiveBufferSize) {
+            if (receiveBufferSize <= 0) {
+                throw new IllegalArgumentException("receiveBufferSize must be positive");
+            }
+            this.receiveBufferSize = receiveBufferSize;
+            return this;
+        }
+
+        /**
+         * Changes size of the socket send buffer
+         *
+         * @param sendBufferSize size in bytes
+         * @throws IllegalArgumentException if sendBufferSize is not positive
+         */
+        public Builder withSendBufferSize(int sendBufferSize) {
+            if (sendBufferSize <= 0) {
+                throw new IllegalArgumentException("sendBufferSize must be positive");
+            }
+            this.sendBufferSize = sendBufferSize;
+            return this;
+        }
+
+        /**
+         * Opens a new {@link SocketChannel} with configured options and connects it (blocking
+         * until connected)
+         *
+         * @return a new connected {@link NioSocketRpcConnection}
+         * @throws IOException if channel can not be opened or connected
+         */
+        public NioSocketRpcConnection connect() throws IOException {
+            var channel = SocketChannel.open();
+            try {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+                // Receive buffer size needs to be set before connecting to affect the window
+                if (receiveBufferSize > 0) {
+                    channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+                }
+                if (sendBufferSize > 0) {
+                    channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+                }
+                channel.connect(address);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            log.info("Connected to: {}", address);
+            return new NioSocketRpcConnection(channel);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package client;
+
+/** {@link RpcMetrics} which ignores everything - see {@link RpcMetrics#none()} */
+enum NoRpcMetrics implements RpcMetrics {
+    INSTANCE
+}
@@ -0,0 +1,17 @@
+package client;
+
+import message.MessageType;
+
+/** {@link RpcTracer} which traces nothing - see {@link RpcTracer#none()} */
+enum NoRpcTracer implements RpcTracer {
+    INSTANCE;
+
+    @Override
+    public boolean isSampled(MessageType type, int id) {
+        return false;
+    }
+
+    @Override
+    public void trace(
+            Event event, MessageType type, int id, String method, int bytes, long nanoTime) {}
+}
@@ -3,6 +3,7 @@ package client;
 import message.Message;
 import message.MessageIdGenerator;
 import message.NotificationMessage;
+import message.PreparedRequest;
 import message.RequestMessage;
 import message.ResponseMessage;
 import message.SequentialMessageIdGenerator;
@@ -11,10 +12,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Two-way msgpack stream that wraps reading/writing bytes and exposes an interface for sending
@@ -26,7 +31,13 @@ import java.util.Objects;
  *
  * <p>Besides just passing down writing/reading, this class allows multiple {@link
  * RpcListener.RequestCallback} and multiple {@link RpcListener.NotificationCallback} by delegating
- * to internally held callbacks It also handles message id generation, meaning users of this class
+ * to internally held callbacks Requests may also be routed by method name to handlers added with
+ * {@link #addRequestHandler(String, RpcListener.RequestCallback)}, which costs a single lookup
+ * regardless of the number of handlers Requests may also be served by {@link RequestResponder}s,
+ * in which case the {@link ResponseMessage} is sent automatically Similarly, notification callbacks may subscribe to
+ * notifications of a single name, using {@link #addNotificationCallback(String,
+ * RpcListener.NotificationCallback)} Callbacks may be added and removed from any thread, also while
+ * messages are being dispatched It also handles message id generation, meaning users of this class
  * don't have to manually set id's for messages Message id generation is handled by {@link
  * MessageIdGenerator} which can optionally be overriden through constructor. By default {@link
  * SequentialMessageIdGenerator} is used.
@@ -49,6 +60,10 @@ import java.util.Objects;
  *
  * rpcStreamer.send(requestMessage); // Sending a request - fire and forget - no callback
  *
+ * rpcStreamer.sendAsync(message).thenAccept(System.out::println); // future for request
+ *
+ * rpcStreamer.sendAsync(message, Integer.class).thenAccept(System.out::println); // typed result
+ *
  * }</pre>
  *
  * <p>Example with custom id generator:
@@ -63,6 +78,16 @@ import java.util.Objects;
  * // ...
  *
  * }</pre>
+ *
+ * <p>Example with additional configuration:
+ *
+ * <pre>{@code
+ * RpcStreamer rpcStreamer = new PackStream.Builder(sender, listener)
+ *         .withMessageIdGenerator(generator)
+ *         .withTracer(tracer)
+ *         .build();
+ *
+ * }</pre>
  */
 public final class PackStream implements RpcStreamer {
     public static final Logger log = LoggerFactory.getLogger(PackStream.class);
@@ -70,9 +95,20 @@ public final class PackStream implements RpcStreamer {
     private final RpcListener rpcListener;
     private final RpcSender rpcSender;
     private final MessageIdGenerator messageIdGenerator;
+    private final RequestLatencies requestLatencies;
+    private final RpcTracer tracer;
+    private final RpcMetrics metrics;
 
-    private final List<RpcListener.RequestCallback> requestCallbacks = new ArrayList<>();
-    private final List<RpcListener.NotificationCallback> notificationCallbacks = new ArrayList<>();
+    // copy-on-write, so that callbacks may be added and removed while messages are dispatched
+    private final CopyOnWriteArrayList<RpcListener.RequestCallback> requestCallbacks =
+            new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<RpcListener.NotificationCallback> notificationCallbacks =
+            new CopyOnWriteArrayList<>();
+    // immutable snapshots replaced on each change, so dispatch is a lookup plus an iteration
+    private volatile Map<String, List<RpcListener.NotificationCallback>> notificationSubscriptions =
+            Map.of();
+    // copy-on-write, so that routing of a request is a single lookup without locking
+    private volatile Map<String, RpcListener.RequestCallback> requestHandlers = Map.of();
 
     /**
      * Creates a new {@link PackStream} with given {@link RpcSender} for sending messages and an
@@ -98,14 +134,19 @@ public final class PackStream implements RpcStreamer {
      */
     public PackStream(
             RpcSender rpcSender, RpcListener rpcListener, MessageIdGenerator messageIdGenerator) {
-        Objects.requireNonNull(rpcSender, "rpcSender must be provided for two way communication");
-        Objects.requireNonNull(
-                rpcListener, "rpcListener must be provided for two way communication");
-        Objects.requireNonNull(
-                messageIdGenerator, "messageIdGenerator must be provided for sending requests");
-        this.rpcListener = rpcListener;
-        this.rpcSender = rpcSender;
-        this.messageIdGenerator = messageIdGenerator;
+        this(new Builder(rpcSender, rpcListener).withMessageIdGenerator(messageIdGenerator));
+    }
+
+    private PackStream(Builder builder) {
+        this.rpcListener = builder.rpcListener;
+        this.rpcSender = builder.rpcSender;
+        this.messageIdGenerator =
+                builder.messageIdGenerator != null
+                        ? builder.messageIdGenerator
+                        : new SequentialMessageIdGenerator();
+        this.requestLatencies = builder.requestLatencies;
+        this.tracer = builder.tracer;
+        this.metrics = builder.metrics;
     }
 
     /**
@@ -114,14 +155,24 @@ public final class PackStream implements RpcStreamer {
      * callbacks may be called - prepares the underlying {@link RpcListener} Also prepares for
      * writing messages - prepares the underlying {@link RpcSender}
      *
+     * <p>{@link ChannelRpcConnection} is passed down as it is, so that channel based listeners and
+     * senders may use the channel directly
+     *
      * @throws NullPointerException if rpcConnection is null
      */
     @Override
     public void attach(RpcConnection rpcConnection) {
         Objects.requireNonNull(rpcConnection, "rpcConnection may not be null");
         log.info("Attaching PackStream to: {}", rpcConnection);
-        startListening(rpcConnection.getIncomingStream());
-        rpcSender.attach(rpcConnection.getOutgoingStream());
+        prepareListening();
+        if (rpcConnection instanceof ChannelRpcConnection) {
+            var channelConnection = (ChannelRpcConnection) rpcConnection;
+            rpcListener.start(channelConnection);
+            rpcSender.attach(channelConnection);
+        } else {
+            rpcListener.start(rpcConnection.getIncomingStream());
+            rpcSender.attach(rpcConnection.getOutgoingStream());
+        }
     }
 
     /**
@@ -154,9 +205,80 @@ public final class PackStream implements RpcStreamer {
     public void send(
             RequestMessage.Builder requestMessage, RpcListener.ResponseCallback responseCallback)
             throws IOException {
-        var messageToSend = requestMessage.withId(messageIdGenerator.nextId()).build();
-        rpcListener.listenForResponse(messageToSend.getId(), responseCallback);
-        send(messageToSend);
+        sendRequest(
+                requestMessage.withId(messageIdGenerator.nextId()).build(), responseCallback, null);
+    }
+
+    /**
+     * Implemented per {@link RpcStreamer#send(RequestMessage.Builder,
+     * RpcListener.ResponseCallback, Duration)} specification Same as {@link
+     * #send(RequestMessage.Builder, RpcListener.ResponseCallback)}, except that the callback is
+     * prepared on {@link RpcListener} together with the timeout
+     */
+    @Override
+    public void send(
+            RequestMessage.Builder requestMessage,
+            RpcListener.ResponseCallback responseCallback,
+            Duration timeout)
+            throws IOException {
+        Objects.requireNonNull(timeout, "timeout may not be null");
+        sendRequest(
+                requestMessage.withId(messageIdGenerator.nextId()).build(),
+                responseCallback,
+                timeout);
+    }
+
+    /**
+     * Implemented per {@link RpcStreamer#sendAsync(RequestMessage.Builder)} specification The
+     * returned future is itself registered as {@link RpcListener.ResponseCallback}, so no
+     * additional correlation is done
+     */
+    @Override
+    public CompletableFuture<ResponseMessage> sendAsync(RequestMessage.Builder requestMessage) {
+        return sendAsync(requestMessage, ResponseFuture.forResponse());
+    }
+
+    /**
+     * Implemented per {@link RpcStreamer#sendAsync(RequestMessage.Builder, Class)} specification
+     * The returned future is itself registered as {@link RpcListener.ResponseCallback}, so no
+     * additional correlation is done
+     */
+    @Override
+    public <T> CompletableFuture<T> sendAsync(
+            RequestMessage.Builder requestMessage, Class<T> resultType) {
+        Objects.requireNonNull(resultType, "resultType may not be null");
+        return sendAsync(requestMessage, ResponseFuture.forResult(resultType));
+    }
+
+    /**
+     * Implemented per {@link RpcStreamer#sendAsync(RequestMessage.Builder, ResultDecoder)}
+     * specification The returned future is itself registered as {@link
+     * RpcListener.ResponseCallback}, decoding the result once response arrives
+     */
+    @Override
+    public <T> CompletableFuture<T> sendAsync(
+            RequestMessage.Builder requestMessage, ResultDecoder<T> resultDecoder) {
+        Objects.requireNonNull(resultDecoder, "resultDecoder may not be null");
+        return sendAsync(requestMessage, ResponseFuture.forResult(resultDecoder));
+    }
+
+    /**
+     * Implemented per {@link RpcStreamer#sendAsync(PreparedRequest, ResultDecoder)} specification
+     * Only a request with a freshly generated id is created, pointing to the template of {@link
+     * PreparedRequest}, which {@link RpcSender} copies as it is
+     */
+    @Override
+    public <T> CompletableFuture<T> sendAsync(
+            PreparedRequest preparedRequest, ResultDecoder<T> resultDecoder) {
+        Objects.requireNonNull(preparedRequest, "preparedRequest may not be null");
+        Objects.requireNonNull(resultDecoder, "resultDecoder may not be null");
+        var responseFuture = ResponseFuture.forResult(resultDecoder);
+        try {
+            sendAsyncRequest(preparedRequest.build(messageIdGenerator.nextId()), responseFuture);
+        } catch (IOException | RuntimeException e) {
+            responseFuture.completeExceptionally(e);
+        }
+        return responseFuture;
     }
 
     /**
@@ -166,9 +288,7 @@ public final class PackStream implements RpcStreamer {
     @Override
     public void addRequestCallback(RpcListener.RequestCallback requestCallback) {
         log.info("Registered a new request callback: {}", requestCallback);
-        if (!requestCallbacks.contains(requestCallback)) {
-            this.requestCallbacks.add(requestCallback);
-        }
+        requestCallbacks.addIfAbsent(requestCallback);
     }
 
     /**
@@ -178,8 +298,54 @@ public final class PackStream implements RpcStreamer {
     @Override
     public void removeRequestCallback(RpcListener.RequestCallback requestCallback) {
         log.info("Removed a request callback: {}", requestCallback);
-        if (requestCallbacks.contains(requestCallback)) {
-            this.requestCallbacks.remove(requestCallback);
+        requestCallbacks.remove(requestCallback);
+    }
+
+    /**
+     * Adds a request handler per {@link RpcStreamer#addRequestHandler(String,
+     * RpcListener.RequestCallback)} specification Handlers are kept in an immutable map which is
+     * replaced on each change, so requests are routed without locking
+     *
+     * @throws NullPointerException if any parameter is null
+     */
+    @Override
+    public void addRequestHandler(String method, RpcListener.RequestCallback requestHandler) {
+        Objects.requireNonNull(method, "method may not be null");
+        Objects.requireNonNull(requestHandler, "requestHandler may not be null");
+        log.info("Registered a new request handler for {}: {}", method, requestHandler);
+        synchronized (this) {
+            var handlers = new HashMap<>(requestHandlers);
+            handlers.put(method, requestHandler);
+            requestHandlers = Map.copyOf(handlers);
+        }
+    }
+
+    /**
+     * Adds a request responder per {@link RpcStreamer#addRequestResponder(String,
+     * RequestResponder)} specification Responder is routed to as a request handler, and responses
+     * are passed directly to the underlying {@link RpcSender} as soon as they are produced
+     *
+     * @throws NullPointerException if any parameter is null
+     */
+    @Override
+    public void addRequestResponder(String method, RequestResponder requestResponder) {
+        addRequestHandler(
+                method,
+                new RespondingRequestCallback(method, requestResponder, rpcSender, metrics));
+    }
+
+    /**
+     * Removes a request handler per {@link RpcStreamer#removeRequestHandler(String)} specification
+     */
+    @Override
+    public void removeRequestHandler(String method) {
+        log.info("Removed a request handler for: {}", method);
+        synchronized (this) {
+            if (requestHandlers.containsKey(method)) {
+                var handlers = new HashMap<>(requestHandlers);
+                handlers.remove(method);
+                requestHandlers = Map.copyOf(handlers);
+            }
         }
     }
 
@@ -190,9 +356,7 @@ public final class PackStream implements RpcStreamer {
     @Override
     public void addNotificationCallback(RpcListener.NotificationCallback notificationCallback) {
         log.info("Registered a new notification callback: {}", notificationCallback);
-        if (!notificationCallbacks.contains(notificationCallback)) {
-            this.notificationCallbacks.add(notificationCallback);
-        }
+        notificationCallbacks.addIfAbsent(notificationCallback);
     }
 
     /**
@@ -202,8 +366,57 @@ public final class PackStream implements RpcStreamer {
     @Override
     public void removeNotificationCallback(RpcListener.NotificationCallback notificationCallback) {
         log.info("Removed a notification callback: {}", notificationCallback);
-        if (notificationCallbacks.contains(notificationCallback)) {
-            this.notificationCallbacks.remove(notificationCallback);
+        notificationCallbacks.remove(notificationCallback);
+    }
+
+    /**
+     * Adds a new {@link RpcListener.NotificationCallback} for notifications of given name per
+     * {@link RpcStreamer#addNotificationCallback(String, RpcListener.NotificationCallback)}
+     * specification Subscriptions are kept in an immutable index which is replaced on each change,
+     * so notifications are dispatched without locking
+     *
+     * @throws NullPointerException if any parameter is null
+     */
+    @Override
+    public void addNotificationCallback(
+            String name, RpcListener.NotificationCallback notificationCallback) {
+        Objects.requireNonNull(name, "name may not be null");
+        Objects.requireNonNull(notificationCallback, "notificationCallback may not be null");
+        log.info("Registered a new notification callback for {}: {}", name, notificationCallback);
+        synchronized (this) {
+            var callbacks = notificationSubscriptions.getOrDefault(name, List.of());
+            if (!callbacks.contains(notificationCallback)) {
+                var newCallbacks = new ArrayList<>(callbacks);
+                newCallbacks.add(notificationCallback);
+                var subscriptions = new HashMap<>(notificationSubscriptions);
+                subscriptions.put(name, List.copyOf(newCallbacks));
+                notificationSubscriptions = Map.copyOf(subscriptions);
+            }
+        }
+    }
+
+    /**
+     * Removes a {@link RpcListener.NotificationCallback} for notifications of given name per
+     * {@link RpcStreamer#removeNotificationCallback(String, RpcListener.NotificationCallback)}
+     * specification
+     */
+    @Override
+    public void removeNotificationCallback(
+            String name, RpcListener.NotificationCallback notificationCallback) {
+        log.info("Removed a notification callback for {}: {}", name, notificationCallback);
+        synchronized (this) {
+            var callbacks = notificationSubscriptions.get(name);
+            if (callbacks != null && callbacks.contains(notificationCallback)) {
+                var newCallbacks = new ArrayList<>(callbacks);
+                newCallbacks.remove(notificationCallback);
+                var subscriptions = new HashMap<>(notificationSubscriptions);
+                if (newCallbacks.isEmpty()) {
+                    subscriptions.remove(name);
+                } else {
+                    subscriptions.put(name, List.copyOf(newCallbacks));
+                }
+                notificationSubscriptions = Map.copyOf(subscriptions);
+            }
         }
     }
 
@@ -218,23 +431,173 @@ public final class PackStream implements RpcStreamer {
         this.rpcSender.stop();
     }
 
+    private <T> CompletableFuture<T> sendAsync(
+            RequestMessage.Builder requestMessage, ResponseFuture<T> responseFuture) {
+        try {
+            sendAsyncRequest(
+                    requestMessage.withId(messageIdGenerator.nextId()).build(), responseFuture);
+        } catch (IOException | RuntimeException e) {
+            responseFuture.completeExceptionally(e);
+        }
+        return responseFuture;
+    }
+
+    private void sendAsyncRequest(RequestMessage requestMessage, ResponseFuture<?> responseFuture)
+            throws IOException {
+        sendRequest(requestMessage, responseFuture, null);
+        // Once sent, futures cancelled or failed by the caller are not waiting for a response
+        responseFuture.forgetOnAbandon(rpcListener, requestMessage.getId());
+    }
+
+    // timeout may be null, to use the default one of the listener
+    private void sendRequest(
+            RequestMessage requestMessage,
+            RpcListener.ResponseCallback responseCallback,
+            Duration timeout)
+            throws IOException {
+        var id = requestMessage.getId();
+        if (timeout != null) {
+            rpcListener.listenForResponse(id, responseCallback, timeout);
+        } else {
+            rpcListener.listenForResponse(id, responseCallback);
+        }
+        requestStarted(requestMessage);
+        try {
+            send(requestMessage);
+        } catch (IOException | RuntimeException e) {
+            // Response will never arrive, so neither the callback nor its timeout are needed
+            if (responseCallback != null) {
+                rpcListener.forgetResponse(id);
+            }
+            throw e;
+        }
+    }
+
+    private void requestStarted(RequestMessage requestMessage) {
+        if (requestLatencies != null) {
+            requestLatencies.requestStarted(requestMessage.getId(), requestMessage.getMethod());
+        }
+    }
+
     private void requestReceived(RequestMessage requestMessage) {
-        log.info("Request received: {}", requestMessage);
+        log.debug("Request received: {}", requestMessage);
+        MessageTracing.trace(tracer, RpcTracer.Event.DISPATCHED, requestMessage, -1);
+        var requestHandler = requestHandlers.get(requestMessage.getMethod());
+        if (requestHandler != null) {
+            requestHandler.requestReceived(requestMessage);
+            return;
+        }
         for (var requestCallback : requestCallbacks) {
             requestCallback.requestReceived(requestMessage);
         }
     }
 
     private void notificationReceived(NotificationMessage notificationMessage) {
-        log.info("Notification received: {}", notificationMessage);
+        log.debug("Notification received: {}", notificationMessage);
+        MessageTracing.trace(tracer, RpcTracer.Event.DISPATCHED, notificationMessage, -1);
+        var subscribers = notificationSubscriptions.get(notificationMessage.getName());
+        if (subscribers != null) {
+            for (var notificationCallback : subscribers) {
+                notificationCallback.notificationReceived(notificationMessage);
+            }
+        }
         for (var notificationCallback : notificationCallbacks) {
             notificationCallback.notificationReceived(notificationMessage);
         }
     }
 
-    private void startListening(InputStream inputStream) {
+    private void prepareListening() {
         rpcListener.listenForNotifications(this::notificationReceived);
         rpcListener.listenForRequests(this::requestReceived);
-        rpcListener.start(inputStream);
+    }
+
+    /**
+     * Builder for {@link PackStream} {@link RpcSender} and {@link RpcListener} are required, while
+     * everything else is optional: * {@link MessageIdGenerator} ({@link
+     * SequentialMessageIdGenerator} by default) * {@link RequestLatencies} recording latencies of
+     * requests (none by default) * {@link RpcTracer} ({@link RpcTracer#none()} by default) *
+     * {@link RpcMetrics} ({@link RpcMetrics#none()} by default)
+     */
+    public static class Builder {
+        private final RpcSender rpcSender;
+        private final RpcListener rpcListener;
+        private MessageIdGenerator messageIdGenerator;
+        private RequestLatencies requestLatencies;
+        private RpcTracer tracer = RpcTracer.none();
+        private RpcMetrics metrics = RpcMetrics.none();
+
+        /**
+         * Creates a new {@link Builder} with required dependencies
+         *
+         * @param rpcSender {@link RpcSender} for sending data
+         * @param rpcListener {@link RpcListener} for listening to incoming data
+         * @throws NullPointerException if any parameter is null
+         */
+        public Builder(RpcSender rpcSender, RpcListener rpcListener) {
+            Objects.requireNonNull(
+                    rpcSender, "rpcSender must be provided for two way communication");
+            Objects.requireNonNull(
+                    rpcListener, "rpcListener must be provided for two way communication");
+            this.rpcSender = rpcSender;
+            this.rpcListener = rpcListener;
+        }
+
+        /**
+         * Changes {@link MessageIdGenerator} used for generating request message ids
+         *
+         * @param messageIdGenerator {@link MessageIdGenerator} to use
+         * @throws NullPointerException if messageIdGenerator is null
+         */
+        public Builder withMessageIdGenerator(MessageIdGenerator messageIdGenerator) {
+            Objects.requireNonNull(
+                    messageIdGenerator, "messageIdGenerator must be provided for sending requests");
+            this.messageIdGenerator = messageIdGenerator;
+            return this;
+        }
+
+        /**
+         * Marks the start of each request in given {@link RequestLatencies} The same {@link
+         * RequestLatencies} should be given to the sender and the listener, so that latencies are
+         * recorded
+         *
+         * @param requestLatencies {@link RequestLatencies} of the connection
+         * @throws NullPointerException if requestLatencies is null
+         */
+        public Builder withRequestLatencies(RequestLatencies requestLatencies) {
+            Objects.requireNonNull(requestLatencies, "requestLatencies may not be null");
+            this.requestLatencies = requestLatencies;
+            return this;
+        }
+
+        /**
+         * Passes incoming requests and notifications, as they are dispatched to callbacks, to
+         * given {@link RpcTracer}
+         *
+         * @param tracer {@link RpcTracer} of the connection
+         * @throws NullPointerException if tracer is null
+         */
+        public Builder withTracer(RpcTracer tracer) {
+            Objects.requireNonNull(tracer, "tracer may not be null");
+            this.tracer = tracer;
+            return this;
+        }
+
+        /**
+         * Reports how long responses to requests handled by {@link RequestResponder}s took to
+         * given {@link RpcMetrics}
+         *
+         * @param metrics {@link RpcMetrics} of the connection
+         * @throws NullPointerException if metrics is null
+         */
+        public Builder withMetrics(RpcMetrics metrics) {
+            Objects.requireNonNull(metrics, "metrics may not be null");
+            this.metrics = metrics;
+            return this;
+        }
+
+        /** Creates a new {@link PackStream} with given configuration */
+        public PackStream build() {
+            return new PackStream(this);
+        }
     }
 }
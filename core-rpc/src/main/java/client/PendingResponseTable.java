@@ -0,0 +1,199 @@
+package client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * Concurrent table of {@link RpcListener.ResponseCallback} keyed by primitive int request id
+ *
+ * <p>It is an id-indexed ring: a request id maps directly to a slot (id modulo capacity), with
+ * short linear probing in case the slot is still taken by an older pending request. Since ids are
+ * usually sequential, consecutive requests land in consecutive slots and never collide unless more
+ * than capacity requests are pending at once. Only when probing fails, the callback is put into an
+ * overflow map, which is the only path that allocates
+ *
+ * <p>Each slot has a state word holding both the request id and the slot state, so completing a
+ * request is a single compare-and-set on that word. Whoever wins it is the only one to get the
+ * callback, meaning a callback is never called twice, even if responses for the same id race
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * PendingResponseTable table = new PendingResponseTable();
+ * table.register(1, (id, response) -> System.out.println(response));
+ *
+ * // Once response arrives
+ * ResponseCallback callback = table.complete(1); // null if there was no callback (or if claimed)
+ *
+ * }</pre>
+ */
+public final class PendingResponseTable {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int MAX_PROBES = 8;
+
+    private static final long FREE = 0;
+    private static final long RESERVED = 1;
+    private static final long READY = 2;
+    private static final long CLAIMED = 3;
+    private static final long STATE_MASK = 0xffffffffL;
+
+    private final int mask;
+    private final AtomicLongArray states;
+    private final AtomicReferenceArray<RpcListener.ResponseCallback> callbacks;
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Map<Integer, RpcListener.ResponseCallback> overflow = new ConcurrentHashMap<>();
+    private final AtomicInteger overflowSize = new AtomicInteger();
+
+    /** Creates a new {@link PendingResponseTable} with default capacity */
+    public PendingResponseTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new {@link PendingResponseTable} with given capacity
+     *
+     * @param capacity number of requests that can be pending without using the overflow map - it
+     *     is rounded up to a power of two
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public PendingResponseTable(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        var slots = Integer.highestOneBit(Math.max(capacity, MAX_PROBES) - 1) << 1;
+        this.mask = slots - 1;
+        this.states = new AtomicLongArray(slots);
+        this.callbacks = new AtomicReferenceArray<>(slots);
+    }
+
+    /**
+     * Registers a callback for given request id. Only one callback should be registered per id
+     *
+     * @param id id of the request
+     * @param callback callback to be returned once the request completes
+     * @throws NullPointerException if callback is null
+     */
+    public void register(int id, RpcListener.ResponseCallback callback) {
+        if (callback == null) {
+            throw new NullPointerException("callback may not be null");
+        }
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            var slot = (id + probe) & mask;
+            var state = states.get(slot);
+            if (state == FREE && states.compareAndSet(slot, FREE, pack(id, RESERVED))) {
+                callbacks.set(slot, callback);
+                states.set(slot, pack(id, READY));
+                size.incrementAndGet();
+                return;
+            }
+        }
+        overflow.put(id, callback);
+        overflowSize.incrementAndGet();
+        size.incrementAndGet();
+    }
+
+    /**
+     * Claims and removes the callback registered for given request id
+     *
+     * <p>Only a single caller can claim a callback, all others (including concurrent ones) get null
+     *
+     * @param id id of the request
+     * @return claimed callback or null if there is no callback pending for given id
+     */
+    public RpcListener.ResponseCallback complete(int id) {
+        var ready = pack(id, READY);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            var slot = (id + probe) & mask;
+            if (states.get(slot) == ready && states.compareAndSet(slot, ready, pack(id, CLAIMED))) {
+                var callback = callbacks.getAndSet(slot, null);
+                states.set(slot, FREE);
+                size.decrementAndGet();
+                return callback;
+            }
+        }
+        if (overflowSize.get() > 0) {
+            var callback = overflow.remove(id);
+            if (callback != null) {
+                overflowSize.decrementAndGet();
+                size.decrementAndGet();
+                return callback;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Claims and removes all pending callbacks, such as when the connection is closed and no more
+     * responses can arrive Each claimed callback is passed to given consumer, together with its id
+     *
+     * <p>Callbacks registered concurrently may or may not be claimed, while each callback is still
+     * claimed at most once
+     *
+     * @param consumer consumer of claimed callbacks
+     * @return number of claimed callbacks
+     */
+    public int completeAll(BiConsumer<Integer, RpcListener.ResponseCallback> consumer) {
+        var claimed = 0;
+        for (int slot = 0; slot <= mask; slot++) {
+            var state = states.get(slot);
+            if ((state & STATE_MASK) != READY) {
+                continue;
+            }
+            var id = (int) (state >>> 32);
+            if (states.compareAndSet(slot, state, pack(id, CLAIMED))) {
+                var callback = callbacks.getAndSet(slot, null);
+                states.set(slot, FREE);
+                size.decrementAndGet();
+                consumer.accept(id, callback);
+                claimed++;
+            }
+        }
+        if (overflowSize.get() > 0) {
+            for (var id : overflow.keySet()) {
+                var callback = overflow.remove(id);
+                if (callback != null) {
+                    overflowSize.decrementAndGet();
+                    size.decrementAndGet();
+                    consumer.accept(id, callback);
+                    claimed++;
+                }
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * Checks whether a callback is pending for given request id
+     *
+     * @param id id of the request
+     * @return true if there is a callback that was not claimed yet
+     */
+    public boolean isPending(int id) {
+        var ready = pack(id, READY);
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            if (states.get((id + probe) & mask) == ready) {
+                return true;
+            }
+        }
+        return overflowSize.get() > 0 && overflow.containsKey(id);
+    }
+
+    /**
+     * Number of pending callbacks
+     *
+     * @return number of registered callbacks that were not claimed yet
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private static long pack(int id, long state) {
+        return ((long) id << 32) | (state & STATE_MASK);
+    }
+}
@@ -0,0 +1,287 @@
+package client;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencies of outgoing requests, recorded per method into {@link LatencyHistogram}s
+ *
+ * <p>Each request is followed through its whole life and its latency is split into phases: *
+ * queued - from sending it until the sender wrote it out, including serialization * wire - from
+ * being written until its response was read, including the time the other side took to handle it
+ * * dispatch - from reading the response until its callback was called Together they make up the
+ * total latency Phases are recorded only if both sender and listener report them, while the total
+ * is recorded as long as the listener does
+ *
+ * <p>The same instance has to be given to the {@link RpcStreamer}, {@link RpcSender} and {@link
+ * RpcListener} of the connection - {@link RpcClient.Builder#withRequestLatencies(RequestLatencies)}
+ * takes care of that
+ *
+ * <p>Requests in flight are tracked in a fixed table indexed by message id, so recording never
+ * locks nor allocates (except for the first request of each method) If more requests than the
+ * capacity are in flight, some of them are not recorded Each slot is owned by the id it holds and
+ * it is updated only after claiming it from that id with a compare-and-set, so events of a request
+ * never mix with those of a request reusing the slot
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * RequestLatencies latencies = new RequestLatencies();
+ * RpcClient client = new RpcClient.Builder()
+ *         .withRequestLatencies(latencies)
+ *         .build();
+ *
+ * // ...
+ *
+ * RequestLatencies.Method lines = latencies.getMethod("nvim_buf_get_lines");
+ * // nvim being slow shows up in wire time, busy executor in queued or dispatch time
+ * System.out.println(lines.getWire().getValueAtPercentile(99));
+ * }</pre>
+ */
+public final class RequestLatencies {
+    private static final int DEFAULT_CAPACITY = 4096;
+    // owners of slots are ids as unsigned values, so these never clash with one
+    private static final long FREE = -1;
+    private static final long CLAIMED = -2;
+
+    private final Map<String, Method> methods = new ConcurrentHashMap<>();
+
+    private final int mask;
+    private final AtomicLongArray owners;
+    // guarded by owners - only accessed by the thread which claimed the slot
+    private final Method[] pendingMethods;
+    private final long[] started;
+    private final long[] written;
+    private final long[] read;
+
+    /** Creates a new {@link RequestLatencies} tracking up to 4096 requests in flight */
+    public RequestLatencies() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new {@link RequestLatencies} tracking given number of requests in flight
+     *
+     * @param capacity number of requests in flight tracked at once - it is rounded up to a power
+     *     of two
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public RequestLatencies(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        var slots = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = slots - 1;
+        this.owners = new AtomicLongArray(slots);
+        for (var slot = 0; slot < slots; slot++) {
+            owners.set(slot, FREE);
+        }
+        this.pendingMethods = new Method[slots];
+        this.started = new long[slots];
+        this.written = new long[slots];
+        this.read = new long[slots];
+    }
+
+    /**
+     * Latencies of given method
+     *
+     * @param method name of the method
+     * @return latencies of given method, or null if no request of it completed yet
+     */
+    public Method getMethod(String method) {
+        return methods.get(method);
+    }
+
+    /**
+     * Latencies of all methods
+     *
+     * @return unmodifiable view of latencies by method name
+     */
+    public Map<String, Method> getMethods() {
+        return Collections.unmodifiableMap(methods);
+    }
+
+    /**
+     * Marks the start of a request, right before it is passed to the sender
+     *
+     * @param id id of the request
+     * @param method name of the requested method
+     */
+    void requestStarted(int id, String method) {
+        var latencies = methodOf(method);
+        var slot = id & mask;
+        // a previous request still in the slot is replaced, since it is not going to be recorded
+        long owner;
+        do {
+            owner = owners.get(slot);
+            if (owner == CLAIMED) {
+                Thread.onSpinWait();
+            }
+        } while (owner == CLAIMED || !owners.compareAndSet(slot, owner, CLAIMED));
+        pendingMethods[slot] = latencies;
+        started[slot] = System.nanoTime();
+        written[slot] = 0;
+        read[slot] = 0;
+        owners.set(slot, Integer.toUnsignedLong(id));
+    }
+
+    /**
+     * Marks the request as written out by the sender
+     *
+     * @param id id of the request
+     */
+    void requestWritten(int id) {
+        var slot = id & mask;
+        if (claim(slot, id)) {
+            written[slot] = System.nanoTime();
+            owners.set(slot, Integer.toUnsignedLong(id));
+        }
+    }
+
+    /**
+     * Marks the response of the request as read by the listener
+     *
+     * @param id id of the request
+     */
+    void responseRead(int id) {
+        var slot = id & mask;
+        if (claim(slot, id)) {
+            read[slot] = System.nanoTime();
+            owners.set(slot, Integer.toUnsignedLong(id));
+        }
+    }
+
+    /**
+     * Marks the response as passed to its callback, recording latencies of the request Called on
+     * the thread calling the callback, right before it does
+     *
+     * @param id id of the request
+     */
+    void responseDispatched(int id) {
+        var slot = id & mask;
+        if (!claim(slot, id)) {
+            return;
+        }
+        var now = System.nanoTime();
+        var method = pendingMethods[slot];
+        var startedAt = started[slot];
+        var writtenAt = written[slot];
+        var readAt = read[slot];
+        pendingMethods[slot] = null;
+        owners.set(slot, FREE);
+
+        method.total.record(now - startedAt);
+        if (writtenAt != 0 && readAt != 0) {
+            method.queued.record(writtenAt - startedAt);
+            method.wire.record(readAt - writtenAt);
+            method.dispatch.record(now - readAt);
+        }
+    }
+
+    /** Claims given slot if it is owned by given id, waiting for another event of the same id */
+    private boolean claim(int slot, int id) {
+        var owner = Integer.toUnsignedLong(id);
+        while (true) {
+            var current = owners.get(slot);
+            if (current == owner) {
+                if (owners.compareAndSet(slot, owner, CLAIMED)) {
+                    return true;
+                }
+            } else if (current == CLAIMED) {
+                Thread.onSpinWait();
+            } else {
+                return false;
+            }
+        }
+    }
+
+    private Method methodOf(String method) {
+        var latencies = methods.get(method);
+        if (latencies == null) {
+            latencies = methods.computeIfAbsent(method, Method::new);
+        }
+        return latencies;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestLatencies{" + "methods=" + methods + '}';
+    }
+
+    /** Latencies of requests of a single method */
+    public static final class Method {
+        private final String name;
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final LatencyHistogram queued = new LatencyHistogram();
+        private final LatencyHistogram wire = new LatencyHistogram();
+        private final LatencyHistogram dispatch = new LatencyHistogram();
+
+        private Method(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Name of the method
+         *
+         * @return method name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Latencies from sending the request until its response was passed to the callback
+         *
+         * @return histogram of total latencies
+         */
+        public LatencyHistogram getTotal() {
+            return total;
+        }
+
+        /**
+         * Latencies from sending the request until the sender wrote it out
+         *
+         * @return histogram of time spent in the sender
+         */
+        public LatencyHistogram getQueued() {
+            return queued;
+        }
+
+        /**
+         * Latencies from writing the request until its response was read
+         *
+         * @return histogram of time spent on the wire and on the other side
+         */
+        public LatencyHistogram getWire() {
+            return wire;
+        }
+
+        /**
+         * Latencies from reading the response until it was passed to the callback
+         *
+         * @return histogram of time waiting for dispatch
+         */
+        public LatencyHistogram getDispatch() {
+            return dispatch;
+        }
+
+        @Override
+        public String toString() {
+            return "Method{"
+                    + "name='"
+                    + name
+                    + '\''
+                    + ", total="
+                    + total
+                    + ", queued="
+                    + queued
+                    + ", wire="
+                    + wire
+                    + ", dispatch="
+                    + dispatch
+                    + '}';
+        }
+    }
+}
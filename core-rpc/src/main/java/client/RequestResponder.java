@@ -0,0 +1,39 @@
+package client;
+
+import message.RequestMessage;
+import message.ResponseMessage;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Handler of incoming {@link RequestMessage}s which produces the result of the request, instead of
+ * sending the {@link ResponseMessage} itself
+ *
+ * <p>Returned value is sent back as the result of the response, with the id of the request If a
+ * {@link CompletionStage} is returned, response is sent once it completes Exceptions (thrown or
+ * completing the stage) are sent back as errors - {@link RpcErrorException} with its {@link
+ * message.RpcError} and any other as {@link message.RpcError.Type#EXCEPTION} error
+ *
+ * <p>Keep in mind that the other side is usually blocked while waiting for the response - for
+ * example Neovim is frozen during {@code rpcrequest} - so result should be produced quickly
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * rpcStreamer.addRequestResponder("sum", request -> request.getInt(0) + request.getInt(1));
+ *
+ * rpcStreamer.addRequestResponder("lookup", request -> repository.findAsync(request.getString(0)));
+ * }</pre>
+ */
+@FunctionalInterface
+public interface RequestResponder {
+    /**
+     * Produces the result of given request
+     *
+     * @param requestMessage received {@link RequestMessage}
+     * @return result of the request, which must be serializable to msgpack, or a {@link
+     *     CompletionStage} completed with such result
+     * @throws Exception if request fails - it is sent back as an error
+     */
+    Object respond(RequestMessage requestMessage) throws Exception;
+}
@@ -0,0 +1,117 @@
+package client;
+
+import message.Message;
+import message.RequestMessage;
+import message.ResponseMessage;
+import message.RpcError;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * {@link RpcListener.RequestCallback} adapting a {@link RequestResponder}, sending the {@link
+ * ResponseMessage} as soon as the result is known
+ *
+ * <p>Responses are sent using {@link RpcSender#sendPriority(Message)}, ahead of messages already
+ * queued, since the other side is blocked until they arrive For the same reason, time from
+ * receiving the request until the response is handed to the sender is reported to {@link
+ * RpcMetrics#requestResponded(String, long)}
+ */
+final class RespondingRequestCallback implements RpcListener.RequestCallback {
+    private static final Logger log = LoggerFactory.getLogger(RespondingRequestCallback.class);
+
+    private final String method;
+    private final RequestResponder requestResponder;
+    private final RpcSender rpcSender;
+    private final RpcMetrics metrics;
+
+    /**
+     * Creates a new {@link RespondingRequestCallback}
+     *
+     * @param method name of the method handled, used for logging
+     * @param requestResponder responder producing results
+     * @param rpcSender sender of responses
+     * @param metrics {@link RpcMetrics} to report response latencies to
+     */
+    RespondingRequestCallback(
+            String method,
+            RequestResponder requestResponder,
+            RpcSender rpcSender,
+            RpcMetrics metrics) {
+        Objects.requireNonNull(requestResponder, "requestResponder may not be null");
+        this.method = method;
+        this.requestResponder = requestResponder;
+        this.rpcSender = rpcSender;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void requestReceived(RequestMessage requestMessage) {
+        var start = System.nanoTime();
+        Object result;
+        try {
+            result = requestResponder.respond(requestMessage);
+        } catch (Exception e) {
+            respond(requestMessage.getId(), errorResponse(e), start);
+            return;
+        }
+        if (result instanceof CompletionStage) {
+            ((CompletionStage<?>) result)
+                    .whenComplete(
+                            (value, error) ->
+                                    respond(
+                                            requestMessage.getId(),
+                                            error == null
+                                                    ? new ResponseMessage.Builder(value)
+                                                    : errorResponse(unwrap(error)),
+                                            start));
+        } else {
+            respond(requestMessage.getId(), new ResponseMessage.Builder(result), start);
+        }
+    }
+
+    private void respond(int id, ResponseMessage.Builder response, long start) {
+        try {
+            rpcSender.sendPriority(response.withId(id).build());
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to send response to {} request {}", method, id, e);
+            return;
+        }
+        var latency = System.nanoTime() - start;
+        metrics.requestResponded(method, latency);
+        log.debug("Responded to {} request {} in {} us", method, id, latency / 1000);
+    }
+
+    private ResponseMessage.Builder errorResponse(Throwable error) {
+        log.debug("{} request failed", method, error);
+        if (error instanceof RpcErrorException) {
+            return new ResponseMessage.Builder(((RpcErrorException) error).getError());
+        }
+        // Exceptions without a message are still told apart by their type
+        var message = error.getMessage() != null ? error.getMessage() : error.getClass().getName();
+        return new ResponseMessage.Builder(RpcError.exception(message));
+    }
+
+    @Override
+    public String toString() {
+        return "RespondingRequestCallback{"
+                + "method='"
+                + method
+                + '\''
+                + ", requestResponder="
+                + requestResponder
+                + '}';
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+}
@@ -0,0 +1,122 @@
+package client;
+
+import message.ResponseMessage;
+import message.RpcError;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link CompletableFuture} which is also the {@link RpcListener.ResponseCallback} completing it
+ *
+ * <p>Since the future itself is registered as the callback, a request needs a single object for
+ * correlating the response, and the future is completed directly on the thread delivering the
+ * response (listener thread, or expiry executor of the timeout wheel for timeouts), without any
+ * executor hop
+ *
+ * <p>If the future completes in any other way (such as being cancelled, completed by the caller,
+ * or failed because the request could not be sent), the response is not needed anymore, so its
+ * callback is forgotten by the {@link RpcListener} set using {@link #forgetOnAbandon(RpcListener,
+ * int)}, together with its timeout
+ *
+ * <p>Futures created by {@link #forResponse()} complete with the {@link ResponseMessage} as is,
+ * including error responses. Futures created by {@link #forResult(Class)} complete with the result
+ * bound to the given type (or decoded by the given {@link ResultDecoder}, for {@link
+ * #forResult(ResultDecoder)}), or exceptionally with {@link RpcErrorException} on error responses,
+ * {@link TimeoutException} on {@link RpcError.Type#TIMEOUT} errors and {@link
+ * ConnectionClosedException} on {@link RpcError.Type#CLOSED} errors
+ *
+ * @param <T> type the future completes with
+ */
+final class ResponseFuture<T> extends CompletableFuture<T>
+        implements RpcListener.ResponseCallback {
+
+    private final Class<T> resultType;
+    private final ResultDecoder<T> resultDecoder;
+    private volatile boolean responded;
+    private volatile RpcListener listener;
+    private volatile int id;
+
+    private ResponseFuture(Class<T> resultType, ResultDecoder<T> resultDecoder) {
+        this.resultType = resultType;
+        this.resultDecoder = resultDecoder;
+    }
+
+    static ResponseFuture<ResponseMessage> forResponse() {
+        return new ResponseFuture<>(null, null);
+    }
+
+    static <T> ResponseFuture<T> forResult(Class<T> resultType) {
+        return new ResponseFuture<>(resultType, null);
+    }
+
+    static <T> ResponseFuture<T> forResult(ResultDecoder<T> resultDecoder) {
+        return new ResponseFuture<>(null, resultDecoder);
+    }
+
+    /**
+     * Makes future forget its response on given listener, if it completes before the response
+     * arrives
+     *
+     * @param listener listener the callback is registered with
+     * @param id id the callback is registered for
+     */
+    void forgetOnAbandon(RpcListener listener, int id) {
+        this.id = id;
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean complete(T value) {
+        return completed(super.complete(value));
+    }
+
+    @Override
+    public boolean completeExceptionally(Throwable ex) {
+        return completed(super.completeExceptionally(ex));
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return completed(super.cancel(mayInterruptIfRunning));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void responseReceived(int forId, ResponseMessage responseMessage) {
+        responded = true;
+        if (resultType == null && resultDecoder == null) {
+            complete((T) responseMessage);
+            return;
+        }
+
+        var error = responseMessage.getError();
+        if (error != null) {
+            if (error.getType() == RpcError.Type.TIMEOUT) {
+                completeExceptionally(new TimeoutException(error.getMessage()));
+            } else if (error.getType() == RpcError.Type.CLOSED) {
+                completeExceptionally(new ConnectionClosedException(error.getMessage()));
+            } else {
+                completeExceptionally(new RpcErrorException(error));
+            }
+            return;
+        }
+
+        try {
+            complete(
+                    resultDecoder != null
+                            ? resultDecoder.decode(responseMessage)
+                            : responseMessage.bindResult(resultType));
+        } catch (RuntimeException e) {
+            completeExceptionally(e);
+        }
+    }
+
+    private boolean completed(boolean completed) {
+        var listener = this.listener;
+        if (completed && !responded && listener != null) {
+            listener.forgetResponse(id);
+        }
+        return completed;
+    }
+}
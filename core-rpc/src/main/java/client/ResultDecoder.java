@@ -0,0 +1,186 @@
+package client;
+
+import message.ExtensionCodec;
+import message.MessagePackReader;
+import message.ResponseMessage;
+
+import org.msgpack.jackson.dataformat.MessagePackExtensionType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Decoder of the result of a {@link ResponseMessage} into a specific type, used with {@link
+ * RpcStreamer#sendAsync(message.RequestMessage.Builder, ResultDecoder)}
+ *
+ * <p>Decoders of common types read raw results straight from msgpack, without going through {@link
+ * com.fasterxml.jackson.databind.ObjectMapper}, while {@link #of(Class)} binds the result the same
+ * way {@link RpcStreamer#sendAsync(message.RequestMessage.Builder, Class)} does. Results which were
+ * not decoded from raw msgpack are converted in both cases
+ *
+ * <p>Decoders are only called for responses without an error
+ *
+ * @param <T> type of the result
+ */
+@FunctionalInterface
+public interface ResultDecoder<T> {
+
+    /** Ignores the result */
+    ResultDecoder<Void> VOID = responseMessage -> null;
+
+    /** Decodes an integer result */
+    ResultDecoder<Long> LONG =
+            responseMessage -> {
+                var packedResult = responseMessage.getPackedResult();
+                return packedResult != null
+                        ? packedResult.reader().readLong()
+                        : responseMessage.bindResult(Long.class);
+            };
+
+    /** Decodes a floating point result */
+    ResultDecoder<Double> DOUBLE =
+            responseMessage -> {
+                var packedResult = responseMessage.getPackedResult();
+                return packedResult != null
+                        ? packedResult.reader().readDouble()
+                        : responseMessage.bindResult(Double.class);
+            };
+
+    /** Decodes a boolean result */
+    ResultDecoder<Boolean> BOOLEAN =
+            responseMessage -> {
+                var packedResult = responseMessage.getPackedResult();
+                return packedResult != null
+                        ? packedResult.reader().readBoolean()
+                        : responseMessage.bindResult(Boolean.class);
+            };
+
+    /** Decodes a string result, which may be nil */
+    ResultDecoder<String> STRING =
+            responseMessage -> {
+                var packedResult = responseMessage.getPackedResult();
+                if (packedResult == null) {
+                    return responseMessage.bindResult(String.class);
+                }
+                var reader = packedResult.reader();
+                return reader.tryReadNil() ? null : reader.readString();
+            };
+
+    /**
+     * Decodes any result into plain objects (lists, maps, strings, numbers and extension values
+     * decoded per {@link message.ExtensionRegistry} of the connection)
+     */
+    ResultDecoder<Object> OBJECT = ResponseMessage::getResult;
+
+    /** Decodes an array result into a list of plain objects, same as {@link #OBJECT} */
+    @SuppressWarnings("unchecked")
+    ResultDecoder<List<Object>> LIST =
+            responseMessage ->
+                    responseMessage.getPackedResult() != null
+                            ? (List<Object>) responseMessage.getResult()
+                            : responseMessage.bindResult(List.class);
+
+    /** Decodes a map result into a map of plain objects, same as {@link #OBJECT} */
+    @SuppressWarnings("unchecked")
+    ResultDecoder<Map<String, Object>> MAP =
+            responseMessage ->
+                    responseMessage.getPackedResult() != null
+                            ? (Map<String, Object>) responseMessage.getResult()
+                            : responseMessage.bindResult(Map.class);
+
+    /**
+     * Creates a decoder binding the result to given type, same as {@link
+     * ResponseMessage#bindResult(Class)}
+     *
+     * @param type type to bind to
+     * @param <T> type of the result
+     * @return decoder binding to given type
+     */
+    static <T> ResultDecoder<T> of(Class<T> type) {
+        return responseMessage -> responseMessage.bindResult(type);
+    }
+
+    /**
+     * Creates a decoder of an extension result (which may be nil) using given codec, whether it is
+     * registered in {@link message.ExtensionRegistry} of the connection or not
+     *
+     * @param codec codec of the extension type
+     * @param <T> type of the result
+     * @return decoder of given extension type
+     * @throws NullPointerException if codec is null
+     */
+    static <T> ResultDecoder<T> of(ExtensionCodec<T> codec) {
+        Objects.requireNonNull(codec, "codec may not be null");
+        return responseMessage -> {
+            var packedResult = responseMessage.getPackedResult();
+            if (packedResult == null) {
+                return convertExtension(responseMessage.getResult(), codec);
+            }
+            var reader = packedResult.reader();
+            return reader.tryReadNil() ? null : reader.readExtension(codec);
+        };
+    }
+
+    /**
+     * Creates a decoder of an array result holding extension values using given codec, such as a
+     * list of Neovim buffers
+     *
+     * @param codec codec of the extension type
+     * @param <T> type of the elements
+     * @return decoder of arrays of given extension type
+     * @throws NullPointerException if codec is null
+     */
+    static <T> ResultDecoder<List<T>> listOf(ExtensionCodec<T> codec) {
+        Objects.requireNonNull(codec, "codec may not be null");
+        return responseMessage -> {
+            var packedResult = responseMessage.getPackedResult();
+            if (packedResult == null) {
+                var result = (List<?>) responseMessage.getResult();
+                if (result == null) {
+                    return null;
+                }
+                var list = new ArrayList<T>(result.size());
+                for (var element : result) {
+                    list.add(convertExtension(element, codec));
+                }
+                return list;
+            }
+            var reader = packedResult.reader();
+            if (reader.tryReadNil()) {
+                return null;
+            }
+            var size = reader.readArrayHeader();
+            var list = new ArrayList<T>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(reader.tryReadNil() ? null : reader.readExtension(codec));
+            }
+            return list;
+        };
+    }
+
+    // results which were not decoded from raw msgpack hold either raw extensions or decoded values
+    private static <T> T convertExtension(Object value, ExtensionCodec<T> codec) {
+        if (value == null || codec.valueType().isInstance(value)) {
+            return codec.valueType().cast(value);
+        }
+        if (value instanceof MessagePackExtensionType
+                && ((MessagePackExtensionType) value).getType() == codec.type()) {
+            var data = ((MessagePackExtensionType) value).getData();
+            return codec.decode(new MessagePackReader(data, 0, data.length), data.length);
+        }
+        throw new IllegalStateException(
+                "Expected extension type " + codec.type() + ", but found " + value);
+    }
+
+    /**
+     * Decodes the result of given response
+     *
+     * @param responseMessage response without an error
+     * @return decoded result
+     * @throws RuntimeException if result can not be decoded - it completes the future
+     *     exceptionally
+     */
+    T decode(ResponseMessage responseMessage);
+}
@@ -4,13 +4,21 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import message.ExtensionRegistry;
 import message.Message;
+import message.NotificationDecoder;
+import message.PreparedRequest;
 import message.RequestMessage;
+import message.ResponseMessage;
 
 import org.msgpack.jackson.dataformat.MessagePackFactory;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -42,10 +50,20 @@ import java.util.concurrent.TimeUnit;
  *          .withRpcListener(customRpcListener)
  *          .withRpcSender(customRpcSender)
  *          .build();
+ *
+ *     RpcStreamer virtualThreadClient = new RpcClient.Builder()
+ *          .withVirtualThreads() // listener, sender and callbacks on virtual threads
+ *          .build();
+ *
+ *     RpcStreamer eventLoopClient = new RpcClient.Builder()
+ *          .withEventLoopGroup(sharedEventLoopGroup) // needs a ChannelRpcConnection
+ *          .build();
  * </pre>
  */
 public final class RpcClient implements RpcStreamer {
 
+    private static final int DISPATCH_CAPACITY = 1024;
+
     private static ObjectMapper defaultObjectMapper;
     private static ExecutorService defaultExecutorService;
     private static RpcClient defaultSharedInstance;
@@ -95,7 +113,13 @@ public final class RpcClient implements RpcStreamer {
 
     private static RpcSender createAsyncRpcSender(
             ExecutorService executorService, ObjectMapper objectMapper) {
-        return new AsyncRpcSender(executorService, objectMapper);
+        return createAsyncRpcSenderBuilder(executorService, objectMapper).build();
+    }
+
+    private static AsyncRpcSender.Builder createAsyncRpcSenderBuilder(
+            ExecutorService executorService, ObjectMapper objectMapper) {
+        return new AsyncRpcSender.Builder(executorService, objectMapper)
+                .withSendMode(AsyncRpcSender.SendMode.SINGLE_WRITER);
     }
 
     private static RpcSender createDefaultAsyncRpcSender() {
@@ -103,12 +127,21 @@ public final class RpcClient implements RpcStreamer {
     }
 
     private static RpcListener createAsyncRpcListener(
-            ExecutorService executorService, ObjectMapper objectMapper) {
-        return new BackgroundRpcListener(executorService, objectMapper);
+            ExecutorService executorService, ObjectMapper objectMapper, Duration responseTimeout) {
+        return createAsyncRpcListenerBuilder(executorService, objectMapper, responseTimeout)
+                .build();
+    }
+
+    private static BackgroundRpcListener.Builder createAsyncRpcListenerBuilder(
+            ExecutorService executorService, ObjectMapper objectMapper, Duration responseTimeout) {
+        return new BackgroundRpcListener.Builder(executorService, objectMapper)
+                .withDecodeMode(BackgroundRpcListener.DecodeMode.STREAMING)
+                .withDefaultResponseTimeout(responseTimeout);
     }
 
     private static RpcListener createDefaultAsyncRpcListener() {
-        return createAsyncRpcListener(getDefaultExecutorService(), getDefaultObjectMapper());
+        return createAsyncRpcListener(
+                getDefaultExecutorService(), getDefaultObjectMapper(), Duration.ZERO);
     }
 
     private static RpcStreamer createDefaultAsyncRpcStreamer() {
@@ -116,20 +149,120 @@ public final class RpcClient implements RpcStreamer {
     }
 
     private static RpcStreamer createDefaultAsyncRpcStreamer(
-            ExecutorService executorService, ObjectMapper objectMapper) {
+            ExecutorService executorService,
+            ObjectMapper objectMapper,
+            Duration responseTimeout,
+            RequestLatencies requestLatencies,
+            RpcMetrics metrics,
+            RpcTracer tracer,
+            ExtensionRegistry extensions,
+            Map<String, NotificationDecoder> notificationDecoders) {
+        var senderBuilder =
+                createAsyncRpcSenderBuilder(executorService, objectMapper)
+                        .withMetrics(metrics)
+                        .withTracer(tracer)
+                        .withExtensions(extensions);
+        var listenerBuilder =
+                createAsyncRpcListenerBuilder(executorService, objectMapper, responseTimeout)
+                        .withMetrics(metrics)
+                        .withTracer(tracer)
+                        .withExtensions(extensions);
+        notificationDecoders.forEach(listenerBuilder::withNotificationDecoder);
+        if (requestLatencies != null) {
+            senderBuilder.withRequestLatencies(requestLatencies);
+            listenerBuilder.withRequestLatencies(requestLatencies);
+        }
+        return createRpcStreamer(
+                senderBuilder.build(), listenerBuilder.build(), requestLatencies, metrics, tracer);
+    }
+
+    private static RpcStreamer createVirtualThreadRpcStreamer(
+            ObjectMapper objectMapper,
+            Duration responseTimeout,
+            RequestLatencies requestLatencies,
+            RpcMetrics metrics,
+            RpcTracer tracer,
+            ExtensionRegistry extensions,
+            Map<String, NotificationDecoder> notificationDecoders) {
+        var executorService = VirtualThreads.newThreadPerTaskExecutor("rpc-worker-");
+        var senderBuilder =
+                createAsyncRpcSenderBuilder(executorService, objectMapper)
+                        .withMetrics(metrics)
+                        .withTracer(tracer)
+                        .withExtensions(extensions);
+        // callbacks run on the executor as well, so blocking callbacks do not stop reading
+        var listenerBuilder =
+                createAsyncRpcListenerBuilder(executorService, objectMapper, responseTimeout)
+                        .withRequestDispatch(executorService, DISPATCH_CAPACITY)
+                        .withNotificationDispatch(executorService, DISPATCH_CAPACITY)
+                        .withResponseDispatch(executorService, DISPATCH_CAPACITY)
+                        .withMetrics(metrics)
+                        .withTracer(tracer)
+                        .withExtensions(extensions);
+        notificationDecoders.forEach(listenerBuilder::withNotificationDecoder);
+        if (requestLatencies != null) {
+            senderBuilder.withRequestLatencies(requestLatencies);
+            listenerBuilder.withRequestLatencies(requestLatencies);
+        }
+        return createRpcStreamer(
+                senderBuilder.build(), listenerBuilder.build(), requestLatencies, metrics, tracer);
+    }
+
+    private static RpcStreamer createNioRpcStreamer(
+            NioEventLoop eventLoop,
+            ObjectMapper objectMapper,
+            Duration responseTimeout,
+            RequestLatencies requestLatencies,
+            RpcMetrics metrics,
+            RpcTracer tracer,
+            ExtensionRegistry extensions,
+            Map<String, NotificationDecoder> notificationDecoders) {
+        var senderBuilder =
+                new NioRpcSender.Builder(eventLoop, objectMapper)
+                        .withMetrics(metrics)
+                        .withTracer(tracer)
+                        .withExtensions(extensions);
+        var listenerBuilder =
+                new NioRpcListener.Builder(eventLoop, objectMapper)
+                        .withDefaultResponseTimeout(responseTimeout)
+                        .withMetrics(metrics)
+                        .withTracer(tracer)
+                        .withExtensions(extensions);
+        notificationDecoders.forEach(listenerBuilder::withNotificationDecoder);
+        if (requestLatencies != null) {
+            senderBuilder.withRequestLatencies(requestLatencies);
+            listenerBuilder.withRequestLatencies(requestLatencies);
+        }
         return createRpcStreamer(
-                createAsyncRpcSender(executorService, objectMapper),
-                createAsyncRpcListener(executorService, objectMapper));
+                senderBuilder.build(), listenerBuilder.build(), requestLatencies, metrics, tracer);
     }
 
     private static RpcStreamer createRpcStreamer(RpcSender rpcSender, RpcListener rpcListener) {
         return new PackStream(rpcSender, rpcListener);
     }
 
+    private static RpcStreamer createRpcStreamer(
+            RpcSender rpcSender,
+            RpcListener rpcListener,
+            RequestLatencies requestLatencies,
+            RpcMetrics metrics,
+            RpcTracer tracer) {
+        var streamBuilder =
+                new PackStream.Builder(rpcSender, rpcListener)
+                        .withMetrics(metrics)
+                        .withTracer(tracer);
+        if (requestLatencies != null) {
+            streamBuilder.withRequestLatencies(requestLatencies);
+        }
+        return streamBuilder.build();
+    }
+
     /**
      * Creates a default instance of {@link RpcClient} based on: * {@link PackStream} for two-way
-     * communication * {@link AsyncRpcSender} for sending data * {@link BackgroundRpcListener} for
-     * receiving data
+     * communication * {@link AsyncRpcSender} for sending data (in {@link
+     * AsyncRpcSender.SendMode#SINGLE_WRITER} mode) * {@link BackgroundRpcListener} for
+     * receiving data (in {@link BackgroundRpcListener.DecodeMode#STREAMING} mode, without a
+     * default response timeout)
      *
      * @return <b>New instance</b> of {@link RpcClient}
      */
@@ -201,6 +334,77 @@ public final class RpcClient implements RpcStreamer {
         rpcStreamer.send(requestMessage, responseCallback);
     }
 
+    /**
+     * Calls underlying {@link RpcStreamer}
+     *
+     * @param requestMessage {@link RequestMessage.Builder} of message to send
+     * @param responseCallback {@link RpcListener.ResponseCallback} to be called when response
+     *     arrives or when it times out
+     * @param timeout time to wait for the response
+     * @throws IOException when underlying {@link RpcStreamer} throws
+     */
+    @Override
+    public void send(
+            RequestMessage.Builder requestMessage,
+            RpcListener.ResponseCallback responseCallback,
+            Duration timeout)
+            throws IOException {
+        rpcStreamer.send(requestMessage, responseCallback, timeout);
+    }
+
+    /**
+     * Calls underlying {@link RpcStreamer}
+     *
+     * @param requestMessage {@link RequestMessage.Builder} of message to send
+     * @return {@link CompletableFuture} returned by underlying {@link RpcStreamer}
+     */
+    @Override
+    public CompletableFuture<ResponseMessage> sendAsync(RequestMessage.Builder requestMessage) {
+        return rpcStreamer.sendAsync(requestMessage);
+    }
+
+    /**
+     * Calls underlying {@link RpcStreamer}
+     *
+     * @param requestMessage {@link RequestMessage.Builder} of message to send
+     * @param resultType type to bind the result to
+     * @param <T> type of the result
+     * @return {@link CompletableFuture} returned by underlying {@link RpcStreamer}
+     */
+    @Override
+    public <T> CompletableFuture<T> sendAsync(
+            RequestMessage.Builder requestMessage, Class<T> resultType) {
+        return rpcStreamer.sendAsync(requestMessage, resultType);
+    }
+
+    /**
+     * Calls underlying {@link RpcStreamer}
+     *
+     * @param requestMessage {@link RequestMessage.Builder} of message to send
+     * @param resultDecoder decoder of the result
+     * @param <T> type of the result
+     * @return {@link CompletableFuture} returned by underlying {@link RpcStreamer}
+     */
+    @Override
+    public <T> CompletableFuture<T> sendAsync(
+            RequestMessage.Builder requestMessage, ResultDecoder<T> resultDecoder) {
+        return rpcStreamer.sendAsync(requestMessage, resultDecoder);
+    }
+
+    /**
+     * Calls underlying {@link RpcStreamer}
+     *
+     * @param preparedRequest {@link PreparedRequest} to send
+     * @param resultDecoder decoder of the result
+     * @param <T> type of the result
+     * @return {@link CompletableFuture} returned by underlying {@link RpcStreamer}
+     */
+    @Override
+    public <T> CompletableFuture<T> sendAsync(
+            PreparedRequest preparedRequest, ResultDecoder<T> resultDecoder) {
+        return rpcStreamer.sendAsync(preparedRequest, resultDecoder);
+    }
+
     /**
      * Calls underlying {@link RpcStreamer}
      *
@@ -221,6 +425,38 @@ public final class RpcClient implements RpcStreamer {
         rpcStreamer.removeRequestCallback(requestCallback);
     }
 
+    /**
+     * Calls underlying {@link RpcStreamer}
+     *
+     * @param method name of the method to handle
+     * @param requestHandler {@link RpcListener.RequestCallback} handling requests of given method
+     */
+    @Override
+    public void addRequestHandler(String method, RpcListener.RequestCallback requestHandler) {
+        rpcStreamer.addRequestHandler(method, requestHandler);
+    }
+
+    /**
+     * Calls underlying {@link RpcStreamer}
+     *
+     * @param method name of the method to respond to
+     * @param requestResponder {@link RequestResponder} producing results of given method
+     */
+    @Override
+    public void addRequestResponder(String method, RequestResponder requestResponder) {
+        rpcStreamer.addRequestResponder(method, requestResponder);
+    }
+
+    /**
+     * Calls underlying {@link RpcStreamer}
+     *
+     * @param method name of the method whose handler to remove
+     */
+    @Override
+    public void removeRequestHandler(String method) {
+        rpcStreamer.removeRequestHandler(method);
+    }
+
     /**
      * Calls underlying {@link RpcStreamer}
      *
@@ -241,6 +477,30 @@ public final class RpcClient implements RpcStreamer {
         rpcStreamer.removeNotificationCallback(notificationCallback);
     }
 
+    /**
+     * Calls underlying {@link RpcStreamer}
+     *
+     * @param name name of notifications to receive
+     * @param notificationCallback {@link RpcListener.NotificationCallback} to add
+     */
+    @Override
+    public void addNotificationCallback(
+            String name, RpcListener.NotificationCallback notificationCallback) {
+        rpcStreamer.addNotificationCallback(name, notificationCallback);
+    }
+
+    /**
+     * Calls underlying {@link RpcStreamer}
+     *
+     * @param name name of notifications the callback was added for
+     * @param notificationCallback {@link RpcListener.NotificationCallback} to remove
+     */
+    @Override
+    public void removeNotificationCallback(
+            String name, RpcListener.NotificationCallback notificationCallback) {
+        rpcStreamer.removeNotificationCallback(name, notificationCallback);
+    }
+
     /**
      * Stops the underlying {@link RpcListener} It is not expected for implementation to be reusable
      * after calling this method!
@@ -255,11 +515,23 @@ public final class RpcClient implements RpcStreamer {
      * start and following may be changed: * Underlying {@link RpcStreamer} * If default {@link
      * RpcStreamer} is used, {@link RpcSender} and {@link RpcListener} may be changed * If default
      * {@link RpcSender} or {@link RpcListener} are used, {@link ObjectMapper} and {@link
-     * ExecutorService} can be changed
+     * ExecutorService} can be changed * If default {@link RpcListener} is used, default response
+     * timeout may be set * Instead of {@link ExecutorService}, a {@link NioEventLoopGroup} or
+     * virtual threads may be used to serve the connection * {@link RequestLatencies}, {@link
+     * RpcMetrics} and {@link RpcTracer} may be reported to * Extension types may be decoded by an
+     * {@link ExtensionRegistry} * Notifications may be decoded by {@link NotificationDecoder}s
      */
     public static class Builder {
         private ObjectMapper objectMapper = getDefaultObjectMapper();
         private ExecutorService executorService = getDefaultExecutorService();
+        private Duration responseTimeout = Duration.ZERO;
+        private NioEventLoopGroup eventLoopGroup;
+        private boolean virtualThreads;
+        private RequestLatencies requestLatencies;
+        private RpcMetrics metrics = RpcMetrics.none();
+        private RpcTracer tracer = RpcTracer.none();
+        private ExtensionRegistry extensions = ExtensionRegistry.empty();
+        private final Map<String, NotificationDecoder> notificationDecoders = new HashMap<>();
 
         /**
          * Creates a default {@link RpcClient} builder If build is called right after this, default
@@ -301,7 +573,8 @@ public final class RpcClient implements RpcStreamer {
          * @return instance of a different, more limited builder
          */
         public CustomRpcSenderBuilder withRpcSender(RpcSender rpcSender) {
-            return new CustomRpcSenderBuilder(rpcSender, executorService, objectMapper);
+            return new CustomRpcSenderBuilder(
+                    rpcSender, executorService, objectMapper, responseTimeout);
         }
 
         /**
@@ -376,14 +649,17 @@ public final class RpcClient implements RpcStreamer {
             private RpcSender rpcSender;
             private ExecutorService executorService;
             private ObjectMapper objectMapper;
+            private Duration responseTimeout;
 
             private CustomRpcSenderBuilder(
                     RpcSender rpcSender,
                     ExecutorService executorService,
-                    ObjectMapper objectMapper) {
+                    ObjectMapper objectMapper,
+                    Duration responseTimeout) {
                 this.rpcSender = rpcSender;
                 this.executorService = executorService;
                 this.objectMapper = objectMapper;
+                this.responseTimeout = responseTimeout;
             }
 
             /**
@@ -431,15 +707,29 @@ public final class RpcClient implements RpcStreamer {
                 return this;
             }
 
+            /**
+             * Changes response timeout used by default {@link RpcListener} for requests sent
+             * without an explicit one
+             *
+             * @param responseTimeout timeout to use - zero or negative means no timeout
+             */
+            public CustomRpcSenderBuilder withResponseTimeout(Duration responseTimeout) {
+                Objects.requireNonNull(responseTimeout, "responseTimeout may not be null");
+                this.responseTimeout = responseTimeout;
+                return this;
+            }
+
             /**
              * Creates a new {@link RpcClient} instance with default {@link RpcStreamer}, default
-             * {@link RpcListener} with given {@link ObjectMapper} and {@link ExecutorService},
-             * together with custom {@link RpcSender}
+             * {@link RpcListener} with given {@link ObjectMapper}, {@link ExecutorService} and
+             * response timeout, together with custom {@link RpcSender}
              */
             public RpcClient build() {
                 return new RpcClient(
                         createRpcStreamer(
-                                rpcSender, createAsyncRpcListener(executorService, objectMapper)));
+                                rpcSender,
+                                createAsyncRpcListener(
+                                        executorService, objectMapper, responseTimeout)));
             }
         }
 
@@ -533,16 +823,161 @@ public final class RpcClient implements RpcStreamer {
         public Builder withExecutorService(ExecutorService executorService) {
             Objects.requireNonNull(executorService, "executorService may not be null");
             this.executorService = executorService;
+            this.virtualThreads = false;
+            return this;
+        }
+
+        /**
+         * Runs the default {@link RpcListener} and {@link RpcSender} on virtual threads, together
+         * with request and notification callbacks, instead of using {@link ExecutorService}
+         * Blocking reads and blocking callbacks therefore do not compete for a few platform
+         * threads, while callbacks are still called one at a time, in order of arrival
+         *
+         * <p>Each client gets its own virtual thread executor On runtimes without virtual threads,
+         * a growing pool of daemon platform threads is used instead
+         *
+         * <p>Calling {@link #withExecutorService(ExecutorService)} afterwards turns this off
+         */
+        public Builder withVirtualThreads() {
+            this.virtualThreads = true;
+            return this;
+        }
+
+        /**
+         * Records latencies of requests sent by this client into given {@link RequestLatencies},
+         * wiring it into the default {@link RpcStreamer}, {@link RpcSender} and {@link
+         * RpcListener}
+         *
+         * @param requestLatencies {@link RequestLatencies} instance to use
+         */
+        public Builder withRequestLatencies(RequestLatencies requestLatencies) {
+            Objects.requireNonNull(requestLatencies, "requestLatencies may not be null");
+            this.requestLatencies = requestLatencies;
+            return this;
+        }
+
+        /**
+         * Reports what happens on the connection to given {@link RpcMetrics}, wiring it into the
+         * default {@link RpcSender} and {@link RpcListener}
+         *
+         * @param metrics {@link RpcMetrics} instance to use
+         */
+        public Builder withMetrics(RpcMetrics metrics) {
+            Objects.requireNonNull(metrics, "metrics may not be null");
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Passes events of single messages to given {@link RpcTracer}, wiring it into the default
+         * {@link RpcStreamer}, {@link RpcSender} and {@link RpcListener} Use {@link
+         * RpcTracer#sampled(RpcTracer, int)} to trace only some of the messages
+         *
+         * @param tracer {@link RpcTracer} instance to use
+         */
+        public Builder withTracer(RpcTracer tracer) {
+            Objects.requireNonNull(tracer, "tracer may not be null");
+            this.tracer = tracer;
+            return this;
+        }
+
+        /**
+         * Decodes extension values of types registered in given {@link ExtensionRegistry} into
+         * their value types and encodes them back, wiring it into the default {@link RpcSender} and
+         * {@link RpcListener}
+         *
+         * @param extensions {@link ExtensionRegistry} instance to use
+         */
+        public Builder withExtensions(ExtensionRegistry extensions) {
+            Objects.requireNonNull(extensions, "extensions may not be null");
+            this.extensions = extensions;
+            return this;
+        }
+
+        /**
+         * Passes notifications with given name to given {@link NotificationDecoder} on the
+         * reading thread, instead of notifying notification callbacks, wiring it into the default
+         * {@link RpcListener}
+         *
+         * @param name name of the notifications, such as {@code redraw}
+         * @param decoder decoder of their arguments
+         */
+        public Builder withNotificationDecoder(String name, NotificationDecoder decoder) {
+            Objects.requireNonNull(name, "name may not be null");
+            Objects.requireNonNull(decoder, "decoder may not be null");
+            this.notificationDecoders.put(name, decoder);
+            return this;
+        }
+
+        /**
+         * Changes response timeout used by default {@link RpcListener} for requests sent without
+         * an explicit one
+         *
+         * @param responseTimeout timeout to use - zero or negative means no timeout
+         */
+        public Builder withResponseTimeout(Duration responseTimeout) {
+            Objects.requireNonNull(responseTimeout, "responseTimeout may not be null");
+            this.responseTimeout = responseTimeout;
+            return this;
+        }
+
+        /**
+         * Serves the connection from given {@link NioEventLoopGroup}, using {@link NioRpcSender}
+         * and {@link NioRpcListener} on one of its loops, instead of blocking a thread of {@link
+         * ExecutorService} for the whole life of the connection Such client may only be attached
+         * to a {@link ChannelRpcConnection}
+         *
+         * <p>Each client still has its own message ids and callbacks, so many clients may share
+         * the same group
+         *
+         * @param eventLoopGroup {@link NioEventLoopGroup} instance to use
+         */
+        public Builder withEventLoopGroup(NioEventLoopGroup eventLoopGroup) {
+            Objects.requireNonNull(eventLoopGroup, "eventLoopGroup may not be null");
+            this.eventLoopGroup = eventLoopGroup;
             return this;
         }
 
         /**
          * Creates a new {@link RpcClient} instance with default {@link RpcStreamer}, {@link
          * RpcSender} and {@link RpcListener} with custom dependencies for those ({@link
-         * ExecutorService} and {@link ObjectMapper})
+         * ExecutorService}, virtual threads or {@link NioEventLoopGroup}, {@link ObjectMapper} and
+         * response timeout) {@link NioEventLoopGroup} takes precedence over virtual threads
          */
         public RpcClient build() {
-            return new RpcClient(createDefaultAsyncRpcStreamer(executorService, objectMapper));
+            if (eventLoopGroup != null) {
+                return new RpcClient(
+                        createNioRpcStreamer(
+                                eventLoopGroup.next(),
+                                objectMapper,
+                                responseTimeout,
+                                requestLatencies,
+                                metrics,
+                                tracer,
+                                extensions,
+                                notificationDecoders));
+            }
+            if (virtualThreads) {
+                return new RpcClient(
+                        createVirtualThreadRpcStreamer(
+                                objectMapper,
+                                responseTimeout,
+                                requestLatencies,
+                                metrics,
+                                tracer,
+                                extensions,
+                                notificationDecoders));
+            }
+            return new RpcClient(
+                    createDefaultAsyncRpcStreamer(
+                            executorService,
+                            objectMapper,
+                            responseTimeout,
+                            requestLatencies,
+                            metrics,
+                            tracer,
+                            extensions,
+                            notificationDecoders));
         }
     }
 }
@@ -0,0 +1,31 @@
+package client;
+
+import message.RpcError;
+
+/**
+ * Exception used to fail typed futures returned by {@link RpcStreamer} when response carries a
+ * {@link RpcError} It holds the error, so that it may be inspected by the caller
+ */
+public final class RpcErrorException extends RuntimeException {
+
+    private final transient RpcError error;
+
+    /**
+     * Creates a new {@link RpcErrorException} for given error
+     *
+     * @param error {@link RpcError} received in response
+     */
+    public RpcErrorException(RpcError error) {
+        super(String.valueOf(error));
+        this.error = error;
+    }
+
+    /**
+     * Gets the error received in response
+     *
+     * @return {@link RpcError} which caused this exception
+     */
+    public RpcError getError() {
+        return error;
+    }
+}
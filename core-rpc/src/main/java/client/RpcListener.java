@@ -5,6 +5,8 @@ import message.RequestMessage;
 import message.ResponseMessage;
 
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.Objects;
 
 /**
  * Represents a RPC communication listener It should attach to communication streams and notify when
@@ -70,6 +72,45 @@ public interface RpcListener {
      */
     void listenForResponse(int id, ResponseCallback callback);
 
+    /**
+     * Same as {@link #listenForResponse(int, ResponseCallback)}, but with a deadline If response
+     * does not arrive in given time, callback should be notified with a {@link ResponseMessage}
+     * holding a {@link message.RpcError} of {@link message.RpcError.Type#TIMEOUT} type and it should
+     * not be notified again, even if the response arrives later
+     *
+     * <p>By default, requests without a timeout are passed on to {@link #listenForResponse(int,
+     * ResponseCallback)}, while deadlines are not supported, so implementations tracking them need
+     * to override this method
+     *
+     * @param id ID of the response to listen to (it should match request id)
+     * @param callback {@link ResponseCallback} that should be notified once response arrives
+     * @param timeout time to wait for the response - zero or negative means no timeout
+     * @throws NullPointerException if timeout is null
+     * @throws UnsupportedOperationException if timeout is positive and implementation does not
+     *     support deadlines
+     */
+    default void listenForResponse(int id, ResponseCallback callback, Duration timeout) {
+        Objects.requireNonNull(timeout, "timeout may not be null");
+        if (!timeout.isNegative() && !timeout.isZero()) {
+            throw new UnsupportedOperationException(
+                    getClass().getName() + " does not support response timeouts");
+        }
+        listenForResponse(id, callback);
+    }
+
+    /**
+     * Stops listening for response of given id, without notifying its callback, such as when the
+     * request could not be sent or its caller is not interested in the response anymore Its
+     * timeout, if any, is dropped as well
+     *
+     * <p>By default it does nothing, leaving the callback registered until its response arrives,
+     * so implementations holding callbacks of requests which may never be answered should
+     * override this method
+     *
+     * @param id ID of the response to stop listening to
+     */
+    default void forgetResponse(int id) {}
+
     /**
      * Starts listening on given {@link InputStream} All events will be passed to callbacks (if any
      * are registered)
@@ -78,6 +119,16 @@ public interface RpcListener {
      */
     void start(InputStream inputStream);
 
+    /**
+     * Starts listening on given {@link ChannelRpcConnection} By default it listens on its incoming
+     * stream, while channel based implementations may use the channel directly
+     *
+     * @param rpcConnection connection to listen on
+     */
+    default void start(ChannelRpcConnection rpcConnection) {
+        start(rpcConnection.getIncomingStream());
+    }
+
     /**
      * Stops listening It is not expected for implementation to be reusable after calling this
      * method!
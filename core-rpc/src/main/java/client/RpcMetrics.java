@@ -0,0 +1,99 @@
+package client;
+
+import message.MessageType;
+
+/**
+ * Listener of what happens inside a connection, used to export metrics such as message and byte
+ * counts, backlogs and errors
+ *
+ * <p>All methods do nothing by default, so implementations override only what they need. They are
+ * called right on reading, writing and dispatching threads, so they must be fast and must never
+ * block - incrementing a counter or setting a gauge is all they should do
+ *
+ * <p>{@link #none()} is used when no metrics are configured. It is a single implementation with
+ * empty methods, so the JIT inlines calls into it and removes them, and timestamps needed only by
+ * metrics are not taken at all
+ *
+ * <p>The same instance is usually given to the sender and the listener of a connection - {@link
+ * RpcClient.Builder#withMetrics(RpcMetrics)} takes care of that
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * RpcClient client = new RpcClient.Builder()
+ *         .withMetrics(new RpcMetrics() {
+ *             @Override
+ *             public void outboundQueueDepth(int depth) {
+ *                 queueDepthGauge.set(depth);
+ *             }
+ *
+ *             @Override
+ *             public void pendingResponses(int count) {
+ *                 pendingResponsesGauge.set(count);
+ *             }
+ *         })
+ *         .build();
+ * }</pre>
+ */
+public interface RpcMetrics {
+
+    /**
+     * {@link RpcMetrics} which ignores everything
+     *
+     * @return shared instance doing nothing
+     */
+    static RpcMetrics none() {
+        return NoRpcMetrics.INSTANCE;
+    }
+
+    /**
+     * Called once a message was serialized and handed over to be written
+     *
+     * @param type type of the message
+     * @param bytes size of the serialized message
+     */
+    default void messageSent(MessageType type, int bytes) {}
+
+    /**
+     * Called once a message was read and decoded, before it is dispatched
+     *
+     * @param type type of the message
+     * @param bytes size of the frame, or -1 if it is not known (tree decoding reads the stream
+     *     without exposing frame boundaries)
+     */
+    default void messageReceived(MessageType type, int bytes) {}
+
+    /**
+     * Called whenever the number of messages waiting to be written changes
+     *
+     * @param depth number of messages sent, but not written yet
+     */
+    default void outboundQueueDepth(int depth) {}
+
+    /**
+     * Called whenever a response callback is registered or claimed (by a response or a timeout)
+     *
+     * @param count number of requests still waiting for their response
+     */
+    default void pendingResponses(int count) {}
+
+    /** Called for each incoming frame that could not be decoded into a message */
+    default void decodeError() {}
+
+    /**
+     * Called when a task handed over to an executor (writing or dispatching messages) starts
+     * running
+     *
+     * @param nanos time the task waited in the executor before it started
+     */
+    default void executorQueueWait(long nanos) {}
+
+    /**
+     * Called once the response to an incoming request, produced by a {@link RequestResponder}, was
+     * handed over to be written - that is how long the other side was blocked on the request
+     *
+     * @param method method of the request
+     * @param nanos time from receiving the request until its response was handed over
+     */
+    default void requestResponded(String method, long nanos) {}
+}
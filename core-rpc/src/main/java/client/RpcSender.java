@@ -20,6 +20,22 @@ public interface RpcSender {
      */
     void send(Message message) throws IOException;
 
+    /**
+     * Sends a message ahead of messages queued, but not written yet, such as a response the other
+     * side is blocked on Implementations writing messages in order of sending keep that order for
+     * all priority messages
+     *
+     * <p>By default, it is the same as {@link #send(Message)}, which is fine for implementations
+     * that do not queue messages
+     *
+     * @param message message to send
+     * @throws IllegalStateException if current instance is not attached to a {@link OutputStream}
+     * @throws IOException if issues arise in communication or serialization
+     */
+    default void sendPriority(Message message) throws IOException {
+        send(message);
+    }
+
     /**
      * Attaches this {@link RpcSender} to a {@link OutputStream} That {@link OutputStream} can (and
      * should) then be used to communicate (for sending data)
@@ -28,6 +44,16 @@ public interface RpcSender {
      */
     void attach(OutputStream outputStream);
 
+    /**
+     * Attaches this {@link RpcSender} to a {@link ChannelRpcConnection} By default it attaches to
+     * its outgoing stream, while channel based implementations may use the channel directly
+     *
+     * @param rpcConnection connection to write to
+     */
+    default void attach(ChannelRpcConnection rpcConnection) {
+        attach(rpcConnection.getOutgoingStream());
+    }
+
     /** Stops the sender */
     void stop();
 }
@@ -1,9 +1,14 @@
 package client;
 
 import message.Message;
+import message.PreparedRequest;
 import message.RequestMessage;
+import message.ResponseMessage;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface defining a two way RPC communication stream Implementations of this should be used for
@@ -51,6 +56,136 @@ public interface RpcStreamer {
     void send(RequestMessage.Builder requestMessage, RpcListener.ResponseCallback responseCallback)
             throws IOException;
 
+    /**
+     * Same as {@link #send(RequestMessage.Builder, RpcListener.ResponseCallback)}, but with a
+     * deadline for the response If it does not arrive in given time, {@link
+     * RpcListener.ResponseCallback} is notified with a {@link message.RpcError.Type#TIMEOUT} error
+     *
+     * <p>By default, requests without a timeout are passed on to {@link
+     * #send(RequestMessage.Builder, RpcListener.ResponseCallback)}, while deadlines are not
+     * supported, so implementations tracking them need to override this method
+     *
+     * @param requestMessage {@link RequestMessage.Builder} of message to send
+     * @param responseCallback {@link RpcListener.ResponseCallback} to be called when response
+     *     arrives or when it times out
+     * @param timeout time to wait for the response - zero or negative means no timeout
+     * @throws NullPointerException if timeout is null
+     * @throws UnsupportedOperationException if timeout is positive and implementation does not
+     *     support deadlines
+     * @throws IllegalStateException if current instance is not attached to a {@link RpcConnection}
+     * @throws IOException if issues arise in communication or serialization
+     */
+    default void send(
+            RequestMessage.Builder requestMessage,
+            RpcListener.ResponseCallback responseCallback,
+            Duration timeout)
+            throws IOException {
+        Objects.requireNonNull(timeout, "timeout may not be null");
+        if (!timeout.isNegative() && !timeout.isZero()) {
+            throw new UnsupportedOperationException(
+                    getClass().getName() + " does not support response timeouts");
+        }
+        send(requestMessage, responseCallback);
+    }
+
+    /**
+     * Asynchronous version of {@link #send(RequestMessage.Builder, RpcListener.ResponseCallback)}
+     * Returned future is completed with the {@link ResponseMessage} (including error responses) on
+     * the thread delivering the response
+     *
+     * <p>Failures in sending are not thrown, but reported through the returned future
+     *
+     * <p>By default, the future is registered as the callback of {@link
+     * #send(RequestMessage.Builder, RpcListener.ResponseCallback)}
+     *
+     * @param requestMessage {@link RequestMessage.Builder} of message to send
+     * @return {@link CompletableFuture} completed once response arrives
+     */
+    default CompletableFuture<ResponseMessage> sendAsync(RequestMessage.Builder requestMessage) {
+        var responseFuture = ResponseFuture.forResponse();
+        try {
+            send(requestMessage, responseFuture);
+        } catch (IOException | RuntimeException e) {
+            responseFuture.completeExceptionally(e);
+        }
+        return responseFuture;
+    }
+
+    /**
+     * Typed version of {@link #sendAsync(RequestMessage.Builder)} Returned future is completed with
+     * the result bound to given type, or exceptionally with {@link RpcErrorException} if response
+     * carries an error ({@link java.util.concurrent.TimeoutException} in case of {@link
+     * message.RpcError.Type#TIMEOUT} errors and {@link ConnectionClosedException} in case of {@link
+     * message.RpcError.Type#CLOSED} errors)
+     *
+     * <p>By default, the future is registered as the callback of {@link
+     * #send(RequestMessage.Builder, RpcListener.ResponseCallback)}
+     *
+     * @param requestMessage {@link RequestMessage.Builder} of message to send
+     * @param resultType type to bind the result to
+     * @param <T> type of the result
+     * @return {@link CompletableFuture} completed once response arrives
+     * @throws NullPointerException if resultType is null
+     */
+    default <T> CompletableFuture<T> sendAsync(
+            RequestMessage.Builder requestMessage, Class<T> resultType) {
+        Objects.requireNonNull(resultType, "resultType may not be null");
+        var responseFuture = ResponseFuture.forResult(resultType);
+        try {
+            send(requestMessage, responseFuture);
+        } catch (IOException | RuntimeException e) {
+            responseFuture.completeExceptionally(e);
+        }
+        return responseFuture;
+    }
+
+    /**
+     * Same as {@link #sendAsync(RequestMessage.Builder, Class)}, but the result is decoded by given
+     * {@link ResultDecoder}, which may read it straight from msgpack
+     *
+     * <p>By default, the future is registered as the callback of {@link
+     * #send(RequestMessage.Builder, RpcListener.ResponseCallback)}
+     *
+     * @param requestMessage {@link RequestMessage.Builder} of message to send
+     * @param resultDecoder decoder of the result
+     * @param <T> type of the result
+     * @return {@link CompletableFuture} completed once response arrives
+     * @throws NullPointerException if resultDecoder is null
+     */
+    default <T> CompletableFuture<T> sendAsync(
+            RequestMessage.Builder requestMessage, ResultDecoder<T> resultDecoder) {
+        Objects.requireNonNull(resultDecoder, "resultDecoder may not be null");
+        var responseFuture = ResponseFuture.forResult(resultDecoder);
+        try {
+            send(requestMessage, responseFuture);
+        } catch (IOException | RuntimeException e) {
+            responseFuture.completeExceptionally(e);
+        }
+        return responseFuture;
+    }
+
+    /**
+     * Same as {@link #sendAsync(RequestMessage.Builder, ResultDecoder)}, but for a request encoded
+     * up front Only the id is written into a copy of its template, so sending it does not encode
+     * anything
+     *
+     * <p>By default, the request is sent through {@link #sendAsync(RequestMessage.Builder,
+     * ResultDecoder)} using {@link PreparedRequest#toBuilder()}, with method and arguments still
+     * encoded, but not from the template, since ids are written into it by implementations
+     * generating ids, which should override this method
+     *
+     * @param preparedRequest {@link PreparedRequest} to send
+     * @param resultDecoder decoder of the result
+     * @param <T> type of the result
+     * @return {@link CompletableFuture} completed once response arrives
+     * @throws NullPointerException if any parameter is null
+     */
+    default <T> CompletableFuture<T> sendAsync(
+            PreparedRequest preparedRequest, ResultDecoder<T> resultDecoder) {
+        Objects.requireNonNull(preparedRequest, "preparedRequest may not be null");
+        return sendAsync(preparedRequest.toBuilder(), resultDecoder);
+    }
+
     /**
      * Adds a new {@link RpcListener.RequestCallback}, if it is not already added It will stay
      * attached and receive all requests until {@link
@@ -69,6 +204,53 @@ public interface RpcStreamer {
      */
     void removeRequestCallback(RpcListener.RequestCallback requestCallback);
 
+    /**
+     * Adds a handler for requests of given method, replacing any handler added for it before
+     * Requests are routed by method name, so each request is passed only to its handler Requests of
+     * methods without a handler are passed to {@link RpcListener.RequestCallback}s added using
+     * {@link #addRequestCallback(RpcListener.RequestCallback)}
+     *
+     * <p>By default, routing by method is not supported, so implementations routing requests need
+     * to override this method
+     *
+     * @param method name of the method to handle
+     * @param requestHandler {@link RpcListener.RequestCallback} handling requests of given method
+     * @throws UnsupportedOperationException if implementation does not route requests by method
+     */
+    default void addRequestHandler(String method, RpcListener.RequestCallback requestHandler) {
+        throw new UnsupportedOperationException(
+                getClass().getName() + " does not support request handlers");
+    }
+
+    /**
+     * Adds a {@link RequestResponder} for requests of given method, replacing any handler added for
+     * it before Unlike handlers, responder only produces the result and {@link ResponseMessage}
+     * with matching id is sent automatically as soon as the result is ready It may be removed using
+     * {@link #removeRequestHandler(String)}
+     *
+     * <p>By default, responders are not supported, same as {@link #addRequestHandler(String,
+     * RpcListener.RequestCallback)}
+     *
+     * @param method name of the method to respond to
+     * @param requestResponder {@link RequestResponder} producing results of given method
+     * @throws UnsupportedOperationException if implementation does not route requests by method
+     */
+    default void addRequestResponder(String method, RequestResponder requestResponder) {
+        throw new UnsupportedOperationException(
+                getClass().getName() + " does not support request responders");
+    }
+
+    /**
+     * Removes the handler of given method, if it was added before using {@link
+     * #addRequestHandler(String, RpcListener.RequestCallback)} or {@link
+     * #addRequestResponder(String, RequestResponder)}
+     *
+     * <p>By default, nothing is removed, since handlers can not be added either
+     *
+     * @param method name of the method whose handler to remove
+     */
+    default void removeRequestHandler(String method) {}
+
     /**
      * Adds a new {@link RpcListener.NotificationCallback}, if it is not already added It will stay
      * attached and receive all notifications until {@link
@@ -88,6 +270,39 @@ public interface RpcStreamer {
      */
     void removeNotificationCallback(RpcListener.NotificationCallback notificationCallback);
 
+    /**
+     * Adds a new {@link RpcListener.NotificationCallback} for notifications of given name, if it is
+     * not already added for that name Unlike {@link
+     * #addNotificationCallback(RpcListener.NotificationCallback)}, callback receives only the
+     * notifications it subscribed to It will stay attached until {@link
+     * #removeNotificationCallback(String, RpcListener.NotificationCallback)} is called with exact
+     * same name and callback
+     *
+     * <p>By default, subscribing by name is not supported, so implementations routing notifications
+     * need to override this method
+     *
+     * @param name name of notifications to receive, such as "redraw"
+     * @param notificationCallback {@link RpcListener.NotificationCallback} to add
+     * @throws UnsupportedOperationException if implementation does not route notifications by name
+     */
+    default void addNotificationCallback(
+            String name, RpcListener.NotificationCallback notificationCallback) {
+        throw new UnsupportedOperationException(
+                getClass().getName() + " does not support notification subscriptions");
+    }
+
+    /**
+     * Removes a {@link RpcListener.NotificationCallback} for notifications of given name, if it was
+     * added before using {@link #addNotificationCallback(String, RpcListener.NotificationCallback)}
+     *
+     * <p>By default, nothing is removed, since such callbacks can not be added either
+     *
+     * @param name name of notifications the callback was added for
+     * @param notificationCallback {@link RpcListener.NotificationCallback} to remove
+     */
+    default void removeNotificationCallback(
+            String name, RpcListener.NotificationCallback notificationCallback) {}
+
     /**
      * Stops the underlying {@link RpcListener} It is not expected for implementation to be reusable
      * after calling this method!
@@ -0,0 +1,97 @@
+package client;
+
+import message.MessageType;
+
+/**
+ * Hook receiving structured events of single messages, as they are sent, received and dispatched
+ *
+ * <p>Events carry only the type, id, method and size of the message and a {@link System#nanoTime()}
+ * timestamp, so nothing is formatted and the message itself is never turned into a string
+ * Following a request through {@link Event#SENT} and the {@link Event#RECEIVED} of its response
+ * (same id) gives its round trip, while {@link Event#RECEIVED} and {@link Event#DISPATCHED} of
+ * incoming messages show how long they waited for their callbacks
+ *
+ * <p>{@link #isSampled(MessageType, int)} is asked before anything else is done for the event, so
+ * messages which are not sampled cost a single call {@link #sampled(RpcTracer, int)} wraps a
+ * tracer to keep only every n-th message
+ *
+ * <p>{@link #none()} is used when no tracer is configured, in which case no events are produced
+ * at all
+ *
+ * <p>Tracers are called right on reading, writing and dispatching threads, so they must be fast
+ * and must never block
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * RpcTracer tracer = (event, type, id, method, bytes, nanoTime) ->
+ *         ringBuffer.add(event, type, id, method, bytes, nanoTime);
+ *
+ * RpcClient client = new RpcClient.Builder()
+ *         .withTracer(RpcTracer.sampled(tracer, 100)) // every 100th message
+ *         .build();
+ * }</pre>
+ */
+@FunctionalInterface
+public interface RpcTracer {
+
+    /** Points in the life of a message that are traced */
+    enum Event {
+        /** Message was serialized and handed over to be written */
+        SENT,
+        /** Message was read and decoded, before it is dispatched */
+        RECEIVED,
+        /** Incoming request or notification is about to be passed to its callbacks */
+        DISPATCHED
+    }
+
+    /**
+     * {@link RpcTracer} which traces nothing
+     *
+     * @return shared instance which samples no messages
+     */
+    static RpcTracer none() {
+        return NoRpcTracer.INSTANCE;
+    }
+
+    /**
+     * Wraps given tracer, so that it traces only every n-th message Requests and responses are
+     * sampled by their id, so all events of a sampled request, including its response, are kept
+     * together Notifications have no id, so they are sampled by their identity, which all events
+     * of a notification share - notifications decoded without building a message have a single
+     * event and are sampled in turns
+     *
+     * @param tracer tracer to pass sampled events to
+     * @param rate one in how many messages is traced - 1 traces all of them
+     * @return tracer sampling messages
+     * @throws NullPointerException if tracer is null
+     * @throws IllegalArgumentException if rate is not positive
+     */
+    static RpcTracer sampled(RpcTracer tracer, int rate) {
+        return new SamplingRpcTracer(tracer, rate);
+    }
+
+    /**
+     * Checks whether events of given message should be traced
+     *
+     * @param type type of the message
+     * @param id id of the request or response, or -1 for notifications
+     * @return true if {@link #trace(Event, MessageType, int, String, int, long)} should be called
+     */
+    default boolean isSampled(MessageType type, int id) {
+        return true;
+    }
+
+    /**
+     * Receives an event of a sampled message
+     *
+     * @param event point in the life of the message
+     * @param type type of the message
+     * @param id id of the request or response, or -1 for notifications
+     * @param method method of the request or name of the notification, or null for responses
+     * @param bytes size of the serialized message, or -1 if it is not known (for {@link
+     *     Event#DISPATCHED} and for tree decoding)
+     * @param nanoTime {@link System#nanoTime()} at which the event happened
+     */
+    void trace(Event event, MessageType type, int id, String method, int bytes, long nanoTime);
+}
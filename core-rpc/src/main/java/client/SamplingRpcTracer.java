@@ -0,0 +1,54 @@
+package client;
+
+import message.Message;
+import message.MessageType;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** {@link RpcTracer} passing every n-th message to another one - see {@link RpcTracer#sampled} */
+final class SamplingRpcTracer implements RpcTracer {
+    private final RpcTracer tracer;
+    private final int rate;
+    private final AtomicInteger notifications = new AtomicInteger();
+
+    SamplingRpcTracer(RpcTracer tracer, int rate) {
+        Objects.requireNonNull(tracer, "tracer may not be null");
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        this.tracer = tracer;
+        this.rate = rate;
+    }
+
+    @Override
+    public boolean isSampled(MessageType type, int id) {
+        if (rate == 1) {
+            return tracer.isSampled(type, id);
+        }
+        var sample = id >= 0 ? id : notifications.getAndIncrement();
+        return Math.floorMod(sample, rate) == 0 && tracer.isSampled(type, id);
+    }
+
+    /**
+     * Same as {@link #isSampled(MessageType, int)}, for a notification which has more than one
+     * event Notifications have no id, so they are sampled by their identity instead, which all of
+     * their events share
+     *
+     * @param notification notification the event belongs to
+     * @return true if events of the notification should be traced
+     */
+    boolean isSampled(Message notification) {
+        if (rate == 1) {
+            return tracer.isSampled(MessageType.NOTIFICATION, -1);
+        }
+        return Math.floorMod(System.identityHashCode(notification), rate) == 0
+                && tracer.isSampled(MessageType.NOTIFICATION, -1);
+    }
+
+    @Override
+    public void trace(
+            Event event, MessageType type, int id, String method, int bytes, long nanoTime) {
+        tracer.trace(event, type, id, method, bytes, nanoTime);
+    }
+}
@@ -0,0 +1,92 @@
+package client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+
+/**
+ * Blocking streams over a {@link SocketChannel}
+ *
+ * <p>{@link java.nio.channels.Channels} streams hold the blocking lock of the channel for the whole
+ * duration of a read, which blocks writes done from another thread in the meantime. These streams
+ * call the channel directly, so reading and writing may happen at the same time, same as with
+ * {@link java.net.Socket} streams. They work only while the channel is in blocking mode
+ */
+final class SocketChannelStreams {
+
+    private SocketChannelStreams() {}
+
+    /**
+     * Creates a new {@link InputStream} reading from given channel
+     *
+     * @param channel channel to read from
+     * @return stream reading from channel
+     */
+    static InputStream inputStream(SocketChannel channel) {
+        Objects.requireNonNull(channel, "channel may not be null");
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                var single = new byte[1];
+                var read = read(single, 0, 1);
+                return read < 0 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                Objects.checkFromIndexSize(off, len, b.length);
+                if (len == 0) {
+                    return 0;
+                }
+                requireBlocking(channel);
+                return channel.read(ByteBuffer.wrap(b, off, len));
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Creates a new {@link OutputStream} writing to given channel
+     *
+     * @param channel channel to write to
+     * @return stream writing to channel
+     */
+    static OutputStream outputStream(SocketChannel channel) {
+        Objects.requireNonNull(channel, "channel may not be null");
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                Objects.checkFromIndexSize(off, len, b.length);
+                requireBlocking(channel);
+                var buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    private static void requireBlocking(SocketChannel channel) {
+        if (!channel.isBlocking()) {
+            throw new IllegalBlockingModeException();
+        }
+    }
+}
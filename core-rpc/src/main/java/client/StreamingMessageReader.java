@@ -0,0 +1,308 @@
+package client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.ExtensionRegistry;
+import message.FrameScanner;
+import message.Message;
+import message.MessageDecoder;
+import message.MessageType;
+import message.NotificationDecoder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Long-lived reader of msgpack-rpc messages from an {@link InputStream}
+ *
+ * <p>Bytes are read into a single reusable buffer, which is grown only when a message does not fit
+ * into it, up to a maximum frame size. Message boundaries are found by inspecting msgpack headers
+ * using a {@link FrameScanner}, which resumes where it stopped once more bytes of a partial frame
+ * arrive, so large frames are not rescanned from their start on every read. Each complete frame is
+ * bound straight into a {@link Message} using {@link MessageDecoder}, so no intermediate tree is
+ * ever built. Arguments and results of messages are kept as raw msgpack and decoded lazily, using
+ * {@link ObjectMapper} passed in the constructor when they are bound to specific types
+ *
+ * <p>Frames which are valid msgpack, but not valid msgpack-rpc messages, are skipped and logged
+ *
+ * <p>Notifications with a {@link NotificationDecoder} are passed to it while being read and are
+ * not returned at all. Other exceptions than {@link IllegalStateException} thrown by decoders are
+ * logged and reading goes on
+ *
+ * <p>This class is not thread safe and is meant to be used by a single reading thread. Besides
+ * blocking reads, it is also used by {@link NioRpcListener} to decode messages from a non-blocking
+ * channel, which fills the buffer once readable and then takes buffered messages one by one
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * StreamingMessageReader reader = new StreamingMessageReader(inputStream);
+ *
+ * Message message;
+ * while ((message = reader.read()) != null) {
+ *     // handle message
+ * }
+ *
+ * }</pre>
+ */
+public final class StreamingMessageReader {
+    private static final Logger log = LoggerFactory.getLogger(StreamingMessageReader.class);
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** Maximum size of a single frame used unless configured otherwise, 64MB */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private final InputStream inputStream;
+    private final MessageDecoder messageDecoder;
+    private final FrameScanner frameScanner;
+    private final int maxFrameSize;
+    private final RpcMetrics metrics;
+    private final RpcTracer tracer;
+
+    private byte[] buffer;
+    // wraps the buffer for channel reads, created only once channel is read
+    private ByteBuffer channelBuffer;
+    private int start;
+    private int end;
+    // name of the notification being passed to its decoder, for tracing
+    private String decodedNotification;
+
+    /**
+     * Creates a new {@link StreamingMessageReader} reading from given {@link InputStream}
+     *
+     * @param inputStream stream to read from
+     * @throws NullPointerException if inputStream is null
+     */
+    public StreamingMessageReader(InputStream inputStream) {
+        this(inputStream, null);
+    }
+
+    /**
+     * Creates a new {@link StreamingMessageReader} reading from given {@link InputStream}, binding
+     * raw arguments and results using given {@link ObjectMapper}
+     *
+     * @param inputStream stream to read from
+     * @param objectMapper msgpack {@link ObjectMapper} for binding, or null to use the default
+     * @throws NullPointerException if inputStream is null
+     */
+    public StreamingMessageReader(InputStream inputStream, ObjectMapper objectMapper) {
+        this(inputStream, objectMapper, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new {@link StreamingMessageReader} reading from given {@link InputStream} with
+     * given initial buffer size, binding raw arguments and results using given {@link
+     * ObjectMapper}
+     *
+     * @param inputStream stream to read from
+     * @param objectMapper msgpack {@link ObjectMapper} for binding, or null to use the default
+     * @param initialBufferSize initial size of the read buffer in bytes
+     * @throws NullPointerException if inputStream is null
+     * @throws IllegalArgumentException if initialBufferSize is not positive
+     */
+    public StreamingMessageReader(
+            InputStream inputStream, ObjectMapper objectMapper, int initialBufferSize) {
+        this(inputStream, objectMapper, initialBufferSize, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Creates a new {@link StreamingMessageReader} reading from given {@link InputStream} with
+     * given initial buffer size, rejecting frames larger than given maximum size
+     *
+     * @param inputStream stream to read from
+     * @param objectMapper msgpack {@link ObjectMapper} for binding, or null to use the default
+     * @param initialBufferSize initial size of the read buffer in bytes
+     * @param maxFrameSize maximum size of a single frame in bytes
+     * @throws NullPointerException if inputStream is null
+     * @throws IllegalArgumentException if initialBufferSize or maxFrameSize is not positive
+     */
+    public StreamingMessageReader(
+            InputStream inputStream,
+            ObjectMapper objectMapper,
+            int initialBufferSize,
+            int maxFrameSize) {
+        this(
+                inputStream,
+                objectMapper,
+                initialBufferSize,
+                maxFrameSize,
+                ExtensionRegistry.empty(),
+                Map.of(),
+                RpcMetrics.none(),
+                RpcTracer.none());
+        Objects.requireNonNull(inputStream, "inputStream may not be null");
+    }
+
+    // inputStream may be null, if bytes are passed in through fill(ReadableByteChannel) instead
+    StreamingMessageReader(
+            InputStream inputStream,
+            ObjectMapper objectMapper,
+            int initialBufferSize,
+            int maxFrameSize,
+            ExtensionRegistry extensions,
+            Map<String, NotificationDecoder> notificationDecoders,
+            RpcMetrics metrics,
+            RpcTracer tracer) {
+        if (initialBufferSize <= 0) {
+            throw new IllegalArgumentException("initialBufferSize must be positive");
+        }
+        this.inputStream = inputStream;
+        this.frameScanner = new FrameScanner(maxFrameSize);
+        this.maxFrameSize = maxFrameSize;
+        this.messageDecoder = new MessageDecoder(objectMapper, extensions);
+        for (var entry : notificationDecoders.entrySet()) {
+            var name = entry.getKey();
+            var decoder = entry.getValue();
+            messageDecoder.withNotificationDecoder(
+                    name,
+                    arguments -> {
+                        decodedNotification = name;
+                        try {
+                            decoder.decode(arguments);
+                        } catch (IllegalStateException e) {
+                            // malformed arguments - reported as a bad message
+                            throw e;
+                        } catch (RuntimeException e) {
+                            // failure of the decoder itself, not of the message
+                            log.error("Notification decoder of {} failed", name, e);
+                        }
+                    });
+        }
+        this.buffer = new byte[initialBufferSize];
+        this.metrics = metrics;
+        this.tracer = tracer;
+    }
+
+    /**
+     * Reads next message, blocking until it is fully available
+     *
+     * @return next {@link Message} or null if end of stream was reached
+     * @throws EOFException if stream ended in the middle of a message
+     * @throws IOException if underlying stream throws or data is not valid msgpack
+     * @throws IllegalArgumentException if a frame is larger than the maximum frame size - the
+     *     stream can not be read any further then
+     */
+    public Message read() throws IOException {
+        while (true) {
+            var message = poll();
+            if (message != null) {
+                return message;
+            }
+
+            prepareSpace();
+            var read = inputStream.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                if (start != end) {
+                    throw new EOFException("Stream ended in the middle of a message");
+                }
+                return null;
+            }
+            end += read;
+        }
+    }
+
+    /**
+     * Takes next message out of bytes already in the buffer, without reading anything
+     *
+     * @return next {@link Message} or null if buffer holds no complete message
+     * @throws IOException if data is not valid msgpack
+     * @throws IllegalArgumentException if a frame is larger than the maximum frame size
+     */
+    Message poll() throws IOException {
+        while (true) {
+            int frameEnd;
+            try {
+                frameEnd = frameScanner.scan(buffer, start, end);
+            } catch (IllegalStateException e) {
+                metrics.decodeError();
+                throw new IOException("Received data is not valid msgpack", e);
+            }
+            if (frameEnd < 0) {
+                return null;
+            }
+
+            var frameStart = start;
+            start = frameEnd;
+            Message message;
+            try {
+                message = messageDecoder.decode(buffer, frameStart, frameEnd - frameStart);
+            } catch (IllegalArgumentException e) {
+                metrics.decodeError();
+                log.warn("Received a bad message, skipping it", e);
+                continue;
+            }
+            if (message == null) {
+                metrics.messageReceived(MessageType.NOTIFICATION, frameEnd - frameStart);
+                MessageTracing.traceNotification(
+                        tracer,
+                        RpcTracer.Event.RECEIVED,
+                        decodedNotification,
+                        frameEnd - frameStart);
+                continue;
+            }
+            metrics.messageReceived(message.getType(), frameEnd - frameStart);
+            MessageTracing.trace(tracer, RpcTracer.Event.RECEIVED, message, frameEnd - frameStart);
+            return message;
+        }
+    }
+
+    /**
+     * Reads bytes available in given channel into the buffer, making space for them first Messages
+     * they complete are then taken using {@link #poll()}
+     *
+     * @param channel channel to read from, usually non-blocking
+     * @return number of bytes read, or -1 if end of stream was reached
+     * @throws IOException if channel throws
+     */
+    int fill(ReadableByteChannel channel) throws IOException {
+        prepareSpace();
+        if (channelBuffer == null || channelBuffer.array() != buffer) {
+            channelBuffer = ByteBuffer.wrap(buffer);
+        }
+        channelBuffer.limit(buffer.length).position(end);
+        var read = channel.read(channelBuffer);
+        if (read > 0) {
+            end += read;
+        }
+        return read;
+    }
+
+    /** Whether last read filled the whole buffer, so more bytes may be available right away */
+    boolean isBufferFull() {
+        return end == buffer.length;
+    }
+
+    /** Whether buffer holds bytes of a message which did not fully arrive yet */
+    boolean hasPartialMessage() {
+        return start != end;
+    }
+
+    private void prepareSpace() {
+        if (start == end) {
+            start = 0;
+            end = 0;
+        } else if (end == buffer.length) {
+            var requiredLength = frameScanner.requiredLength();
+            if (start > 0 && requiredLength <= buffer.length) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+            } else {
+                // Scanner already checked that the frame fits into the maximum
+                var size = Math.min(Math.max(buffer.length * 2, requiredLength), maxFrameSize);
+                var grown = new byte[size];
+                System.arraycopy(buffer, start, grown, 0, end - start);
+                buffer = grown;
+            }
+            end -= start;
+            start = 0;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hashed timing wheel used to expire pending requests
+ *
+ * <p>Time is divided into ticks and the wheel holds a fixed number of buckets. A timeout is put
+ * into the bucket of the tick its deadline falls into (modulo number of buckets), so scheduling is
+ * O(1) and no task is created per timeout. A single thread advances the wheel tick by tick and
+ * expires all due timeouts of the current bucket at once. Timeouts with deadlines more than one
+ * rotation away simply stay in their bucket until they are due
+ *
+ * <p>Expired targets are notified on an expiry executor ({@link ForkJoinPool#commonPool()} by
+ * default), not on the wheel thread itself, so that a slow target delays neither the other
+ * timeouts nor the wheel shared by all connections. All timeouts expired in a tick are handed over
+ * as a single task
+ *
+ * <p>Timeouts of completed ids are not cancelled, which keeps the response path free of any wheel
+ * bookkeeping. Instead, the wheel thread asks {@link Target#isPending(int)} whenever it visits a
+ * bucket and drops timeouts of ids that are no longer pending, which is cheap with {@link
+ * PendingResponseTable}. So completed ids are held for at most one rotation of the wheel and never
+ * reach the expiry executor. Only ids that will never complete (such as requests which failed to be
+ * sent) are removed right away, using {@link #cancel(Target, int)}
+ *
+ * <p>The thread is started lazily, on the first scheduled timeout, so an unused wheel costs
+ * nothing. A shared wheel, used by default, is available through {@link #getDefault()}
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * TimeoutWheel wheel = TimeoutWheel.getDefault();
+ * wheel.schedule(id -> System.out.println("Expired " + id), 1, Duration.ofSeconds(5));
+ *
+ * }</pre>
+ */
+public final class TimeoutWheel {
+    private static final Logger log = LoggerFactory.getLogger(TimeoutWheel.class);
+
+    private static final long DEFAULT_TICK_MILLIS = 10;
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static volatile TimeoutWheel defaultInstance;
+
+    /** Target which is notified when timeouts expire */
+    public interface Target {
+        /**
+         * Notifies target that timeout for given id has expired It is called on the expiry
+         * executor of the wheel
+         *
+         * @param id id the timeout was scheduled for
+         */
+        void expire(int id);
+
+        /**
+         * Checks whether given id still waits for its timeout It is called on the wheel thread,
+         * so it has to be cheap and must not block - timeouts of ids that are not pending are
+         * dropped without being expired
+         *
+         * @param id id the timeout was scheduled for
+         * @return true if id may still expire, which is the default
+         */
+        default boolean isPending(int id) {
+            return true;
+        }
+    }
+
+    private final long tickNanos;
+    private final Executor expiryExecutor;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final long startTime = System.nanoTime();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    // last tick that was fully processed - only changed by the wheel thread under bucket lock
+    private volatile long processedTick = -1;
+    private volatile boolean stopped;
+    private Thread thread;
+
+    /**
+     * Creates a new {@link TimeoutWheel} with given tick duration and number of buckets, notifying
+     * expired targets on {@link ForkJoinPool#commonPool()}
+     *
+     * @param tickDuration duration of a single tick - precision of the timeouts
+     * @param wheelSize number of buckets - it is rounded up to a power of two
+     * @throws NullPointerException if tickDuration is null
+     * @throws IllegalArgumentException if tickDuration or wheelSize are not positive
+     */
+    public TimeoutWheel(Duration tickDuration, int wheelSize) {
+        this(tickDuration, wheelSize, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new {@link TimeoutWheel} with given tick duration and number of buckets, notifying
+     * expired targets on given executor If it rejects a target, the target is notified on the
+     * wheel thread instead
+     *
+     * @param tickDuration duration of a single tick - precision of the timeouts
+     * @param wheelSize number of buckets - it is rounded up to a power of two
+     * @param expiryExecutor executor notifying expired targets
+     * @throws NullPointerException if tickDuration or expiryExecutor is null
+     * @throws IllegalArgumentException if tickDuration or wheelSize are not positive
+     */
+    public TimeoutWheel(Duration tickDuration, int wheelSize, Executor expiryExecutor) {
+        Objects.requireNonNull(tickDuration, "tickDuration may not be null");
+        Objects.requireNonNull(expiryExecutor, "expiryExecutor may not be null");
+        if (tickDuration.isNegative() || tickDuration.isZero()) {
+            throw new IllegalArgumentException("tickDuration must be positive");
+        }
+        if (wheelSize <= 0) {
+            throw new IllegalArgumentException("wheelSize must be positive");
+        }
+        var size = wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+        this.tickNanos = tickDuration.toNanos();
+        this.expiryExecutor = expiryExecutor;
+        this.mask = size - 1;
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Takes the shared {@link TimeoutWheel} with 10ms ticks
+     *
+     * @return <b>Default shared instance</b> of {@link TimeoutWheel}
+     */
+    public static TimeoutWheel getDefault() {
+        if (defaultInstance == null) {
+            synchronized (TimeoutWheel.class) {
+                if (defaultInstance == null) {
+                    defaultInstance =
+                            new TimeoutWheel(
+                                    Duration.ofMillis(DEFAULT_TICK_MILLIS), DEFAULT_WHEEL_SIZE);
+                }
+            }
+        }
+
+        return defaultInstance;
+    }
+
+    /**
+     * Schedules a timeout for given id. Once it expires {@link Target#expire(int)} is called with
+     * the same id, on the expiry executor
+     *
+     * @param target target to notify
+     * @param id id to pass to the target
+     * @param timeout time after which target should be notified
+     * @throws NullPointerException if target or timeout is null
+     * @throws IllegalStateException if wheel was stopped
+     */
+    public void schedule(Target target, int id, Duration timeout) {
+        Objects.requireNonNull(target, "target may not be null");
+        Objects.requireNonNull(timeout, "timeout may not be null");
+        if (stopped) {
+            throw new IllegalStateException("TimeoutWheel was stopped");
+        }
+        startIfNeeded();
+
+        var deadline = System.nanoTime() + timeout.toNanos();
+        var tick = Math.max((deadline - startTime) / tickNanos, 0);
+        while (true) {
+            var targetTick = Math.max(tick, processedTick + 1);
+            var bucket = buckets[(int) (targetTick & mask)];
+            synchronized (bucket) {
+                // the bucket may have been processed in the meantime, in which case pick next one
+                if (processedTick < targetTick) {
+                    bucket.add(target, id, deadline);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes timeouts scheduled for given target and id, so that they never expire
+     *
+     * <p>Since the deadline is not known, all buckets are searched, so it is meant only for rare
+     * paths, such as requests which failed to be sent or were abandoned - completed ids should
+     * rather be reported by {@link Target#isPending(int)}
+     *
+     * @param target target the timeout was scheduled for
+     * @param id id the timeout was scheduled for
+     * @return true if any timeout was removed
+     */
+    public boolean cancel(Target target, int id) {
+        var removed = false;
+        for (var bucket : buckets) {
+            synchronized (bucket) {
+                removed |= bucket.remove(target, id);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Number of scheduled timeouts, including ones whose ids have completed since their bucket
+     * was last visited
+     *
+     * @return number of timeouts held by the wheel
+     */
+    public int size() {
+        var size = 0;
+        for (var bucket : buckets) {
+            synchronized (bucket) {
+                size += bucket.size;
+            }
+        }
+        return size;
+    }
+
+    /** Stops the wheel thread. Scheduled timeouts are dropped and will never expire */
+    public void stop() {
+        stopped = true;
+        synchronized (this) {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    private void startIfNeeded() {
+        if (!started.get() && started.compareAndSet(false, true)) {
+            synchronized (this) {
+                thread = new Thread(this::run, "rpc-timeout-wheel");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    // executes on wheel thread
+    private void run() {
+        log.debug("Timeout wheel started");
+        var expired = new Bucket();
+        var tick = processedTick + 1;
+        while (!stopped) {
+            var tickEnd = startTime + (tick + 1) * tickNanos;
+            var sleep = tickEnd - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    if (stopped) {
+                        break;
+                    }
+                    continue;
+                }
+            }
+
+            var now = System.nanoTime();
+            var bucket = buckets[(int) (tick & mask)];
+            synchronized (bucket) {
+                bucket.drainExpired(now, expired);
+                processedTick = tick;
+            }
+            if (expired.size > 0) {
+                var batch = expired;
+                try {
+                    expiryExecutor.execute(() -> expireAll(batch));
+                    // the batch now belongs to the task
+                    expired = new Bucket();
+                } catch (RejectedExecutionException e) {
+                    expireAll(batch);
+                    batch.clear();
+                }
+            }
+            tick++;
+        }
+        log.debug("Timeout wheel stopped");
+    }
+
+    private static void expireAll(Bucket expired) {
+        for (int i = 0; i < expired.size; i++) {
+            var id = expired.ids[i];
+            try {
+                expired.targets[i].expire(id);
+            } catch (RuntimeException e) {
+                log.error("Failed expiring timeout for id({})", id, e);
+            }
+        }
+    }
+
+    // growable parallel arrays, so that scheduling allocates only when bucket grows
+    private static final class Bucket {
+        private Target[] targets = new Target[16];
+        private int[] ids = new int[16];
+        private long[] deadlines = new long[16];
+        private int size;
+
+        private void add(Target target, int id, long deadline) {
+            if (size == ids.length) {
+                targets = Arrays.copyOf(targets, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+                deadlines = Arrays.copyOf(deadlines, size * 2);
+            }
+            targets[size] = target;
+            ids[size] = id;
+            deadlines[size] = deadline;
+            size++;
+        }
+
+        // moves all pending entries with deadline before now into expired, drops entries which
+        // are not pending anymore and keeps the rest in place
+        private void drainExpired(long now, Bucket expired) {
+            var kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!targets[i].isPending(ids[i])) {
+                    continue;
+                }
+                if (deadlines[i] - now <= 0) {
+                    expired.add(targets[i], ids[i], deadlines[i]);
+                } else {
+                    targets[kept] = targets[i];
+                    ids[kept] = ids[i];
+                    deadlines[kept] = deadlines[i];
+                    kept++;
+                }
+            }
+            Arrays.fill(targets, kept, size, null);
+            size = kept;
+        }
+
+        // removes all entries of given target and id, keeping the order of the rest
+        private boolean remove(Target target, int id) {
+            var kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (targets[i] != target || ids[i] != id) {
+                    targets[kept] = targets[i];
+                    ids[kept] = ids[i];
+                    deadlines[kept] = deadlines[i];
+                    kept++;
+                }
+            }
+            if (kept == size) {
+                return false;
+            }
+            Arrays.fill(targets, kept, size, null);
+            size = kept;
+            return true;
+        }
+
+        private void clear() {
+            Arrays.fill(targets, 0, size, null);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * Implementation of {@link RpcConnection} based on a Unix domain socket {@link SocketChannel}
+ *
+ * <p>This allows connection and communication with a local app listening on a socket file (such as
+ * Neovim started with {@code nvim --listen /path/to/nvim.sock}), without going through TCP loopback
+ * stack. It may be used with stream based listeners and senders, or served by a {@link
+ * NioEventLoop} using {@link NioRpcListener} and {@link NioRpcSender}
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * RpcConnection localConnection = UnixDomainSocketRpcConnection.connect(Path.of("/tmp/nvim.sock"));
+ *
+ * // It can now be used for communication
+ * rpcStreamer.attach(localConnection);
+ * rpcStreamer.send(message); // send a message to local app listening on /tmp/nvim.sock
+ *
+ * }</pre>
+ */
+public final class UnixDomainSocketRpcConnection implements ChannelRpcConnection {
+    public static final Logger log = LoggerFactory.getLogger(UnixDomainSocketRpcConnection.class);
+
+    private final SocketChannel channel;
+
+    private InputStream incomingStream;
+    private OutputStream outgoingStream;
+
+    /**
+     * Creates a new {@link UnixDomainSocketRpcConnection} based on passed connected Unix domain
+     * {@link SocketChannel}
+     *
+     * @param channel instance of {@link SocketChannel} to use for communication
+     * @throws NullPointerException if channel is null
+     */
+    public UnixDomainSocketRpcConnection(SocketChannel channel) {
+        Objects.requireNonNull(
+                channel, "channel is required to properly implement a RpcConnection");
+        this.channel = channel;
+    }
+
+    /**
+     * Connects to a Unix domain socket at given path (blocking until connected)
+     *
+     * @param socketPath path of the socket file
+     * @return a new connected {@link UnixDomainSocketRpcConnection}
+     * @throws NullPointerException if socketPath is null
+     * @throws IOException if channel can not be opened or connected
+     */
+    public static UnixDomainSocketRpcConnection connect(Path socketPath) throws IOException {
+        Objects.requireNonNull(socketPath, "socketPath may not be null");
+        return connect(UnixDomainSocketAddress.of(socketPath));
+    }
+
+    /**
+     * Connects to a Unix domain socket at given address (blocking until connected)
+     *
+     * @param address address of the socket
+     * @return a new connected {@link UnixDomainSocketRpcConnection}
+     * @throws NullPointerException if address is null
+     * @throws IOException if channel can not be opened or connected
+     */
+    public static UnixDomainSocketRpcConnection connect(UnixDomainSocketAddress address)
+            throws IOException {
+        Objects.requireNonNull(address, "address may not be null");
+        var channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(address);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        log.info("Connected to: {}", address);
+        return new UnixDomainSocketRpcConnection(channel);
+    }
+
+    /**
+     * Gets the underlying {@link SocketChannel}
+     *
+     * @return {@link SocketChannel} of this connection
+     */
+    @Override
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Gets a blocking {@link InputStream} reading from the underlying {@link SocketChannel} It may
+     * only be used while the channel is in blocking mode
+     *
+     * @return {@link InputStream} of the underlying {@link SocketChannel}
+     */
+    @Override
+    public synchronized InputStream getIncomingStream() {
+        if (incomingStream == null) {
+            incomingStream = SocketChannelStreams.inputStream(channel);
+        }
+        return incomingStream;
+    }
+
+    /**
+     * Gets a blocking {@link OutputStream} writing to the underlying {@link SocketChannel} It may
+     * only be used while the channel is in blocking mode
+     *
+     * @return {@link OutputStream} of the underlying {@link SocketChannel}
+     */
+    @Override
+    public synchronized OutputStream getOutgoingStream() {
+        if (outgoingStream == null) {
+            outgoingStream = SocketChannelStreams.outputStream(channel);
+        }
+        return outgoingStream;
+    }
+
+    /**
+     * Closes underlying {@link SocketChannel} Communication is no longer possible after this call
+     *
+     * @throws IOException when underlying channel throws {@link IOException}
+     */
+    @Override
+    public void close() throws IOException {
+        log.info("Closing channel: {}", channel);
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return "UnixDomainSocketRpcConnection{" + "channel=" + channel + '}';
+    }
+}
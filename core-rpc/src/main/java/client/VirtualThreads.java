@@ -0,0 +1,72 @@
+package client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors running each task on its own virtual thread, when the runtime supports them
+ *
+ * <p>Library is compiled for Java versions without virtual threads, so they are looked up
+ * reflectively On runtimes without them (or with them only in preview, not enabled), an unbounded
+ * pool of daemon platform threads is used instead, which at least never makes tasks wait for each
+ * other
+ */
+final class VirtualThreads {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactory();
+
+    private VirtualThreads() {}
+
+    /**
+     * Checks whether virtual threads are available in this runtime
+     *
+     * @return true if {@link #newThreadPerTaskExecutor(String)} uses virtual threads
+     */
+    static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread for each task, falling back to a cached
+     * pool of daemon platform threads with given name prefix if virtual threads are not available
+     *
+     * @param fallbackThreadNamePrefix prefix of platform thread names
+     * @return new {@link ExecutorService}
+     */
+    static ExecutorService newThreadPerTaskExecutor(String fallbackThreadNamePrefix) {
+        if (isSupported()) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                log.warn("Virtual threads are not available, using platform threads", e);
+            }
+        }
+        var threadIndex = new AtomicInteger();
+        return Executors.newCachedThreadPool(
+                task -> {
+                    var thread =
+                            new Thread(task, fallbackThreadNamePrefix + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private static Method findFactory() {
+        try {
+            var factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            // preview versions throw if preview is not enabled - try it once
+            ((ExecutorService) factory.invoke(null)).shutdown();
+            return factory;
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            log.debug("Virtual threads are not supported by this runtime");
+            return null;
+        }
+    }
+}
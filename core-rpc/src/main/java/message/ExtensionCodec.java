@@ -0,0 +1,77 @@
+package message;
+
+import java.util.Objects;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Codec of a msgpack extension type, mapping it to a java value type
+ *
+ * <p>Codecs are collected in an {@link ExtensionRegistry} Readers using the registry decode
+ * extension values of registered types straight into value types, without the intermediate {@link
+ * org.msgpack.jackson.dataformat.MessagePackExtensionType}, and writers encode value types back
+ *
+ * <p>Example - handles of Neovim buffers, which are extensions of type 0 holding an integer:
+ *
+ * <pre>{@code
+ * ExtensionCodec<Buffer> codec =
+ *         ExtensionCodec.ofLong((byte) 0, Buffer.class, Buffer::new, Buffer::getId);
+ * }</pre>
+ *
+ * @param <T> type of decoded values
+ */
+public interface ExtensionCodec<T> {
+
+    /**
+     * Gets the extension type handled by this codec
+     *
+     * @return extension type
+     */
+    byte type();
+
+    /**
+     * Gets the java type of decoded values Writers pick the codec for a value by this exact type
+     *
+     * @return type of decoded values
+     */
+    Class<T> valueType();
+
+    /**
+     * Decodes the payload of an extension value
+     *
+     * @param payload reader positioned at the payload - it is repositioned past the payload
+     *     afterwards, whatever was read
+     * @param length length of the payload in bytes
+     * @return decoded value
+     * @throws IllegalStateException if payload is malformed
+     */
+    T decode(MessagePackReader payload, int length);
+
+    /**
+     * Encodes given value as a whole extension value, including its header
+     *
+     * @param value value to encode
+     * @param writer writer to encode into
+     */
+    void encode(T value, MessagePackWriter writer);
+
+    /**
+     * Creates a codec of an extension type whose payload is a msgpack integer, the way Neovim
+     * encodes handles of buffers, windows and tabpages
+     *
+     * @param type extension type
+     * @param valueType type of decoded values
+     * @param decoder creates a value from the integer
+     * @param encoder gets the integer of a value
+     * @param <T> type of decoded values
+     * @return a new {@link ExtensionCodec}
+     * @throws NullPointerException if any of the parameters is null
+     */
+    static <T> ExtensionCodec<T> ofLong(
+            byte type, Class<T> valueType, LongFunction<T> decoder, ToLongFunction<T> encoder) {
+        Objects.requireNonNull(valueType, "valueType may not be null");
+        Objects.requireNonNull(decoder, "decoder may not be null");
+        Objects.requireNonNull(encoder, "encoder may not be null");
+        return new LongExtensionCodec<>(type, valueType, decoder, encoder);
+    }
+}
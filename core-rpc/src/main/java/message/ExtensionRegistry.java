@@ -0,0 +1,137 @@
+package message;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.msgpack.jackson.dataformat.ExtensionTypeCustomDeserializers;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable set of {@link ExtensionCodec}s, looked up by extension type when decoding and by value
+ * type when encoding
+ *
+ * <p>It is passed to {@link MessagePackReader}, {@link MessagePackWriter} and {@link
+ * MessageDecoder}, or to builders of senders and listeners, which pass it on Extension types without
+ * a codec are still decoded as {@link org.msgpack.jackson.dataformat.MessagePackExtensionType}
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * ExtensionRegistry extensions = new ExtensionRegistry.Builder()
+ *         .register(ExtensionCodec.ofLong((byte) 0, Buffer.class, Buffer::new, Buffer::getId))
+ *         .register(ExtensionCodec.ofLong((byte) 1, Window.class, Window::new, Window::getId))
+ *         .build();
+ * }</pre>
+ */
+public final class ExtensionRegistry {
+    private static final ExtensionRegistry EMPTY = new Builder().build();
+
+    // indexed by unsigned extension type
+    private final ExtensionCodec<?>[] codecsByType;
+    private final Map<Class<?>, ExtensionCodec<?>> codecsByValueType;
+
+    private ExtensionRegistry(Builder builder) {
+        this.codecsByType = Arrays.copyOf(builder.codecsByType, builder.codecsByType.length);
+        this.codecsByValueType = Map.copyOf(builder.codecsByValueType);
+    }
+
+    /**
+     * Gets a registry without any codecs
+     *
+     * @return shared empty registry
+     */
+    public static ExtensionRegistry empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Checks whether there are no codecs
+     *
+     * @return true if no codec is registered
+     */
+    public boolean isEmpty() {
+        return codecsByValueType.isEmpty();
+    }
+
+    /**
+     * Creates a copy of given msgpack {@link ObjectMapper}, which decodes registered extension
+     * types into their value types too, for users of {@link ObjectMapper} such as tree decoding of
+     * {@link com.fasterxml.jackson.databind.JsonNode}s
+     *
+     * @param objectMapper msgpack {@link ObjectMapper} to copy
+     * @return copy of the mapper, or the mapper itself if this registry is empty or the mapper does
+     *     not use {@link MessagePackFactory}
+     * @throws NullPointerException if objectMapper is null
+     */
+    public ObjectMapper applyTo(ObjectMapper objectMapper) {
+        Objects.requireNonNull(objectMapper, "objectMapper may not be null");
+        if (isEmpty() || !(objectMapper.getFactory() instanceof MessagePackFactory)) {
+            return objectMapper;
+        }
+        var copy = objectMapper.copy();
+        var deserializers = new ExtensionTypeCustomDeserializers();
+        for (var codec : codecsByValueType.values()) {
+            deserializers.addCustomDeser(
+                    codec.type(),
+                    data -> codec.decode(new MessagePackReader(data, 0, data.length), data.length));
+        }
+        ((MessagePackFactory) copy.getFactory()).setExtTypeCustomDesers(deserializers);
+        return copy;
+    }
+
+    ExtensionCodec<?> codec(byte type) {
+        return codecsByType[type & 0xff];
+    }
+
+    ExtensionCodec<?> codec(Class<?> valueType) {
+        return codecsByValueType.get(valueType);
+    }
+
+    @Override
+    public String toString() {
+        return "ExtensionRegistry{" + "codecs=" + codecsByValueType.values() + '}';
+    }
+
+    /** Builder for {@link ExtensionRegistry} */
+    public static class Builder {
+        private final ExtensionCodec<?>[] codecsByType = new ExtensionCodec<?>[256];
+        private final Map<Class<?>, ExtensionCodec<?>> codecsByValueType = new HashMap<>();
+
+        /**
+         * Registers given codec
+         *
+         * @param codec codec to register
+         * @throws NullPointerException if codec is null
+         * @throws IllegalArgumentException if a codec for the same extension type or value type is
+         *     already registered
+         */
+        public Builder register(ExtensionCodec<?> codec) {
+            Objects.requireNonNull(codec, "codec may not be null");
+            var index = codec.type() & 0xff;
+            if (codecsByType[index] != null) {
+                throw new IllegalArgumentException(
+                        "Codec for extension type " + codec.type() + " is already registered");
+            }
+            if (codecsByValueType.containsKey(codec.valueType())) {
+                throw new IllegalArgumentException(
+                        "Codec for " + codec.valueType() + " is already registered");
+            }
+            codecsByType[index] = codec;
+            codecsByValueType.put(codec.valueType(), codec);
+            return this;
+        }
+
+        /**
+         * Creates a new {@link ExtensionRegistry} with codecs registered so far
+         *
+         * @return a new {@link ExtensionRegistry}
+         */
+        public ExtensionRegistry build() {
+            return new ExtensionRegistry(this);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package message;
+
+/**
+ * Finder of msgpack value boundaries in a stream of bytes, which resumes where it stopped
+ *
+ * <p>Same as {@link MessagePackReader#findValueEnd(byte[], int, int)}, but progress through an
+ * incomplete value is remembered, so once more bytes arrive, scanning continues right after the
+ * last complete header instead of starting over from the beginning of the value. A large value
+ * arriving in many small reads is then scanned in linear time
+ *
+ * <p>Progress is kept relative to the start of the value, so bytes of a partial value may be moved
+ * between calls (such as when a buffer is compacted or grown), as long as the start passed in moves
+ * with them
+ *
+ * <p>Values larger than the maximum frame size are rejected as soon as their headers show it,
+ * before their payload is even received
+ *
+ * <p>Not thread safe, it is meant to be owned by a single reader
+ */
+public final class FrameScanner {
+    private final long maxFrameSize;
+
+    // bytes of the current value scanned so far, relative to its start
+    private long scanned;
+    // number of values (including nested ones) still to be scanned
+    private long remaining = 1;
+    // minimum length of the current value, known once scanning stopped
+    private long requiredLength;
+
+    /**
+     * Creates a new {@link FrameScanner} rejecting values larger than given size
+     *
+     * @param maxFrameSize maximum size of a value in bytes
+     * @throws IllegalArgumentException if maxFrameSize is not positive
+     */
+    public FrameScanner(int maxFrameSize) {
+        this((long) maxFrameSize);
+        if (maxFrameSize <= 0) {
+            throw new IllegalArgumentException("maxFrameSize must be positive");
+        }
+    }
+
+    private FrameScanner(long maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    // used by the one-off MessagePackReader#findValueEnd, which has no limit
+    static FrameScanner unbounded() {
+        return new FrameScanner(Long.MAX_VALUE);
+    }
+
+    /**
+     * Scans for the end of the value starting at given offset If a previous call found it
+     * incomplete, scanning continues from where it stopped
+     *
+     * @param buffer array holding msgpack data
+     * @param start index of the first byte of the value
+     * @param limit index after the last available byte
+     * @return index right after the value, or -1 if the value is not complete yet - the next call
+     *     then has to pass the same value, with more bytes available
+     * @throws IllegalStateException if data is not valid msgpack
+     * @throws IllegalArgumentException if the value is larger than the maximum frame size
+     */
+    public int scan(byte[] buffer, int start, int limit) {
+        long position = start + scanned;
+        while (remaining > 0) {
+            if (position >= limit) {
+                return incomplete(start, position, position + remaining);
+            }
+            var pos = (int) position;
+            var format = buffer[pos] & 0xff;
+            long values = 0;
+            long size;
+            if (format <= 0x7f || format >= 0xe0) {
+                size = 1;
+            } else if (format <= 0x8f) {
+                values = 2L * (format & 0x0f);
+                size = 1;
+            } else if (format <= 0x9f) {
+                values = format & 0x0f;
+                size = 1;
+            } else if (format <= 0xbf) {
+                size = 1 + (format & 0x1f);
+            } else {
+                var header = MessagePackReader.headerSize(format);
+                if (position + header > limit) {
+                    return incomplete(start, position, position + header + remaining - 1);
+                }
+                switch (format) {
+                    case 0xc4:
+                    case 0xd9:
+                        size = header + MessagePackReader.unsigned(buffer, pos + 1, 1);
+                        break;
+                    case 0xc5:
+                    case 0xda:
+                        size = header + MessagePackReader.unsigned(buffer, pos + 1, 2);
+                        break;
+                    case 0xc6:
+                    case 0xdb:
+                        size = header + MessagePackReader.unsigned(buffer, pos + 1, 4);
+                        break;
+                    case 0xc7:
+                        size = header + 1 + MessagePackReader.unsigned(buffer, pos + 1, 1);
+                        break;
+                    case 0xc8:
+                        size = header + 1 + MessagePackReader.unsigned(buffer, pos + 1, 2);
+                        break;
+                    case 0xc9:
+                        size = header + 1 + MessagePackReader.unsigned(buffer, pos + 1, 4);
+                        break;
+                    case 0xdc:
+                        values = MessagePackReader.unsigned(buffer, pos + 1, 2);
+                        size = header;
+                        break;
+                    case 0xdd:
+                        values = MessagePackReader.unsigned(buffer, pos + 1, 4);
+                        size = header;
+                        break;
+                    case 0xde:
+                        values = 2 * MessagePackReader.unsigned(buffer, pos + 1, 2);
+                        size = header;
+                        break;
+                    case 0xdf:
+                        values = 2 * MessagePackReader.unsigned(buffer, pos + 1, 4);
+                        size = header;
+                        break;
+                    default:
+                        size = header;
+                }
+            }
+            position += size;
+            remaining += values - 1;
+            // every value still to be scanned takes at least a byte
+            checkSize(position - start + remaining);
+        }
+        if (position > limit) {
+            return incomplete(start, position, position);
+        }
+        scanned = 0;
+        remaining = 1;
+        requiredLength = 0;
+        return (int) position;
+    }
+
+    /**
+     * Gets minimum number of bytes the value found incomplete by the last {@link #scan(byte[],
+     * int, int)} takes, as far as its headers show - useful for sizing a buffer for the rest of it
+     *
+     * @return minimum length of the incomplete value, or 0 if the last value was complete
+     */
+    public int requiredLength() {
+        return (int) requiredLength;
+    }
+
+    private int incomplete(int start, long position, long end) {
+        scanned = position - start;
+        requiredLength = end - start;
+        checkSize(requiredLength);
+        return -1;
+    }
+
+    private void checkSize(long length) {
+        if (length > maxFrameSize) {
+            throw new IllegalArgumentException(
+                    "Frame of at least " + length + " bytes exceeds maximum of " + maxFrameSize);
+        }
+    }
+}
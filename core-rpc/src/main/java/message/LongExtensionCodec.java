@@ -0,0 +1,45 @@
+package message;
+
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/** {@link ExtensionCodec} of extension types holding a single msgpack integer */
+final class LongExtensionCodec<T> implements ExtensionCodec<T> {
+    private final byte type;
+    private final Class<T> valueType;
+    private final LongFunction<T> decoder;
+    private final ToLongFunction<T> encoder;
+
+    LongExtensionCodec(
+            byte type, Class<T> valueType, LongFunction<T> decoder, ToLongFunction<T> encoder) {
+        this.type = type;
+        this.valueType = valueType;
+        this.decoder = decoder;
+        this.encoder = encoder;
+    }
+
+    @Override
+    public byte type() {
+        return type;
+    }
+
+    @Override
+    public Class<T> valueType() {
+        return valueType;
+    }
+
+    @Override
+    public T decode(MessagePackReader payload, int length) {
+        return decoder.apply(payload.readLong());
+    }
+
+    @Override
+    public void encode(T value, MessagePackWriter writer) {
+        writer.writeExtension(type, encoder.applyAsLong(value));
+    }
+
+    @Override
+    public String toString() {
+        return "LongExtensionCodec{" + "type=" + type + ", valueType=" + valueType + '}';
+    }
+}
@@ -0,0 +1,119 @@
+package message;
+
+import org.msgpack.jackson.dataformat.MessagePackExtensionType;
+
+import java.util.ArrayList;
+
+/**
+ * Arguments of a {@link RequestMessage} or a {@link NotificationMessage}
+ *
+ * <p>Outgoing messages hold their arguments as a list, while incoming messages hold them as a raw
+ * {@link MessagePackValue} which is decoded lazily - the list is materialized only when it is
+ * requested and it is cached afterwards. Typed accessors work in both cases, but never materialize
+ * the list for raw arguments
+ */
+final class MessageArguments {
+
+    private final MessagePackValue packedArguments;
+    private volatile ArrayList<Object> arguments;
+
+    MessageArguments(ArrayList<Object> arguments) {
+        this.packedArguments = null;
+        this.arguments = arguments;
+    }
+
+    MessageArguments(MessagePackValue packedArguments) {
+        this.packedArguments = packedArguments;
+    }
+
+    MessagePackValue packed() {
+        return packedArguments;
+    }
+
+    @SuppressWarnings("unchecked")
+    ArrayList<Object> toList() {
+        var list = arguments;
+        if (list == null) {
+            var decoded = packedArguments.decode();
+            list = decoded == null ? new ArrayList<>() : (ArrayList<Object>) decoded;
+            arguments = list;
+        }
+        return list;
+    }
+
+    int count() {
+        return isPacked() ? packedArguments.size() : arguments.size();
+    }
+
+    boolean isNil(int index) {
+        return isPacked() ? packedArguments.isNil(index) : arguments.get(index) == null;
+    }
+
+    Object get(int index) {
+        return isPacked() ? packedArguments.get(index) : arguments.get(index);
+    }
+
+    long getLong(int index) {
+        return isPacked() ? packedArguments.getLong(index) : number(index).longValue();
+    }
+
+    int getInt(int index) {
+        return isPacked() ? packedArguments.getInt(index) : number(index).intValue();
+    }
+
+    double getDouble(int index) {
+        return isPacked() ? packedArguments.getDouble(index) : number(index).doubleValue();
+    }
+
+    boolean getBoolean(int index) {
+        return isPacked() ? packedArguments.getBoolean(index) : typed(index, Boolean.class);
+    }
+
+    String getString(int index) {
+        return isPacked() ? packedArguments.getString(index) : typed(index, String.class);
+    }
+
+    long getExtensionLong(int index, byte type) {
+        if (isPacked()) {
+            return packedArguments.getExtensionLong(index, type);
+        }
+        var extension = typed(index, MessagePackExtensionType.class);
+        var data = extension.getData();
+        if (extension.getType() != type) {
+            throw new IllegalStateException(
+                    String.format(
+                            "Expected extension type %d at index %d, but found %d",
+                            type, index, extension.getType()));
+        }
+        return new MessagePackReader(data, 0, data.length).readLong();
+    }
+
+    <T> T bind(int index, Class<T> type) {
+        return isPacked()
+                ? packedArguments.bind(index, type)
+                : MessagePackValue.convert(arguments.get(index), type);
+    }
+
+    // typed access goes to raw arguments when present, so elements are decoded one by one
+    private boolean isPacked() {
+        return packedArguments != null;
+    }
+
+    private Number number(int index) {
+        return typed(index, Number.class);
+    }
+
+    private <T> T typed(int index, Class<T> type) {
+        var value = arguments.get(index);
+        if (!type.isInstance(value)) {
+            throw new IllegalStateException(
+                    String.format("Expected %s at index %d, but found %s", type, index, value));
+        }
+        return type.cast(value);
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(toList());
+    }
+}
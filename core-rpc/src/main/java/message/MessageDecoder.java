@@ -0,0 +1,201 @@
+package message;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Decodes complete msgpack-rpc frames into {@link Message} implementations
+ *
+ * <p>Frames are read token by token using a {@link MessagePackReader}, meaning {@link
+ * RequestMessage}, {@link ResponseMessage} and {@link NotificationMessage} are bound directly from
+ * bytes, without building an intermediate tree first
+ *
+ * <p>Arguments and results are not decoded at all. They are copied out of the frame as {@link
+ * MessagePackValue} and decoded lazily, only if the receiver asks for them
+ *
+ * <p>Format of frames is defined as: * request as [0, id, method, arguments] * response as [1, id,
+ * error, result] * notification as [2, name, arguments]
+ *
+ * <p>Method and notification names are matched by their raw bytes against names decoded before, so
+ * a repeated name is not decoded again - the same {@link String} instance is returned for it
+ *
+ * <p>Notifications with a {@link NotificationDecoder} registered for their name are not bound at
+ * all - their arguments are passed to the decoder right from the frame
+ *
+ * <p>Instances keep a reusable {@link MessagePackReader} and are therefore not thread safe. Each
+ * reading thread should use its own decoder.
+ */
+public final class MessageDecoder {
+
+    private final MessagePackReader reader = new MessagePackReader();
+    private final StringCache names = new StringCache();
+    private final ObjectMapper objectMapper;
+    private final ExtensionRegistry extensions;
+    private final Map<String, NotificationDecoder> notificationDecoders = new HashMap<>();
+
+    /** Creates a new {@link MessageDecoder} binding raw values using the default mapper */
+    public MessageDecoder() {
+        this(null);
+    }
+
+    /**
+     * Creates a new {@link MessageDecoder} binding raw values using given {@link ObjectMapper}
+     *
+     * @param objectMapper msgpack {@link ObjectMapper} used by {@link MessagePackValue} for
+     *     binding, or null to use the default
+     */
+    public MessageDecoder(ObjectMapper objectMapper) {
+        this(objectMapper, ExtensionRegistry.empty());
+    }
+
+    /**
+     * Creates a new {@link MessageDecoder} binding raw values using given {@link ObjectMapper} and
+     * decoding extension values in them per given {@link ExtensionRegistry}
+     *
+     * @param objectMapper msgpack {@link ObjectMapper} used by {@link MessagePackValue} for
+     *     binding, or null to use the default
+     * @param extensions {@link ExtensionRegistry} used by {@link MessagePackValue} for decoding
+     * @throws NullPointerException if extensions is null
+     */
+    public MessageDecoder(ObjectMapper objectMapper, ExtensionRegistry extensions) {
+        Objects.requireNonNull(extensions, "extensions may not be null");
+        this.objectMapper = objectMapper;
+        this.extensions = extensions;
+    }
+
+    /**
+     * Passes arguments of notifications with given name to given {@link NotificationDecoder},
+     * instead of decoding them into {@link NotificationMessage}s
+     *
+     * @param name name of the notifications
+     * @param decoder decoder of their arguments
+     * @return this decoder
+     * @throws NullPointerException if any parameter is null
+     */
+    public MessageDecoder withNotificationDecoder(String name, NotificationDecoder decoder) {
+        Objects.requireNonNull(name, "name may not be null");
+        Objects.requireNonNull(decoder, "decoder may not be null");
+        notificationDecoders.put(name, decoder);
+        return this;
+    }
+
+    /**
+     * Decodes a single frame
+     *
+     * @param buffer array holding the frame
+     * @param offset index of the first byte of the frame
+     * @param length length of the frame in bytes
+     * @return decoded {@link Message}, or null if it was a notification passed to its {@link
+     *     NotificationDecoder}
+     * @throws IllegalArgumentException if frame is not a valid msgpack-rpc message, or if {@link
+     *     NotificationDecoder} found its arguments malformed
+     */
+    public Message decode(byte[] buffer, int offset, int length) {
+        reader.reset(buffer, offset, length);
+        try {
+            if (!reader.isArray()) {
+                throw new IllegalArgumentException("Message is not an array");
+            }
+            var size = reader.readArrayHeader();
+            if (size < 3 || size > 4) {
+                throw new IllegalArgumentException(
+                        String.format("Message has unexpected size (%d)", size));
+            }
+
+            var messageType = MessageType.fromInt(reader.readInt());
+            switch (messageType) {
+                case REQUEST:
+                    checkSize(messageType, size, 4);
+                    return decodeRequest();
+                case RESPONSE:
+                    checkSize(messageType, size, 4);
+                    return decodeResponse();
+                case NOTIFICATION:
+                    checkSize(messageType, size, 3);
+                    return decodeNotification();
+                default:
+                    throw new IllegalArgumentException("Unsupported message type: " + messageType);
+            }
+        } catch (IllegalStateException e) {
+            throw new IllegalArgumentException("Message is not valid msgpack-rpc message", e);
+        }
+    }
+
+    private RequestMessage decodeRequest() {
+        var id = reader.readInt();
+        var method = reader.readString(names);
+        return new RequestMessage(id, method, readRawArguments());
+    }
+
+    private ResponseMessage decodeResponse() {
+        var id = reader.readInt();
+        var error = readError();
+        return new ResponseMessage(id, error, readRawValue());
+    }
+
+    private NotificationMessage decodeNotification() {
+        var name = reader.readString(names);
+        if (!notificationDecoders.isEmpty()) {
+            var decoder = notificationDecoders.get(name);
+            if (decoder != null) {
+                decoder.decode(reader);
+                return null;
+            }
+        }
+        return new NotificationMessage(name, readRawArguments());
+    }
+
+    private MessagePackValue readRawArguments() {
+        if (!reader.isArray() && !reader.isNil()) {
+            throw new IllegalArgumentException("Message arguments are not an array");
+        }
+        return readRawValue();
+    }
+
+    // copies the next value out of the (reused) frame buffer, without decoding it
+    private MessagePackValue readRawValue() {
+        var start = reader.position();
+        reader.skipValue();
+        var length = reader.position() - start;
+        var bytes = new byte[length];
+        System.arraycopy(reader.buffer(), start, bytes, 0, length);
+        return new MessagePackValue(bytes, 0, length, objectMapper, extensions);
+    }
+
+    private RpcError readError() {
+        if (reader.tryReadNil()) {
+            return null;
+        }
+        if (reader.isArray()) {
+            var size = reader.readArrayHeader();
+            if (size == 2) {
+                var type = reader.readInt();
+                var message = reader.isString() ? reader.readString() : readAsString();
+                return new RpcError(type, message);
+            }
+            var values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                values.add(reader.readValue());
+            }
+            return RpcError.exception(String.valueOf(values));
+        }
+        return RpcError.exception(readAsString());
+    }
+
+    private String readAsString() {
+        return String.valueOf(reader.readValue());
+    }
+
+    private static void checkSize(MessageType messageType, int size, int expected) {
+        if (size != expected) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "%s message should have %d elements, but has %d",
+                            messageType, expected, size));
+        }
+    }
+}
@@ -0,0 +1,716 @@
+package message;
+
+import org.msgpack.jackson.dataformat.MessagePackExtensionType;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * Cursor based msgpack reader working directly on a byte array
+ *
+ * <p>It reads values token by token without building any intermediate representation, which makes
+ * it suitable for binding incoming messages straight into {@link Message} implementations. A single
+ * instance may be reused for many values using {@link #reset(byte[], int, int)}
+ *
+ * <p>Generic values read using {@link #readValue()} are mapped to the same java types that {@link
+ * com.fasterxml.jackson.databind.ObjectMapper} produces for untyped msgpack values, so users of
+ * decoded messages see the same objects regardless of how the message was decoded
+ *
+ * <p>Extension values of types registered in an {@link ExtensionRegistry} passed to {@link
+ * #withExtensions(ExtensionRegistry)} are decoded by their {@link ExtensionCodec}s
+ *
+ * <p>Malformed input or reading a value of unexpected type results in {@link
+ * IllegalStateException}
+ */
+public final class MessagePackReader {
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private ExtensionRegistry extensions = ExtensionRegistry.empty();
+
+    /** Creates a new {@link MessagePackReader} without any data - it has to be reset before use */
+    public MessagePackReader() {
+        this(new byte[0], 0, 0);
+    }
+
+    /**
+     * Creates a new {@link MessagePackReader} reading given part of the byte array
+     *
+     * @param buffer array holding msgpack data
+     * @param offset index of the first byte to read
+     * @param length number of bytes available for reading
+     */
+    public MessagePackReader(byte[] buffer, int offset, int length) {
+        reset(buffer, offset, length);
+    }
+
+    /**
+     * Points this reader to a new part of a byte array
+     *
+     * @param buffer array holding msgpack data
+     * @param offset index of the first byte to read
+     * @param length number of bytes available for reading
+     * @return this instance
+     */
+    public MessagePackReader reset(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+        return this;
+    }
+
+    /**
+     * Decodes extension values of types registered in given registry by their codecs, when they
+     * are read as generic values
+     *
+     * @param extensions {@link ExtensionRegistry} to use
+     * @return this instance
+     * @throws NullPointerException if extensions is null
+     */
+    public MessagePackReader withExtensions(ExtensionRegistry extensions) {
+        Objects.requireNonNull(extensions, "extensions may not be null");
+        this.extensions = extensions;
+        return this;
+    }
+
+    /**
+     * Underlying array this reader reads from
+     *
+     * @return array holding msgpack data
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Current position of the reader in the underlying array
+     *
+     * @return index of the next byte to read
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * Moves the reader to given position in the underlying array
+     *
+     * @param position index of the next byte to read
+     */
+    public void position(int position) {
+        this.position = position;
+    }
+
+    /**
+     * Checks whether there is more data to read
+     *
+     * @return true if at least one more byte is available
+     */
+    public boolean hasNext() {
+        return position < limit;
+    }
+
+    /**
+     * Returns the format byte of the next value, without consuming it
+     *
+     * @return unsigned format byte of the next value
+     */
+    public int peekFormat() {
+        ensure(1);
+        return buffer[position] & 0xff;
+    }
+
+    /**
+     * Checks if the next value is nil
+     *
+     * @return true if next value is nil
+     */
+    public boolean isNil() {
+        return peekFormat() == 0xc0;
+    }
+
+    /**
+     * Checks if the next value is an array
+     *
+     * @return true if next value is an array
+     */
+    public boolean isArray() {
+        var format = peekFormat();
+        return (format & 0xf0) == 0x90 || format == 0xdc || format == 0xdd;
+    }
+
+    /**
+     * Checks if the next value is a string
+     *
+     * @return true if next value is a string
+     */
+    public boolean isString() {
+        var format = peekFormat();
+        return (format & 0xe0) == 0xa0 || format == 0xd9 || format == 0xda || format == 0xdb;
+    }
+
+    /**
+     * Consumes next value if it is nil
+     *
+     * @return true if nil was consumed, false if next value is not nil (nothing is consumed then)
+     */
+    public boolean tryReadNil() {
+        if (isNil()) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a boolean value
+     *
+     * @return read boolean
+     * @throws IllegalStateException if next value is not a boolean
+     */
+    public boolean readBoolean() {
+        var format = readFormat();
+        if (format == 0xc2) {
+            return false;
+        } else if (format == 0xc3) {
+            return true;
+        }
+        throw unexpected("boolean", format);
+    }
+
+    /**
+     * Reads an integer value that fits into int
+     *
+     * @return read integer
+     * @throws IllegalStateException if next value is not an integer or does not fit into int
+     */
+    public int readInt() {
+        var value = readLong();
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalStateException(
+                    String.format("Integer value (%d) does not fit into int", value));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads an integer value that fits into long
+     *
+     * @return read integer
+     * @throws IllegalStateException if next value is not an integer or does not fit into long
+     */
+    public long readLong() {
+        var format = readFormat();
+        if (format <= 0x7f) {
+            return format;
+        } else if (format >= 0xe0) {
+            return (byte) format;
+        }
+        switch (format) {
+            case 0xcc:
+                return readUnsigned(1);
+            case 0xcd:
+                return readUnsigned(2);
+            case 0xce:
+                return readUnsigned(4);
+            case 0xcf:
+                var value = readSigned(8);
+                if (value < 0) {
+                    throw new IllegalStateException("Unsigned integer does not fit into long");
+                }
+                return value;
+            case 0xd0:
+                return readSigned(1);
+            case 0xd1:
+                return readSigned(2);
+            case 0xd2:
+                return readSigned(4);
+            case 0xd3:
+                return readSigned(8);
+            default:
+                throw unexpected("integer", format);
+        }
+    }
+
+    /**
+     * Reads a floating point value (integers are accepted too)
+     *
+     * @return read value as double
+     * @throws IllegalStateException if next value is not a number
+     */
+    public double readDouble() {
+        var format = peekFormat();
+        if (format == 0xca) {
+            position++;
+            return Float.intBitsToFloat((int) readSigned(4));
+        } else if (format == 0xcb) {
+            position++;
+            return Double.longBitsToDouble(readSigned(8));
+        }
+        return readLong();
+    }
+
+    /**
+     * Reads a string value
+     *
+     * @return read string
+     * @throws IllegalStateException if next value is not a string
+     */
+    public String readString() {
+        var length = readStringHeader();
+        ensure(length);
+        var value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Reads a string value through given {@link StringCache}, so that strings seen before are
+     * matched by their raw bytes and returned without decoding them again
+     *
+     * @param cache cache of previously decoded strings
+     * @return read string
+     * @throws IllegalStateException if next value is not a string
+     */
+    public String readString(StringCache cache) {
+        var length = readStringHeader();
+        ensure(length);
+        var value = cache.get(buffer, position, length);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Reads the header of a string value, leaving the reader positioned at the first byte of its
+     * UTF-8 payload. This allows inspecting the raw bytes of a string without decoding it
+     *
+     * @return length of the string payload in bytes
+     * @throws IllegalStateException if next value is not a string
+     */
+    public int readStringHeader() {
+        var format = readFormat();
+        if ((format & 0xe0) == 0xa0) {
+            return format & 0x1f;
+        }
+        switch (format) {
+            case 0xd9:
+                return (int) readUnsigned(1);
+            case 0xda:
+                return (int) readUnsigned(2);
+            case 0xdb:
+                return readLength();
+            default:
+                throw unexpected("string", format);
+        }
+    }
+
+    /**
+     * Reads a binary value
+     *
+     * @return read bytes
+     * @throws IllegalStateException if next value is not binary
+     */
+    public byte[] readBinary() {
+        var format = readFormat();
+        int length;
+        switch (format) {
+            case 0xc4:
+                length = (int) readUnsigned(1);
+                break;
+            case 0xc5:
+                length = (int) readUnsigned(2);
+                break;
+            case 0xc6:
+                length = readLength();
+                break;
+            default:
+                throw unexpected("binary", format);
+        }
+        return readBytes(length);
+    }
+
+    /**
+     * Reads an array header
+     *
+     * @return number of elements in the array
+     * @throws IllegalStateException if next value is not an array
+     */
+    public int readArrayHeader() {
+        var format = readFormat();
+        if ((format & 0xf0) == 0x90) {
+            return format & 0x0f;
+        } else if (format == 0xdc) {
+            return (int) readUnsigned(2);
+        } else if (format == 0xdd) {
+            return readLength();
+        }
+        throw unexpected("array", format);
+    }
+
+    /**
+     * Reads a map header
+     *
+     * @return number of key-value pairs in the map
+     * @throws IllegalStateException if next value is not a map
+     */
+    public int readMapHeader() {
+        var format = readFormat();
+        if ((format & 0xf0) == 0x80) {
+            return format & 0x0f;
+        } else if (format == 0xde) {
+            return (int) readUnsigned(2);
+        } else if (format == 0xdf) {
+            return readLength();
+        }
+        throw unexpected("map", format);
+    }
+
+    /**
+     * Skips the next value entirely (including all nested values)
+     *
+     * @throws IllegalStateException if the value is malformed or incomplete
+     */
+    public void skipValue() {
+        var end = findValueEnd(buffer, position, limit);
+        if (end < 0) {
+            throw new IllegalStateException("Unexpected end of msgpack data");
+        }
+        position = end;
+    }
+
+    /**
+     * Reads the next value as a generic java object
+     *
+     * <p>Types are mapped as: nil to null, boolean to {@link Boolean}, integers to {@link
+     * Integer}, {@link Long} or {@link BigInteger} (smallest that fits), floating point to {@link
+     * Double}, strings to {@link String}, binary to byte array, arrays to {@link ArrayList}, maps to
+     * {@link LinkedHashMap} with string keys and extension types to values decoded by registered
+     * {@link ExtensionCodec}s or to {@link MessagePackExtensionType}
+     *
+     * @return read value
+     */
+    public Object readValue() {
+        var format = peekFormat();
+        if (format <= 0x7f || format >= 0xe0) {
+            return (int) readLong();
+        } else if ((format & 0xf0) == 0x80) {
+            return readMap();
+        } else if ((format & 0xf0) == 0x90) {
+            return readArray();
+        } else if ((format & 0xe0) == 0xa0) {
+            return readString();
+        }
+        switch (format) {
+            case 0xc0:
+                position++;
+                return null;
+            case 0xc2:
+            case 0xc3:
+                return readBoolean();
+            case 0xc4:
+            case 0xc5:
+            case 0xc6:
+                return readBinary();
+            case 0xc7:
+            case 0xc8:
+            case 0xc9:
+            case 0xd4:
+            case 0xd5:
+            case 0xd6:
+            case 0xd7:
+            case 0xd8:
+                return readExtension();
+            case 0xca:
+            case 0xcb:
+                return readDouble();
+            case 0xcf:
+                position++;
+                var unsigned = readSigned(8);
+                if (unsigned < 0) {
+                    return new BigInteger(Long.toUnsignedString(unsigned));
+                }
+                return unsigned;
+            case 0xcc:
+            case 0xcd:
+            case 0xce:
+            case 0xd0:
+            case 0xd1:
+            case 0xd2:
+            case 0xd3:
+                var value = readLong();
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return (int) value;
+                }
+                return value;
+            case 0xd9:
+            case 0xda:
+            case 0xdb:
+                return readString();
+            case 0xdc:
+            case 0xdd:
+                return readArray();
+            case 0xde:
+            case 0xdf:
+                return readMap();
+            default:
+                throw unexpected("value", format);
+        }
+    }
+
+    /**
+     * Reads an array of generic values, per {@link #readValue()}
+     *
+     * @return read array as {@link ArrayList}
+     * @throws IllegalStateException if next value is not an array
+     */
+    public ArrayList<Object> readArray() {
+        var size = readArrayHeader();
+        var list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readValue());
+        }
+        return list;
+    }
+
+    private LinkedHashMap<String, Object> readMap() {
+        var size = readMapHeader();
+        var map = new LinkedHashMap<String, Object>(size * 2);
+        for (int i = 0; i < size; i++) {
+            var key = readValue();
+            map.put(key instanceof String ? (String) key : String.valueOf(key), readValue());
+        }
+        return map;
+    }
+
+    /**
+     * Reads an extension value of given type whose payload is a msgpack integer, such as a handle of
+     * a Neovim buffer, without creating any object for it
+     *
+     * @param type expected extension type
+     * @return integer held by the extension
+     * @throws IllegalStateException if next value is not an extension of given type holding an
+     *     integer
+     */
+    public long readExtensionLong(byte type) {
+        var length = readExtensionHeader(type);
+        var end = position + length;
+        var outerLimit = limit;
+        limit = end;
+        long value;
+        try {
+            value = readLong();
+        } finally {
+            limit = outerLimit;
+        }
+        if (position != end) {
+            throw new IllegalStateException("Extension payload is not a single integer");
+        }
+        return value;
+    }
+
+    /**
+     * Reads an extension value using given codec, whether it is registered or not
+     *
+     * @param codec codec of the extension type
+     * @param <T> type of decoded values
+     * @return decoded value
+     * @throws IllegalStateException if next value is not an extension of the type of the codec
+     */
+    public <T> T readExtension(ExtensionCodec<T> codec) {
+        return decodeExtension(codec, readExtensionHeader(codec.type()));
+    }
+
+    private Object readExtension() {
+        var start = position;
+        var length = readExtensionLength();
+        var type = (byte) readSigned(1);
+        var codec = extensions.codec(type);
+        if (codec != null) {
+            return decodeExtension(codec, length);
+        }
+        position = start;
+        return readExtensionType();
+    }
+
+    // reads the header and checks the type, leaving the reader at the payload
+    private int readExtensionHeader(byte type) {
+        var length = readExtensionLength();
+        var actualType = (byte) readSigned(1);
+        if (actualType != type) {
+            throw new IllegalStateException(
+                    "Expected extension type " + type + ", but found " + actualType);
+        }
+        ensure(length);
+        return length;
+    }
+
+    private <T> T decodeExtension(ExtensionCodec<T> codec, int length) {
+        ensure(length);
+        var end = position + length;
+        var outerLimit = limit;
+        limit = end;
+        try {
+            return codec.decode(this, length);
+        } finally {
+            limit = outerLimit;
+            position = end;
+        }
+    }
+
+    private int readExtensionLength() {
+        var format = readFormat();
+        switch (format) {
+            case 0xd4:
+                return 1;
+            case 0xd5:
+                return 2;
+            case 0xd6:
+                return 4;
+            case 0xd7:
+                return 8;
+            case 0xd8:
+                return 16;
+            case 0xc7:
+                return (int) readUnsigned(1);
+            case 0xc8:
+                return (int) readUnsigned(2);
+            case 0xc9:
+                return readLength();
+            default:
+                throw unexpected("extension", format);
+        }
+    }
+
+    private MessagePackExtensionType readExtensionType() {
+        var length = readExtensionLength();
+        var type = (byte) readSigned(1);
+        return new MessagePackExtensionType(type, readBytes(length));
+    }
+
+    private int readFormat() {
+        ensure(1);
+        return buffer[position++] & 0xff;
+    }
+
+    private byte[] readBytes(int length) {
+        ensure(length);
+        var bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    private int readLength() {
+        var length = readUnsigned(4);
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Msgpack value is too large: " + length);
+        }
+        return (int) length;
+    }
+
+    private long readUnsigned(int bytes) {
+        ensure(bytes);
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value = (value << 8) | (buffer[position++] & 0xff);
+        }
+        return value;
+    }
+
+    private long readSigned(int bytes) {
+        ensure(bytes);
+        long value = buffer[position++];
+        for (int i = 1; i < bytes; i++) {
+            value = (value << 8) | (buffer[position++] & 0xff);
+        }
+        return value;
+    }
+
+    private void ensure(int bytes) {
+        if (position + bytes > limit || bytes < 0) {
+            throw new IllegalStateException("Unexpected end of msgpack data");
+        }
+    }
+
+    private static IllegalStateException unexpected(String expected, int format) {
+        return new IllegalStateException(
+                String.format("Expected %s, but found msgpack format 0x%02x", expected, format));
+    }
+
+    /**
+     * Finds where the msgpack value starting at given offset ends
+     *
+     * <p>This only inspects headers and never decodes payloads, so it is cheap enough to be used
+     * for framing values in a stream of bytes. Every call scans the value from its start, so values
+     * arriving in parts should be framed with a {@link FrameScanner} instead
+     *
+     * @param buffer array holding msgpack data
+     * @param offset index of the first byte of the value
+     * @param limit index after the last available byte
+     * @return index right after the value, or -1 if the value is not complete yet
+     * @throws IllegalStateException if data is not valid msgpack
+     */
+    public static int findValueEnd(byte[] buffer, int offset, int limit) {
+        return FrameScanner.unbounded().scan(buffer, offset, limit);
+    }
+
+    // size of the header (format byte + fixed part) for formats in range [0xc0, 0xdf]
+    static int headerSize(int format) {
+        switch (format) {
+            case 0xc0:
+            case 0xc2:
+            case 0xc3:
+                return 1;
+            case 0xc4:
+            case 0xc7:
+            case 0xcc:
+            case 0xd0:
+            case 0xd9:
+                return 2;
+            case 0xc5:
+            case 0xc8:
+            case 0xcd:
+            case 0xd1:
+            case 0xda:
+            case 0xdc:
+            case 0xde:
+                return 3;
+            case 0xd4:
+                return 3;
+            case 0xd5:
+                return 4;
+            case 0xc6:
+            case 0xc9:
+            case 0xca:
+            case 0xce:
+            case 0xd2:
+            case 0xdb:
+            case 0xdd:
+            case 0xdf:
+                return 5;
+            case 0xd6:
+                return 6;
+            case 0xcb:
+            case 0xcf:
+            case 0xd3:
+                return 9;
+            case 0xd7:
+                return 10;
+            case 0xd8:
+                return 18;
+            default:
+                throw unexpected("value", format);
+        }
+    }
+
+    static long unsigned(byte[] buffer, int offset, int bytes) {
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value = (value << 8) | (buffer[offset + i] & 0xff);
+        }
+        return value;
+    }
+}
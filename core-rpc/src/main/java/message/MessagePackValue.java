@@ -0,0 +1,338 @@
+package message;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * A single msgpack value kept in its raw, encoded form
+ *
+ * <p>Nothing is decoded up front. Values are decoded only when asked for, either fully using {@link
+ * #decode()}, or element by element (if the value is an array) using typed accessors such as
+ * {@link #getLong(int)} and {@link #getString(int)}. Elements that are never accessed are never
+ * decoded
+ *
+ * <p>Binding to arbitrary types is done using {@link ObjectMapper} passed in the constructor. If no
+ * mapper is passed, a shared default msgpack mapper is used
+ *
+ * <p>Instances are immutable (given that the underlying bytes are not changed) and thread safe
+ */
+public final class MessagePackValue {
+
+    private static volatile ObjectMapper defaultObjectMapper;
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    private final ObjectMapper objectMapper;
+    private final ExtensionRegistry extensions;
+
+    private volatile int[] elementOffsets;
+
+    /**
+     * Creates a new {@link MessagePackValue} backed by the whole given array
+     *
+     * @param bytes encoded msgpack value - it is not copied and must not be changed afterwards
+     * @param objectMapper msgpack {@link ObjectMapper} used for binding, or null to use the default
+     * @throws NullPointerException if bytes is null
+     */
+    public MessagePackValue(byte[] bytes, ObjectMapper objectMapper) {
+        this(bytes, 0, bytes.length, objectMapper);
+    }
+
+    /**
+     * Creates a new {@link MessagePackValue} backed by a part of given array
+     *
+     * @param bytes array holding the encoded value - it is not copied and must not be changed
+     *     afterwards
+     * @param offset index of the first byte of the value
+     * @param length length of the value in bytes
+     * @param objectMapper msgpack {@link ObjectMapper} used for binding, or null to use the default
+     * @throws NullPointerException if bytes is null
+     */
+    public MessagePackValue(byte[] bytes, int offset, int length, ObjectMapper objectMapper) {
+        this(bytes, offset, length, objectMapper, ExtensionRegistry.empty());
+    }
+
+    /**
+     * Creates a new {@link MessagePackValue} backed by a part of given array, decoding extension
+     * values per given {@link ExtensionRegistry}
+     *
+     * @param bytes array holding the encoded value - it is not copied and must not be changed
+     *     afterwards
+     * @param offset index of the first byte of the value
+     * @param length length of the value in bytes
+     * @param objectMapper msgpack {@link ObjectMapper} used for binding, or null to use the default
+     * @param extensions {@link ExtensionRegistry} used by generic decoding
+     * @throws NullPointerException if bytes or extensions is null
+     */
+    public MessagePackValue(
+            byte[] bytes,
+            int offset,
+            int length,
+            ObjectMapper objectMapper,
+            ExtensionRegistry extensions) {
+        Objects.requireNonNull(bytes, "bytes may not be null");
+        Objects.requireNonNull(extensions, "extensions may not be null");
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.objectMapper = objectMapper;
+        this.extensions = extensions;
+    }
+
+    /**
+     * Creates a new {@link MessagePackReader} positioned at the start of this value. This allows
+     * custom decoding of the value, without any intermediate objects
+     *
+     * @return a new reader limited to this value
+     */
+    public MessagePackReader reader() {
+        return new MessagePackReader(bytes, offset, length).withExtensions(extensions);
+    }
+
+    /**
+     * Creates a new {@link MessagePackReader} positioned at the start of given element of this
+     * array value
+     *
+     * @param index index of the element
+     * @return a new reader positioned at the element
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalStateException if this value is not an array
+     */
+    public MessagePackReader reader(int index) {
+        var offsets = elementOffsets();
+        Objects.checkIndex(index, offsets.length);
+        var reader = reader();
+        reader.position(offsets[index]);
+        return reader;
+    }
+
+    /**
+     * Number of encoded bytes of this value
+     *
+     * @return length of this value in bytes
+     */
+    public int byteLength() {
+        return length;
+    }
+
+    /**
+     * Checks whether this value is nil
+     *
+     * @return true if this value is nil
+     */
+    public boolean isNil() {
+        return reader().isNil();
+    }
+
+    /**
+     * Number of elements of this array value. Nil is treated as an empty array
+     *
+     * @return number of elements
+     * @throws IllegalStateException if this value is neither an array, nor nil
+     */
+    public int size() {
+        return elementOffsets().length;
+    }
+
+    /**
+     * Checks whether given element of this array value is nil
+     *
+     * @param index index of the element
+     * @return true if element is nil
+     */
+    public boolean isNil(int index) {
+        return reader(index).isNil();
+    }
+
+    /**
+     * Decodes given element of this array value as a long
+     *
+     * @param index index of the element
+     * @return decoded element
+     * @throws IllegalStateException if element is not an integer
+     */
+    public long getLong(int index) {
+        return reader(index).readLong();
+    }
+
+    /**
+     * Decodes given element of this array value as an int
+     *
+     * @param index index of the element
+     * @return decoded element
+     * @throws IllegalStateException if element is not an integer fitting into int
+     */
+    public int getInt(int index) {
+        return reader(index).readInt();
+    }
+
+    /**
+     * Decodes given element of this array value as a double
+     *
+     * @param index index of the element
+     * @return decoded element
+     * @throws IllegalStateException if element is not a number
+     */
+    public double getDouble(int index) {
+        return reader(index).readDouble();
+    }
+
+    /**
+     * Decodes given element of this array value as a boolean
+     *
+     * @param index index of the element
+     * @return decoded element
+     * @throws IllegalStateException if element is not a boolean
+     */
+    public boolean getBoolean(int index) {
+        return reader(index).readBoolean();
+    }
+
+    /**
+     * Decodes given element of this array value as a string (nil is decoded as null)
+     *
+     * @param index index of the element
+     * @return decoded element
+     * @throws IllegalStateException if element is not a string
+     */
+    public String getString(int index) {
+        var reader = reader(index);
+        if (reader.tryReadNil()) {
+            return null;
+        }
+        return reader.readString();
+    }
+
+    /**
+     * Decodes given element of this array value as an extension holding an integer, such as a
+     * handle of a Neovim buffer, per {@link MessagePackReader#readExtensionLong(byte)}
+     *
+     * @param index index of the element
+     * @param type expected extension type
+     * @return integer held by the element
+     * @throws IllegalStateException if element is not an extension of given type holding an
+     *     integer
+     */
+    public long getExtensionLong(int index, byte type) {
+        return reader(index).readExtensionLong(type);
+    }
+
+    /**
+     * Decodes given element of this array value as a generic object, per {@link
+     * MessagePackReader#readValue()}
+     *
+     * @param index index of the element
+     * @return decoded element
+     */
+    public Object get(int index) {
+        return reader(index).readValue();
+    }
+
+    /**
+     * Binds given element of this array value to given type using {@link ObjectMapper}
+     *
+     * @param index index of the element
+     * @param type type to bind to
+     * @return bound element
+     * @throws IllegalArgumentException if element can not be bound to given type
+     */
+    public <T> T bind(int index, Class<T> type) {
+        var reader = reader(index);
+        var start = reader.position();
+        reader.skipValue();
+        return bind(start, reader.position() - start, type);
+    }
+
+    /**
+     * Decodes the whole value as a generic object, per {@link MessagePackReader#readValue()}
+     *
+     * @return decoded value
+     */
+    public Object decode() {
+        return reader().readValue();
+    }
+
+    /**
+     * Binds the whole value to given type using {@link ObjectMapper}
+     *
+     * @param type type to bind to
+     * @return bound value
+     * @throws IllegalArgumentException if value can not be bound to given type
+     */
+    public <T> T bind(Class<T> type) {
+        return bind(offset, length, type);
+    }
+
+    private <T> T bind(int start, int valueLength, Class<T> type) {
+        try {
+            return mapper().readValue(bytes, start, valueLength, type);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Value can not be bound to " + type, e);
+        }
+    }
+
+    private ObjectMapper mapper() {
+        return objectMapper != null ? objectMapper : getDefaultObjectMapper();
+    }
+
+    private int[] elementOffsets() {
+        var offsets = elementOffsets;
+        if (offsets == null) {
+            var reader = reader();
+            if (reader.tryReadNil()) {
+                offsets = new int[0];
+            } else {
+                offsets = new int[reader.readArrayHeader()];
+                for (int i = 0; i < offsets.length; i++) {
+                    offsets[i] = reader.position();
+                    reader.skipValue();
+                }
+            }
+            elementOffsets = offsets;
+        }
+        return offsets;
+    }
+
+    /** Copies raw bytes of this value into given writer, as they are */
+    void copyTo(MessagePackWriter writer) {
+        writer.writeRaw(bytes, offset, length);
+    }
+
+    /**
+     * Converts an already decoded value to given type, using the default msgpack {@link
+     * ObjectMapper} if value is not already of that type
+     */
+    static <T> T convert(Object value, Class<T> type) {
+        if (value == null || type.isInstance(value)) {
+            return type.cast(value);
+        }
+        return getDefaultObjectMapper().convertValue(value, type);
+    }
+
+    static ObjectMapper getDefaultObjectMapper() {
+        if (defaultObjectMapper == null) {
+            synchronized (MessagePackValue.class) {
+                if (defaultObjectMapper == null) {
+                    var factory = new MessagePackFactory();
+                    factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+                    factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    defaultObjectMapper = new ObjectMapper(factory);
+                }
+            }
+        }
+
+        return defaultObjectMapper;
+    }
+
+    @Override
+    public String toString() {
+        return "MessagePackValue{" + "value=" + decode() + '}';
+    }
+}
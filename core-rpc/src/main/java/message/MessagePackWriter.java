@@ -0,0 +1,662 @@
+package message;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.msgpack.jackson.dataformat.MessagePackExtensionType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Msgpack writer encoding directly into a reusable, growable byte array
+ *
+ * <p>It is the counterpart of {@link MessagePackReader}. Messages, and the values commonly used as
+ * their arguments (nil, booleans, numbers, strings, binary, lists, maps with string keys, {@link
+ * MessagePackExtensionType} and raw {@link MessagePackValue}), are encoded without any intermediate
+ * objects, so once the buffer has grown to fit the usual messages, encoding does not allocate. The
+ * same instance should be reused for many messages, calling {@link #reset()} in between
+ *
+ * <p>Values of types registered in an {@link ExtensionRegistry} passed to {@link
+ * #withExtensions(ExtensionRegistry)} are encoded by their {@link ExtensionCodec}s. Values of other
+ * types are encoded using {@link ObjectMapper} passed in the constructor, so they are written the
+ * same way as before - only not allocation free
+ *
+ * <p>Instances are not thread safe - each writing thread should have its own
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * MessagePackWriter writer = new MessagePackWriter(objectMapper);
+ * writer.writeMessage(message);
+ * writer.writeTo(outputStream);
+ * writer.reset();
+ *
+ * }</pre>
+ */
+public final class MessagePackWriter {
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    // bigger buffers are dropped on reset, so that a single huge message does not stay in memory
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+    private final ObjectMapper fallbackMapper;
+    private final int initialCapacity;
+    private byte[] buffer;
+    private int position;
+    private ExtensionRegistry extensions = ExtensionRegistry.empty();
+
+    /**
+     * Creates a new {@link MessagePackWriter} with default capacity
+     *
+     * @param fallbackMapper msgpack {@link ObjectMapper} used for values not supported natively
+     * @throws NullPointerException if fallbackMapper is null
+     */
+    public MessagePackWriter(ObjectMapper fallbackMapper) {
+        this(fallbackMapper, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new {@link MessagePackWriter} with given initial capacity
+     *
+     * @param fallbackMapper msgpack {@link ObjectMapper} used for values not supported natively
+     * @param initialCapacity initial size of the buffer in bytes
+     * @throws NullPointerException if fallbackMapper is null
+     * @throws IllegalArgumentException if initialCapacity is not positive
+     */
+    public MessagePackWriter(ObjectMapper fallbackMapper, int initialCapacity) {
+        if (fallbackMapper == null) {
+            throw new NullPointerException("fallbackMapper may not be null");
+        }
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("initialCapacity must be positive");
+        }
+        this.fallbackMapper = fallbackMapper;
+        this.initialCapacity = initialCapacity;
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Encodes values of types registered in given registry by their codecs
+     *
+     * @param extensions {@link ExtensionRegistry} to use
+     * @return this instance
+     * @throws NullPointerException if extensions is null
+     */
+    public MessagePackWriter withExtensions(ExtensionRegistry extensions) {
+        Objects.requireNonNull(extensions, "extensions may not be null");
+        this.extensions = extensions;
+        return this;
+    }
+
+    /**
+     * Number of bytes written since last {@link #reset()}
+     *
+     * @return number of bytes in the buffer
+     */
+    public int size() {
+        return position;
+    }
+
+    /**
+     * Underlying array - valid bytes are from 0 to {@link #size()}
+     *
+     * @return array holding written data
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /** Discards written data, keeping the buffer for reuse (unless it grew too large) */
+    public void reset() {
+        position = 0;
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[initialCapacity];
+        }
+    }
+
+    /**
+     * Discards data written after given size, which should be a previously taken {@link #size()}
+     *
+     * @param size size to go back to
+     * @throws IllegalArgumentException if size is negative or larger than current size
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > position) {
+            throw new IllegalArgumentException("Can't truncate to " + size);
+        }
+        position = size;
+    }
+
+    /**
+     * Writes all written data to given stream, without flushing it
+     *
+     * @param outputStream stream to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(buffer, 0, position);
+    }
+
+    /**
+     * Encodes a whole message, the same way {@link ObjectMapper} does
+     *
+     * @param message message to encode
+     * @throws IOException if a value which is not supported natively can't be encoded
+     */
+    public void writeMessage(Message message) throws IOException {
+        switch (message.getType()) {
+            case REQUEST:
+                var requestMessage = (RequestMessage) message;
+                var template = requestMessage.getTemplate();
+                if (template != null) {
+                    writePreparedRequest(template, requestMessage.getId());
+                    break;
+                }
+                writeArrayHeader(4);
+                writeLong(MessageType.REQUEST.asInt());
+                writeLong(requestMessage.getId());
+                var packedMethod = requestMessage.getPackedMethod();
+                if (packedMethod != null) {
+                    writeRaw(packedMethod, 0, packedMethod.length);
+                } else {
+                    writeString(requestMessage.getMethod());
+                }
+                writeArguments(requestMessage.getPackedArguments(), requestMessage);
+                break;
+            case RESPONSE:
+                var responseMessage = (ResponseMessage) message;
+                writeArrayHeader(4);
+                writeLong(MessageType.RESPONSE.asInt());
+                writeLong(responseMessage.getId());
+                writeError(responseMessage.getError());
+                var packedResult = responseMessage.getPackedResult();
+                if (packedResult != null) {
+                    writeRaw(packedResult);
+                } else {
+                    writeValue(responseMessage.getResult());
+                }
+                break;
+            case NOTIFICATION:
+                var notificationMessage = (NotificationMessage) message;
+                writeArrayHeader(3);
+                writeLong(MessageType.NOTIFICATION.asInt());
+                writeString(notificationMessage.getName());
+                writeArguments(notificationMessage.getPackedArguments(), notificationMessage);
+                break;
+            default:
+                writeFallback(message);
+        }
+    }
+
+    /**
+     * Encodes any value, natively if possible, otherwise using the fallback {@link ObjectMapper}
+     *
+     * @param value value to encode
+     * @throws IOException if value is not supported natively and can't be encoded by the mapper
+     */
+    public void writeValue(Object value) throws IOException {
+        if (value == null) {
+            writeNil();
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Integer
+                || value instanceof Long
+                || value instanceof Short
+                || value instanceof Byte) {
+            writeLong(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            writeFloat((Float) value);
+        } else if (value instanceof byte[]) {
+            var bytes = (byte[]) value;
+            writeBinary(bytes, 0, bytes.length);
+        } else if (value instanceof List && value instanceof RandomAccess) {
+            var list = (List<?>) value;
+            var size = list.size();
+            writeArrayHeader(size);
+            for (int i = 0; i < size; i++) {
+                writeValue(list.get(i));
+            }
+        } else if (value instanceof Object[]) {
+            var array = (Object[]) value;
+            writeArrayHeader(array.length);
+            for (var element : array) {
+                writeValue(element);
+            }
+        } else if (value instanceof Map && hasStringKeys((Map<?, ?>) value)) {
+            var map = (Map<?, ?>) value;
+            writeMapHeader(map.size());
+            for (var entry : map.entrySet()) {
+                writeString((String) entry.getKey());
+                writeValue(entry.getValue());
+            }
+        } else if (value instanceof MessagePackValue) {
+            writeRaw((MessagePackValue) value);
+        } else if (value instanceof MessagePackExtensionType) {
+            var extension = (MessagePackExtensionType) value;
+            writeExtension(extension.getType(), extension.getData());
+        } else if (value instanceof BigInteger && ((BigInteger) value).bitLength() <= 63) {
+            writeLong(((BigInteger) value).longValue());
+        } else if (value instanceof RpcError) {
+            writeError((RpcError) value);
+        } else if (!writeRegisteredExtension(value)) {
+            writeFallback(value);
+        }
+    }
+
+    /** Writes nil */
+    public void writeNil() {
+        ensureCapacity(1);
+        buffer[position++] = (byte) 0xc0;
+    }
+
+    /**
+     * Writes a boolean
+     *
+     * @param value value to write
+     */
+    public void writeBoolean(boolean value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) (value ? 0xc3 : 0xc2);
+    }
+
+    /**
+     * Writes an integer using the smallest possible format
+     *
+     * @param value value to write
+     */
+    public void writeLong(long value) {
+        ensureCapacity(9);
+        if (value < -(1L << 5)) {
+            if (value < -(1L << 15)) {
+                if (value < -(1L << 31)) {
+                    buffer[position++] = (byte) 0xd3;
+                    putLong(value);
+                } else {
+                    buffer[position++] = (byte) 0xd2;
+                    putInt((int) value);
+                }
+            } else if (value < -(1 << 7)) {
+                buffer[position++] = (byte) 0xd1;
+                putShort((int) value);
+            } else {
+                buffer[position++] = (byte) 0xd0;
+                buffer[position++] = (byte) value;
+            }
+        } else if (value < (1 << 7)) {
+            buffer[position++] = (byte) value;
+        } else if (value < (1L << 16)) {
+            if (value < (1 << 8)) {
+                buffer[position++] = (byte) 0xcc;
+                buffer[position++] = (byte) value;
+            } else {
+                buffer[position++] = (byte) 0xcd;
+                putShort((int) value);
+            }
+        } else if (value < (1L << 32)) {
+            buffer[position++] = (byte) 0xce;
+            putInt((int) value);
+        } else {
+            buffer[position++] = (byte) 0xcf;
+            putLong(value);
+        }
+    }
+
+    /**
+     * Writes a 32 bit float
+     *
+     * @param value value to write
+     */
+    public void writeFloat(float value) {
+        ensureCapacity(5);
+        buffer[position++] = (byte) 0xca;
+        putInt(Float.floatToRawIntBits(value));
+    }
+
+    /**
+     * Writes a 64 bit float
+     *
+     * @param value value to write
+     */
+    public void writeDouble(double value) {
+        ensureCapacity(9);
+        buffer[position++] = (byte) 0xcb;
+        putLong(Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Writes a string, encoding it to UTF-8 directly into the buffer Unpaired surrogates are
+     * replaced with '?', same as {@link String#getBytes(java.nio.charset.Charset)} does
+     *
+     * @param value value to write - null is written as nil
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeNil();
+            return;
+        }
+        var length = value.length();
+        var encodedLength = utf8Length(value, length);
+        ensureCapacity(5 + encodedLength);
+        if (encodedLength < 32) {
+            buffer[position++] = (byte) (0xa0 | encodedLength);
+        } else if (encodedLength < (1 << 8)) {
+            buffer[position++] = (byte) 0xd9;
+            buffer[position++] = (byte) encodedLength;
+        } else if (encodedLength < (1 << 16)) {
+            buffer[position++] = (byte) 0xda;
+            putShort(encodedLength);
+        } else {
+            buffer[position++] = (byte) 0xdb;
+            putInt(encodedLength);
+        }
+
+        for (int i = 0; i < length; i++) {
+            var c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c)
+                        && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    var codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    buffer[position++] = (byte) '?';
+                }
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    /**
+     * Writes binary data
+     *
+     * @param value array holding the data
+     * @param offset index of the first byte to write
+     * @param length number of bytes to write
+     */
+    public void writeBinary(byte[] value, int offset, int length) {
+        ensureCapacity(5 + length);
+        if (length < (1 << 8)) {
+            buffer[position++] = (byte) 0xc4;
+            buffer[position++] = (byte) length;
+        } else if (length < (1 << 16)) {
+            buffer[position++] = (byte) 0xc5;
+            putShort(length);
+        } else {
+            buffer[position++] = (byte) 0xc6;
+            putInt(length);
+        }
+        System.arraycopy(value, offset, buffer, position, length);
+        position += length;
+    }
+
+    /**
+     * Writes header of an array, which has to be followed by given number of values
+     *
+     * @param size number of elements
+     */
+    public void writeArrayHeader(int size) {
+        ensureCapacity(5);
+        if (size < 16) {
+            buffer[position++] = (byte) (0x90 | size);
+        } else if (size < (1 << 16)) {
+            buffer[position++] = (byte) 0xdc;
+            putShort(size);
+        } else {
+            buffer[position++] = (byte) 0xdd;
+            putInt(size);
+        }
+    }
+
+    /**
+     * Writes header of a map, which has to be followed by given number of key and value pairs
+     *
+     * @param size number of entries
+     */
+    public void writeMapHeader(int size) {
+        ensureCapacity(5);
+        if (size < 16) {
+            buffer[position++] = (byte) (0x80 | size);
+        } else if (size < (1 << 16)) {
+            buffer[position++] = (byte) 0xde;
+            putShort(size);
+        } else {
+            buffer[position++] = (byte) 0xdf;
+            putInt(size);
+        }
+    }
+
+    /**
+     * Writes an extension value
+     *
+     * @param type extension type
+     * @param data extension payload
+     */
+    public void writeExtension(byte type, byte[] data) {
+        var length = data.length;
+        ensureCapacity(6 + length);
+        switch (length) {
+            case 1:
+                buffer[position++] = (byte) 0xd4;
+                break;
+            case 2:
+                buffer[position++] = (byte) 0xd5;
+                break;
+            case 4:
+                buffer[position++] = (byte) 0xd6;
+                break;
+            case 8:
+                buffer[position++] = (byte) 0xd7;
+                break;
+            case 16:
+                buffer[position++] = (byte) 0xd8;
+                break;
+            default:
+                if (length < (1 << 8)) {
+                    buffer[position++] = (byte) 0xc7;
+                    buffer[position++] = (byte) length;
+                } else if (length < (1 << 16)) {
+                    buffer[position++] = (byte) 0xc8;
+                    putShort(length);
+                } else {
+                    buffer[position++] = (byte) 0xc9;
+                    putInt(length);
+                }
+        }
+        buffer[position++] = type;
+        System.arraycopy(data, 0, buffer, position, length);
+        position += length;
+    }
+
+    /**
+     * Writes an extension value whose payload is a msgpack integer, the way Neovim encodes handles
+     * of buffers, windows and tabpages
+     *
+     * @param type extension type
+     * @param value integer encoded as the payload
+     */
+    public void writeExtension(byte type, long value) {
+        var length = longLength(value);
+        ensureCapacity(3 + length);
+        if (length == 1) {
+            buffer[position++] = (byte) 0xd4;
+        } else if (length == 2) {
+            buffer[position++] = (byte) 0xd5;
+        } else {
+            buffer[position++] = (byte) 0xc7;
+            buffer[position++] = (byte) length;
+        }
+        buffer[position++] = type;
+        writeLong(value);
+    }
+
+    /**
+     * Copies an already encoded value as is
+     *
+     * @param value raw value to copy
+     */
+    public void writeRaw(MessagePackValue value) {
+        value.copyTo(this);
+    }
+
+    /**
+     * Copies already encoded bytes as is - they have to form complete msgpack values
+     *
+     * @param bytes array holding encoded values
+     * @param offset index of the first byte to copy
+     * @param length number of bytes to copy
+     */
+    public void writeRaw(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    // fixed-width id, so that it can be patched into templates of prepared requests
+    void writeRequestId(int id) {
+        ensureCapacity(PreparedRequest.ID_LENGTH);
+        buffer[position++] = (byte) (id >= 0 ? 0xce : 0xd2);
+        putInt(id);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean writeRegisteredExtension(Object value) {
+        var codec = (ExtensionCodec<Object>) extensions.codec(value.getClass());
+        if (codec == null) {
+            return false;
+        }
+        codec.encode(value, this);
+        return true;
+    }
+
+    private void writePreparedRequest(byte[] template, int id) {
+        var start = position;
+        writeRaw(template, 0, template.length);
+        var end = position;
+        position = start + PreparedRequest.ID_OFFSET;
+        writeRequestId(id);
+        position = end;
+    }
+
+    private void writeArguments(MessagePackValue packedArguments, Message message)
+            throws IOException {
+        if (packedArguments != null) {
+            writeRaw(packedArguments);
+        } else if (message instanceof RequestMessage) {
+            writeValue(((RequestMessage) message).getArguments());
+        } else {
+            writeValue(((NotificationMessage) message).getArguments());
+        }
+    }
+
+    private void writeError(RpcError error) {
+        if (error == null) {
+            writeNil();
+            return;
+        }
+        writeArrayHeader(2);
+        writeLong(error.getId());
+        writeString(error.getMessage());
+    }
+
+    private void writeFallback(Object value) throws IOException {
+        try {
+            var bytes = fallbackMapper.writeValueAsBytes(value);
+            writeRaw(bytes, 0, bytes.length);
+        } catch (JsonProcessingException e) {
+            throw new IOException("Failed encoding " + value.getClass().getName(), e);
+        }
+    }
+
+    private static boolean hasStringKeys(Map<?, ?> map) {
+        for (var key : map.keySet()) {
+            if (!(key instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int utf8Length(String value, int length) {
+        var encodedLength = length;
+        for (int i = 0; i < length; i++) {
+            var c = value.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    encodedLength += 1;
+                } else if (Character.isHighSurrogate(c)
+                        && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    // pair of 2 chars takes 4 bytes
+                    encodedLength += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    encodedLength += 2;
+                }
+            }
+        }
+        return encodedLength;
+    }
+
+    // number of bytes writeLong uses for given value
+    private static int longLength(long value) {
+        if (value >= -(1L << 5) && value < (1 << 7)) {
+            return 1;
+        }
+        if (value >= -(1 << 7) && value < (1 << 8)) {
+            return 2;
+        }
+        if (value >= -(1L << 15) && value < (1L << 16)) {
+            return 3;
+        }
+        if (value >= -(1L << 31) && value < (1L << 32)) {
+            return 5;
+        }
+        return 9;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (buffer.length - position < bytes) {
+            var required = position + bytes;
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        }
+    }
+
+    private void putShort(int value) {
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putInt(int value) {
+        buffer[position++] = (byte) (value >> 24);
+        buffer[position++] = (byte) (value >> 16);
+        buffer[position++] = (byte) (value >> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putLong(long value) {
+        putInt((int) (value >> 32));
+        putInt((int) value);
+    }
+}
@@ -0,0 +1,63 @@
+package message;
+
+import java.util.Objects;
+
+/**
+ * Name of a method encoded as a msgpack string only once, so that requests built with it copy the
+ * encoded bytes instead of encoding the name again for each request
+ *
+ * <p>Instances are immutable and meant to be kept in constants
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * private static final MethodName GET_LINES = MethodName.of("nvim_buf_get_lines");
+ *
+ * RequestMessage.Builder request = new RequestMessage.Builder(GET_LINES, packedArguments);
+ * }</pre>
+ */
+public final class MethodName {
+    private final String name;
+    private final byte[] packed;
+
+    // packed has to be the name encoded as a msgpack string
+    MethodName(String name, byte[] packed) {
+        this.name = name;
+        this.packed = packed;
+    }
+
+    /**
+     * Encodes given method name
+     *
+     * @param name name of the method
+     * @return encoded name
+     * @throws NullPointerException if name is null
+     */
+    public static MethodName of(String name) {
+        Objects.requireNonNull(name, "name may not be null");
+        var writer = new MessagePackWriter(MessagePackValue.getDefaultObjectMapper(), 64);
+        writer.writeString(name);
+        var packed = new byte[writer.size()];
+        System.arraycopy(writer.buffer(), 0, packed, 0, packed.length);
+        return new MethodName(name, packed);
+    }
+
+    /**
+     * Name of the method
+     *
+     * @return name as given when encoding it
+     */
+    public String getName() {
+        return name;
+    }
+
+    // encoded msgpack string - must not be modified
+    byte[] packed() {
+        return packed;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,31 @@
+package message;
+
+/**
+ * Decoder of notifications of a single name, reading their arguments straight from the frame
+ * instead of building a {@link NotificationMessage}
+ *
+ * <p>It is meant for high volume notifications, such as Neovim {@code redraw}, where copying the
+ * arguments out of the frame and decoding them into generic objects produces most of the garbage
+ * of a connection. Decoders are registered with {@link
+ * MessageDecoder#withNotificationDecoder(String, NotificationDecoder)}, or through builders of
+ * listeners, which pass them on
+ *
+ * <p>Decoder is called on the reading thread, with a reader over the reused frame buffer, so
+ * neither the reader nor anything backed by its buffer may be kept after it returns
+ *
+ * <p>Only {@link IllegalStateException} means the notification is malformed. Whatever a decoder
+ * already did with its arguments before finding that out is not undone, so decoders handing out
+ * parts of a notification one by one should document that earlier parts were already delivered
+ */
+@FunctionalInterface
+public interface NotificationDecoder {
+
+    /**
+     * Decodes arguments of a notification
+     *
+     * @param arguments reader positioned at the arguments array of the notification
+     * @throws IllegalStateException if arguments are malformed - the notification is then
+     *     reported as a bad message
+     */
+    void decode(MessagePackReader arguments);
+}
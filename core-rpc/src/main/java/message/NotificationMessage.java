@@ -2,6 +2,7 @@ package message;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
@@ -14,6 +15,10 @@ import java.util.ArrayList;
  * to block execution They should be handled when possible
  *
  * <p>Format is defined as: * type as Integer * name (event name) as String * arguments as Array
+ *
+ * <p>Incoming notifications keep their arguments as raw msgpack, which is decoded only when it is
+ * accessed. Typed accessors such as {@link #getLong(int)} decode only the requested argument, while
+ * {@link #getArguments()} decodes all of them
  */
 @JsonFormat(shape = JsonFormat.Shape.ARRAY)
 @JsonPropertyOrder({"type", "name", "arguments"})
@@ -21,12 +26,23 @@ import java.util.ArrayList;
 public final class NotificationMessage implements Message {
 
     private final String name;
-    private final ArrayList<Object> arguments;
+    private final MessageArguments arguments;
 
     private NotificationMessage(Builder builder) {
         this(builder.name, builder.arguments);
     }
 
+    /**
+     * Creates a new {@link NotificationMessage} with raw arguments, which are decoded lazily
+     *
+     * @param name notification name
+     * @param packedArguments raw msgpack array of arguments
+     */
+    NotificationMessage(String name, MessagePackValue packedArguments) {
+        this.name = name;
+        this.arguments = new MessageArguments(packedArguments);
+    }
+
     /**
      * Creates a new {@link NotificationMessage} This should not be used outside this library, since
      * it represents incoming notifications
@@ -36,7 +52,7 @@ public final class NotificationMessage implements Message {
      */
     public NotificationMessage(String name, ArrayList<Object> arguments) {
         this.name = name;
-        this.arguments = new ArrayList<>(arguments);
+        this.arguments = new MessageArguments(new ArrayList<>(arguments));
     }
 
     @JsonProperty("name")
@@ -44,9 +60,150 @@ public final class NotificationMessage implements Message {
         return name;
     }
 
+    /**
+     * Gets all arguments. For incoming messages this decodes all arguments on first call
+     *
+     * @return list of all arguments
+     */
     @JsonProperty("arguments")
     public ArrayList<?> getArguments() {
-        return arguments;
+        return arguments.toList();
+    }
+
+    /**
+     * Number of arguments. For incoming messages this does not decode any argument
+     *
+     * @return number of arguments
+     */
+    public int argCount() {
+        return arguments.count();
+    }
+
+    /**
+     * Checks whether argument at given index is nil (null)
+     *
+     * @param index index of the argument
+     * @return true if argument is nil
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     */
+    public boolean isNil(int index) {
+        return arguments.isNil(index);
+    }
+
+    /**
+     * Gets argument at given index as a generic object. For incoming messages only this argument
+     * is decoded
+     *
+     * @param index index of the argument
+     * @return argument at given index
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     */
+    public Object getArgument(int index) {
+        return arguments.get(index);
+    }
+
+    /**
+     * Gets argument at given index as a long. For incoming messages only this argument is decoded
+     *
+     * @param index index of the argument
+     * @return argument at given index
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalStateException if argument is not an integer
+     */
+    public long getLong(int index) {
+        return arguments.getLong(index);
+    }
+
+    /**
+     * Gets argument at given index as an int. For incoming messages only this argument is decoded
+     *
+     * @param index index of the argument
+     * @return argument at given index
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalStateException if argument is not an integer
+     */
+    public int getInt(int index) {
+        return arguments.getInt(index);
+    }
+
+    /**
+     * Gets argument at given index as a double. For incoming messages only this argument is
+     * decoded
+     *
+     * @param index index of the argument
+     * @return argument at given index
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalStateException if argument is not a number
+     */
+    public double getDouble(int index) {
+        return arguments.getDouble(index);
+    }
+
+    /**
+     * Gets argument at given index as a boolean. For incoming messages only this argument is
+     * decoded
+     *
+     * @param index index of the argument
+     * @return argument at given index
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalStateException if argument is not a boolean
+     */
+    public boolean getBoolean(int index) {
+        return arguments.getBoolean(index);
+    }
+
+    /**
+     * Gets argument at given index as a string. For incoming messages only this argument is
+     * decoded
+     *
+     * @param index index of the argument
+     * @return argument at given index
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalStateException if argument is not a string
+     */
+    public String getString(int index) {
+        return arguments.getString(index);
+    }
+
+    /**
+     * Gets argument at given index as an extension holding an integer, such as a handle of a
+     * Neovim buffer, window or tabpage. For incoming messages only this argument is decoded and no
+     * object is created for it
+     *
+     * @param index index of the argument
+     * @param type expected extension type
+     * @return integer held by the argument
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalStateException if argument is not an extension of given type holding an
+     *     integer
+     */
+    public long getExtensionLong(int index, byte type) {
+        return arguments.getExtensionLong(index, type);
+    }
+
+    /**
+     * Binds argument at given index to given type. For incoming messages it is bound straight from
+     * raw msgpack, using {@link com.fasterxml.jackson.databind.ObjectMapper} of the listener
+     *
+     * @param index index of the argument
+     * @param type type to bind to
+     * @return argument at given index bound to given type
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalArgumentException if argument can not be bound to given type
+     */
+    public <T> T bind(int index, Class<T> type) {
+        return arguments.bind(index, type);
+    }
+
+    /**
+     * Gets raw arguments of incoming messages
+     *
+     * @return {@link MessagePackValue} holding raw arguments, or null if this message was not
+     *     decoded from raw msgpack
+     */
+    @JsonIgnore
+    public MessagePackValue getPackedArguments() {
+        return arguments.packed();
     }
 
     @Override
@@ -0,0 +1,174 @@
+package message;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Request encoded once into a template, for requests which are sent over and over with the same
+ * method and arguments, such as polling {@code nvim_get_mode}
+ *
+ * <p>Template holds the whole encoded request with a fixed-width slot for the id Requests built
+ * from it with {@link #build(int)} are written out by copying the template and patching the id
+ * into the slot, so neither arguments nor {@link ObjectMapper} are involved in sending them
+ *
+ * <p>Instances are immutable and thread safe
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * private static final PreparedRequest GET_MODE =
+ *         new PreparedRequest(new RequestMessage.Builder("nvim_get_mode"));
+ *
+ * rpcStreamer.sendAsync(GET_MODE, ResultDecoder.MAP);
+ * }</pre>
+ */
+public final class PreparedRequest {
+    // fixarray of 4, fixint type, then the id as uint32 or int32
+    static final int ID_OFFSET = 2;
+    static final int ID_LENGTH = 5;
+
+    private final MethodName method;
+    private final byte[] template;
+    private final MessagePackValue packedArguments;
+
+    /**
+     * Encodes given request, using the default msgpack {@link ObjectMapper} for arguments which
+     * are not supported natively
+     *
+     * @param requestMessage {@link RequestMessage.Builder} of the request - its id is ignored
+     * @throws NullPointerException if requestMessage is null
+     * @throws IOException if arguments can't be encoded
+     */
+    public PreparedRequest(RequestMessage.Builder requestMessage) throws IOException {
+        this(requestMessage, MessagePackValue.getDefaultObjectMapper());
+    }
+
+    /**
+     * Encodes given request, using given {@link ObjectMapper} for arguments which are not
+     * supported natively
+     *
+     * @param requestMessage {@link RequestMessage.Builder} of the request - its id is ignored
+     * @param objectMapper msgpack {@link ObjectMapper} used for arguments and for decoding them
+     * @throws NullPointerException if any parameter is null
+     * @throws IOException if arguments can't be encoded
+     */
+    public PreparedRequest(RequestMessage.Builder requestMessage, ObjectMapper objectMapper)
+            throws IOException {
+        this(requestMessage, objectMapper, ExtensionRegistry.empty());
+    }
+
+    /**
+     * Encodes given request, same as {@link #PreparedRequest(RequestMessage.Builder,
+     * ObjectMapper)}, while values registered in given {@link ExtensionRegistry} (such as handles
+     * of Neovim buffers) are encoded as extension types, and decoded back when arguments of built
+     * requests are read
+     *
+     * @param requestMessage {@link RequestMessage.Builder} of the request - its id is ignored
+     * @param objectMapper msgpack {@link ObjectMapper} used for arguments and for decoding them
+     * @param extensions {@link ExtensionRegistry} of extension types in arguments
+     * @throws NullPointerException if any parameter is null
+     * @throws IOException if arguments can't be encoded
+     */
+    public PreparedRequest(
+            RequestMessage.Builder requestMessage,
+            ObjectMapper objectMapper,
+            ExtensionRegistry extensions)
+            throws IOException {
+        Objects.requireNonNull(requestMessage, "requestMessage may not be null");
+        Objects.requireNonNull(objectMapper, "objectMapper may not be null");
+        Objects.requireNonNull(extensions, "extensions may not be null");
+        var message = requestMessage.build();
+        var writer = new MessagePackWriter(objectMapper).withExtensions(extensions);
+        writer.writeArrayHeader(4);
+        writer.writeLong(MessageType.REQUEST.asInt());
+        writer.writeRequestId(0);
+        var methodOffset = writer.size();
+        var packedMethod = message.getPackedMethod();
+        if (packedMethod != null) {
+            writer.writeRaw(packedMethod, 0, packedMethod.length);
+        } else {
+            writer.writeString(message.getMethod());
+        }
+        var argumentsOffset = writer.size();
+        var packedArguments = message.getPackedArguments();
+        if (packedArguments != null) {
+            writer.writeRaw(packedArguments);
+        } else {
+            writer.writeValue(message.getArguments());
+        }
+        this.template = Arrays.copyOf(writer.buffer(), writer.size());
+        this.method =
+                new MethodName(
+                        message.getMethod(),
+                        Arrays.copyOfRange(template, methodOffset, argumentsOffset));
+        this.packedArguments =
+                new MessagePackValue(
+                        template,
+                        argumentsOffset,
+                        template.length - argumentsOffset,
+                        objectMapper,
+                        extensions);
+    }
+
+    /**
+     * Creates a request with given id, which is written out from the template
+     *
+     * <p>Outside of library, this should not be used, since id is generated before sending
+     *
+     * @param id id of the request
+     * @return a new {@link RequestMessage}
+     */
+    public RequestMessage build(int id) {
+        return new RequestMessage(id, this);
+    }
+
+    /**
+     * Gets name of the method
+     *
+     * @return name of the method
+     */
+    public String getMethod() {
+        return method.getName();
+    }
+
+    /**
+     * Creates a builder of the same request, for senders which do not write prepared requests from
+     * their template Method name and arguments stay encoded, so they are written out as they are
+     *
+     * @return a new {@link RequestMessage.Builder}
+     */
+    public RequestMessage.Builder toBuilder() {
+        return new RequestMessage.Builder(method, packedArguments);
+    }
+
+    /**
+     * Number of bytes each request takes on the wire
+     *
+     * @return length of the template
+     */
+    public int byteLength() {
+        return template.length;
+    }
+
+    byte[] template() {
+        return template;
+    }
+
+    MessagePackValue packedArguments() {
+        return packedArguments;
+    }
+
+    @Override
+    public String toString() {
+        return "PreparedRequest{"
+                + "method='"
+                + method
+                + '\''
+                + ", arguments="
+                + packedArguments
+                + '}';
+    }
+}
@@ -2,12 +2,14 @@ package message;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 
 import java.util.ArrayList;
+import java.util.Objects;
 
 /**
  * Defines a request (either made by client or server) Requests are expected to be blocking!
@@ -15,6 +17,10 @@ import java.util.ArrayList;
  *
  * <p>Format is defined as: * type as Integer * id as Integer * method as String * arguments as
  * Array
+ *
+ * <p>Incoming requests keep their arguments as raw msgpack, which is decoded only when it is
+ * accessed. Typed accessors such as {@link #getLong(int)} decode only the requested argument, while
+ * {@link #getArguments()} decodes all of them
  */
 @JsonFormat(shape = JsonFormat.Shape.ARRAY)
 @JsonPropertyOrder({"type", "id", "method", "arguments"})
@@ -22,13 +28,50 @@ import java.util.ArrayList;
 public final class RequestMessage implements IdentifiableMessage {
 
     private final String method;
-    private final ArrayList<Object> arguments;
+    private final byte[] packedMethod;
+    private final byte[] template;
+    private final MessageArguments arguments;
     private final int id;
 
     private RequestMessage(Builder builder) {
         this.method = builder.method;
+        this.packedMethod = builder.packedMethod;
+        this.template = null;
         this.id = builder.id;
-        this.arguments = new ArrayList<>(builder.arguments);
+        this.arguments =
+                builder.packedArguments != null
+                        ? new MessageArguments(builder.packedArguments)
+                        : new MessageArguments(new ArrayList<>(builder.arguments));
+    }
+
+    /**
+     * Creates a new {@link RequestMessage} with raw arguments, which are decoded lazily
+     *
+     * @param id id of the request
+     * @param method name of the method
+     * @param packedArguments raw msgpack array of arguments
+     */
+    RequestMessage(int id, String method, MessagePackValue packedArguments) {
+        this.method = method;
+        this.packedMethod = null;
+        this.template = null;
+        this.id = id;
+        this.arguments = new MessageArguments(packedArguments);
+    }
+
+    /**
+     * Creates a new {@link RequestMessage} which is written out from the template of a {@link
+     * PreparedRequest}
+     *
+     * @param id id of the request
+     * @param preparedRequest request holding the template
+     */
+    RequestMessage(int id, PreparedRequest preparedRequest) {
+        this.method = preparedRequest.getMethod();
+        this.packedMethod = null;
+        this.template = preparedRequest.template();
+        this.id = id;
+        this.arguments = new MessageArguments(preparedRequest.packedArguments());
     }
 
     @JsonProperty("method")
@@ -36,9 +79,161 @@ public final class RequestMessage implements IdentifiableMessage {
         return method;
     }
 
+    /**
+     * Gets all arguments. For incoming messages this decodes all arguments on first call
+     *
+     * @return list of all arguments
+     */
     @JsonProperty("arguments")
     public ArrayList<Object> getArguments() {
-        return arguments;
+        return arguments.toList();
+    }
+
+    /**
+     * Number of arguments. For incoming messages this does not decode any argument
+     *
+     * @return number of arguments
+     */
+    public int argCount() {
+        return arguments.count();
+    }
+
+    /**
+     * Checks whether argument at given index is nil (null)
+     *
+     * @param index index of the argument
+     * @return true if argument is nil
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     */
+    public boolean isNil(int index) {
+        return arguments.isNil(index);
+    }
+
+    /**
+     * Gets argument at given index as a generic object. For incoming messages only this argument
+     * is decoded
+     *
+     * @param index index of the argument
+     * @return argument at given index
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     */
+    public Object getArgument(int index) {
+        return arguments.get(index);
+    }
+
+    /**
+     * Gets argument at given index as a long. For incoming messages only this argument is decoded
+     *
+     * @param index index of the argument
+     * @return argument at given index
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalStateException if argument is not an integer
+     */
+    public long getLong(int index) {
+        return arguments.getLong(index);
+    }
+
+    /**
+     * Gets argument at given index as an int. For incoming messages only this argument is decoded
+     *
+     * @param index index of the argument
+     * @return argument at given index
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalStateException if argument is not an integer
+     */
+    public int getInt(int index) {
+        return arguments.getInt(index);
+    }
+
+    /**
+     * Gets argument at given index as a double. For incoming messages only this argument is
+     * decoded
+     *
+     * @param index index of the argument
+     * @return argument at given index
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalStateException if argument is not a number
+     */
+    public double getDouble(int index) {
+        return arguments.getDouble(index);
+    }
+
+    /**
+     * Gets argument at given index as a boolean. For incoming messages only this argument is
+     * decoded
+     *
+     * @param index index of the argument
+     * @return argument at given index
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalStateException if argument is not a boolean
+     */
+    public boolean getBoolean(int index) {
+        return arguments.getBoolean(index);
+    }
+
+    /**
+     * Gets argument at given index as a string. For incoming messages only this argument is
+     * decoded
+     *
+     * @param index index of the argument
+     * @return argument at given index
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalStateException if argument is not a string
+     */
+    public String getString(int index) {
+        return arguments.getString(index);
+    }
+
+    /**
+     * Gets argument at given index as an extension holding an integer, such as a handle of a
+     * Neovim buffer, window or tabpage. For incoming messages only this argument is decoded and no
+     * object is created for it
+     *
+     * @param index index of the argument
+     * @param type expected extension type
+     * @return integer held by the argument
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalStateException if argument is not an extension of given type holding an
+     *     integer
+     */
+    public long getExtensionLong(int index, byte type) {
+        return arguments.getExtensionLong(index, type);
+    }
+
+    /**
+     * Binds argument at given index to given type. For incoming messages it is bound straight from
+     * raw msgpack, using {@link com.fasterxml.jackson.databind.ObjectMapper} of the listener
+     *
+     * @param index index of the argument
+     * @param type type to bind to
+     * @return argument at given index bound to given type
+     * @throws IndexOutOfBoundsException if index is out of bounds
+     * @throws IllegalArgumentException if argument can not be bound to given type
+     */
+    public <T> T bind(int index, Class<T> type) {
+        return arguments.bind(index, type);
+    }
+
+    /**
+     * Gets raw arguments of incoming messages, as well as of requests built from already encoded
+     * arguments
+     *
+     * @return {@link MessagePackValue} holding raw arguments, or null if arguments were not
+     *     encoded
+     */
+    @JsonIgnore
+    public MessagePackValue getPackedArguments() {
+        return arguments.packed();
+    }
+
+    // encoded method name, if request was built with a MethodName
+    byte[] getPackedMethod() {
+        return packedMethod;
+    }
+
+    // whole encoded request with a placeholder id, if request was built from a PreparedRequest
+    byte[] getTemplate() {
+        return template;
     }
 
     @Override
@@ -63,6 +258,8 @@ public final class RequestMessage implements IdentifiableMessage {
     public static class Builder {
         private final String method;
         private final ArrayList<Object> arguments;
+        private final byte[] packedMethod;
+        private final MessagePackValue packedArguments;
         private int id;
 
         /**
@@ -88,6 +285,26 @@ public final class RequestMessage implements IdentifiableMessage {
                 @JsonProperty("arguments") ArrayList<?> arguments) {
             this.method = method;
             this.arguments = new ArrayList<>(arguments);
+            this.packedMethod = null;
+            this.packedArguments = null;
+        }
+
+        /**
+         * Prepares new builder for {@link RequestMessage} with an already encoded method name and
+         * already encoded arguments, which are written out as they are No more arguments may be
+         * added
+         *
+         * @param method encoded name of the method
+         * @param packedArguments raw msgpack array of arguments
+         * @throws NullPointerException if any parameter is null
+         */
+        public Builder(MethodName method, MessagePackValue packedArguments) {
+            Objects.requireNonNull(method, "method may not be null");
+            Objects.requireNonNull(packedArguments, "packedArguments may not be null");
+            this.method = method.getName();
+            this.arguments = new ArrayList<>();
+            this.packedMethod = method.packed();
+            this.packedArguments = packedArguments;
         }
 
         /**
@@ -105,8 +322,10 @@ public final class RequestMessage implements IdentifiableMessage {
          * Adds all arguments provided
          *
          * @param arguments argument list to add
+         * @throws IllegalStateException if arguments are already packed
          */
         public Builder addArguments(ArrayList<?> arguments) {
+            checkNotPacked();
             this.arguments.addAll(arguments);
             return this;
         }
@@ -115,8 +334,10 @@ public final class RequestMessage implements IdentifiableMessage {
          * Adds a single argument
          *
          * @param argument argument to add
+         * @throws IllegalStateException if arguments are already packed
          */
         public Builder addArgument(Object argument) {
+            checkNotPacked();
             this.arguments.add(argument);
             return this;
         }
@@ -129,6 +350,12 @@ public final class RequestMessage implements IdentifiableMessage {
         public RequestMessage build() {
             return new RequestMessage(this);
         }
+
+        private void checkNotPacked() {
+            if (packedArguments != null) {
+                throw new IllegalStateException("Arguments are already packed");
+            }
+        }
     }
 
     @Override
@@ -2,6 +2,7 @@ package message;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
@@ -11,6 +12,10 @@ import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
  * Defines a response
  *
  * <p>Format is defined as: * type as Integer * id as Integer * error as RpcError * result
+ *
+ * <p>Incoming responses keep their result as raw msgpack, which is decoded only when it is
+ * accessed, either generically using {@link #getResult()} or bound to a specific type using {@link
+ * #bindResult(Class)}
  */
 @JsonFormat(shape = JsonFormat.Shape.ARRAY)
 @JsonPropertyOrder({"type", "id", "error", "result"})
@@ -19,12 +24,26 @@ public final class ResponseMessage implements IdentifiableMessage {
 
     private final int id;
     private final RpcError error;
-    private final Object result;
+    private final MessagePackValue packedResult;
+    private volatile Object result;
 
     private ResponseMessage(Builder builder) {
         this(builder.id, builder.error, builder.result);
     }
 
+    /**
+     * Creates a new {@link ResponseMessage} with raw result, which is decoded lazily
+     *
+     * @param id response id - it should match id of request
+     * @param error error if present
+     * @param packedResult raw msgpack result
+     */
+    ResponseMessage(int id, RpcError error, MessagePackValue packedResult) {
+        this.id = id;
+        this.error = error;
+        this.packedResult = packedResult;
+    }
+
     /**
      * Creates a new {@link ResponseMessage}
      *
@@ -35,6 +54,7 @@ public final class ResponseMessage implements IdentifiableMessage {
     public ResponseMessage(int id, RpcError error, Object result) {
         this.id = id;
         this.error = error;
+        this.packedResult = null;
         this.result = result;
     }
 
@@ -43,9 +63,45 @@ public final class ResponseMessage implements IdentifiableMessage {
         return error;
     }
 
+    /**
+     * Gets the result. For incoming messages this decodes the result on first call
+     *
+     * @return result of the response
+     */
     @JsonProperty("result")
     public Object getResult() {
-        return result;
+        var value = result;
+        if (value == null && packedResult != null) {
+            value = packedResult.decode();
+            result = value;
+        }
+        return value;
+    }
+
+    /**
+     * Binds the result to given type. For incoming messages it is bound straight from raw msgpack,
+     * using {@link com.fasterxml.jackson.databind.ObjectMapper} of the listener
+     *
+     * @param type type to bind to
+     * @return result bound to given type
+     * @throws IllegalArgumentException if result can not be bound to given type
+     */
+    public <T> T bindResult(Class<T> type) {
+        if (packedResult != null) {
+            return packedResult.bind(type);
+        }
+        return MessagePackValue.convert(result, type);
+    }
+
+    /**
+     * Gets raw result of incoming messages
+     *
+     * @return {@link MessagePackValue} holding raw result, or null if this message was not decoded
+     *     from raw msgpack
+     */
+    @JsonIgnore
+    public MessagePackValue getPackedResult() {
+        return packedResult;
     }
 
     @Override
@@ -151,6 +207,13 @@ public final class ResponseMessage implements IdentifiableMessage {
 
     @Override
     public String toString() {
-        return "ResponseMessage{" + "id=" + id + ", error=" + error + ", result=" + result + '}';
+        return "ResponseMessage{"
+                + "id="
+                + id
+                + ", error="
+                + error
+                + ", result="
+                + getResult()
+                + '}';
     }
 }
@@ -20,6 +20,16 @@ public final class RpcError {
     public static final class Type {
         public static final Type EXCEPTION = new Type(0);
         public static final Type VALIDATION = new Type(1);
+        /**
+         * Not sent by neovim - used locally when no response arrived in time Negative, so that it
+         * can not clash with error types sent by the remote side
+         */
+        public static final Type TIMEOUT = new Type(-1);
+        /**
+         * Not sent by neovim - used locally when connection was closed before response arrived
+         * Negative for the same reason as {@link #TIMEOUT}
+         */
+        public static final Type CLOSED = new Type(-2);
 
         private final int id;
 
@@ -34,6 +44,10 @@ public final class RpcError {
                     return EXCEPTION;
                 case 1:
                     return VALIDATION;
+                case -1:
+                    return TIMEOUT;
+                case -2:
+                    return CLOSED;
                 default:
                     return new Type(value);
             }
@@ -87,6 +101,14 @@ public final class RpcError {
         return new RpcError(Type.VALIDATION, message);
     }
 
+    public static RpcError timeout(String message) {
+        return new RpcError(Type.TIMEOUT, message);
+    }
+
+    public static RpcError closed(String message) {
+        return new RpcError(Type.CLOSED, message);
+    }
+
     public static RpcError other(int typeId, String message) {
         return new RpcError(Type.fromInt(typeId), message);
     }
@@ -100,6 +122,10 @@ public final class RpcError {
             return "Exception";
         } else if (type.id == Type.VALIDATION.id) {
             return "Validation";
+        } else if (type.id == Type.TIMEOUT.id) {
+            return "Timeout";
+        } else if (type.id == Type.CLOSED.id) {
+            return "Closed";
         } else {
             return type.toString();
         }
@@ -0,0 +1,74 @@
+package message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Small cache of strings keyed by their raw UTF-8 bytes, used for method and notification names
+ *
+ * <p>Names repeat constantly in msgpack-rpc traffic, so instead of decoding each of them, the
+ * payload bytes are hashed and compared against names seen before, and the same {@link String}
+ * instance is returned for them. Besides saving the allocation, the returned string already has
+ * its hash code computed, making lookups keyed by name (such as routing of requests) cheap
+ *
+ * <p>Cache is bounded - once full, or for long strings, values are simply decoded
+ *
+ * <p>Not thread safe, it is meant to be owned by a single reader, such as {@link MessageDecoder}
+ * or a {@link NotificationDecoder} matching names of its own - strings are read through it using
+ * {@link MessagePackReader#readString(StringCache)}
+ */
+public final class StringCache {
+    static final int MAX_ENTRIES = 1024;
+    static final int MAX_LENGTH = 64;
+
+    // open addressing, kept at most half full so that probing always finds an empty slot
+    private final byte[][] keys = new byte[MAX_ENTRIES * 2][];
+    private final int[] hashes = new int[MAX_ENTRIES * 2];
+    private final String[] values = new String[MAX_ENTRIES * 2];
+    private final int mask = MAX_ENTRIES * 2 - 1;
+    private int size;
+
+    /** Creates a new empty {@link StringCache} */
+    public StringCache() {}
+
+    /**
+     * Returns the string encoded by given UTF-8 bytes
+     *
+     * @param buffer array holding the bytes
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return cached instance if the same bytes were seen before, otherwise a newly decoded one
+     */
+    public String get(byte[] buffer, int offset, int length) {
+        if (length > MAX_LENGTH) {
+            return new String(buffer, offset, length, StandardCharsets.UTF_8);
+        }
+        var hash = hash(buffer, offset, length);
+        var slot = hash & mask;
+        byte[] key;
+        while ((key = keys[slot]) != null) {
+            if (hashes[slot] == hash
+                    && Arrays.equals(key, 0, key.length, buffer, offset, offset + length)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        var value = new String(buffer, offset, length, StandardCharsets.UTF_8);
+        if (size < MAX_ENTRIES) {
+            keys[slot] = Arrays.copyOfRange(buffer, offset, offset + length);
+            hashes[slot] = hash;
+            values[slot] = value;
+            size++;
+        }
+        return value;
+    }
+
+    private static int hash(byte[] buffer, int offset, int length) {
+        var hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        // spread higher bits, since only the lower ones pick the slot
+        return hash ^ (hash >>> 16);
+    }
+}
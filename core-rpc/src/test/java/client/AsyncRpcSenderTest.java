@@ -0,0 +1,400 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.Message;
+import message.NotificationMessage;
+import message.RequestMessage;
+import message.ResponseMessage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncRpcSenderTest {
+
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    public void setUp() {
+        var factory = new MessagePackFactory();
+        factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        objectMapper = new ObjectMapper(factory);
+    }
+
+    @Test
+    public void singleWriterKeepsOrderAndNeverWritesConcurrently() throws Exception {
+        // Given a multi-threaded executor and a small queue, so that senders have to wait
+        var executorService = Executors.newFixedThreadPool(4);
+        var outputStream = new ConcurrencyCheckingOutputStream();
+        var sender =
+                new AsyncRpcSender(
+                        executorService, objectMapper, AsyncRpcSender.SendMode.SINGLE_WRITER, 8);
+        sender.attach(outputStream);
+
+        // When many threads send at once
+        var producers = 4;
+        var messagesPerProducer = 2000;
+        var producerService = Executors.newFixedThreadPool(producers);
+        var latch = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            var producer = p;
+            producerService.submit(
+                    () -> {
+                        for (int i = 0; i < messagesPerProducer; i++) {
+                            sender.send(
+                                    new NotificationMessage.Builder("p" + producer)
+                                            .addArgument(i)
+                                            .build());
+                        }
+                        latch.countDown();
+                    });
+        }
+        if (!latch.await(60, TimeUnit.SECONDS)) {
+            fail("Timeout");
+        }
+        producerService.shutdown();
+        awaitWritten(outputStream, producers * messagesPerProducer);
+        sender.stop();
+
+        // Then writes never overlap and messages of each producer come in order
+        assertFalse(outputStream.overlapped.get());
+        var reader =
+                new StreamingMessageReader(
+                        new ByteArrayInputStream(outputStream.bytes.toByteArray()), objectMapper);
+        var nextExpected = new HashMap<String, Integer>();
+        for (int i = 0; i < producers * messagesPerProducer; i++) {
+            var notification = assertInstanceOf(NotificationMessage.class, reader.read());
+            var expected = nextExpected.getOrDefault(notification.getName(), 0);
+            assertEquals(expected, notification.getInt(0));
+            nextExpected.put(notification.getName(), expected + 1);
+        }
+    }
+
+    @Test
+    public void singleWriterCoalescesWrites() throws Exception {
+        // Given a stream which blocks the first write until the whole burst is queued
+        var executorService = Executors.newFixedThreadPool(2);
+        var burstQueued = new CountDownLatch(1);
+        var outputStream =
+                new ConcurrencyCheckingOutputStream() {
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        try {
+                            burstQueued.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        super.write(b, off, len);
+                    }
+                };
+        var sender =
+                new AsyncRpcSender(
+                        executorService, objectMapper, AsyncRpcSender.SendMode.SINGLE_WRITER);
+        sender.attach(outputStream);
+
+        // When a burst of notifications is sent
+        var messages = 500;
+        for (int i = 0; i < messages; i++) {
+            sender.send(new NotificationMessage.Builder("burst").addArgument(i).build());
+        }
+        burstQueued.countDown();
+        awaitWritten(outputStream, messages);
+        sender.stop();
+
+        // Then only a few writes and flushes are done
+        assertTrue(outputStream.writes.get() <= 3, "Writes: " + outputStream.writes.get());
+        assertTrue(outputStream.flushes.get() <= 3, "Flushes: " + outputStream.flushes.get());
+    }
+
+    @Test
+    public void singleWriterWritesPriorityMessagesAheadOfQueuedOnes() throws Exception {
+        // Given a stream which blocks the first write until everything is queued
+        var executorService = Executors.newSingleThreadExecutor();
+        var queued = new CountDownLatch(1);
+        var outputStream =
+                new ConcurrencyCheckingOutputStream() {
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        try {
+                            queued.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        super.write(b, off, len);
+                    }
+                };
+        var sender =
+                new AsyncRpcSender(
+                        executorService, objectMapper, AsyncRpcSender.SendMode.SINGLE_WRITER);
+        sender.attach(outputStream);
+
+        // When a response is sent with priority after a burst of notifications
+        sender.send(new NotificationMessage.Builder("first").build());
+        Thread.sleep(50);
+        for (int i = 0; i < 10; i++) {
+            sender.send(new NotificationMessage.Builder("queued").addArgument(i).build());
+        }
+        sender.sendPriority(new ResponseMessage.Builder("result").withId(1).build());
+        queued.countDown();
+        awaitWritten(outputStream, 12);
+        sender.stop();
+
+        // Then it is written right after the message being written, ahead of queued ones
+        var reader =
+                new StreamingMessageReader(
+                        new ByteArrayInputStream(outputStream.bytes.toByteArray()), objectMapper);
+        assertEquals(
+                "first", assertInstanceOf(NotificationMessage.class, reader.read()).getName());
+        assertEquals(1, assertInstanceOf(ResponseMessage.class, reader.read()).getId());
+        for (int i = 0; i < 10; i++) {
+            var notification = assertInstanceOf(NotificationMessage.class, reader.read());
+            assertEquals(i, notification.getInt(0));
+        }
+    }
+
+    @Test
+    public void singleWriterFlushesRightAwayWhenIdle() throws Exception {
+        var executorService = Executors.newSingleThreadExecutor();
+        var outputStream = new ConcurrencyCheckingOutputStream();
+        var sender =
+                new AsyncRpcSender(
+                        executorService, objectMapper, AsyncRpcSender.SendMode.SINGLE_WRITER);
+        sender.attach(outputStream);
+
+        // A single message is flushed without waiting for more
+        sender.send(new NotificationMessage.Builder("single").build());
+        awaitWritten(outputStream, 1);
+        sender.stop();
+        assertEquals(1, outputStream.flushes.get());
+    }
+
+    @Test
+    public void singleWriterDoesNotWaitForItselfWhenSendingFromItsExecutor() throws Exception {
+        // Given a single threaded executor and a small queue
+        var executorService = Executors.newSingleThreadExecutor();
+        var outputStream = new ConcurrencyCheckingOutputStream();
+        var sender =
+                new AsyncRpcSender(
+                        executorService, objectMapper, AsyncRpcSender.SendMode.SINGLE_WRITER, 4);
+        sender.attach(outputStream);
+
+        // When a task of that executor sends more than the queue holds
+        var messages = 100;
+        var sent =
+                executorService.submit(
+                        () -> {
+                            for (int i = 0; i < messages; i++) {
+                                sender.send(
+                                        new NotificationMessage.Builder("own")
+                                                .addArgument(i)
+                                                .build());
+                            }
+                        });
+
+        // Then it drains the queue itself, instead of waiting for the drain queued behind it
+        sent.get(60, TimeUnit.SECONDS);
+        awaitWritten(outputStream, messages);
+        sender.stop();
+        assertFalse(outputStream.overlapped.get());
+    }
+
+    @Test
+    public void singleWriterDropsQueuedMessagesWhenDrainIsRejected() throws Exception {
+        // Given a sender whose executor was shut down
+        var executorService = Executors.newSingleThreadExecutor();
+        var outputStream = new ConcurrencyCheckingOutputStream();
+        var sender =
+                new AsyncRpcSender(
+                        executorService, objectMapper, AsyncRpcSender.SendMode.SINGLE_WRITER);
+        sender.attach(outputStream);
+        executorService.shutdown();
+
+        // When messages are sent
+        // Then each send fails, instead of waiting for a drain that is never scheduled
+        for (int i = 0; i < 3; i++) {
+            assertThrows(
+                    RejectedExecutionException.class,
+                    () -> sender.send(new NotificationMessage.Builder("rejected").build()));
+        }
+        assertEquals(0, outputStream.writes.get());
+    }
+
+    @Test
+    public void steadyStateSendingDoesNotAllocate() {
+        var threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean);
+        var allocationCounter = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocationCounter.isThreadAllocatedMemorySupported());
+        allocationCounter.setThreadAllocatedMemoryEnabled(true);
+
+        // Given a sender draining on the calling thread, and prepared messages
+        var sender =
+                new AsyncRpcSender(
+                        new CallingThreadExecutorService(),
+                        objectMapper,
+                        AsyncRpcSender.SendMode.SINGLE_WRITER);
+        sender.attach(OutputStream.nullOutputStream());
+        var arguments = new ArrayList<>();
+        arguments.add(1);
+        arguments.add("text \u010d");
+        arguments.add(List.of(1.5, true));
+        List<Message> messages =
+                List.of(
+                        new RequestMessage.Builder("nvim_buf_set_lines")
+                                .addArguments(arguments)
+                                .withId(1)
+                                .build(),
+                        new NotificationMessage.Builder("notification")
+                                .addArguments(arguments)
+                                .build());
+
+        // When sending is warmed up
+        for (int i = 0; i < 20000; i++) {
+            sender.send(messages.get(i & 1));
+        }
+
+        // Then sending does not allocate anymore
+        var threadId = Thread.currentThread().getId();
+        var before = allocationCounter.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10000; i++) {
+            sender.send(messages.get(i & 1));
+        }
+        var allocated = allocationCounter.getThreadAllocatedBytes(threadId) - before;
+        // allow for a few bytes of measurement noise, far below a single byte per message
+        assertTrue(allocated < 1024, "Allocated bytes: " + allocated);
+    }
+
+    @Test
+    public void singleWriterRequiresAttach() {
+        var sender =
+                new AsyncRpcSender(
+                        Executors.newSingleThreadExecutor(),
+                        objectMapper,
+                        AsyncRpcSender.SendMode.SINGLE_WRITER);
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> sender.send(new NotificationMessage.Builder("test").build()));
+        sender.stop();
+    }
+
+    @Test
+    public void noNullSendMode() {
+        assertThrows(
+                NullPointerException.class,
+                () -> new AsyncRpcSender(Executors.newSingleThreadExecutor(), objectMapper, null));
+    }
+
+    private void awaitWritten(ConcurrencyCheckingOutputStream outputStream, int messages)
+            throws Exception {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (true) {
+            byte[] bytes;
+            synchronized (outputStream) {
+                bytes = outputStream.bytes.toByteArray();
+            }
+            var count = 0;
+            var reader = new StreamingMessageReader(new ByteArrayInputStream(bytes), objectMapper);
+            try {
+                while (reader.read() != null) {
+                    count++;
+                }
+            } catch (EOFException ignored) {
+                // partially written message
+            }
+            if (count == messages) {
+                return;
+            }
+            assertTrue(System.nanoTime() < deadline, "Timeout, written: " + count);
+            Thread.sleep(10);
+        }
+    }
+
+    private static final class CallingThreadExecutorService extends AbstractExecutorService {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {}
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    private static class ConcurrencyCheckingOutputStream extends OutputStream {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final AtomicInteger writers = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        final AtomicInteger writes = new AtomicInteger();
+        final AtomicInteger flushes = new AtomicInteger();
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes.incrementAndGet();
+            if (writers.incrementAndGet() > 1) {
+                overlapped.set(true);
+            }
+            synchronized (this) {
+                bytes.write(b, off, len);
+            }
+            writers.decrementAndGet();
+        }
+
+        @Override
+        public void flush() {
+            flushes.incrementAndGet();
+        }
+    }
+}
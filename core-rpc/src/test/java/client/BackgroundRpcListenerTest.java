@@ -1,8 +1,12 @@
 package client;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
@@ -17,19 +21,29 @@ import message.MessageType;
 import message.NotificationMessage;
 import message.RequestMessage;
 import message.ResponseMessage;
+import message.RpcError;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 @ExtendWith(MockitoExtension.class)
 public class BackgroundRpcListenerTest {
@@ -42,7 +56,12 @@ public class BackgroundRpcListenerTest {
 
     @Mock InputStream inputStream;
 
-    @InjectMocks BackgroundRpcListener backgroundRpcListener;
+    BackgroundRpcListener backgroundRpcListener;
+
+    @BeforeEach
+    public void setUp() {
+        backgroundRpcListener = new BackgroundRpcListener(executorService, objectMapper);
+    }
 
     @Test
     public void testStart() throws IOException {
@@ -102,6 +121,33 @@ public class BackgroundRpcListenerTest {
         verify(responseCallback).responseReceived(responseMessage.getId(), responseMessage);
     }
 
+    @Test
+    public void failsPendingResponsesOnEndOfStream() throws IOException {
+        // Given a listener waiting for a response which never arrives
+        prepareSequentialExecutorService();
+        backgroundRpcListener =
+                new BackgroundRpcListener(
+                        executorService, objectMapper, BackgroundRpcListener.DecodeMode.STREAMING);
+        var responseCallback = Mockito.mock(RpcListener.ResponseCallback.class);
+        backgroundRpcListener.listenForResponse(1, responseCallback);
+
+        // When stream ends
+        backgroundRpcListener.start(new ByteArrayInputStream(new byte[0]));
+
+        // Then callback is notified that the connection closed
+        verify(responseCallback)
+                .responseReceived(
+                        eq(1),
+                        argThat(response -> response.getError().getType() == RpcError.Type.CLOSED));
+        // And callbacks registered afterwards fail right away
+        var lateCallback = Mockito.mock(RpcListener.ResponseCallback.class);
+        backgroundRpcListener.listenForResponse(2, lateCallback);
+        verify(lateCallback)
+                .responseReceived(
+                        eq(2),
+                        argThat(response -> response.getError().getType() == RpcError.Type.CLOSED));
+    }
+
     @Test
     public void testResponseListenerWithoutStart() {
         // No stubbings required since no methods are called
@@ -192,7 +238,8 @@ public class BackgroundRpcListenerTest {
     public void exceptionOnStartIsThrown() throws IOException {
         // Given an error in reading from stream
         prepareSequentialExecutorService();
-        given(objectMapper.reader()).willThrow(new IOException());
+        given(objectMapper.reader()).willReturn(objectReader);
+        given(objectReader.readTree(inputStream)).willThrow(new IOException());
 
         // When listener is started, app should crash
         assertThrows(
@@ -202,6 +249,220 @@ public class BackgroundRpcListenerTest {
                 });
     }
 
+    @Test
+    public void testStreamingDecodeMode() throws IOException {
+        // Given a listener in streaming mode and a stream with real msgpack messages
+        prepareSequentialExecutorService();
+        var msgPacker = new ObjectMapper(new MessagePackFactory());
+        var bytes = new ByteArrayOutputStream();
+        var requestMessage = new RequestMessage.Builder("request").withId(1).build();
+        var responseMessage = new ResponseMessage.Builder("result").withId(2).build();
+        var notificationMessage = new NotificationMessage.Builder("notification").build();
+        for (var message : List.of(requestMessage, responseMessage, notificationMessage)) {
+            bytes.write(msgPacker.writeValueAsBytes(message));
+        }
+        backgroundRpcListener =
+                new BackgroundRpcListener(
+                        executorService, objectMapper, BackgroundRpcListener.DecodeMode.STREAMING);
+        var requestCallback = Mockito.mock(RpcListener.RequestCallback.class);
+        var responseCallback = Mockito.mock(RpcListener.ResponseCallback.class);
+        var notificationCallback = Mockito.mock(RpcListener.NotificationCallback.class);
+        backgroundRpcListener.listenForRequests(requestCallback);
+        backgroundRpcListener.listenForResponse(2, responseCallback);
+        backgroundRpcListener.listenForNotifications(notificationCallback);
+
+        // When started, messages should be bound without using the object mapper
+        backgroundRpcListener.start(new ByteArrayInputStream(bytes.toByteArray()));
+
+        verify(requestCallback)
+                .requestReceived(argThat(request -> request.getMethod().equals("request")));
+        verify(responseCallback)
+                .responseReceived(eq(2), argThat(response -> "result".equals(response.getResult())));
+        verify(notificationCallback)
+                .notificationReceived(
+                        argThat(notification -> notification.getName().equals("notification")));
+        verifyNoInteractions(objectMapper);
+    }
+
+    @Test
+    public void notificationDecodersReadFramesDirectly() throws IOException {
+        // Given a listener in streaming mode with a decoder for "redraw" notifications
+        prepareSequentialExecutorService();
+        var msgPacker = new ObjectMapper(new MessagePackFactory());
+        var bytes = new ByteArrayOutputStream();
+        var redraw = new NotificationMessage.Builder("redraw").addArgument(List.of(1, 2));
+        bytes.write(msgPacker.writeValueAsBytes(redraw.build()));
+        bytes.write(
+                msgPacker.writeValueAsBytes(new NotificationMessage.Builder("other").build()));
+        var decoded = new ArrayList<Object>();
+        backgroundRpcListener =
+                new BackgroundRpcListener.Builder(executorService, objectMapper)
+                        .withDecodeMode(BackgroundRpcListener.DecodeMode.STREAMING)
+                        .withNotificationDecoder(
+                                "redraw", arguments -> decoded.add(arguments.readValue()))
+                        .build();
+        var notificationCallback = Mockito.mock(RpcListener.NotificationCallback.class);
+        backgroundRpcListener.listenForNotifications(notificationCallback);
+
+        // When started
+        backgroundRpcListener.start(new ByteArrayInputStream(bytes.toByteArray()));
+
+        // Then "redraw" goes only to its decoder, while other notifications reach the callback
+        assertEquals(List.of(List.of(List.of(1, 2))), decoded);
+        verify(notificationCallback)
+                .notificationReceived(
+                        argThat(notification -> notification.getName().equals("other")));
+        verifyNoMoreInteractions(notificationCallback);
+    }
+
+    @Test
+    public void notificationDecodersNeedStreamingMode() {
+        var builder =
+                new BackgroundRpcListener.Builder(executorService, objectMapper)
+                        .withNotificationDecoder("redraw", arguments -> {});
+        assertThrows(IllegalStateException.class, builder::build);
+        assertThrows(
+                NullPointerException.class, () -> builder.withNotificationDecoder("redraw", null));
+    }
+
+    @Test
+    public void forgottenResponsesDropTheirTimeouts() {
+        // Given a response waiting with a timeout
+        var timeoutWheel = new TimeoutWheel(Duration.ofMillis(1), 8);
+        backgroundRpcListener =
+                new BackgroundRpcListener.Builder(executorService, objectMapper)
+                        .withTimeoutWheel(timeoutWheel)
+                        .build();
+        var responseCallback = Mockito.mock(RpcListener.ResponseCallback.class);
+        backgroundRpcListener.listenForResponse(1, responseCallback, Duration.ofSeconds(30));
+        assertEquals(1, timeoutWheel.size());
+
+        // When it is forgotten
+        backgroundRpcListener.forgetResponse(1);
+
+        // Then neither the callback nor its timeout are kept
+        assertEquals(0, timeoutWheel.size());
+        verifyNoInteractions(responseCallback);
+        timeoutWheel.stop();
+    }
+
+    @Test
+    public void testResponseTimeout() throws InterruptedException {
+        // Given a listener with a short default timeout and its own timeout wheel
+        var timeoutWheel = new TimeoutWheel(Duration.ofMillis(1), 8);
+        backgroundRpcListener =
+                new BackgroundRpcListener.Builder(executorService, objectMapper)
+                        .withDefaultResponseTimeout(Duration.ofMillis(20))
+                        .withTimeoutWheel(timeoutWheel)
+                        .build();
+        var multiLatch = new MultiLatch(2);
+        var timedOut = new AtomicReference<ResponseMessage>();
+        var neverTimedOut = new AtomicReference<ResponseMessage>();
+        RpcListener.ResponseCallback responseCallback =
+                (id, response) -> {
+                    timedOut.set(response);
+                    multiLatch.countDown();
+                };
+
+        // When responses never arrive
+        backgroundRpcListener.listenForResponse(1, responseCallback);
+        backgroundRpcListener.listenForResponse(
+                2, (id, response) -> neverTimedOut.set(response), Duration.ZERO);
+        backgroundRpcListener.listenForResponse(
+                3, (id, response) -> multiLatch.countDown(), Duration.ofMillis(5));
+
+        // Then callbacks with timeouts are notified with timeout errors
+        multiLatch.await();
+        multiLatch.await();
+        assertEquals(1, timedOut.get().getId());
+        assertEquals(RpcError.Type.TIMEOUT, timedOut.get().getError().getType());
+        // And callback without a timeout is not notified at all
+        assertNull(neverTimedOut.get());
+        timeoutWheel.stop();
+    }
+
+    @Test
+    public void responseAfterTimeoutIsIgnored() throws IOException, InterruptedException {
+        // Given a response callback which already timed out
+        prepareSequentialExecutorService();
+        var timeoutWheel = new TimeoutWheel(Duration.ofMillis(1), 8);
+        backgroundRpcListener =
+                new BackgroundRpcListener.Builder(executorService, objectMapper)
+                        .withDecodeMode(BackgroundRpcListener.DecodeMode.STREAMING)
+                        .withTimeoutWheel(timeoutWheel)
+                        .build();
+        var multiLatch = new MultiLatch(1);
+        var responseCallback = Mockito.mock(RpcListener.ResponseCallback.class);
+        doAnswer(
+                        invocation -> {
+                            multiLatch.countDown();
+                            return null;
+                        })
+                .when(responseCallback)
+                .responseReceived(anyInt(), any());
+        backgroundRpcListener.listenForResponse(4, responseCallback, Duration.ofMillis(2));
+        multiLatch.await();
+
+        // When the response arrives afterwards
+        var bytes =
+                new ObjectMapper(new MessagePackFactory())
+                        .writeValueAsBytes(new ResponseMessage.Builder("late").withId(4).build());
+        backgroundRpcListener.start(new ByteArrayInputStream(bytes));
+
+        // Then callback is notified only once, with the timeout
+        verify(responseCallback)
+                .responseReceived(
+                        eq(4),
+                        argThat(response -> response.getError().getType() == RpcError.Type.TIMEOUT));
+        verifyNoMoreInteractions(responseCallback);
+        timeoutWheel.stop();
+    }
+
+    @Test
+    public void slowNotificationsDoNotDelayResponses() throws Exception {
+        // Given a listener handing notifications over to their own executor
+        var notificationExecutor = Executors.newSingleThreadExecutor();
+        var readingExecutor = Executors.newSingleThreadExecutor();
+        backgroundRpcListener =
+                new BackgroundRpcListener.Builder(readingExecutor, objectMapper)
+                        .withDecodeMode(BackgroundRpcListener.DecodeMode.STREAMING)
+                        .withNotificationDispatch(notificationExecutor, 16)
+                        .build();
+        var notificationsBlocked = new MultiLatch(1);
+        var responseReceived = new CountDownLatch(1);
+        backgroundRpcListener.listenForNotifications(
+                notification -> {
+                    try {
+                        notificationsBlocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        backgroundRpcListener.listenForResponse(2, (id, response) -> responseReceived.countDown());
+
+        // When a notification with a blocking callback comes before a response
+        var msgPacker = new ObjectMapper(new MessagePackFactory());
+        var bytes = new ByteArrayOutputStream();
+        bytes.write(msgPacker.writeValueAsBytes(new NotificationMessage.Builder("slow").build()));
+        bytes.write(msgPacker.writeValueAsBytes(new ResponseMessage.Builder("fast").withId(2).build()));
+        backgroundRpcListener.start(new ByteArrayInputStream(bytes.toByteArray()));
+
+        // Then response is still delivered
+        assertTrue(responseReceived.await(10, TimeUnit.SECONDS));
+        notificationsBlocked.countDown();
+        readingExecutor.shutdown();
+        notificationExecutor.shutdown();
+    }
+
+    @Test
+    public void noInvalidDispatchCapacity() {
+        var builder = new BackgroundRpcListener.Builder(executorService, objectMapper);
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> builder.withRequestDispatch(Executors.newSingleThreadExecutor(), 0));
+        assertThrows(NullPointerException.class, () -> builder.withNotificationDispatch(null, 1));
+    }
+
     @Test
     public void noNullExecutorService() {
         // When null executor service is passed to constructor, it throws exception
@@ -222,6 +483,16 @@ public class BackgroundRpcListenerTest {
                 });
     }
 
+    @Test
+    public void noNullDecodeMode() {
+        // When null decode mode is passed to constructor, it throws exception
+        assertThrows(
+                NullPointerException.class,
+                () -> {
+                    new BackgroundRpcListener(executorService, objectMapper, null);
+                });
+    }
+
     private ArrayNode prepareRequestNode() {
         var arrayNode = JsonNodeFactory.instance.arrayNode(4);
         arrayNode.add(MessageType.REQUEST.asInt());
@@ -0,0 +1,180 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DispatchLaneTest {
+
+    @Test
+    public void keepsOrderOnMultiThreadedExecutor() throws InterruptedException {
+        // Given a lane on a pool of threads and a small capacity
+        var executor = Executors.newFixedThreadPool(4);
+        var received = new ArrayList<Integer>();
+        var running = new AtomicInteger();
+        var overlapped = new AtomicBoolean();
+        var done = new CountDownLatch(1);
+        var messages = 10_000;
+        var lane =
+                new DispatchLane<Integer>(
+                        "Test",
+                        executor,
+                        16,
+                        message -> {
+                            if (running.incrementAndGet() > 1) {
+                                overlapped.set(true);
+                            }
+                            received.add(message);
+                            running.decrementAndGet();
+                            if (message == messages - 1) {
+                                done.countDown();
+                            }
+                        });
+
+        // When many messages are dispatched
+        for (int i = 0; i < messages; i++) {
+            lane.dispatch(i);
+        }
+
+        // Then they are handled one at a time, in order
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertFalse(overlapped.get());
+        for (int i = 0; i < messages; i++) {
+            assertEquals(i, received.get(i));
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void failingHandlerDoesNotStopLane() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var received = new CountDownLatch(1);
+        var lane =
+                new DispatchLane<String>(
+                        "Test",
+                        executor,
+                        4,
+                        message -> {
+                            if (message.equals("fail")) {
+                                throw new IllegalStateException("Failing on purpose");
+                            }
+                            received.countDown();
+                        });
+
+        lane.dispatch("fail");
+        lane.dispatch("ok");
+
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @Test
+    public void dispatchDoesNotRunHandlerOnCallingThread() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        var callingThread = Thread.currentThread();
+        List<Thread> handlerThreads = new ArrayList<>();
+        var received = new CountDownLatch(1);
+        var lane =
+                new DispatchLane<String>(
+                        "Test",
+                        executor,
+                        4,
+                        message -> {
+                            handlerThreads.add(Thread.currentThread());
+                            received.countDown();
+                        });
+
+        lane.dispatch("message");
+
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        assertFalse(handlerThreads.contains(callingThread));
+        executor.shutdown();
+    }
+
+    @Test
+    public void offerDoesNotWaitAndTellsOnceThereIsSpace() throws InterruptedException {
+        // Given a small lane, whose handler is blocked
+        var executor = Executors.newSingleThreadExecutor();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var handled = new AtomicInteger();
+        var lane =
+                new DispatchLane<Integer>(
+                        "Test",
+                        executor,
+                        1,
+                        message -> {
+                            started.countDown();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            handled.incrementAndGet();
+                        });
+        var space = new CountDownLatch(1);
+        assertTrue(lane.offer(0, () -> {}));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // When the lane fills up
+        var offered = 1;
+        while (lane.offer(offered, space::countDown)) {
+            offered++;
+        }
+
+        // Then offer fails right away and listener is called once handler makes space
+        assertFalse(space.await(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(space.await(10, TimeUnit.SECONDS));
+        assertTrue(lane.offer(offered, () -> {}));
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (handled.get() < offered + 1 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(offered + 1, handled.get());
+        executor.shutdown();
+    }
+
+    @Test
+    public void rejectedDrainDropsMessagesInsteadOfThrowing() throws InterruptedException {
+        // Given a lane whose executor was shut down
+        var executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        var handled = new AtomicInteger();
+        var lane =
+                new DispatchLane<String>("Test", executor, 1, message -> handled.incrementAndGet());
+
+        // When messages are dispatched
+        lane.dispatch("first");
+        lane.dispatch("second");
+
+        // Then they are dropped, without stopping the reading thread
+        assertTrue(lane.offer("third", () -> {}));
+        assertEquals(0, handled.get());
+    }
+
+    @Test
+    public void invalidArguments() {
+        var executor = Executors.newSingleThreadExecutor();
+        assertThrows(
+                NullPointerException.class,
+                () -> new DispatchLane<String>("Test", null, 4, message -> {}));
+        assertThrows(
+                NullPointerException.class, () -> new DispatchLane<String>("Test", executor, 4, null));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new DispatchLane<String>("Test", executor, 0, message -> {}));
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,87 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverAllValuesWithBoundedError() {
+        // Given values across the whole range
+        long previousBucket = -1;
+        for (long value = 0; value < Long.MAX_VALUE / 3 && value >= 0; value = value * 3 / 2 + 1) {
+            // When bucket is found
+            var bucket = LatencyHistogram.bucket(value);
+
+            // Then the value fits into it, buckets grow with values and error stays bounded
+            assertTrue(bucket < LatencyHistogram.BUCKETS);
+            assertTrue(bucket >= previousBucket);
+            var upperBound = LatencyHistogram.upperBound(bucket);
+            assertTrue(value <= upperBound);
+            assertTrue(upperBound - value <= value / LatencyHistogram.SUB_BUCKETS);
+            previousBucket = bucket;
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void reportsPercentiles() {
+        // Given latencies of 1 to 1000 microseconds
+        var histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        histogram.record(-5);
+
+        // Then statistics are close to exact ones
+        assertEquals(1001, histogram.getCount());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getMax());
+        assertEquals(500_000, histogram.getMean(), 500);
+        assertWithin(TimeUnit.MICROSECONDS.toNanos(500), histogram.getValueAtPercentile(50));
+        assertWithin(TimeUnit.MICROSECONDS.toNanos(990), histogram.getValueAtPercentile(99));
+        assertEquals(histogram.getMax(), histogram.getValueAtPercentile(100));
+        assertEquals(0, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void emptyHistogram() {
+        var histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(101));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(-1));
+    }
+
+    @Test
+    public void recordsFromManyThreads() throws InterruptedException {
+        var histogram = new LatencyHistogram();
+        var executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(
+                    () -> {
+                        for (int i = 0; i < 100_000; i++) {
+                            histogram.record(i);
+                        }
+                    });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(400_000, histogram.getCount());
+        assertEquals(99_999, histogram.getMax());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(
+                Math.abs(expected - actual) <= expected / LatencyHistogram.SUB_BUCKETS,
+                () -> "Expected about " + expected + ", but was " + actual);
+    }
+}
@@ -0,0 +1,32 @@
+package client;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test helper made of a sequence of single-count {@link CountDownLatch} instances
+ *
+ * <p>Each {@link #await()} call waits on the next latch in sequence and each {@link #countDown()}
+ * call releases the next latch in sequence, so every count down lets exactly one waiter through
+ */
+final class MultiLatch {
+
+    private final CountDownLatch[] latches;
+    private final AtomicInteger awaitIndex = new AtomicInteger();
+    private final AtomicInteger countDownIndex = new AtomicInteger();
+
+    MultiLatch(int count) {
+        this.latches = new CountDownLatch[count];
+        for (int i = 0; i < count; i++) {
+            latches[i] = new CountDownLatch(1);
+        }
+    }
+
+    void await() throws InterruptedException {
+        latches[awaitIndex.getAndIncrement()].await();
+    }
+
+    void countDown() {
+        latches[countDownIndex.getAndIncrement()].countDown();
+    }
+}
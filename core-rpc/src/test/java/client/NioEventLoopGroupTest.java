@@ -0,0 +1,116 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.MessagePackWriter;
+import message.RequestMessage;
+import message.ResponseMessage;
+
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class NioEventLoopGroupTest {
+
+    @Test
+    public void handsOutLoopsInTurns() {
+        var eventLoopGroup = new NioEventLoopGroup(3);
+        try {
+            var loops = eventLoopGroup.eventLoops();
+            assertEquals(3, loops.size());
+            assertNotSame(loops.get(0), loops.get(1));
+            for (int i = 0; i < 7; i++) {
+                assertSame(loops.get(i % 3), eventLoopGroup.next());
+            }
+        } finally {
+            eventLoopGroup.stop();
+        }
+    }
+
+    @Test
+    public void servesManyClientsWithFewThreads() throws Exception {
+        var factory = new MessagePackFactory();
+        factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        var objectMapper = new ObjectMapper(factory);
+        var eventLoopGroup = new NioEventLoopGroup(2);
+        var clientCount = 20;
+        var connections = new ArrayList<NioSocketRpcConnection>();
+        var peers = new ArrayList<Socket>();
+
+        try (var serverSocket = new ServerSocket(0, clientCount, InetAddress.getLoopbackAddress())) {
+            // Given many clients sharing a group of two loops
+            var clients = new ArrayList<RpcClient>();
+            for (int i = 0; i < clientCount; i++) {
+                var connection =
+                        new NioSocketRpcConnection.Builder(serverSocket.getLocalSocketAddress())
+                                .connect();
+                connections.add(connection);
+                peers.add(serverSocket.accept());
+                var client =
+                        new RpcClient.Builder()
+                                .withObjectMapper(objectMapper)
+                                .withEventLoopGroup(eventLoopGroup)
+                                .build();
+                client.attach(connection);
+                clients.add(client);
+            }
+
+            // When each of them sends a request
+            List<CompletableFuture<Integer>> futures = new ArrayList<>();
+            for (var client : clients) {
+                futures.add(client.sendAsync(new RequestMessage.Builder("index"), Integer.class));
+            }
+
+            // Then each gets its own response, even though their ids are the same
+            var writer = new MessagePackWriter(objectMapper);
+            for (int i = 0; i < clientCount; i++) {
+                var reader =
+                        new StreamingMessageReader(peers.get(i).getInputStream(), objectMapper);
+                var request = assertInstanceOf(RequestMessage.class, reader.read());
+                assertEquals(1, request.getId());
+                writer.writeMessage(new ResponseMessage.Builder(i).withId(request.getId()).build());
+                writer.writeTo(peers.get(i).getOutputStream());
+                writer.reset();
+            }
+            for (int i = 0; i < clientCount; i++) {
+                assertEquals(i, futures.get(i).get(10, TimeUnit.SECONDS));
+            }
+            // And connections are spread over the loops
+            for (var eventLoop : eventLoopGroup.eventLoops()) {
+                assertEquals(clientCount / 2, eventLoop.registeredChannels());
+            }
+        } finally {
+            eventLoopGroup.stop();
+            for (var peer : peers) {
+                peer.close();
+            }
+            for (var connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new NioEventLoopGroup(0));
+        assertThrows(NullPointerException.class, () -> new NioEventLoopGroup(1, null));
+        assertThrows(
+                NullPointerException.class, () -> new RpcClient.Builder().withEventLoopGroup(null));
+    }
+}
@@ -0,0 +1,319 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.MessagePackWriter;
+import message.NotificationMessage;
+import message.RequestMessage;
+import message.ResponseMessage;
+import message.RpcError;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class NioRpcListenerTest {
+
+    private ObjectMapper objectMapper;
+    private ServerSocket serverSocket;
+    private NioEventLoop eventLoop;
+    private NioSocketRpcConnection connection;
+    private Socket peer;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        var factory = new MessagePackFactory();
+        factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        objectMapper = new ObjectMapper(factory);
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        eventLoop = new NioEventLoop();
+        connection =
+                new NioSocketRpcConnection.Builder(serverSocket.getLocalSocketAddress()).connect();
+        peer = serverSocket.accept();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        eventLoop.stop();
+        peer.close();
+        connection.close();
+        serverSocket.close();
+    }
+
+    @Test
+    public void requestAndResponseRoundTrip() throws Exception {
+        // Given a stream over NIO listener and sender
+        var rpcStreamer =
+                new PackStream(
+                        new NioRpcSender(eventLoop, objectMapper),
+                        new NioRpcListener(eventLoop, objectMapper));
+        rpcStreamer.attach(connection);
+
+        // When a request is sent
+        var future = rpcStreamer.sendAsync(new RequestMessage.Builder("add").addArgument(1));
+
+        // Then peer receives it
+        var peerReader = new StreamingMessageReader(peer.getInputStream(), objectMapper);
+        var request = assertInstanceOf(RequestMessage.class, peerReader.read());
+        assertEquals("add", request.getMethod());
+
+        // And response split in the middle of a message still completes the future
+        var response = encode(new ResponseMessage.Builder(List.of(1, 2)).withId(request.getId()));
+        peer.getOutputStream().write(Arrays.copyOfRange(response, 0, 3));
+        peer.getOutputStream().flush();
+        Thread.sleep(50);
+        peer.getOutputStream().write(Arrays.copyOfRange(response, 3, response.length));
+        var received = future.get(10, TimeUnit.SECONDS);
+        assertEquals(request.getId(), received.getId());
+        assertEquals(List.of(1, 2), received.getResult());
+    }
+
+    @Test
+    public void dispatchesRequestsAndNotifications() throws Exception {
+        var listener = new NioRpcListener(eventLoop, objectMapper);
+        BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        listener.listenForRequests(received::add);
+        listener.listenForNotifications(received::add);
+        listener.start(connection);
+
+        // When peer sends a burst of messages
+        var writer = new MessagePackWriter(objectMapper);
+        writer.writeMessage(new RequestMessage.Builder("request").withId(7).build());
+        // A bad message is skipped
+        writer.writeValue(List.of("not a message"));
+        for (int i = 0; i < 1000; i++) {
+            writer.writeMessage(new NotificationMessage.Builder("redraw").addArgument(i).build());
+        }
+        writer.writeTo(peer.getOutputStream());
+
+        // Then all of them are dispatched in order
+        var request = assertInstanceOf(RequestMessage.class, poll(received));
+        assertEquals(7, request.getId());
+        for (int i = 0; i < 1000; i++) {
+            var notification = assertInstanceOf(NotificationMessage.class, poll(received));
+            assertEquals(i, notification.getInt(0));
+        }
+    }
+
+    @Test
+    public void fullLaneStopsReadingWithoutBlockingEventLoop() throws Exception {
+        // Given a listener with a tiny notification lane, whose callback is blocked
+        var notificationExecutor = Executors.newSingleThreadExecutor();
+        var listener =
+                new NioRpcListener.Builder(eventLoop, objectMapper)
+                        .withNotificationDispatch(notificationExecutor, 2)
+                        .build();
+        var release = new CountDownLatch(1);
+        BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        listener.listenForNotifications(
+                notification -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    received.add(notification);
+                });
+        listener.start(connection);
+
+        // When peer sends more notifications than the lane holds
+        var writer = new MessagePackWriter(objectMapper);
+        for (int i = 0; i < 100; i++) {
+            writer.writeMessage(new NotificationMessage.Builder("redraw").addArgument(i).build());
+        }
+        writer.writeTo(peer.getOutputStream());
+        Thread.sleep(100);
+
+        // Then event loop keeps running other work
+        var served = new CountDownLatch(1);
+        eventLoop.execute(served::countDown);
+        assertTrue(served.await(5, TimeUnit.SECONDS));
+
+        // And once the callback catches up, all notifications arrive in order
+        release.countDown();
+        for (int i = 0; i < 100; i++) {
+            var notification = assertInstanceOf(NotificationMessage.class, poll(received));
+            assertEquals(i, notification.getInt(0));
+        }
+        notificationExecutor.shutdown();
+    }
+
+    @Test
+    public void growsBufferForLargeMessages() throws Exception {
+        var listener =
+                new NioRpcListener.Builder(eventLoop, objectMapper).withReadBufferSize(16).build();
+        BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        listener.listenForNotifications(received::add);
+        listener.start(connection);
+
+        var large = "x".repeat(100_000);
+        peer.getOutputStream()
+                .write(encode(new NotificationMessage.Builder("large").addArgument(large)));
+
+        var notification = assertInstanceOf(NotificationMessage.class, poll(received));
+        assertEquals(large, notification.getString(0));
+    }
+
+    @Test
+    public void responseTimeout() throws Exception {
+        var listener =
+                new NioRpcListener.Builder(eventLoop, objectMapper)
+                        .withDefaultResponseTimeout(Duration.ofMillis(50))
+                        .build();
+        listener.start(connection);
+        BlockingQueue<ResponseMessage> received = new LinkedBlockingQueue<>();
+
+        listener.listenForResponse(1, (id, response) -> received.add(response));
+
+        var response = received.poll(10, TimeUnit.SECONDS);
+        assertEquals(RpcError.Type.TIMEOUT, response.getError().getType());
+    }
+
+    @Test
+    public void listensOnStreams() throws Exception {
+        // Given a stream with a notification and a response
+        var bytes = new ByteArrayOutputStream();
+        bytes.write(encode(new NotificationMessage.Builder("event").addArgument(1)));
+        bytes.write(encode(new ResponseMessage.Builder("done").withId(1)));
+        var listener = new NioRpcListener(eventLoop, objectMapper);
+        BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        listener.listenForNotifications(received::add);
+        listener.listenForResponse(1, (id, response) -> received.add(response));
+        listener.listenForResponse(2, (id, response) -> received.add(response));
+
+        // When listener is started on it
+        listener.start(new ByteArrayInputStream(bytes.toByteArray()));
+
+        // Then messages are dispatched, without registering anything on the event loop
+        var notification = assertInstanceOf(NotificationMessage.class, poll(received));
+        assertEquals("event", notification.getName());
+        var response = assertInstanceOf(ResponseMessage.class, poll(received));
+        assertEquals("done", response.getResult());
+        // And response which never arrived fails once stream ends
+        var closed = assertInstanceOf(ResponseMessage.class, poll(received));
+        assertEquals(2, closed.getId());
+        assertEquals(RpcError.Type.CLOSED, closed.getError().getType());
+        assertEquals(0, eventLoop.registeredChannels());
+        listener.stop();
+    }
+
+    @Test
+    public void passesNotificationsToTheirDecoders() throws Exception {
+        // Given a stream of notifications, one of them with a failing decoder
+        var bytes = new ByteArrayOutputStream();
+        bytes.write(encode(new NotificationMessage.Builder("failing").addArgument(1)));
+        bytes.write(encode(new NotificationMessage.Builder("decoded").addArgument(2)));
+        bytes.write(encode(new NotificationMessage.Builder("event").addArgument(3)));
+        BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        var listener =
+                new NioRpcListener.Builder(eventLoop, objectMapper)
+                        .withNotificationDecoder(
+                                "failing",
+                                arguments -> {
+                                    throw new UnsupportedOperationException("decoder bug");
+                                })
+                        .withNotificationDecoder(
+                                "decoded",
+                                arguments -> {
+                                    arguments.readArrayHeader();
+                                    received.add(arguments.readInt());
+                                })
+                        .build();
+        listener.listenForNotifications(received::add);
+
+        // When listener is started on it
+        listener.start(new ByteArrayInputStream(bytes.toByteArray()));
+
+        // Then decoded notifications are not dispatched and a failing decoder does not stop reading
+        assertEquals(2, poll(received));
+        var notification = assertInstanceOf(NotificationMessage.class, poll(received));
+        assertEquals("event", notification.getName());
+        listener.stop();
+    }
+
+    @Test
+    public void failsPendingResponsesOnEndOfStream() throws Exception {
+        // Given a request waiting for its response
+        var rpcStreamer =
+                new PackStream(
+                        new NioRpcSender(eventLoop, objectMapper),
+                        new NioRpcListener(eventLoop, objectMapper));
+        rpcStreamer.attach(connection);
+        var future = rpcStreamer.sendAsync(new RequestMessage.Builder("add"), Integer.class);
+
+        // When peer closes the connection
+        peer.close();
+
+        // Then the future fails right away, instead of waiting forever
+        var exception =
+                assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertInstanceOf(ConnectionClosedException.class, exception.getCause());
+    }
+
+    @Test
+    public void stopsOnEndOfStream() throws Exception {
+        var listener = new NioRpcListener(eventLoop, objectMapper);
+        listener.start(connection);
+        waitFor(() -> eventLoop.registeredChannels() == 1);
+
+        peer.close();
+
+        waitFor(() -> eventLoop.registeredChannels() == 0);
+    }
+
+    @Test
+    public void noNullDependencies() {
+        assertThrows(NullPointerException.class, () -> new NioRpcListener(null, objectMapper));
+        assertThrows(NullPointerException.class, () -> new NioRpcListener(eventLoop, null));
+    }
+
+    private byte[] encode(Object builder) throws IOException {
+        var writer = new MessagePackWriter(objectMapper);
+        if (builder instanceof ResponseMessage.Builder) {
+            writer.writeMessage(((ResponseMessage.Builder) builder).build());
+        } else {
+            writer.writeMessage(((NotificationMessage.Builder) builder).build());
+        }
+        return Arrays.copyOf(writer.buffer(), writer.size());
+    }
+
+    private static Object poll(BlockingQueue<Object> queue) throws InterruptedException {
+        var element = queue.poll(10, TimeUnit.SECONDS);
+        assertTrue(element != null, "Timeout");
+        return element;
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition)
+            throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timeout");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.MessagePackWriter;
+import message.NotificationMessage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class NioRpcSenderTest {
+
+    private ObjectMapper objectMapper;
+    private ServerSocket serverSocket;
+    private NioEventLoop eventLoop;
+    private NioSocketRpcConnection connection;
+    private Socket peer;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        var factory = new MessagePackFactory();
+        factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        objectMapper = new ObjectMapper(factory);
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        serverSocket.setReceiveBufferSize(4096);
+        eventLoop = new NioEventLoop();
+        connection =
+                new NioSocketRpcConnection.Builder(serverSocket.getLocalSocketAddress())
+                        .withSendBufferSize(4096)
+                        .connect();
+        peer = serverSocket.accept();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        eventLoop.stop();
+        peer.close();
+        connection.close();
+        serverSocket.close();
+    }
+
+    @Test
+    public void keepsOrderWhenChannelIsFull() throws Exception {
+        // Given a sender with a small queue and a peer which does not read yet
+        var sender = new NioRpcSender(eventLoop, objectMapper, 16);
+        sender.attach(connection);
+
+        // When many threads send more than socket buffers can hold
+        var producers = 4;
+        var messagesPerProducer = 2000;
+        var payload = "x".repeat(100);
+        var producerService = Executors.newFixedThreadPool(producers);
+        var latch = new CountDownLatch(producers);
+        for (int p = 0; p < producers; p++) {
+            var producer = p;
+            producerService.submit(
+                    () -> {
+                        for (int i = 0; i < messagesPerProducer; i++) {
+                            sender.send(
+                                    new NotificationMessage.Builder("p" + producer)
+                                            .addArgument(i)
+                                            .addArgument(payload)
+                                            .build());
+                        }
+                        latch.countDown();
+                    });
+        }
+
+        // Then peer receives all of them, and messages of each producer come in order
+        var reader = new StreamingMessageReader(peer.getInputStream(), objectMapper);
+        var nextExpected = new HashMap<String, Integer>();
+        for (int i = 0; i < producers * messagesPerProducer; i++) {
+            var notification = assertInstanceOf(NotificationMessage.class, reader.read());
+            var expected = nextExpected.getOrDefault(notification.getName(), 0);
+            assertEquals(expected, notification.getInt(0));
+            nextExpected.put(notification.getName(), expected + 1);
+        }
+        if (!latch.await(60, TimeUnit.SECONDS)) {
+            fail("Timeout");
+        }
+        producerService.shutdown();
+    }
+
+    @Test
+    public void sendingFromEventLoopDoesNotBlock() throws Exception {
+        // Given a sender with a tiny queue
+        var sender = new NioRpcSender(eventLoop, objectMapper, 2);
+        sender.attach(connection);
+
+        // When more messages than the queue holds are sent from the event loop thread
+        var messages = 100;
+        var sent = new CountDownLatch(1);
+        eventLoop.execute(
+                () -> {
+                    for (int i = 0; i < messages; i++) {
+                        sender.send(new NotificationMessage.Builder("loop").addArgument(i).build());
+                    }
+                    sent.countDown();
+                });
+
+        // Then all of them are written in order
+        if (!sent.await(10, TimeUnit.SECONDS)) {
+            fail("Event loop blocked");
+        }
+        var reader = new StreamingMessageReader(peer.getInputStream(), objectMapper);
+        for (int i = 0; i < messages; i++) {
+            var notification = assertInstanceOf(NotificationMessage.class, reader.read());
+            assertEquals(i, notification.getInt(0));
+        }
+    }
+
+    @Test
+    public void requiresAttach() {
+        var sender = new NioRpcSender(eventLoop, objectMapper);
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> sender.send(new NotificationMessage.Builder("test").build()));
+    }
+
+    @Test
+    public void writesToStreams() throws Exception {
+        // Given a sender attached to a plain stream
+        var sender = new NioRpcSender(eventLoop, objectMapper);
+        var outputStream = new ByteArrayOutputStream();
+        sender.attach(outputStream);
+
+        // When messages are sent
+        var expected = new MessagePackWriter(objectMapper);
+        for (int i = 0; i < 100; i++) {
+            var message = new NotificationMessage.Builder("test").addArgument(i).build();
+            sender.send(message);
+            expected.writeMessage(message);
+        }
+
+        // Then they are written in order, without registering anything on the event loop
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (outputStream.size() < expected.size()) {
+            if (System.nanoTime() > deadline) {
+                fail("Timeout");
+            }
+            Thread.sleep(10);
+        }
+        assertArrayEquals(
+                Arrays.copyOf(expected.buffer(), expected.size()), outputStream.toByteArray());
+        assertEquals(0, eventLoop.registeredChannels());
+        sender.stop();
+    }
+
+    @Test
+    public void noNullDependencies() {
+        assertThrows(NullPointerException.class, () -> new NioRpcSender(null, objectMapper));
+        assertThrows(NullPointerException.class, () -> new NioRpcSender(eventLoop, null));
+    }
+}
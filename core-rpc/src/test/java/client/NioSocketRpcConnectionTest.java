@@ -0,0 +1,106 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.IllegalBlockingModeException;
+
+public class NioSocketRpcConnectionTest {
+
+    private ServerSocket serverSocket;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    public void appliesSocketOptions() throws IOException {
+        // Given a builder with options
+        var connection =
+                new NioSocketRpcConnection.Builder(serverSocket.getLocalSocketAddress())
+                        .withTcpNoDelay(false)
+                        .withReceiveBufferSize(32 * 1024)
+                        .withSendBufferSize(32 * 1024)
+                        .connect();
+
+        // Then connected channel has them
+        try (connection;
+                var ignored = serverSocket.accept()) {
+            var channel = connection.getChannel();
+            assertTrue(channel.isConnected());
+            assertFalse(channel.getOption(StandardSocketOptions.TCP_NODELAY));
+            assertTrue(channel.getOption(StandardSocketOptions.SO_RCVBUF) > 0);
+            assertTrue(channel.getOption(StandardSocketOptions.SO_SNDBUF) > 0);
+        }
+        assertFalse(connection.getChannel().isOpen());
+    }
+
+    @Test
+    public void tcpNoDelayByDefault() throws IOException {
+        try (var connection =
+                        new NioSocketRpcConnection.Builder(serverSocket.getLocalSocketAddress())
+                                .connect();
+                var ignored = serverSocket.accept()) {
+            assertTrue(connection.getChannel().getOption(StandardSocketOptions.TCP_NODELAY));
+        }
+    }
+
+    @Test
+    public void streamsWorkInBlockingMode() throws IOException {
+        try (var connection =
+                        new NioSocketRpcConnection.Builder(serverSocket.getLocalSocketAddress())
+                                .connect();
+                Socket peer = serverSocket.accept()) {
+            // Written bytes come through both ways
+            connection.getOutgoingStream().write(new byte[] {1, 2, 3});
+            assertArrayEquals(new byte[] {1, 2, 3}, peer.getInputStream().readNBytes(3));
+            peer.getOutputStream().write(new byte[] {4, 5});
+            assertArrayEquals(new byte[] {4, 5}, connection.getIncomingStream().readNBytes(2));
+
+            // But not after the channel is switched to non-blocking mode
+            connection.getChannel().configureBlocking(false);
+            assertThrows(
+                    IllegalBlockingModeException.class,
+                    () -> connection.getIncomingStream().read(new byte[1]));
+        }
+    }
+
+    @Test
+    public void sameStreamsAreReturned() throws IOException {
+        try (var connection =
+                        new NioSocketRpcConnection.Builder(serverSocket.getLocalSocketAddress())
+                                .connect();
+                var ignored = serverSocket.accept()) {
+            assertEquals(connection.getIncomingStream(), connection.getIncomingStream());
+            assertEquals(connection.getOutgoingStream(), connection.getOutgoingStream());
+        }
+    }
+
+    @Test
+    public void invalidBuilderArguments() {
+        assertThrows(NullPointerException.class, () -> new NioSocketRpcConnection.Builder(null));
+        var builder = new NioSocketRpcConnection.Builder(new InetSocketAddress(1));
+        assertThrows(IllegalArgumentException.class, () -> builder.withReceiveBufferSize(0));
+        assertThrows(IllegalArgumentException.class, () -> builder.withSendBufferSize(-1));
+        assertThrows(NullPointerException.class, () -> new NioSocketRpcConnection(null));
+    }
+}
@@ -1,17 +1,24 @@
 package client;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 import message.Message;
 import message.MessageIdGenerator;
 import message.NotificationMessage;
+import message.PreparedRequest;
 import message.RequestMessage;
+import message.ResponseMessage;
+import message.RpcError;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -25,6 +32,14 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @ExtendWith(MockitoExtension.class)
 public class PackStreamTest {
@@ -79,6 +94,20 @@ public class PackStreamTest {
         verify(rpcSender).attach(outputStream);
     }
 
+    @Test
+    public void testAttachChannelConnection() {
+        // Given a channel based connection
+        var channelConnection = Mockito.mock(ChannelRpcConnection.class);
+        // When attach is called
+        packStream.attach(channelConnection);
+        // Then connection is passed down as it is
+        verify(rpcListener).listenForRequests(any());
+        verify(rpcListener).listenForNotifications(any());
+        verify(rpcListener).start(channelConnection);
+        verify(rpcSender).attach(channelConnection);
+        verify(channelConnection, never()).getIncomingStream();
+    }
+
     @Test
     public void testSend() throws IOException {
         // When send is called
@@ -126,6 +155,153 @@ public class PackStreamTest {
         verify(rpcListener).listenForResponse(25, responseCallback);
     }
 
+    @Test
+    public void testSendRequestWithTimeout() throws IOException {
+        // Given a proper message id generator
+        given(messageIdGenerator.nextId()).willReturn(25);
+        var responseCallback = Mockito.mock(RpcListener.ResponseCallback.class);
+        // When send is called with a timeout
+        packStream.send(new RequestMessage.Builder("test"), responseCallback, Duration.ofSeconds(5));
+        // Then message should be sent with generated id
+        var argumentCaptor = ArgumentCaptor.forClass(RequestMessage.class);
+        verify(rpcSender).send(argumentCaptor.capture());
+        assertEquals(25, argumentCaptor.getValue().getId());
+        // And timeout should be passed down to RPC Listener
+        verify(rpcListener).listenForResponse(25, responseCallback, Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void testSendAsync() throws IOException {
+        // Given a proper message id generator
+        given(messageIdGenerator.nextId()).willReturn(25);
+        // When request is sent asynchronously
+        var future = packStream.sendAsync(new RequestMessage.Builder("test"));
+        // Then future itself is registered as callback
+        var callbackCaptor = ArgumentCaptor.forClass(RpcListener.ResponseCallback.class);
+        verify(rpcListener).listenForResponse(eq(25), callbackCaptor.capture());
+        assertSame(future, callbackCaptor.getValue());
+        verify(rpcSender).send(any());
+        // And it completes once response arrives
+        var response = new ResponseMessage.Builder(List.of(1, 2)).withId(25).build();
+        callbackCaptor.getValue().responseReceived(25, response);
+        assertSame(response, future.join());
+    }
+
+    @Test
+    public void testSendAsyncTyped() {
+        // Given a proper message id generator
+        given(messageIdGenerator.nextId()).willReturn(1, 2, 3);
+        var callbackCaptor = ArgumentCaptor.forClass(RpcListener.ResponseCallback.class);
+        // When requests are sent asynchronously, with typed results
+        var success = packStream.sendAsync(new RequestMessage.Builder("test"), Integer.class);
+        var error = packStream.sendAsync(new RequestMessage.Builder("test"), Integer.class);
+        var timeout = packStream.sendAsync(new RequestMessage.Builder("test"), Integer.class);
+        verify(rpcListener).listenForResponse(eq(1), callbackCaptor.capture());
+        verify(rpcListener).listenForResponse(eq(2), callbackCaptor.capture());
+        verify(rpcListener).listenForResponse(eq(3), callbackCaptor.capture());
+        var callbacks = callbackCaptor.getAllValues();
+        callbacks.get(0).responseReceived(1, new ResponseMessage.Builder(5).withId(1).build());
+        callbacks
+                .get(1)
+                .responseReceived(
+                        2, new ResponseMessage.Builder(RpcError.exception("bad")).withId(2).build());
+        callbacks
+                .get(2)
+                .responseReceived(
+                        3, new ResponseMessage.Builder(RpcError.timeout("late")).withId(3).build());
+
+        // Then results are bound to given type and errors fail the futures
+        assertEquals(5, success.join());
+        var rpcErrorException =
+                assertInstanceOf(
+                        RpcErrorException.class,
+                        assertThrows(CompletionException.class, error::join).getCause());
+        assertEquals("bad", rpcErrorException.getError().getMessage());
+        assertInstanceOf(
+                TimeoutException.class,
+                assertThrows(CompletionException.class, timeout::join).getCause());
+    }
+
+    @Test
+    public void testSendAsyncPrepared() throws IOException {
+        // Given a prepared request and a proper message id generator
+        var preparedRequest =
+                new PreparedRequest(new RequestMessage.Builder("test").addArgument(1));
+        given(messageIdGenerator.nextId()).willReturn(7, 8);
+        // When it is sent twice
+        var first = packStream.sendAsync(preparedRequest, ResultDecoder.LONG);
+        var second = packStream.sendAsync(preparedRequest, ResultDecoder.LONG);
+        // Then each send gets its own id
+        var messageCaptor = ArgumentCaptor.forClass(Message.class);
+        verify(rpcSender, Mockito.times(2)).send(messageCaptor.capture());
+        var sent = messageCaptor.getAllValues();
+        assertEquals(7, assertInstanceOf(RequestMessage.class, sent.get(0)).getId());
+        assertEquals(8, assertInstanceOf(RequestMessage.class, sent.get(1)).getId());
+        assertEquals("test", ((RequestMessage) sent.get(1)).getMethod());
+        // And futures complete with their own responses
+        var callbackCaptor = ArgumentCaptor.forClass(RpcListener.ResponseCallback.class);
+        verify(rpcListener).listenForResponse(eq(7), callbackCaptor.capture());
+        verify(rpcListener).listenForResponse(eq(8), callbackCaptor.capture());
+        var callbacks = callbackCaptor.getAllValues();
+        callbacks.get(1).responseReceived(8, new ResponseMessage.Builder(2).withId(8).build());
+        callbacks.get(0).responseReceived(7, new ResponseMessage.Builder(1).withId(7).build());
+        assertEquals(1L, first.join());
+        assertEquals(2L, second.join());
+        // Null arguments are not allowed
+        assertThrows(
+                NullPointerException.class, () -> packStream.sendAsync(preparedRequest, null));
+        assertThrows(
+                NullPointerException.class,
+                () -> packStream.sendAsync((PreparedRequest) null, ResultDecoder.LONG));
+    }
+
+    @Test
+    public void testSendAsyncFailure() throws IOException {
+        // Given a sender which fails
+        given(messageIdGenerator.nextId()).willReturn(1);
+        doThrow(new IOException("broken")).when(rpcSender).send(any());
+        // When request is sent asynchronously, failure is reported through the future
+        var future = packStream.sendAsync(new RequestMessage.Builder("test"));
+        assertInstanceOf(
+                IOException.class,
+                assertThrows(CompletionException.class, future::join).getCause());
+        // And the response it will never get is forgotten
+        verify(rpcListener).forgetResponse(1);
+    }
+
+    @Test
+    public void testSendFailureForgetsResponse() throws IOException {
+        // Given a sender which fails
+        given(messageIdGenerator.nextId()).willReturn(3);
+        doThrow(new IOException("broken")).when(rpcSender).send(any());
+        var responseCallback = Mockito.mock(RpcListener.ResponseCallback.class);
+        // When request with a callback is sent, failure is thrown
+        assertThrows(
+                IOException.class,
+                () -> packStream.send(new RequestMessage.Builder("test"), responseCallback));
+        // And the callback is forgotten
+        verify(rpcListener).forgetResponse(3);
+    }
+
+    @Test
+    public void testAbandonedFuturesForgetResponses() {
+        // Given futures of requests waiting for responses
+        given(messageIdGenerator.nextId()).willReturn(1, 2);
+        var cancelled = packStream.sendAsync(new RequestMessage.Builder("test"));
+        var answered = packStream.sendAsync(new RequestMessage.Builder("test"));
+        // When one is cancelled and other one gets its response
+        cancelled.cancel(false);
+        var callbackCaptor = ArgumentCaptor.forClass(RpcListener.ResponseCallback.class);
+        verify(rpcListener).listenForResponse(eq(2), callbackCaptor.capture());
+        callbackCaptor
+                .getValue()
+                .responseReceived(2, new ResponseMessage.Builder(1).withId(2).build());
+        // Then only the cancelled one is forgotten
+        verify(rpcListener).forgetResponse(1);
+        verify(rpcListener, never()).forgetResponse(2);
+        assertEquals(1, answered.join().getResult());
+    }
+
     @Test
     public void testRequestCallback() throws IOException {
         // Given a proper rpc listener and attached pack stream
@@ -177,6 +353,142 @@ public class PackStreamTest {
         verify(secondCallback, never()).requestReceived(msg4);
     }
 
+    @Test
+    public void testRequestHandlers() {
+        // Given a proper rpc listener and attached pack stream
+        prepareListeners();
+        packStream.attach(Mockito.mock(RpcConnection.class));
+        var fallbackCallback = Mockito.mock(RpcListener.RequestCallback.class);
+        packStream.addRequestCallback(fallbackCallback);
+
+        // When handlers are added for methods
+        var firstHandler = Mockito.mock(RpcListener.RequestCallback.class);
+        var secondHandler = Mockito.mock(RpcListener.RequestCallback.class);
+        packStream.addRequestHandler("first", firstHandler);
+        packStream.addRequestHandler("second", secondHandler);
+
+        // Then requests are routed only to the handler of their method
+        var first = new RequestMessage.Builder("first").build();
+        var second = new RequestMessage.Builder("second").build();
+        packStreamRequestCallback.getValue().requestReceived(first);
+        packStreamRequestCallback.getValue().requestReceived(second);
+        verify(firstHandler).requestReceived(first);
+        verify(secondHandler).requestReceived(second);
+        verify(firstHandler, never()).requestReceived(second);
+        verify(fallbackCallback, never()).requestReceived(any());
+
+        // And requests without a handler go to request callbacks
+        var other = new RequestMessage.Builder("other").build();
+        packStreamRequestCallback.getValue().requestReceived(other);
+        verify(fallbackCallback).requestReceived(other);
+
+        // When handlers are replaced or removed
+        var replacedHandler = Mockito.mock(RpcListener.RequestCallback.class);
+        packStream.addRequestHandler("first", replacedHandler);
+        packStream.removeRequestHandler("second");
+        packStream.removeRequestHandler("unknown");
+
+        // Then routing follows
+        var firstAgain = new RequestMessage.Builder("first").build();
+        var secondAgain = new RequestMessage.Builder("second").build();
+        packStreamRequestCallback.getValue().requestReceived(firstAgain);
+        packStreamRequestCallback.getValue().requestReceived(secondAgain);
+        verify(replacedHandler).requestReceived(firstAgain);
+        verify(firstHandler, never()).requestReceived(firstAgain);
+        verify(secondHandler, never()).requestReceived(secondAgain);
+        verify(fallbackCallback).requestReceived(secondAgain);
+
+        // Null method or handler is not allowed
+        assertThrows(
+                NullPointerException.class,
+                () -> packStream.addRequestHandler(null, fallbackCallback));
+        assertThrows(
+                NullPointerException.class, () -> packStream.addRequestHandler("method", null));
+    }
+
+    @Test
+    public void testRequestResponders() throws IOException {
+        // Given a proper rpc listener and attached pack stream
+        prepareListeners();
+        packStream.attach(Mockito.mock(RpcConnection.class));
+        var pending = new CompletableFuture<String>();
+        packStream.addRequestResponder("sum", request -> request.getInt(0) + request.getInt(1));
+        packStream.addRequestResponder(
+                "fail",
+                request -> {
+                    throw new IllegalStateException("Failing on purpose");
+                });
+        packStream.addRequestResponder(
+                "reject",
+                request -> {
+                    throw new RpcErrorException(RpcError.validation("Bad arguments"));
+                });
+        packStream.addRequestResponder("later", request -> pending);
+
+        // When requests arrive
+        var callback = packStreamRequestCallback.getValue();
+        callback.requestReceived(
+                new RequestMessage.Builder("sum").addArgument(1).addArgument(2).withId(1).build());
+        callback.requestReceived(new RequestMessage.Builder("fail").withId(2).build());
+        callback.requestReceived(new RequestMessage.Builder("reject").withId(3).build());
+        callback.requestReceived(new RequestMessage.Builder("later").withId(4).build());
+
+        // Then responses are sent ahead of queued messages, with matching ids right away
+        var sent = ArgumentCaptor.forClass(Message.class);
+        verify(rpcSender, Mockito.times(3)).sendPriority(sent.capture());
+        var sum = assertInstanceOf(ResponseMessage.class, sent.getAllValues().get(0));
+        assertEquals(1, sum.getId());
+        assertEquals(3, sum.getResult());
+        var failed = assertInstanceOf(ResponseMessage.class, sent.getAllValues().get(1));
+        assertEquals(2, failed.getId());
+        assertEquals(RpcError.Type.EXCEPTION.getId(), failed.getError().getId());
+        assertEquals("Failing on purpose", failed.getError().getMessage());
+        var rejected = assertInstanceOf(ResponseMessage.class, sent.getAllValues().get(2));
+        assertEquals(3, rejected.getId());
+        assertEquals(RpcError.Type.VALIDATION.getId(), rejected.getError().getId());
+
+        // And asynchronous result is sent once it completes
+        pending.complete("done");
+        verify(rpcSender, Mockito.times(4)).sendPriority(sent.capture());
+        var later = assertInstanceOf(ResponseMessage.class, sent.getValue());
+        assertEquals(4, later.getId());
+        assertEquals("done", later.getResult());
+
+        // Responders are removed as any other handler
+        packStream.removeRequestHandler("sum");
+        callback.requestReceived(new RequestMessage.Builder("sum").withId(5).build());
+        verify(rpcSender, Mockito.times(4)).sendPriority(any());
+        verify(rpcSender, never()).send(any());
+        assertThrows(
+                NullPointerException.class, () -> packStream.addRequestResponder("sum", null));
+    }
+
+    @Test
+    public void testRequestResponderMetricsAndUnnamedErrors() throws IOException {
+        // Given a pack stream reporting to metrics
+        prepareListeners();
+        var metrics = Mockito.mock(RpcMetrics.class);
+        var stream = new PackStream.Builder(rpcSender, rpcListener).withMetrics(metrics).build();
+        stream.attach(Mockito.mock(RpcConnection.class));
+        stream.addRequestResponder(
+                "fail",
+                request -> {
+                    throw new IllegalStateException();
+                });
+
+        // When a request fails with an exception without a message
+        packStreamRequestCallback
+                .getValue()
+                .requestReceived(new RequestMessage.Builder("fail").withId(1).build());
+
+        // Then the type of the exception is sent instead, and latency is reported
+        var sent = ArgumentCaptor.forClass(Message.class);
+        verify(rpcSender).sendPriority(sent.capture());
+        var failed = assertInstanceOf(ResponseMessage.class, sent.getValue());
+        assertEquals(IllegalStateException.class.getName(), failed.getError().getMessage());
+        verify(metrics).requestResponded(eq("fail"), Mockito.anyLong());
+    }
+
     @Test
     public void testNotificationCallback() throws IOException {
         // Given a proper rpc listener and attached pack stream
@@ -228,6 +540,97 @@ public class PackStreamTest {
         verify(secondCallback, never()).notificationReceived(msg4);
     }
 
+    @Test
+    public void testNotificationSubscriptions() {
+        // Given a proper rpc listener and attached pack stream
+        prepareListeners();
+        packStream.attach(Mockito.mock(RpcConnection.class));
+        var allCallback = Mockito.mock(RpcListener.NotificationCallback.class);
+        packStream.addNotificationCallback(allCallback);
+
+        // When callbacks subscribe to notifications of a name
+        var redrawCallback = Mockito.mock(RpcListener.NotificationCallback.class);
+        var secondRedrawCallback = Mockito.mock(RpcListener.NotificationCallback.class);
+        var linesCallback = Mockito.mock(RpcListener.NotificationCallback.class);
+        packStream.addNotificationCallback("redraw", redrawCallback);
+        packStream.addNotificationCallback("redraw", redrawCallback);
+        packStream.addNotificationCallback("redraw", secondRedrawCallback);
+        packStream.addNotificationCallback("nvim_buf_lines_event", linesCallback);
+
+        // Then they receive only those, once, while general callbacks receive everything
+        var redraw = new NotificationMessage.Builder("redraw").build();
+        var lines = new NotificationMessage.Builder("nvim_buf_lines_event").build();
+        packStreamNotificationCallback.getValue().notificationReceived(redraw);
+        packStreamNotificationCallback.getValue().notificationReceived(lines);
+        verify(redrawCallback).notificationReceived(redraw);
+        verify(secondRedrawCallback).notificationReceived(redraw);
+        verify(linesCallback).notificationReceived(lines);
+        verify(redrawCallback, never()).notificationReceived(lines);
+        verify(linesCallback, never()).notificationReceived(redraw);
+        verify(allCallback).notificationReceived(redraw);
+        verify(allCallback).notificationReceived(lines);
+
+        // When subscriptions are removed
+        packStream.removeNotificationCallback("redraw", redrawCallback);
+        packStream.removeNotificationCallback("nvim_buf_lines_event", linesCallback);
+        packStream.removeNotificationCallback("unknown", linesCallback);
+
+        // Then only remaining ones are called
+        var redrawAgain = new NotificationMessage.Builder("redraw").build();
+        var linesAgain = new NotificationMessage.Builder("nvim_buf_lines_event").build();
+        packStreamNotificationCallback.getValue().notificationReceived(redrawAgain);
+        packStreamNotificationCallback.getValue().notificationReceived(linesAgain);
+        verify(redrawCallback, never()).notificationReceived(redrawAgain);
+        verify(secondRedrawCallback).notificationReceived(redrawAgain);
+        verify(linesCallback, never()).notificationReceived(linesAgain);
+
+        // Null name or callback is not allowed
+        assertThrows(
+                NullPointerException.class,
+                () -> packStream.addNotificationCallback(null, allCallback));
+        assertThrows(
+                NullPointerException.class,
+                () -> packStream.addNotificationCallback("redraw", null));
+    }
+
+    @Test
+    public void callbacksMayChangeWhileDispatching() throws Exception {
+        // Given notifications and requests dispatched continuously
+        prepareListeners();
+        packStream.attach(Mockito.mock(RpcConnection.class));
+        var running = new AtomicBoolean(true);
+        var dispatched = new AtomicInteger();
+        var notification = new NotificationMessage.Builder("redraw").build();
+        var request = new RequestMessage.Builder("method").build();
+        var dispatcher =
+                CompletableFuture.runAsync(
+                        () -> {
+                            while (running.get()) {
+                                packStreamNotificationCallback
+                                        .getValue()
+                                        .notificationReceived(notification);
+                                packStreamRequestCallback.getValue().requestReceived(request);
+                                dispatched.incrementAndGet();
+                            }
+                        });
+
+        // When callbacks are added and removed from another thread at the same time
+        RpcListener.NotificationCallback notificationCallback = message -> {};
+        RpcListener.RequestCallback requestCallback = message -> {};
+        for (int i = 0; i < 10_000 || dispatched.get() == 0; i++) {
+            packStream.addNotificationCallback(notificationCallback);
+            packStream.addNotificationCallback("redraw", notificationCallback);
+            packStream.addRequestCallback(requestCallback);
+            packStream.removeNotificationCallback(notificationCallback);
+            packStream.removeNotificationCallback("redraw", notificationCallback);
+            packStream.removeRequestCallback(requestCallback);
+        }
+        running.set(false);
+
+        // Then dispatching does not fail
+        dispatcher.get(10, TimeUnit.SECONDS);
+    }
+
     @Test
     public void noNullRpcListener() {
         // When null rpc listener is passed, constructor should throw an exception
@@ -0,0 +1,152 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PendingResponseTableTest {
+
+    @Test
+    public void completesRegisteredCallbacksOnce() {
+        var table = new PendingResponseTable();
+        var callback = Mockito.mock(RpcListener.ResponseCallback.class);
+
+        table.register(5, callback);
+        assertTrue(table.isPending(5));
+        assertEquals(1, table.size());
+
+        // Callback should be claimed only once
+        assertSame(callback, table.complete(5));
+        assertNull(table.complete(5));
+        assertFalse(table.isPending(5));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void unknownIdsAreIgnored() {
+        var table = new PendingResponseTable();
+        table.register(1, Mockito.mock(RpcListener.ResponseCallback.class));
+
+        assertNull(table.complete(2));
+        assertNull(table.complete(1 + 4096));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void overflowsWhenRingIsFull() {
+        // Given a small table, with more pending requests than its capacity
+        var table = new PendingResponseTable(8);
+        var callbacks = new RpcListener.ResponseCallback[100];
+        for (int i = 0; i < callbacks.length; i++) {
+            callbacks[i] = Mockito.mock(RpcListener.ResponseCallback.class);
+            table.register(i, callbacks[i]);
+        }
+        assertEquals(100, table.size());
+
+        // All callbacks should still be found
+        for (int i = callbacks.length - 1; i >= 0; i--) {
+            assertSame(callbacks[i], table.complete(i));
+        }
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void completesAllPendingCallbacks() {
+        // Given a small table, with callbacks both in the ring and in the overflow map
+        var table = new PendingResponseTable(8);
+        var callbacks = new HashMap<Integer, RpcListener.ResponseCallback>();
+        for (int i = -2; i < 20; i++) {
+            callbacks.put(i, Mockito.mock(RpcListener.ResponseCallback.class));
+            table.register(i, callbacks.get(i));
+        }
+        table.complete(3);
+        callbacks.remove(3);
+
+        // When all of them are completed
+        var claimed = new HashMap<Integer, RpcListener.ResponseCallback>();
+        var count = table.completeAll(claimed::put);
+
+        // Then each pending one is claimed with its id, exactly once
+        assertEquals(callbacks, claimed);
+        assertEquals(callbacks.size(), count);
+        assertEquals(0, table.size());
+        assertEquals(0, table.completeAll((id, callback) -> fail("Already claimed")));
+    }
+
+    @Test
+    public void supportsNegativeIds() {
+        var table = new PendingResponseTable();
+        var callback = Mockito.mock(RpcListener.ResponseCallback.class);
+
+        table.register(-3, callback);
+        assertSame(callback, table.complete(-3));
+    }
+
+    @Test
+    public void worksInMultithreadedEnvironment() throws InterruptedException {
+        // Given many threads registering and many threads racing to complete the same ids
+        var table = new PendingResponseTable(64);
+        var ids = 20000;
+        var completed = new AtomicInteger();
+        var callback = (RpcListener.ResponseCallback) (id, response) -> completed.incrementAndGet();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            var latch = new CountDownLatch(ids);
+            for (int i = 0; i < ids; i++) {
+                var id = i;
+                executorService.submit(
+                        () -> {
+                            table.register(id, callback);
+                            executorService.submit(() -> claim(table, id));
+                            executorService.submit(() -> claim(table, id));
+                            latch.countDown();
+                        });
+            }
+            if (!latch.await(60, TimeUnit.SECONDS)) {
+                fail("Timeout");
+            }
+            executorService.shutdown();
+            if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
+                fail("Executor service did not terminate in the allotted time.");
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        // Every callback should be claimed exactly once
+        assertEquals(ids, completed.get());
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void noNullCallbacks() {
+        var table = new PendingResponseTable();
+        assertThrows(NullPointerException.class, () -> table.register(1, null));
+    }
+
+    @Test
+    public void noInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new PendingResponseTable(0));
+    }
+
+    private static void claim(PendingResponseTable table, int id) {
+        var callback = table.complete(id);
+        if (callback != null) {
+            callback.responseReceived(id, null);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.RequestMessage;
+import message.ResponseMessage;
+
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class RequestLatenciesTest {
+
+    @Test
+    public void recordsPhasesOfRequests() throws InterruptedException {
+        // Given a request going through all phases
+        var latencies = new RequestLatencies(16);
+        latencies.requestStarted(1, "nvim_buf_get_lines");
+        Thread.sleep(2);
+        latencies.requestWritten(1);
+        Thread.sleep(5);
+        latencies.responseRead(1);
+        latencies.responseDispatched(1);
+
+        // Then each phase is recorded
+        var method = latencies.getMethod("nvim_buf_get_lines");
+        assertEquals("nvim_buf_get_lines", method.getName());
+        assertEquals(1, method.getTotal().getCount());
+        assertEquals(1, method.getQueued().getCount());
+        assertEquals(1, method.getWire().getCount());
+        assertEquals(1, method.getDispatch().getCount());
+        assertTrue(method.getQueued().getMax() >= TimeUnit.MILLISECONDS.toNanos(2));
+        assertTrue(method.getWire().getMax() >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(method.getTotal().getMax() >= method.getWire().getMax());
+        assertEquals(1, latencies.getMethods().size());
+
+        // And a response is recorded only once
+        latencies.responseDispatched(1);
+        assertEquals(1, method.getTotal().getCount());
+    }
+
+    @Test
+    public void recordsOnlyTotalWithoutSenderAndIgnoresUnknownIds() {
+        var latencies = new RequestLatencies(4);
+        latencies.requestStarted(1, "method");
+        latencies.responseRead(1);
+        latencies.responseDispatched(1);
+        // Ids not started, or replaced by a newer request in the same slot, are ignored
+        latencies.responseDispatched(2);
+        latencies.requestStarted(3, "other");
+        latencies.requestStarted(7, "other");
+        latencies.responseDispatched(3);
+
+        var method = latencies.getMethod("method");
+        assertEquals(1, method.getTotal().getCount());
+        assertEquals(0, method.getQueued().getCount());
+        assertEquals(0, method.getWire().getCount());
+        assertNull(latencies.getMethod("unknown"));
+        assertEquals(0, latencies.getMethod("other").getTotal().getCount());
+        assertThrows(IllegalArgumentException.class, () -> new RequestLatencies(0));
+    }
+
+    @Test
+    public void clientRecordsLatenciesOfRequests() throws Exception {
+        // Given a client recording latencies, attached to piped streams
+        var factory = new MessagePackFactory();
+        factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        var objectMapper = new ObjectMapper(factory);
+        var incoming = new PipedOutputStream();
+        var input = new PipedInputStream(incoming, 8192);
+        var output = new ByteArrayOutputStream();
+        var latencies = new RequestLatencies();
+        // own executor, since stopping the client shuts it down
+        var executor = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        var client =
+                new RpcClient.Builder()
+                        .withObjectMapper(objectMapper)
+                        .withRequestLatencies(latencies)
+                        .withExecutorService(executor)
+                        .build();
+        client.attach(
+                new RpcConnection() {
+                    @Override
+                    public InputStream getIncomingStream() {
+                        return input;
+                    }
+
+                    @Override
+                    public OutputStream getOutgoingStream() {
+                        return output;
+                    }
+
+                    @Override
+                    public void close() {}
+                });
+
+        // When a request is answered
+        var response =
+                client.sendAsync(new RequestMessage.Builder("nvim_buf_get_lines"), String.class);
+        // answered only once written out, same as the other side would - the listener never
+        // completes, so the first completed task is the drain which wrote the request
+        while (executor.getCompletedTaskCount() == 0) {
+            Thread.sleep(1);
+        }
+        incoming.write(
+                objectMapper.writeValueAsBytes(
+                        new ResponseMessage.Builder("line").withId(1).build()));
+        incoming.flush();
+        assertEquals("line", response.get(10, TimeUnit.SECONDS));
+
+        // Then all of its phases are recorded
+        var method = latencies.getMethod("nvim_buf_get_lines");
+        assertEquals(1, method.getTotal().getCount());
+        assertEquals(1, method.getQueued().getCount());
+        assertEquals(1, method.getWire().getCount());
+        assertEquals(1, method.getDispatch().getCount());
+        assertThrows(
+                NullPointerException.class,
+                () -> new RpcClient.Builder().withRequestLatencies(null));
+        client.stop();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void responseLaneWaitCountsAsDispatch() throws Exception {
+        // Given a listener handing responses over to a busy executor
+        var objectMapper = new ObjectMapper(new MessagePackFactory());
+        var latencies = new RequestLatencies();
+        var readingExecutor = Executors.newSingleThreadExecutor();
+        var responseExecutor = Executors.newSingleThreadExecutor();
+        var handedOver = new CountDownLatch(1);
+        var listener =
+                new BackgroundRpcListener.Builder(readingExecutor, objectMapper)
+                        .withRequestLatencies(latencies)
+                        .withResponseDispatch(
+                                task -> {
+                                    responseExecutor.execute(task);
+                                    handedOver.countDown();
+                                },
+                                4)
+                        .build();
+        var busy = new CountDownLatch(1);
+        responseExecutor.execute(
+                () -> {
+                    try {
+                        busy.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        var responded = new CountDownLatch(1);
+        latencies.requestStarted(1, "nvim_eval");
+        latencies.requestWritten(1);
+        listener.listenForResponse(1, (id, response) -> responded.countDown());
+
+        // When its response is read while the executor is still busy
+        listener.start(
+                new ByteArrayInputStream(
+                        objectMapper.writeValueAsBytes(
+                                new ResponseMessage.Builder("result").withId(1).build())));
+        assertTrue(handedOver.await(10, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        busy.countDown();
+
+        // Then the wait for the executor is recorded as dispatch time
+        assertTrue(responded.await(10, TimeUnit.SECONDS));
+        var method = latencies.getMethod("nvim_eval");
+        assertEquals(1, method.getDispatch().getCount());
+        assertTrue(method.getDispatch().getMax() >= TimeUnit.MILLISECONDS.toNanos(20));
+        readingExecutor.shutdown();
+        responseExecutor.shutdown();
+    }
+
+    @Test
+    public void concurrentEventsOfRequestsSharingSlotsDoNotMix() throws Exception {
+        // Given a single slot, raced for by requests and their events on many threads
+        var latencies = new RequestLatencies(1);
+        var threads = 4;
+        var executor = Executors.newFixedThreadPool(threads);
+        var futures = new ArrayList<Future<?>>();
+        for (var t = 0; t < threads; t++) {
+            var first = t * 10_000;
+            futures.add(
+                    executor.submit(
+                            () -> {
+                                for (var id = first; id < first + 10_000; id++) {
+                                    latencies.requestStarted(id, "method");
+                                    latencies.requestWritten(id);
+                                    latencies.responseRead(id);
+                                    latencies.responseDispatched(id);
+                                }
+                            }));
+        }
+        for (var future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Then each recorded request has all of its phases, never those of another request
+        var method = latencies.getMethod("method");
+        assertTrue(method.getTotal().getCount() > 0);
+        assertEquals(method.getTotal().getCount(), method.getQueued().getCount());
+        assertEquals(method.getTotal().getCount(), method.getWire().getCount());
+        assertTrue(method.getTotal().getMax() < TimeUnit.SECONDS.toNanos(30));
+    }
+}
@@ -0,0 +1,91 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.ExtensionCodec;
+import message.MessageDecoder;
+import message.MessagePackValue;
+import message.MessagePackWriter;
+import message.ResponseMessage;
+
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class ResultDecoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+
+    @Test
+    public void decodesRawResults() throws IOException {
+        // Given responses decoded from msgpack, holding raw results
+        // When results are decoded by type
+        // Then they are read straight from msgpack
+        assertEquals(-42L, ResultDecoder.LONG.decode(decoded(-42)));
+        assertEquals(1.5, ResultDecoder.DOUBLE.decode(decoded(1.5)));
+        assertTrue(ResultDecoder.BOOLEAN.decode(decoded(true)));
+        assertEquals("text", ResultDecoder.STRING.decode(decoded("text")));
+        assertNull(ResultDecoder.STRING.decode(decoded(null)));
+        assertNull(ResultDecoder.VOID.decode(decoded(7)));
+        assertEquals(List.of(1, "two"), ResultDecoder.LIST.decode(decoded(List.of(1, "two"))));
+        assertEquals(Map.of("key", 1), ResultDecoder.MAP.decode(decoded(Map.of("key", 1))));
+        assertEquals(List.of(1), ResultDecoder.OBJECT.decode(decoded(List.of(1))));
+        assertEquals(3, ResultDecoder.of(Integer.class).decode(decoded(3)));
+    }
+
+    @Test
+    public void convertsBuiltResults() {
+        // Given responses built with plain results
+        // When results are decoded by type
+        // Then they are converted
+        assertEquals(42L, ResultDecoder.LONG.decode(built(42)));
+        assertFalse(ResultDecoder.BOOLEAN.decode(built(false)));
+        assertEquals("text", ResultDecoder.STRING.decode(built("text")));
+        assertInstanceOf(List.class, ResultDecoder.LIST.decode(built(List.of())));
+    }
+
+    @Test
+    public void decodesExtensionResults() throws IOException {
+        // Given a codec of handles, which is not registered with the connection
+        var codec = ExtensionCodec.ofLong((byte) 1, Long.class, Long::valueOf, Long::longValue);
+        var writer = new MessagePackWriter(objectMapper);
+        writer.writeArrayHeader(2);
+        writer.writeExtension((byte) 1, 3L);
+        writer.writeExtension((byte) 1, 4L);
+        var handles =
+                new MessagePackValue(Arrays.copyOf(writer.buffer(), writer.size()), objectMapper);
+        writer.reset();
+        writer.writeExtension((byte) 1, 5L);
+        var handle =
+                new MessagePackValue(Arrays.copyOf(writer.buffer(), writer.size()), objectMapper);
+
+        // When results are decoded with it
+        // Then extensions are read into value types
+        assertEquals(List.of(3L, 4L), ResultDecoder.listOf(codec).decode(decoded(handles)));
+        assertEquals(5L, ResultDecoder.of(codec).decode(decoded(handle)));
+        assertNull(ResultDecoder.of(codec).decode(decoded(null)));
+        assertNull(ResultDecoder.listOf(codec).decode(built(null)));
+    }
+
+    private static ResponseMessage built(Object result) {
+        return new ResponseMessage.Builder(result).withId(1).build();
+    }
+
+    private ResponseMessage decoded(Object result) throws IOException {
+        var writer = new MessagePackWriter(objectMapper);
+        writer.writeMessage(new ResponseMessage.Builder(result).withId(1).build());
+        var message =
+                new MessageDecoder(objectMapper).decode(writer.buffer(), 0, writer.size());
+        return assertInstanceOf(ResponseMessage.class, message);
+    }
+}
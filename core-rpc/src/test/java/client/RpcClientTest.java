@@ -3,12 +3,14 @@ package client;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.verify;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import message.Message;
 import message.RequestMessage;
+import message.ResponseMessage;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,9 +18,18 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @ExtendWith(MockitoExtension.class)
 public class RpcClientTest {
@@ -134,6 +145,88 @@ public class RpcClientTest {
         assertNotNull(rpc7);
     }
 
+    @Test
+    public void virtualThreadsServeBlockingCallbacks() throws Exception {
+        // Given a client on virtual threads, attached to piped streams
+        var objectMapper = new ObjectMapper(new MessagePackFactory());
+        var incoming = new PipedOutputStream();
+        var connection =
+                new RpcConnection() {
+                    private final InputStream input = new PipedInputStream(incoming, 8192);
+                    private final OutputStream output = new ByteArrayOutputStream();
+
+                    @Override
+                    public InputStream getIncomingStream() {
+                        return input;
+                    }
+
+                    @Override
+                    public OutputStream getOutgoingStream() {
+                        return output;
+                    }
+
+                    @Override
+                    public void close() {}
+                };
+        var client =
+                new RpcClient.Builder()
+                        .withObjectMapper(objectMapper)
+                        .withVirtualThreads()
+                        .build();
+        var release = new CountDownLatch(1);
+        var blocked = new CountDownLatch(1);
+        client.addRequestCallback(
+                request -> {
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+        client.attach(connection);
+
+        // When a request callback blocks
+        var response = client.sendAsync(new RequestMessage.Builder("method"), String.class);
+        incoming.write(
+                objectMapper.writeValueAsBytes(
+                        new RequestMessage.Builder("blocking").withId(7).build()));
+        incoming.flush();
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        // Then responses are still read and delivered
+        incoming.write(
+                objectMapper.writeValueAsBytes(
+                        new ResponseMessage.Builder("result").withId(1).build()));
+        incoming.flush();
+        assertEquals("result", response.get(10, TimeUnit.SECONDS));
+        release.countDown();
+        client.stop();
+    }
+
+    @Test
+    public void virtualThreadExecutorRunsTasksConcurrently() throws Exception {
+        var executorService = VirtualThreads.newThreadPerTaskExecutor("test-");
+        var tasks = 16;
+        var started = new CountDownLatch(tasks);
+        var release = new CountDownLatch(1);
+        for (int i = 0; i < tasks; i++) {
+            executorService.execute(
+                    () -> {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+        }
+        // All tasks run at once, none waits for another to finish
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        release.countDown();
+        executorService.shutdown();
+    }
+
     private void validateDelegates(RpcClient rpcClient, RpcStreamer rpcStreamer)
             throws IOException {
         var rpcConnection = Mockito.mock(RpcConnection.class);
@@ -148,6 +241,12 @@ public class RpcClientTest {
         var responseCallback = Mockito.mock(RpcListener.ResponseCallback.class);
         rpcClient.send(msgBuilder, responseCallback);
         verify(rpcStreamer).send(msgBuilder, responseCallback);
+        rpcClient.send(msgBuilder, responseCallback, Duration.ofSeconds(1));
+        verify(rpcStreamer).send(msgBuilder, responseCallback, Duration.ofSeconds(1));
+        rpcClient.sendAsync(msgBuilder);
+        verify(rpcStreamer).sendAsync(msgBuilder);
+        rpcClient.sendAsync(msgBuilder, String.class);
+        verify(rpcStreamer).sendAsync(msgBuilder, String.class);
         var requestCallback = Mockito.mock(RpcListener.RequestCallback.class);
         var notificationCallback = Mockito.mock(RpcListener.NotificationCallback.class);
         rpcClient.addRequestCallback(requestCallback);
@@ -158,5 +257,16 @@ public class RpcClientTest {
         verify(rpcStreamer).removeRequestCallback(requestCallback);
         verify(rpcStreamer).addNotificationCallback(notificationCallback);
         verify(rpcStreamer).removeNotificationCallback(notificationCallback);
+        rpcClient.addRequestHandler("method", requestCallback);
+        rpcClient.removeRequestHandler("method");
+        verify(rpcStreamer).addRequestHandler("method", requestCallback);
+        verify(rpcStreamer).removeRequestHandler("method");
+        RequestResponder requestResponder = request -> null;
+        rpcClient.addRequestResponder("method", requestResponder);
+        verify(rpcStreamer).addRequestResponder("method", requestResponder);
+        rpcClient.addNotificationCallback("redraw", notificationCallback);
+        rpcClient.removeNotificationCallback("redraw", notificationCallback);
+        verify(rpcStreamer).addNotificationCallback("redraw", notificationCallback);
+        verify(rpcStreamer).removeNotificationCallback("redraw", notificationCallback);
     }
 }
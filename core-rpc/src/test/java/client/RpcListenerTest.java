@@ -0,0 +1,36 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+public class RpcListenerTest {
+
+    private final RpcListener rpcListener = mock(RpcListener.class, CALLS_REAL_METHODS);
+    private final RpcListener.ResponseCallback callback = (forId, responseMessage) -> {};
+
+    @Test
+    public void listensWithoutTimeoutByDefault() {
+        // When a response is listened for without a deadline
+        rpcListener.listenForResponse(1, callback, Duration.ZERO);
+        rpcListener.listenForResponse(2, callback, Duration.ofSeconds(-1));
+
+        // Then it is passed to the method without timeout
+        verify(rpcListener).listenForResponse(1, callback);
+        verify(rpcListener).listenForResponse(2, callback);
+    }
+
+    @Test
+    public void timeoutsAreNotSupportedByDefault() {
+        assertThrows(
+                UnsupportedOperationException.class,
+                () -> rpcListener.listenForResponse(1, callback, Duration.ofSeconds(1)));
+        assertThrows(
+                NullPointerException.class, () -> rpcListener.listenForResponse(1, callback, null));
+    }
+}
@@ -0,0 +1,199 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.MessageType;
+import message.NotificationMessage;
+import message.RequestMessage;
+import message.ResponseMessage;
+
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class RpcMetricsTest {
+
+    @Test
+    public void clientReportsTrafficOfConnection() throws Exception {
+        // Given a client reporting metrics, attached to piped streams
+        var objectMapper = objectMapper();
+        var incoming = new PipedOutputStream();
+        var input = new PipedInputStream(incoming, 8192);
+        var output = new ByteArrayOutputStream();
+        var metrics = new RecordingMetrics();
+        var client =
+                new RpcClient.Builder()
+                        .withObjectMapper(objectMapper)
+                        .withMetrics(metrics)
+                        .withExecutorService(Executors.newCachedThreadPool())
+                        .build();
+        var notified = new CountDownLatch(1);
+        client.addNotificationCallback(notification -> notified.countDown());
+        client.attach(connection(input, output));
+
+        // When a request is answered, a bad frame and a notification arrive
+        var response = client.sendAsync(new RequestMessage.Builder("method"), String.class);
+        var responseBytes =
+                objectMapper.writeValueAsBytes(
+                        new ResponseMessage.Builder("result").withId(1).build());
+        incoming.write(responseBytes);
+        incoming.write(objectMapper.writeValueAsBytes(List.of(7, "bad")));
+        var notificationBytes =
+                objectMapper.writeValueAsBytes(new NotificationMessage.Builder("event").build());
+        incoming.write(notificationBytes);
+        incoming.flush();
+        assertEquals("result", response.get(10, TimeUnit.SECONDS));
+        assertTrue(notified.await(10, TimeUnit.SECONDS));
+
+        // Then traffic, pending responses and errors are reported
+        assertEquals(1, metrics.sent.get(MessageType.REQUEST).intValue());
+        assertEquals(output.size(), metrics.sentBytes.intValue());
+        assertEquals(1, metrics.received.get(MessageType.RESPONSE).intValue());
+        assertEquals(1, metrics.received.get(MessageType.NOTIFICATION).intValue());
+        assertEquals(
+                responseBytes.length + notificationBytes.length,
+                metrics.receivedBytes.intValue());
+        assertEquals(1, metrics.decodeErrors.intValue());
+        assertEquals(List.of(1, 0), metrics.pendingResponses);
+        assertEquals(0, metrics.outboundQueueDepth.get());
+        assertTrue(metrics.executorWaits.intValue() > 0);
+        client.stop();
+    }
+
+    @Test
+    public void senderReportsQueueDepthPerMessage() throws InterruptedException {
+        // Given a sender in task per message mode on a single thread, which is blocked
+        var executor = Executors.newSingleThreadExecutor();
+        var metrics = new RecordingMetrics();
+        var sender =
+                new AsyncRpcSender.Builder(executor, objectMapper()).withMetrics(metrics).build();
+        sender.attach(new ByteArrayOutputStream());
+        var blocked = new CountDownLatch(1);
+        executor.execute(
+                () -> {
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+
+        // When messages are sent
+        for (int i = 0; i < 3; i++) {
+            sender.send(new NotificationMessage.Builder("event").build());
+        }
+
+        // Then they show up as queued until the executor gets to them
+        assertEquals(3, metrics.outboundQueueDepth.get());
+        blocked.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, metrics.outboundQueueDepth.get());
+        assertEquals(3, metrics.sent.get(MessageType.NOTIFICATION).intValue());
+        assertEquals(3, metrics.executorWaits.intValue());
+    }
+
+    @Test
+    public void invalidArguments() {
+        var executor = Executors.newSingleThreadExecutor();
+        var objectMapper = objectMapper();
+        assertSame(RpcMetrics.none(), RpcMetrics.none());
+        assertThrows(
+                NullPointerException.class,
+                () -> new AsyncRpcSender.Builder(executor, objectMapper).withMetrics(null));
+        assertThrows(
+                NullPointerException.class,
+                () -> new BackgroundRpcListener.Builder(executor, objectMapper).withMetrics(null));
+        assertThrows(NullPointerException.class, () -> new RpcClient.Builder().withMetrics(null));
+        executor.shutdown();
+    }
+
+    private static ObjectMapper objectMapper() {
+        var factory = new MessagePackFactory();
+        factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return new ObjectMapper(factory);
+    }
+
+    private static RpcConnection connection(InputStream input, OutputStream output) {
+        return new RpcConnection() {
+            @Override
+            public InputStream getIncomingStream() {
+                return input;
+            }
+
+            @Override
+            public OutputStream getOutgoingStream() {
+                return output;
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    private static final class RecordingMetrics implements RpcMetrics {
+        final Map<MessageType, LongAdder> sent = new ConcurrentHashMap<>();
+        final LongAdder sentBytes = new LongAdder();
+        final Map<MessageType, LongAdder> received = new ConcurrentHashMap<>();
+        final LongAdder receivedBytes = new LongAdder();
+        final AtomicInteger outboundQueueDepth = new AtomicInteger();
+        final List<Integer> pendingResponses = new CopyOnWriteArrayList<>();
+        final LongAdder decodeErrors = new LongAdder();
+        final LongAdder executorWaits = new LongAdder();
+
+        @Override
+        public void messageSent(MessageType type, int bytes) {
+            sent.computeIfAbsent(type, key -> new LongAdder()).increment();
+            sentBytes.add(bytes);
+        }
+
+        @Override
+        public void messageReceived(MessageType type, int bytes) {
+            received.computeIfAbsent(type, key -> new LongAdder()).increment();
+            receivedBytes.add(bytes);
+        }
+
+        @Override
+        public void outboundQueueDepth(int depth) {
+            outboundQueueDepth.set(depth);
+        }
+
+        @Override
+        public void pendingResponses(int count) {
+            pendingResponses.add(count);
+        }
+
+        @Override
+        public void decodeError() {
+            decodeErrors.increment();
+        }
+
+        @Override
+        public void executorQueueWait(long nanos) {
+            assertTrue(nanos >= 0);
+            executorWaits.increment();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import message.PreparedRequest;
+import message.RequestMessage;
+import message.ResponseMessage;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+public class RpcStreamerTest {
+
+    private final RpcStreamer rpcStreamer = mock(RpcStreamer.class, CALLS_REAL_METHODS);
+    private final RpcListener.ResponseCallback callback = (forId, responseMessage) -> {};
+
+    @Test
+    public void sendsWithoutTimeoutByDefault() throws IOException {
+        // When a request is sent without a deadline
+        var request = new RequestMessage.Builder("test");
+        rpcStreamer.send(request, callback, Duration.ZERO);
+
+        // Then it is passed to the method without timeout
+        verify(rpcStreamer).send(request, callback);
+    }
+
+    @Test
+    public void sendsAsyncThroughCallbackByDefault() throws IOException {
+        // When a request is sent asynchronously
+        var request = new RequestMessage.Builder("test");
+        var future = rpcStreamer.sendAsync(request, Integer.class);
+
+        // Then a callback completing the future is passed to the method with callback
+        var callbackCaptor = ArgumentCaptor.forClass(RpcListener.ResponseCallback.class);
+        verify(rpcStreamer).send(eq(request), callbackCaptor.capture());
+        callbackCaptor
+                .getValue()
+                .responseReceived(1, new ResponseMessage.Builder(5).withId(1).build());
+        assertEquals(5, future.join());
+    }
+
+    @Test
+    public void sendsAsyncWithDecoderThroughCallbackByDefault() throws IOException {
+        // When a request is sent asynchronously with a result decoder
+        var request = new RequestMessage.Builder("test");
+        ResultDecoder<String> decoder = response -> "decoded " + response.getResult();
+        var future = rpcStreamer.sendAsync(request, decoder);
+
+        // Then a callback completing the future with decoded result is passed to the method
+        // with callback
+        var callbackCaptor = ArgumentCaptor.forClass(RpcListener.ResponseCallback.class);
+        verify(rpcStreamer).send(eq(request), callbackCaptor.capture());
+        callbackCaptor
+                .getValue()
+                .responseReceived(1, new ResponseMessage.Builder(5).withId(1).build());
+        assertEquals("decoded 5", future.join());
+        assertThrows(
+                NullPointerException.class,
+                () -> rpcStreamer.sendAsync(request, (ResultDecoder<String>) null));
+    }
+
+    @Test
+    public void sendsPreparedRequestsAsBuildersByDefault() throws IOException {
+        // When a prepared request is sent asynchronously
+        var preparedRequest =
+                new PreparedRequest(new RequestMessage.Builder("test").addArgument(1));
+        ResultDecoder<String> decoder = response -> "decoded " + response.getResult();
+        var future = rpcStreamer.sendAsync(preparedRequest, decoder);
+
+        // Then a builder of the same request is passed to the method with callback
+        var requestCaptor = ArgumentCaptor.forClass(RequestMessage.Builder.class);
+        var callbackCaptor = ArgumentCaptor.forClass(RpcListener.ResponseCallback.class);
+        verify(rpcStreamer).send(requestCaptor.capture(), callbackCaptor.capture());
+        var request = requestCaptor.getValue().withId(1).build();
+        assertEquals("test", request.getMethod());
+        assertEquals(List.of(1), request.getArguments());
+        callbackCaptor
+                .getValue()
+                .responseReceived(1, new ResponseMessage.Builder(5).withId(1).build());
+        assertEquals("decoded 5", future.join());
+        assertThrows(
+                NullPointerException.class,
+                () -> rpcStreamer.sendAsync((PreparedRequest) null, decoder));
+    }
+
+    @Test
+    public void timeoutsAreNotSupportedByDefault() {
+        var request = new RequestMessage.Builder("test");
+
+        assertThrows(
+                UnsupportedOperationException.class,
+                () -> rpcStreamer.send(request, callback, Duration.ofSeconds(1)));
+        assertThrows(NullPointerException.class, () -> rpcStreamer.send(request, callback, null));
+    }
+
+    @Test
+    public void requestHandlersAreNotSupportedByDefault() {
+        assertThrows(
+                UnsupportedOperationException.class,
+                () -> rpcStreamer.addRequestHandler("test", requestMessage -> {}));
+        // Removing is harmless, since nothing could be added
+        rpcStreamer.removeRequestHandler("test");
+    }
+
+    @Test
+    public void notificationSubscriptionsAreNotSupportedByDefault() {
+        RpcListener.NotificationCallback notificationCallback = notificationMessage -> {};
+
+        assertThrows(
+                UnsupportedOperationException.class,
+                () -> rpcStreamer.addNotificationCallback("redraw", notificationCallback));
+        // Removing is harmless, since nothing could be added
+        rpcStreamer.removeNotificationCallback("redraw", notificationCallback);
+    }
+}
@@ -0,0 +1,224 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.MessageType;
+import message.NotificationMessage;
+import message.RequestMessage;
+import message.ResponseMessage;
+
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class RpcTracerTest {
+
+    @Test
+    public void clientTracesMessages() throws Exception {
+        // Given a client with a tracer, attached to piped streams
+        var factory = new MessagePackFactory();
+        factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        var objectMapper = new ObjectMapper(factory);
+        var incoming = new PipedOutputStream();
+        var input = new PipedInputStream(incoming, 8192);
+        var output = new ByteArrayOutputStream();
+        var events = new CopyOnWriteArrayList<TracedEvent>();
+        var client =
+                new RpcClient.Builder()
+                        .withObjectMapper(objectMapper)
+                        .withExecutorService(Executors.newCachedThreadPool())
+                        .withTracer(
+                                (event, type, id, method, bytes, nanoTime) ->
+                                        events.add(
+                                                new TracedEvent(event, type, id, method, bytes)))
+                        .build();
+        var notified = new CountDownLatch(1);
+        client.addNotificationCallback(notification -> notified.countDown());
+        client.attach(
+                new RpcConnection() {
+                    @Override
+                    public InputStream getIncomingStream() {
+                        return input;
+                    }
+
+                    @Override
+                    public OutputStream getOutgoingStream() {
+                        return output;
+                    }
+
+                    @Override
+                    public void close() {}
+                });
+
+        // When a request is answered and a notification arrives
+        var response = client.sendAsync(new RequestMessage.Builder("method"), String.class);
+        while (output.size() == 0) {
+            // request is traced before it is written, so events come in order
+            Thread.sleep(1);
+        }
+        var responseBytes =
+                objectMapper.writeValueAsBytes(
+                        new ResponseMessage.Builder("result").withId(1).build());
+        var notificationBytes =
+                objectMapper.writeValueAsBytes(new NotificationMessage.Builder("event").build());
+        incoming.write(responseBytes);
+        incoming.write(notificationBytes);
+        incoming.flush();
+        assertEquals("result", response.get(10, TimeUnit.SECONDS));
+        assertTrue(notified.await(10, TimeUnit.SECONDS));
+
+        // Then each step is traced, with structured data only
+        assertEquals(
+                List.of(
+                        new TracedEvent(
+                                RpcTracer.Event.SENT,
+                                MessageType.REQUEST,
+                                1,
+                                "method",
+                                output.size()),
+                        new TracedEvent(
+                                RpcTracer.Event.RECEIVED,
+                                MessageType.RESPONSE,
+                                1,
+                                null,
+                                responseBytes.length),
+                        new TracedEvent(
+                                RpcTracer.Event.RECEIVED,
+                                MessageType.NOTIFICATION,
+                                -1,
+                                "event",
+                                notificationBytes.length),
+                        new TracedEvent(
+                                RpcTracer.Event.DISPATCHED,
+                                MessageType.NOTIFICATION,
+                                -1,
+                                "event",
+                                -1)),
+                events);
+        client.stop();
+    }
+
+    @Test
+    public void samplesEveryNthMessage() {
+        RpcTracer tracer = (event, type, id, method, bytes, nanoTime) -> {};
+        var sampled = RpcTracer.sampled(tracer, 4);
+
+        // Requests and their responses are sampled by id
+        assertTrue(sampled.isSampled(MessageType.REQUEST, 8));
+        assertTrue(sampled.isSampled(MessageType.RESPONSE, 8));
+        assertFalse(sampled.isSampled(MessageType.REQUEST, 9));
+        assertFalse(sampled.isSampled(MessageType.RESPONSE, 9));
+
+        // Notifications are sampled in turns
+        var sampledNotifications = 0;
+        for (int i = 0; i < 100; i++) {
+            if (sampled.isSampled(MessageType.NOTIFICATION, -1)) {
+                sampledNotifications++;
+            }
+        }
+        assertEquals(25, sampledNotifications);
+
+        assertTrue(RpcTracer.sampled(tracer, 1).isSampled(MessageType.REQUEST, 9));
+        assertFalse(RpcTracer.none().isSampled(MessageType.REQUEST, 8));
+    }
+
+    @Test
+    public void sampledNotificationsKeepAllOfTheirEvents() {
+        // Given a tracer sampling every other message
+        var events = new CopyOnWriteArrayList<RpcTracer.Event>();
+        RpcTracer tracer = (event, type, id, method, bytes, nanoTime) -> events.add(event);
+        var sampled = RpcTracer.sampled(tracer, 2);
+
+        // When notifications are received and dispatched
+        for (int i = 0; i < 100; i++) {
+            var notification = new NotificationMessage.Builder("event").build();
+            MessageTracing.trace(sampled, RpcTracer.Event.RECEIVED, notification, 8);
+            MessageTracing.trace(sampled, RpcTracer.Event.DISPATCHED, notification, -1);
+        }
+
+        // Then only some notifications are traced, each with both of its events
+        assertTrue(events.size() > 0 && events.size() < 200);
+        assertEquals(0, events.size() % 2);
+        for (int i = 0; i < events.size(); i += 2) {
+            assertEquals(RpcTracer.Event.RECEIVED, events.get(i));
+            assertEquals(RpcTracer.Event.DISPATCHED, events.get(i + 1));
+        }
+    }
+
+    @Test
+    public void invalidArguments() {
+        RpcTracer tracer = (event, type, id, method, bytes, nanoTime) -> {};
+        assertThrows(NullPointerException.class, () -> RpcTracer.sampled(null, 1));
+        assertThrows(IllegalArgumentException.class, () -> RpcTracer.sampled(tracer, 0));
+        assertThrows(NullPointerException.class, () -> new RpcClient.Builder().withTracer(null));
+        assertThrows(
+                NullPointerException.class,
+                () ->
+                        new PackStream.Builder(
+                                        new AsyncRpcSender(
+                                                Executors.newSingleThreadExecutor(),
+                                                new ObjectMapper()),
+                                        new BackgroundRpcListener(
+                                                Executors.newSingleThreadExecutor(),
+                                                new ObjectMapper()))
+                                .withTracer(null));
+    }
+
+    private static final class TracedEvent {
+        private final RpcTracer.Event event;
+        private final MessageType type;
+        private final int id;
+        private final String method;
+        private final int bytes;
+
+        TracedEvent(RpcTracer.Event event, MessageType type, int id, String method, int bytes) {
+            this.event = event;
+            this.type = type;
+            this.id = id;
+            this.method = method;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TracedEvent)) {
+                return false;
+            }
+            var other = (TracedEvent) o;
+            return event == other.event
+                    && type == other.type
+                    && id == other.id
+                    && Objects.equals(method, other.method)
+                    && bytes == other.bytes;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(event, type, id, method, bytes);
+        }
+
+        @Override
+        public String toString() {
+            return event + " " + type + " " + id + " " + method + " " + bytes;
+        }
+    }
+}
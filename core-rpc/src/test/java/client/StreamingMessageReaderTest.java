@@ -0,0 +1,212 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.NotificationMessage;
+import message.RequestMessage;
+import message.ResponseMessage;
+import message.RpcError;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class StreamingMessageReaderTest {
+
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    public void setUp() {
+        var factory = new MessagePackFactory();
+        factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        objectMapper = new ObjectMapper(factory);
+    }
+
+    @Test
+    public void readsAllMessageTypes() throws IOException {
+        // Given a stream containing a request, a response and a notification
+        var bytes = new ByteArrayOutputStream();
+        objectMapper
+                .writer()
+                .writeValue(
+                        bytes,
+                        new RequestMessage.Builder("nvim_buf_get_lines")
+                                .addArgument(1)
+                                .addArgument("text")
+                                .withId(7)
+                                .build());
+        objectMapper
+                .writer()
+                .writeValue(bytes, new ResponseMessage.Builder(List.of(1, 2)).withId(7).build());
+        objectMapper
+                .writer()
+                .writeValue(
+                        bytes,
+                        new NotificationMessage.Builder("redraw")
+                                .addArgument(Map.of("key", true))
+                                .build());
+        var reader = new StreamingMessageReader(new ByteArrayInputStream(bytes.toByteArray()));
+
+        // Messages should be read in order
+        var request = assertInstanceOf(RequestMessage.class, reader.read());
+        assertEquals(7, request.getId());
+        assertEquals("nvim_buf_get_lines", request.getMethod());
+        assertEquals(List.of(1, "text"), request.getArguments());
+
+        var response = assertInstanceOf(ResponseMessage.class, reader.read());
+        assertEquals(7, response.getId());
+        assertNull(response.getError());
+        assertEquals(List.of(1, 2), response.getResult());
+
+        var notification = assertInstanceOf(NotificationMessage.class, reader.read());
+        assertEquals("redraw", notification.getName());
+        assertEquals(List.of(Map.of("key", true)), notification.getArguments());
+
+        // And end of stream should be signaled with null
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void readsErrorResponses() throws IOException {
+        var bytes =
+                objectMapper.writeValueAsBytes(
+                        new ResponseMessage.Builder(RpcError.validation("bad")).withId(3).build());
+        var reader = new StreamingMessageReader(new ByteArrayInputStream(bytes));
+
+        var response = assertInstanceOf(ResponseMessage.class, reader.read());
+        assertEquals(3, response.getId());
+        assertEquals(RpcError.Type.VALIDATION.getId(), response.getError().getId());
+        assertEquals("bad", response.getError().getMessage());
+        assertNull(response.getResult());
+    }
+
+    @Test
+    public void readsMessagesSplitAcrossReads() throws IOException {
+        // Given messages larger than the buffer, delivered one byte at a time
+        var bytes = new ByteArrayOutputStream();
+        var arguments = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            arguments.add("argument " + i);
+        }
+        for (int i = 0; i < 3; i++) {
+            objectMapper
+                    .writer()
+                    .writeValue(
+                            bytes,
+                            new NotificationMessage.Builder("test" + i)
+                                    .addArguments(arguments)
+                                    .build());
+        }
+        var data = bytes.toByteArray();
+        var inputStream =
+                new InputStream() {
+                    private int position;
+
+                    @Override
+                    public int read() {
+                        return position < data.length ? data[position++] & 0xff : -1;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) {
+                        if (position >= data.length) {
+                            return -1;
+                        }
+                        b[off] = data[position++];
+                        return 1;
+                    }
+                };
+        var reader = new StreamingMessageReader(inputStream, objectMapper, 16);
+
+        // All messages should be read fully
+        for (int i = 0; i < 3; i++) {
+            var notification = assertInstanceOf(NotificationMessage.class, reader.read());
+            assertEquals("test" + i, notification.getName());
+            assertEquals(arguments, notification.getArguments());
+        }
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void skipsBadMessages() throws IOException {
+        // Given a valid msgpack value which is not a message, followed by a valid message
+        var bytes = new ByteArrayOutputStream();
+        objectMapper.writer().writeValue(bytes, List.of("not", "a", "message", "!", "!"));
+        objectMapper.writer().writeValue(bytes, "neither is this");
+        objectMapper.writer().writeValue(bytes, new NotificationMessage.Builder("test").build());
+        var reader = new StreamingMessageReader(new ByteArrayInputStream(bytes.toByteArray()));
+
+        // Bad messages should be skipped
+        var notification = assertInstanceOf(NotificationMessage.class, reader.read());
+        assertEquals("test", notification.getName());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void keepsBinaryArguments() throws IOException {
+        var bytes =
+                objectMapper.writeValueAsBytes(
+                        new NotificationMessage.Builder("test")
+                                .addArgument(new byte[] {1, 2, 3})
+                                .addArgument(Long.MAX_VALUE)
+                                .addArgument(1.5)
+                                .addArgument(null)
+                                .build());
+        var reader = new StreamingMessageReader(new ByteArrayInputStream(bytes));
+
+        var notification = assertInstanceOf(NotificationMessage.class, reader.read());
+        assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) notification.getArguments().get(0));
+        assertEquals(Long.MAX_VALUE, notification.getArguments().get(1));
+        assertEquals(1.5, notification.getArguments().get(2));
+        assertNull(notification.getArguments().get(3));
+    }
+
+    @Test
+    public void failsOnIncompleteMessage() throws IOException {
+        var bytes = objectMapper.writeValueAsBytes(new NotificationMessage.Builder("test").build());
+        var truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        var reader = new StreamingMessageReader(new ByteArrayInputStream(truncated));
+
+        assertThrows(EOFException.class, reader::read);
+    }
+
+    @Test
+    public void rejectsFramesOverMaximumSize() throws IOException {
+        // Given a notification with a string argument larger than the maximum frame size
+        var bytes =
+                objectMapper.writeValueAsBytes(
+                        new NotificationMessage.Builder("test").addArgument("x".repeat(100)).build());
+        var reader =
+                new StreamingMessageReader(new ByteArrayInputStream(bytes), objectMapper, 16, 64);
+
+        // Frame is rejected before its payload is buffered
+        assertThrows(IllegalArgumentException.class, reader::read);
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new StreamingMessageReader(new ByteArrayInputStream(bytes), null, 16, 0));
+    }
+
+    @Test
+    public void noNullInputStream() {
+        assertThrows(NullPointerException.class, () -> new StreamingMessageReader(null));
+    }
+}
@@ -0,0 +1,224 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+public class TimeoutWheelTest {
+
+    @Test
+    public void expiresTimeoutsAfterDeadline() throws InterruptedException {
+        // Given a wheel with fine ticks
+        var wheel = new TimeoutWheel(Duration.ofMillis(1), 16);
+        var latch = new CountDownLatch(1);
+        var start = System.nanoTime();
+        var expiredAfter = new long[1];
+
+        // When a timeout is scheduled
+        wheel.schedule(
+                id -> {
+                    expiredAfter[0] = System.nanoTime() - start;
+                    latch.countDown();
+                },
+                1,
+                Duration.ofMillis(30));
+
+        // Then it expires, but not before its deadline
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(expiredAfter[0] >= TimeUnit.MILLISECONDS.toNanos(30));
+        assertEquals(0, wheel.size());
+        wheel.stop();
+    }
+
+    @Test
+    public void expiresThousandsOfIds() throws InterruptedException {
+        // Given many timeouts, some of them more than a rotation away
+        var wheel = new TimeoutWheel(Duration.ofMillis(1), 8);
+        var ids = 5000;
+        var expired = ConcurrentHashMap.<Integer>newKeySet();
+        var latch = new CountDownLatch(ids);
+        TimeoutWheel.Target target =
+                id -> {
+                    expired.add(id);
+                    latch.countDown();
+                };
+        for (int i = 0; i < ids; i++) {
+            wheel.schedule(target, i, Duration.ofMillis(i % 40));
+        }
+
+        // Every id should expire exactly once
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(ids, expired.size());
+        assertEquals(0, wheel.size());
+        wheel.stop();
+    }
+
+    @Test
+    public void keepsTimeoutsUntilDue() throws InterruptedException {
+        var wheel = new TimeoutWheel(Duration.ofMillis(1), 4);
+        var latch = new CountDownLatch(1);
+
+        wheel.schedule(id -> latch.countDown(), 1, Duration.ofSeconds(30));
+
+        // Timeout is held through many rotations without expiring
+        assertFalse(latch.await(50, TimeUnit.MILLISECONDS));
+        assertEquals(1, wheel.size());
+        wheel.stop();
+    }
+
+    @Test
+    public void cancelledTimeoutsNeverExpire() throws InterruptedException {
+        // Given timeouts of two ids
+        var wheel = new TimeoutWheel(Duration.ofMillis(1), 4);
+        var expired = ConcurrentHashMap.<Integer>newKeySet();
+        var latch = new CountDownLatch(1);
+        TimeoutWheel.Target target =
+                id -> {
+                    expired.add(id);
+                    latch.countDown();
+                };
+        wheel.schedule(target, 1, Duration.ofMillis(20));
+        wheel.schedule(target, 2, Duration.ofMillis(30));
+
+        // When one of them is cancelled
+        assertTrue(wheel.cancel(target, 1));
+        assertFalse(wheel.cancel(target, 1));
+
+        // Then only the other one expires
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        assertEquals(Set.of(2), expired);
+        wheel.stop();
+    }
+
+    @Test
+    public void expiresOnExpiryExecutor() throws InterruptedException {
+        // Given a wheel with its own expiry executor
+        var executor = Executors.newSingleThreadExecutor(task -> new Thread(task, "expiry"));
+        var wheel = new TimeoutWheel(Duration.ofMillis(1), 4, executor);
+        var threadName = new AtomicReference<String>();
+        var latch = new CountDownLatch(1);
+
+        // When a timeout expires
+        wheel.schedule(
+                id -> {
+                    threadName.set(Thread.currentThread().getName());
+                    latch.countDown();
+                },
+                1,
+                Duration.ofMillis(5));
+
+        // Then target is notified on the executor, not on the wheel thread
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals("expiry", threadName.get());
+        wheel.stop();
+        executor.shutdown();
+    }
+
+    @Test
+    public void dropsTimeoutsOfCompletedIds() throws InterruptedException {
+        // Given a wheel counting tasks of its expiry executor, and a target with completed ids
+        var tasks = new AtomicInteger();
+        var wheel =
+                new TimeoutWheel(
+                        Duration.ofMillis(1),
+                        4,
+                        task -> {
+                            tasks.incrementAndGet();
+                            task.run();
+                        });
+        var completed = ConcurrentHashMap.<Integer>newKeySet();
+        var expired = ConcurrentHashMap.<Integer>newKeySet();
+        var target =
+                new TimeoutWheel.Target() {
+                    @Override
+                    public void expire(int id) {
+                        expired.add(id);
+                    }
+
+                    @Override
+                    public boolean isPending(int id) {
+                        return !completed.contains(id);
+                    }
+                };
+        wheel.schedule(target, 1, Duration.ofSeconds(30));
+        wheel.schedule(target, 2, Duration.ofMillis(5));
+        wheel.schedule(target, 3, Duration.ofMillis(5));
+
+        // When their ids complete
+        completed.add(1);
+        completed.add(2);
+
+        // Then they are dropped within a rotation, without any task, while the rest expires
+        waitFor(() -> wheel.size() == 0);
+        assertEquals(Set.of(3), expired);
+        assertEquals(1, tasks.get());
+        wheel.stop();
+    }
+
+    @Test
+    public void expiresTimeoutsOfATickInSingleTask() throws InterruptedException {
+        // Given a wheel with coarse ticks and an executor holding on to its tasks
+        var tasks = new LinkedBlockingQueue<Runnable>();
+        var wheel = new TimeoutWheel(Duration.ofSeconds(1), 4, tasks::add);
+        var expired = ConcurrentHashMap.<Integer>newKeySet();
+        TimeoutWheel.Target target = expired::add;
+
+        // When many timeouts expire in the same tick
+        for (int i = 0; i < 100; i++) {
+            wheel.schedule(target, i, Duration.ofMillis(1));
+        }
+
+        // Then all of them are expired by a single task
+        var task = tasks.poll(5, TimeUnit.SECONDS);
+        assertNotNull(task);
+        task.run();
+        assertEquals(100, expired.size());
+        assertNull(tasks.poll(20, TimeUnit.MILLISECONDS));
+        wheel.stop();
+    }
+
+    @Test
+    public void noSchedulingAfterStop() {
+        var wheel = new TimeoutWheel(Duration.ofMillis(1), 4);
+        wheel.stop();
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> wheel.schedule(id -> {}, 1, Duration.ofMillis(1)));
+    }
+
+    @Test
+    public void noInvalidConfiguration() {
+        assertThrows(NullPointerException.class, () -> new TimeoutWheel(null, 4));
+        assertThrows(IllegalArgumentException.class, () -> new TimeoutWheel(Duration.ZERO, 4));
+        assertThrows(
+                IllegalArgumentException.class, () -> new TimeoutWheel(Duration.ofMillis(1), 0));
+        assertThrows(
+                NullPointerException.class, () -> new TimeoutWheel(Duration.ofMillis(1), 4, null));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition was not met in time");
+            Thread.sleep(1);
+        }
+    }
+}
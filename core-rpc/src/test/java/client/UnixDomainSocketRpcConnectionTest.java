@@ -0,0 +1,137 @@
+package client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.MessagePackWriter;
+import message.RequestMessage;
+import message.ResponseMessage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class UnixDomainSocketRpcConnectionTest {
+
+    @TempDir Path directory;
+
+    private Path socketPath;
+    private ServerSocketChannel serverChannel;
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        socketPath = directory.resolve("nvim.sock");
+        serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+        var factory = new MessagePackFactory();
+        factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        objectMapper = new ObjectMapper(factory);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        serverChannel.close();
+    }
+
+    @Test
+    public void communicatesThroughStreams() throws IOException {
+        try (var connection = UnixDomainSocketRpcConnection.connect(socketPath);
+                var peer = serverChannel.accept()) {
+            connection.getOutgoingStream().write(new byte[] {1, 2, 3});
+            assertArrayEquals(new byte[] {1, 2, 3}, Channels.newInputStream(peer).readNBytes(3));
+            Channels.newOutputStream(peer).write(new byte[] {4});
+            assertEquals(4, connection.getIncomingStream().read());
+        }
+    }
+
+    @Test
+    public void worksWithDefaultClient() throws Exception {
+        // Given a default client attached to the socket
+        var client =
+                new RpcClient.Builder()
+                        .withObjectMapper(objectMapper)
+                        .withExecutorService(Executors.newFixedThreadPool(2))
+                        .build();
+        try (var connection = UnixDomainSocketRpcConnection.connect(socketPath);
+                var peer = serverChannel.accept()) {
+            client.attach(connection);
+
+            // When a request is sent
+            var future = client.sendAsync(new RequestMessage.Builder("nvim_eval"), Integer.class);
+
+            // Then peer receives it and the response completes the future
+            var reader =
+                    new StreamingMessageReader(Channels.newInputStream(peer), objectMapper);
+            var request = assertInstanceOf(RequestMessage.class, reader.read());
+            var writer = new MessagePackWriter(objectMapper);
+            writer.writeMessage(new ResponseMessage.Builder(42).withId(request.getId()).build());
+            writer.writeTo(Channels.newOutputStream(peer));
+            assertEquals(42, future.get(10, TimeUnit.SECONDS));
+        } finally {
+            client.stop();
+        }
+    }
+
+    @Test
+    public void worksWithEventLoop() throws Exception {
+        var eventLoop = new NioEventLoop();
+        var rpcStreamer =
+                new PackStream(
+                        new NioRpcSender(eventLoop, objectMapper),
+                        new NioRpcListener(eventLoop, objectMapper));
+        try (var connection = UnixDomainSocketRpcConnection.connect(socketPath);
+                var peer = serverChannel.accept()) {
+            rpcStreamer.attach(connection);
+
+            var future = rpcStreamer.sendAsync(new RequestMessage.Builder("nvim_eval"), Integer.class);
+
+            var reader =
+                    new StreamingMessageReader(Channels.newInputStream(peer), objectMapper);
+            var request = assertInstanceOf(RequestMessage.class, reader.read());
+            var writer = new MessagePackWriter(objectMapper);
+            writer.writeMessage(new ResponseMessage.Builder(7).withId(request.getId()).build());
+            writer.writeTo(Channels.newOutputStream(peer));
+            assertEquals(7, future.get(10, TimeUnit.SECONDS));
+        } finally {
+            eventLoop.stop();
+        }
+    }
+
+    @Test
+    public void closesChannel() throws IOException {
+        var connection = UnixDomainSocketRpcConnection.connect(socketPath);
+        connection.close();
+        assertFalse(connection.getChannel().isOpen());
+    }
+
+    @Test
+    public void failsForMissingSocket() {
+        assertThrows(
+                IOException.class,
+                () -> UnixDomainSocketRpcConnection.connect(directory.resolve("missing.sock")));
+        assertThrows(
+                NullPointerException.class,
+                () -> UnixDomainSocketRpcConnection.connect((Path) null));
+        assertThrows(NullPointerException.class, () -> new UnixDomainSocketRpcConnection(null));
+    }
+}
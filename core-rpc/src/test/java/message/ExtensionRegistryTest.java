@@ -0,0 +1,153 @@
+package message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackExtensionType;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+public class ExtensionRegistryTest {
+    private static final ExtensionCodec<Handle> HANDLE =
+            ExtensionCodec.ofLong((byte) 1, Handle.class, Handle::new, Handle::id);
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+    private final ExtensionRegistry extensions =
+            new ExtensionRegistry.Builder().register(HANDLE).build();
+
+    @Test
+    public void registeredValuesRoundTrip() throws IOException {
+        // Given a writer and a reader with a registry
+        var writer = new MessagePackWriter(objectMapper).withExtensions(extensions);
+
+        // When a registered value is written next to an unregistered extension
+        writer.writeValue(List.of(new Handle(300), "text"));
+        writer.writeExtension((byte) 2, 5L);
+
+        // Then the registered one is decoded into its value type and the other one stays raw
+        var reader =
+                new MessagePackReader(writer.buffer(), 0, writer.size())
+                        .withExtensions(extensions);
+        assertEquals(List.of(new Handle(300), "text"), reader.readValue());
+        var raw = assertInstanceOf(MessagePackExtensionType.class, reader.readValue());
+        assertEquals(2, raw.getType());
+        assertEquals(writer.size(), reader.position());
+    }
+
+    @Test
+    public void readsExtensionsWithoutRegistry() {
+        // Given extensions holding integers of various widths
+        var writer = new MessagePackWriter(objectMapper);
+        writer.writeExtension((byte) 1, 7L);
+        writer.writeExtension((byte) 1, -70000L);
+        writer.writeExtension((byte) 1, Long.MAX_VALUE);
+        writer.writeExtension((byte) 2, 1L);
+
+        // When they are read by expected type
+        var reader = new MessagePackReader(writer.buffer(), 0, writer.size());
+
+        // Then integers are read straight from payloads
+        assertEquals(7, reader.readExtensionLong((byte) 1));
+        assertEquals(-70000, reader.readExtensionLong((byte) 1));
+        assertEquals(new Handle(Long.MAX_VALUE), reader.readExtension(HANDLE));
+        // And a different type is rejected
+        assertThrows(IllegalStateException.class, () -> reader.readExtensionLong((byte) 1));
+    }
+
+    @Test
+    public void decodedMessagesReadExtensionArguments() throws IOException {
+        // Given messages with handle arguments, decoded from msgpack
+        var writer = new MessagePackWriter(objectMapper).withExtensions(extensions);
+        writer.writeMessage(
+                new RequestMessage.Builder("nvim_buf_get_lines")
+                        .addArgument(new Handle(4))
+                        .withId(1)
+                        .build());
+        var requestEnd = writer.size();
+        writer.writeMessage(
+                new NotificationMessage.Builder("nvim_buf_lines_event")
+                        .addArgument(new Handle(9))
+                        .build());
+        var decoder = new MessageDecoder(objectMapper, extensions);
+
+        // When arguments are read
+        var request =
+                assertInstanceOf(
+                        RequestMessage.class, decoder.decode(writer.buffer(), 0, requestEnd));
+        var notification =
+                assertInstanceOf(
+                        NotificationMessage.class,
+                        decoder.decode(writer.buffer(), requestEnd, writer.size() - requestEnd));
+
+        // Then they are read as ids or as value types
+        assertEquals(4, request.getExtensionLong(0, (byte) 1));
+        assertEquals(9, notification.getExtensionLong(0, (byte) 1));
+        assertEquals(List.of(new Handle(9)), notification.getArguments());
+        assertThrows(IllegalStateException.class, () -> request.getExtensionLong(0, (byte) 0));
+    }
+
+    @Test
+    public void appliesToObjectMapper() throws IOException {
+        // Given a mapper with the registry applied
+        var mapper = extensions.applyTo(objectMapper);
+        var writer = new MessagePackWriter(objectMapper).withExtensions(extensions);
+        writer.writeValue(List.of(new Handle(2)));
+
+        // When a value is decoded by the mapper
+        var value = mapper.readValue(writer.buffer(), 0, writer.size(), Object.class);
+
+        // Then registered extensions are decoded into value types
+        assertEquals(List.of(new Handle(2)), value);
+        assertSame(objectMapper, ExtensionRegistry.empty().applyTo(objectMapper));
+        assertTrue(ExtensionRegistry.empty().isEmpty());
+    }
+
+    @Test
+    public void rejectsDuplicateCodecs() {
+        var builder = new ExtensionRegistry.Builder().register(HANDLE);
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        builder.register(
+                                ExtensionCodec.ofLong(
+                                        (byte) 1, Long.class, Long::valueOf, Long::longValue)));
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        builder.register(
+                                ExtensionCodec.ofLong(
+                                        (byte) 2, Handle.class, Handle::new, Handle::id)));
+        assertThrows(NullPointerException.class, () -> builder.register(null));
+    }
+
+    private static final class Handle {
+        private final long id;
+
+        private Handle(long id) {
+            this.id = id;
+        }
+
+        private long id() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Handle && id == ((Handle) o).id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(id);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+public class FrameScannerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+
+    @Test
+    public void resumesAcrossPartialReads() throws IOException {
+        // Given a nested value arriving one byte at a time
+        var bytes =
+                objectMapper.writeValueAsBytes(
+                        List.of(1, "text", Map.of("key", List.of(1.5, true)), new byte[300]));
+        var scanner = new FrameScanner(1024);
+
+        // When it is scanned after each byte
+        var ends = 0;
+        for (int limit = 0; limit < bytes.length; limit++) {
+            ends += scanner.scan(bytes, 0, limit) < 0 ? 0 : 1;
+        }
+
+        // Then it is complete only once all bytes are there, same as with a single scan
+        assertEquals(0, ends);
+        assertEquals(bytes.length, scanner.scan(bytes, 0, bytes.length));
+        assertEquals(bytes.length, MessagePackReader.findValueEnd(bytes, 0, bytes.length));
+        assertEquals(0, scanner.requiredLength());
+    }
+
+    @Test
+    public void followsMovedValue() throws IOException {
+        // Given a value partially scanned at one offset
+        var bytes = objectMapper.writeValueAsBytes(List.of("first", "second"));
+        var scanner = new FrameScanner(1024);
+        var shifted = new byte[bytes.length + 5];
+        System.arraycopy(bytes, 0, shifted, 5, bytes.length);
+        assertEquals(-1, scanner.scan(shifted, 5, 5 + 8));
+
+        // When its bytes are moved and more arrive
+        var end = scanner.scan(bytes, 0, bytes.length);
+
+        // Then scanning continues relative to the new start
+        assertEquals(bytes.length, end);
+    }
+
+    @Test
+    public void reportsRequiredLength() throws IOException {
+        // Given a string of which only the header arrived
+        var bytes = objectMapper.writeValueAsBytes("x".repeat(1000));
+        var scanner = new FrameScanner(2048);
+
+        // When it is scanned
+        var end = scanner.scan(bytes, 0, 3);
+
+        // Then its full length is known
+        assertEquals(-1, end);
+        assertEquals(bytes.length, scanner.requiredLength());
+    }
+
+    @Test
+    public void rejectsValuesOverMaximumSize() throws IOException {
+        var string = objectMapper.writeValueAsBytes("x".repeat(1000));
+        // array16 header claiming more elements than fit into the maximum
+        var array = new byte[] {(byte) 0xdc, (byte) 0xff, (byte) 0xff};
+
+        assertThrows(IllegalArgumentException.class, () -> new FrameScanner(512).scan(string, 0, 3));
+        assertThrows(IllegalArgumentException.class, () -> new FrameScanner(512).scan(array, 0, 3));
+        assertThrows(IllegalArgumentException.class, () -> new FrameScanner(0));
+    }
+}
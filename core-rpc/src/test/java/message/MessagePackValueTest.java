@@ -0,0 +1,118 @@
+package message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class MessagePackValueTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+
+    @Test
+    public void typedAccessorsDecodeSingleElements() throws IOException {
+        // Given a packed array of different values
+        var bytes =
+                objectMapper.writeValueAsBytes(
+                        Arrays.asList(
+                                42, "text", true, 2.5, null, List.of(1, 2), Map.of("a", 1)));
+        var value = new MessagePackValue(bytes, objectMapper);
+
+        // Each element should be accessible by its type
+        assertEquals(7, value.size());
+        assertEquals(42L, value.getLong(0));
+        assertEquals(42, value.getInt(0));
+        assertEquals("text", value.getString(1));
+        assertTrue(value.getBoolean(2));
+        assertEquals(2.5, value.getDouble(3));
+        assertTrue(value.isNil(4));
+        assertFalse(value.isNil(0));
+        assertNull(value.getString(4));
+        assertEquals(List.of(1, 2), value.get(5));
+        assertEquals(Map.of("a", 1), value.get(6));
+        // Integers are accepted as doubles too
+        assertEquals(42.0, value.getDouble(0));
+    }
+
+    @Test
+    public void bindsUsingObjectMapper() throws IOException {
+        var bytes =
+                objectMapper.writeValueAsBytes(
+                        List.of(Map.of("row", 1, "col", 2), List.of("a", "b")));
+        var value = new MessagePackValue(bytes, objectMapper);
+
+        var position = value.bind(0, Position.class);
+        assertEquals(1, position.row);
+        assertEquals(2, position.col);
+        assertEquals(List.of("a", "b"), value.bind(1, List.class));
+        assertEquals(2, value.bind(List.class).size());
+    }
+
+    @Test
+    public void decodesWholeValue() throws IOException {
+        var bytes = objectMapper.writeValueAsBytes(List.of(1, List.of("nested")));
+        var value = new MessagePackValue(bytes, null);
+
+        var decoded = assertInstanceOf(ArrayList.class, value.decode());
+        assertEquals(List.of(1, List.of("nested")), decoded);
+    }
+
+    @Test
+    public void nilIsEmptyArray() throws IOException {
+        var value = new MessagePackValue(objectMapper.writeValueAsBytes(null), null);
+
+        assertTrue(value.isNil());
+        assertEquals(0, value.size());
+    }
+
+    @Test
+    public void failsOnWrongTypes() throws IOException {
+        var bytes = objectMapper.writeValueAsBytes(List.of("text"));
+        var value = new MessagePackValue(bytes, objectMapper);
+
+        assertThrows(IllegalStateException.class, () -> value.getLong(0));
+        assertThrows(IllegalStateException.class, () -> value.getBoolean(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> value.getString(1));
+        assertThrows(IllegalArgumentException.class, () -> value.bind(0, Position.class));
+    }
+
+    @Test
+    public void messagesDecodeArgumentsLazily() throws IOException {
+        // Given a decoded notification
+        var bytes =
+                objectMapper.writeValueAsBytes(
+                        new NotificationMessage.Builder("test")
+                                .addArgument(7)
+                                .addArgument("text")
+                                .build());
+        var notification =
+                assertInstanceOf(
+                        NotificationMessage.class,
+                        new MessageDecoder(objectMapper).decode(bytes, 0, bytes.length));
+
+        // Arguments should be available through typed accessors and as a list
+        assertEquals(2, notification.argCount());
+        assertEquals(7L, notification.getLong(0));
+        assertEquals("text", notification.getString(1));
+        assertEquals(List.of(7, "text"), notification.getArguments());
+        assertEquals(2, notification.getPackedArguments().size());
+    }
+
+    public static class Position {
+        public int row;
+        public int col;
+    }
+}
@@ -0,0 +1,198 @@
+package message;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackExtensionType;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MessagePackWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+
+    @Test
+    public void encodesMessagesSameAsObjectMapper() throws IOException {
+        // Given messages with all kinds of natively supported values
+        var map = new LinkedHashMap<String, Object>();
+        map.put("key", "value");
+        map.put("nested", List.of(1, 2));
+        var arguments =
+                Arrays.asList(
+                        null,
+                        true,
+                        false,
+                        0,
+                        127,
+                        128,
+                        255,
+                        256,
+                        65535,
+                        65536,
+                        -1,
+                        -32,
+                        -33,
+                        -128,
+                        -129,
+                        -32768,
+                        -32769,
+                        Long.MAX_VALUE,
+                        Long.MIN_VALUE,
+                        1.5,
+                        2.5f,
+                        "",
+                        "short",
+                        "x".repeat(31),
+                        "x".repeat(32),
+                        "x".repeat(300),
+                        "x".repeat(70000),
+                        "\u010d\u0107\u017e \u65e5\u672c \uD83D\uDE00",
+                        new byte[] {1, 2, 3},
+                        new byte[300],
+                        List.of(),
+                        Arrays.asList(new Object[20]),
+                        map,
+                        new MessagePackExtensionType((byte) 1, new byte[] {5}),
+                        new MessagePackExtensionType((byte) 2, new byte[3]),
+                        new MessagePackExtensionType((byte) 3, new byte[16]));
+        var messages =
+                List.of(
+                        new RequestMessage.Builder("nvim_call_function")
+                                .addArguments(new ArrayList<>(arguments))
+                                .withId(70000)
+                                .build(),
+                        new NotificationMessage.Builder("redraw")
+                                .addArguments(new ArrayList<>(arguments))
+                                .build(),
+                        new ResponseMessage.Builder(map).withId(5).build(),
+                        new ResponseMessage.Builder(RpcError.validation("bad")).withId(6).build());
+
+        // Encoded bytes should be exactly the same
+        var writer = new MessagePackWriter(objectMapper, 16);
+        for (var message : messages) {
+            writer.writeMessage(message);
+            assertArrayEquals(objectMapper.writeValueAsBytes(message), written(writer));
+            writer.reset();
+        }
+    }
+
+    @Test
+    public void fallsBackToObjectMapper() throws IOException {
+        // Given an argument type which is not supported natively
+        var position = new MessagePackValueTest.Position();
+        position.row = 3;
+        position.col = 4;
+        var message =
+                new NotificationMessage.Builder("test")
+                        .addArgument(position)
+                        .addArgument(Map.of(1, "integer key"))
+                        .build();
+        var writer = new MessagePackWriter(objectMapper);
+
+        writer.writeMessage(message);
+
+        assertArrayEquals(objectMapper.writeValueAsBytes(message), written(writer));
+    }
+
+    @Test
+    public void copiesRawValues() throws IOException {
+        // Given a decoded message, holding raw arguments
+        var bytes =
+                objectMapper.writeValueAsBytes(
+                        new RequestMessage.Builder("test")
+                                .addArgument("text")
+                                .addArgument(List.of(1, 2))
+                                .withId(1)
+                                .build());
+        var message = new MessageDecoder(objectMapper).decode(bytes, 0, bytes.length);
+        var writer = new MessagePackWriter(objectMapper);
+
+        // Re-encoding it should give the same bytes
+        writer.writeMessage(message);
+        assertArrayEquals(bytes, written(writer));
+    }
+
+    @Test
+    public void writesIntegerExtensions() {
+        // Given handles of all sizes
+        var handles = new long[] {0, 3, -1, 300, 70_000, Integer.MAX_VALUE + 1L, Long.MIN_VALUE};
+        for (var handle : handles) {
+            var writer = new MessagePackWriter(objectMapper);
+
+            // When they are written as extensions
+            writer.writeExtension((byte) 1, handle);
+
+            // Then payload is the integer encoded as msgpack
+            var extension =
+                    assertInstanceOf(
+                            MessagePackExtensionType.class,
+                            new MessagePackReader(writer.buffer(), 0, writer.size()).readValue());
+            assertEquals(1, extension.getType());
+            var data = extension.getData();
+            assertEquals(handle, new MessagePackReader(data, 0, data.length).readLong());
+        }
+    }
+
+    @Test
+    public void replacesUnpairedSurrogates() {
+        var value = "a\uD800b\uDC00";
+        var writer = new MessagePackWriter(objectMapper);
+
+        writer.writeString(value);
+
+        var reader = new MessagePackReader(writer.buffer(), 0, writer.size());
+        assertEquals(new String(value.getBytes(StandardCharsets.UTF_8)), reader.readString());
+    }
+
+    @Test
+    public void truncatesAndResets() throws IOException {
+        var writer = new MessagePackWriter(objectMapper);
+        writer.writeValue("kept");
+        var size = writer.size();
+        writer.writeValue(List.of("dropped"));
+        writer.truncate(size);
+
+        var reader = new MessagePackReader(writer.buffer(), 0, writer.size());
+        assertEquals("kept", reader.readString());
+        assertFalse(reader.hasNext());
+
+        writer.reset();
+        assertEquals(0, writer.size());
+        assertThrows(IllegalArgumentException.class, () -> writer.truncate(1));
+    }
+
+    @Test
+    public void writesToStream() throws IOException {
+        var writer = new MessagePackWriter(objectMapper);
+        writer.writeValue(List.of(1, "two"));
+        var outputStream = new ByteArrayOutputStream();
+
+        writer.writeTo(outputStream);
+
+        var decoded = objectMapper.readValue(outputStream.toByteArray(), Object.class);
+        assertEquals(List.of(1, "two"), assertInstanceOf(List.class, decoded));
+    }
+
+    @Test
+    public void noNullFallbackMapper() {
+        assertThrows(NullPointerException.class, () -> new MessagePackWriter(null));
+    }
+
+    private static byte[] written(MessagePackWriter writer) {
+        return Arrays.copyOf(writer.buffer(), writer.size());
+    }
+}
@@ -3,6 +3,9 @@ package message;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
@@ -106,4 +109,27 @@ public class NotificationMessageBuilderTest {
         // To string doesn't crash
         assertDoesNotThrow(() -> builder.build().toString());
     }
+
+    @Test
+    public void testTypedAccessors() {
+        // Given built notification with arguments of different types
+        var notificationMessage =
+                new NotificationMessage.Builder("test")
+                        .addArgument(5)
+                        .addArgument("text")
+                        .addArgument(true)
+                        .addArgument(null)
+                        .build();
+        // Typed accessors should work on arguments that were not decoded from msgpack
+        assertEquals(4, notificationMessage.argCount());
+        assertEquals(5L, notificationMessage.getLong(0));
+        assertEquals(5, notificationMessage.getInt(0));
+        assertEquals("text", notificationMessage.getString(1));
+        assertEquals("text", notificationMessage.bind(1, String.class));
+        assertTrue(notificationMessage.getBoolean(2));
+        assertTrue(notificationMessage.isNil(3));
+        assertNull(notificationMessage.getPackedArguments());
+        // Mismatched types should fail
+        assertThrows(IllegalStateException.class, () -> notificationMessage.getLong(1));
+    }
 }
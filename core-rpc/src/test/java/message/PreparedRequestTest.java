@@ -0,0 +1,167 @@
+package message;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class PreparedRequestTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+
+    @Test
+    public void patchesIdsIntoTemplate() throws IOException {
+        // Given a request prepared once
+        var preparedRequest =
+                new PreparedRequest(
+                        new RequestMessage.Builder("nvim_win_get_cursor")
+                                .addArgument(0)
+                                .addArgument(List.of("text", 1.5))
+                                .addArgument(Map.of("key", true)),
+                        objectMapper);
+        var decoder = new MessageDecoder(objectMapper);
+
+        for (var id : new int[] {0, 1, 300, Integer.MAX_VALUE, -1, Integer.MIN_VALUE}) {
+            // When it is written with different ids, after other messages
+            var writer = new MessagePackWriter(objectMapper);
+            writer.writeValue("before");
+            var start = writer.size();
+            writer.writeMessage(preparedRequest.build(id));
+
+            // Then each decodes the same as an ordinary request with that id
+            assertEquals(preparedRequest.byteLength(), writer.size() - start);
+            var request =
+                    assertInstanceOf(
+                            RequestMessage.class,
+                            decoder.decode(writer.buffer(), start, writer.size() - start));
+            assertEquals(id, request.getId());
+            assertEquals("nvim_win_get_cursor", request.getMethod());
+            assertEquals(
+                    List.of(0, List.of("text", 1.5), Map.of("key", true)), request.getArguments());
+        }
+    }
+
+    @Test
+    public void builtRequestsExposeArguments() throws IOException {
+        // Given a request prepared from already packed arguments
+        var arguments = new MessagePackWriter(objectMapper);
+        arguments.writeArrayHeader(1);
+        arguments.writeString("mode");
+        var preparedRequest =
+                new PreparedRequest(
+                        new RequestMessage.Builder(
+                                MethodName.of("nvim_get_mode"),
+                                new MessagePackValue(
+                                        Arrays.copyOf(arguments.buffer(), arguments.size()),
+                                        objectMapper)));
+
+        // When a request is built from it
+        var request = preparedRequest.build(5);
+
+        // Then it holds the method and arguments without any encoding
+        assertEquals(5, request.getId());
+        assertEquals("nvim_get_mode", request.getMethod());
+        assertEquals("nvim_get_mode", preparedRequest.getMethod());
+        assertEquals("mode", request.getString(0));
+        // And it is still encoded the same by ObjectMapper
+        var expected = new RequestMessage.Builder("nvim_get_mode").addArgument("mode").withId(5);
+        assertArrayEquals(
+                objectMapper.writeValueAsBytes(expected.build()),
+                objectMapper.writeValueAsBytes(request));
+    }
+
+    @Test
+    public void convertsBackToBuilder() throws IOException {
+        // Given a prepared request
+        var preparedRequest =
+                new PreparedRequest(
+                        new RequestMessage.Builder("nvim_buf_get_lines").addArgument(List.of(1)));
+
+        // When a request is built from its builder instead of its template
+        var request = preparedRequest.toBuilder().withId(7).build();
+
+        // Then it is the same request, with method and arguments still encoded
+        assertEquals("nvim_buf_get_lines", request.getMethod());
+        assertEquals(List.of(List.of(1)), request.getArguments());
+        assertArrayEquals(
+                objectMapper.writeValueAsBytes(preparedRequest.build(7)),
+                objectMapper.writeValueAsBytes(request));
+    }
+
+    @Test
+    public void encodesHandlesWithExtensions() throws IOException {
+        // Given a request with a handle argument, prepared with a registry of its type
+        var extensions =
+                new ExtensionRegistry.Builder()
+                        .register(
+                                ExtensionCodec.ofLong(
+                                        (byte) 0, Handle.class, Handle::new, Handle::id))
+                        .build();
+        var preparedRequest =
+                new PreparedRequest(
+                        new RequestMessage.Builder("nvim_buf_line_count")
+                                .addArgument(new Handle(3)),
+                        objectMapper,
+                        extensions);
+
+        // When a request is built and written from it
+        var request = preparedRequest.build(1);
+        var writer = new MessagePackWriter(objectMapper);
+        writer.writeMessage(request);
+
+        // Then the handle is written as an extension type and read back through the registry
+        assertEquals(3, request.getPackedArguments().reader(0).readExtensionLong((byte) 0));
+        assertEquals(new Handle(3), request.getArgument(0));
+        var decoded =
+                assertInstanceOf(
+                        RequestMessage.class,
+                        new MessageDecoder(objectMapper, extensions)
+                                .decode(writer.buffer(), 0, writer.size()));
+        assertEquals(List.of(new Handle(3)), decoded.getArguments());
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThrows(NullPointerException.class, () -> new PreparedRequest(null));
+        assertThrows(
+                NullPointerException.class,
+                () -> new PreparedRequest(new RequestMessage.Builder("method"), null));
+        assertThrows(
+                NullPointerException.class,
+                () ->
+                        new PreparedRequest(
+                                new RequestMessage.Builder("method"), objectMapper, null));
+    }
+
+    private static final class Handle {
+        private final long id;
+
+        private Handle(long id) {
+            this.id = id;
+        }
+
+        private long id() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Handle && id == ((Handle) o).id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(id);
+        }
+    }
+}
@@ -1,12 +1,19 @@
 package message;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class RequestMessageBuilderTest {
 
@@ -123,4 +130,39 @@ public class RequestMessageBuilderTest {
         // To string doesn't crash
         assertDoesNotThrow(() -> builder.build().toString());
     }
+
+    @Test
+    public void testPackedConstructor() throws IOException {
+        // Given an encoded method name and packed arguments
+        var objectMapper = new ObjectMapper(new MessagePackFactory());
+        var method = MethodName.of("test");
+        var arguments = new MessagePackWriter(objectMapper);
+        arguments.writeArrayHeader(2);
+        arguments.writeLong(1);
+        arguments.writeString("argTwo");
+        var builder =
+                new RequestMessage.Builder(
+                        method,
+                        new MessagePackValue(
+                                Arrays.copyOf(arguments.buffer(), arguments.size()),
+                                objectMapper));
+        // When builder builds request
+        var requestMessage = builder.withId(7).build();
+        // It should hold the same method and arguments
+        assertEquals("test", method.getName());
+        assertEquals("test", requestMessage.getMethod());
+        assertEquals(1, requestMessage.getLong(0));
+        assertEquals("argTwo", requestMessage.getString(1));
+        // And encode same as an ordinary request
+        var writer = new MessagePackWriter(objectMapper);
+        writer.writeMessage(requestMessage);
+        var expected =
+                new RequestMessage.Builder("test").addArgument(1).addArgument("argTwo").withId(7);
+        assertArrayEquals(
+                objectMapper.writeValueAsBytes(expected.build()),
+                Arrays.copyOf(writer.buffer(), writer.size()));
+        // Packed arguments may not be extended
+        assertThrows(IllegalStateException.class, () -> builder.addArgument("argThree"));
+        assertThrows(NullPointerException.class, () -> MethodName.of(null));
+    }
 }
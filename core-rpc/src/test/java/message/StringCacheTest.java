@@ -0,0 +1,77 @@
+package message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class StringCacheTest {
+
+    @Test
+    public void returnsSameInstanceForSameBytes() {
+        // Given the same name in different places of different arrays
+        var cache = new StringCache();
+        var first = "xx nvim_buf_lines".getBytes(StandardCharsets.UTF_8);
+        var second = "nvim_buf_lines yyy".getBytes(StandardCharsets.UTF_8);
+
+        // When it is looked up
+        var fromFirst = cache.get(first, 3, 14);
+        var fromSecond = cache.get(second, 0, 14);
+
+        // Then it is decoded once
+        assertEquals("nvim_buf_lines", fromFirst);
+        assertSame(fromFirst, fromSecond);
+        // And different bytes give different strings
+        assertEquals("nvim_buf_line", cache.get(second, 0, 13));
+        assertEquals("", cache.get(second, 0, 0));
+    }
+
+    @Test
+    public void decodesWhenNotCacheable() {
+        var cache = new StringCache();
+        var longName = "n".repeat(StringCache.MAX_LENGTH + 1).getBytes(StandardCharsets.UTF_8);
+        var longValue = cache.get(longName, 0, longName.length);
+        assertEquals(new String(longName, StandardCharsets.UTF_8), longValue);
+        assertNotSame(longValue, cache.get(longName, 0, longName.length));
+
+        // Fill the cache, further names are still decoded properly
+        for (int i = 0; i < StringCache.MAX_ENTRIES; i++) {
+            var bytes = ("name" + i).getBytes(StandardCharsets.UTF_8);
+            cache.get(bytes, 0, bytes.length);
+        }
+        var bytes = "overflow".getBytes(StandardCharsets.UTF_8);
+        assertEquals("overflow", cache.get(bytes, 0, bytes.length));
+        var cached = "name7".getBytes(StandardCharsets.UTF_8);
+        assertSame(cache.get(cached, 0, cached.length), cache.get(cached, 0, cached.length));
+    }
+
+    @Test
+    public void decoderReusesNames() throws IOException {
+        // Given two frames with the same method and notification name
+        var objectMapper = new ObjectMapper(new MessagePackFactory());
+        var decoder = new MessageDecoder(objectMapper);
+        var request =
+                objectMapper.writeValueAsBytes(new RequestMessage.Builder("method").withId(1).build());
+        var notification =
+                objectMapper.writeValueAsBytes(new NotificationMessage.Builder("method").build());
+
+        // When they are decoded
+        var first = assertInstanceOf(RequestMessage.class, decoder.decode(request, 0, request.length));
+        var second =
+                assertInstanceOf(
+                        NotificationMessage.class,
+                        decoder.decode(notification, 0, notification.length));
+
+        // Then name is decoded only once
+        assertEquals("method", first.getMethod());
+        assertSame(first.getMethod(), second.getName());
+    }
+}
@@ -0,0 +1,90 @@
+plugins {
+    id("java")
+}
+
+group = "org.jnvim"
+version = "1.0"
+
+repositories {
+    mavenCentral()
+}
+
+// Generator lives in its own source set, so it can run before the stubs it generates are compiled
+val generator: SourceSet by sourceSets.creating
+// Hand-written API metadata, stubs generated from it are compiled with the tests by every build
+val fixture: SourceSet by sourceSets.creating
+
+dependencies {
+    "generatorImplementation"(project(":core-rpc"))
+    implementation(project(":core-rpc"))
+    implementation("org.slf4j:slf4j-api:2.0.16")
+    implementation("org.msgpack:jackson-dataformat-msgpack:0.9.8")
+    "fixtureImplementation"("org.msgpack:jackson-dataformat-msgpack:0.9.8")
+    testImplementation(generator.output)
+    testImplementation(fixture.output)
+    testImplementation(platform("org.junit:junit-bom:5.10.0"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testImplementation("org.mockito:mockito-core:5.14.2")
+    testImplementation("org.mockito:mockito-junit-jupiter:5.14.2")
+}
+
+// Dump of nvim_get_api_info, as written by `nvim --api-info` Another one may be picked with
+// -Pnvim.apiInfo=<path> Without a dump nothing is generated
+val apiInfo: File =
+    providers.gradleProperty("nvim.apiInfo").map { file(it) }
+        .getOrElse(file("src/main/nvim/api-info.mpack"))
+val generatedSources = layout.buildDirectory.dir("generated/sources/nvim-api/java")
+
+val generateNvimApi = tasks.register<JavaExec>("generateNvimApi") {
+    group = "build"
+    description = "Generates typed Neovim API stubs from a nvim_get_api_info dump"
+    classpath = generator.runtimeClasspath
+    mainClass.set("api.generator.NvimApiGenerator")
+    inputs.files(apiInfo)
+    outputs.dir(generatedSources)
+    onlyIf { apiInfo.isFile }
+    // functions removed from the API must not linger in the output
+    doFirst { delete(generatedSources) }
+    args(apiInfo.path, generatedSources.get().asFile.path, "api")
+}
+
+sourceSets.main {
+    java.srcDir(generatedSources)
+}
+
+tasks.compileJava {
+    dependsOn(generateNvimApi)
+}
+
+val fixtureApiInfo = layout.buildDirectory.file("nvim-api-fixture/api-info.mpack")
+val fixtureSources = layout.buildDirectory.dir("generated/sources/nvim-api-fixture/java")
+
+val writeApiInfoFixture = tasks.register<JavaExec>("writeApiInfoFixture") {
+    description = "Writes the hand-written API metadata the fixture stubs are generated from"
+    classpath = fixture.runtimeClasspath
+    mainClass.set("api.generator.ApiInfoFixture")
+    outputs.file(fixtureApiInfo)
+    args(fixtureApiInfo.get().asFile.path)
+}
+
+val generateFixtureApi = tasks.register<JavaExec>("generateFixtureApi") {
+    description = "Generates stubs of the fixture API into package api.fixture, for the tests"
+    classpath = generator.runtimeClasspath
+    mainClass.set("api.generator.NvimApiGenerator")
+    inputs.files(writeApiInfoFixture)
+    outputs.dir(fixtureSources)
+    doFirst { delete(fixtureSources) }
+    args(fixtureApiInfo.get().asFile.path, fixtureSources.get().asFile.path, "api.fixture")
+}
+
+sourceSets.test {
+    java.srcDir(fixtureSources)
+}
+
+tasks.compileTestJava {
+    dependsOn(generateFixtureApi)
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
@@ -0,0 +1,99 @@
+package api.generator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hand-written API metadata in the shape of {@code nvim_get_api_info}, covering each kind of type
+ * {@link NvimApiGenerator} maps (primitives, strings, handles, lists, dictionaries and objects),
+ * plus a deprecated function It is not a dump of any Neovim version - stubs generated from it are
+ * compiled by every build, so that generated code keeps compiling without a real dump
+ *
+ * <p>Usage: {@code ApiInfoFixture <api-info.mpack>}
+ */
+public final class ApiInfoFixture {
+
+    private ApiInfoFixture() {}
+
+    /**
+     * Writes the metadata as msgpack, same as {@code nvim --api-info} would
+     *
+     * @param args path of the file to write
+     * @throws IOException if writing fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: ApiInfoFixture <api-info.mpack>");
+        }
+        var path = Path.of(args[0]);
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Files.write(path, new ObjectMapper(new MessagePackFactory()).writeValueAsBytes(apiInfo()));
+    }
+
+    /**
+     * Metadata map of the fixture API
+     *
+     * @return metadata, as the second element of {@code nvim_get_api_info}
+     */
+    public static Map<String, Object> apiInfo() {
+        return Map.of(
+                "version",
+                Map.of("major", 0, "minor", 10, "api_level", 12),
+                "types",
+                Map.of(
+                        "Buffer", Map.of("id", 0, "prefix", "nvim_buf_"),
+                        "Window", Map.of("id", 1, "prefix", "nvim_win_"),
+                        "Tabpage", Map.of("id", 2, "prefix", "nvim_tabpage_")),
+                "functions",
+                List.of(
+                        function(
+                                "nvim_buf_set_lines",
+                                "void",
+                                List.of(
+                                        List.of("Buffer", "buffer"),
+                                        List.of("Integer", "start"),
+                                        List.of("Integer", "end"),
+                                        List.of("Boolean", "strict_indexing"),
+                                        List.of("ArrayOf(String)", "replacement"))),
+                        function(
+                                "nvim_win_get_cursor",
+                                "ArrayOf(Integer, 2)",
+                                List.of(List.of("Window", "window"))),
+                        function(
+                                "nvim_set_var",
+                                "Object",
+                                List.of(List.of("String", "name"), List.of("Object", "value"))),
+                        function(
+                                "nvim_get_option_value",
+                                "Object",
+                                List.of(
+                                        List.of("String", "name"),
+                                        List.of("Dict(option)", "opts"))),
+                        function("nvim_get_scale", "Float", List.of(List.of("Integer", "int"))),
+                        function("nvim_list_bufs", "ArrayOf(Buffer)", List.of()),
+                        function("nvim_get_current_win", "Window", List.of()),
+                        Map.of(
+                                "name", "nvim_buf_get_number",
+                                "return_type", "Integer",
+                                "parameters", List.of(List.of("Buffer", "buffer")),
+                                "since", 1,
+                                "deprecated_since", 2)));
+    }
+
+    private static Map<String, Object> function(
+            String name, String returnType, List<List<String>> parameters) {
+        return Map.of(
+                "name", name,
+                "return_type", returnType,
+                "parameters", parameters,
+                "since", 1,
+                "method", false);
+    }
+}
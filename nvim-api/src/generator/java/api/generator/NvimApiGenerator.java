@@ -0,0 +1,540 @@
+package api.generator;
+
+import message.MessagePackReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Generator of typed Java stubs of the Neovim API, from the metadata returned by {@code
+ * nvim_get_api_info} (or written by {@code nvim --api-info})
+ *
+ * <p>A single {@code NvimApi} class is generated, with one method per function of the API, calling
+ * it through {@link client.RpcStreamer} Method names are encoded once, into {@link
+ * message.MethodName} constants, and arguments are written straight to msgpack - integers, floats
+ * and booleans as primitives, handles of buffers, windows and tabpages as extension types - so
+ * calls neither box arguments nor go through {@link com.fasterxml.jackson.databind.ObjectMapper}
+ * Results are decoded by {@link client.ResultDecoder}s of their type. Deprecated functions are
+ * skipped
+ *
+ * <p>Handles of types with a value class in package {@code api} ({@code Buffer}, {@code Window},
+ * {@code Tabpage}) are typed, and codecs of them are gathered into {@code NvimApi.EXTENSIONS},
+ * with extension type ids taken from the metadata. Handles of other types are passed as ids
+ *
+ * <p>Usage: {@code NvimApiGenerator <api-info.mpack> <output directory> <package>}
+ */
+public final class NvimApiGenerator {
+    private static final String CLASS_NAME = "NvimApi";
+    private static final int MAX_LINE_LENGTH = 100;
+    // package of ApiArguments, used by the generated class
+    private static final String API_PACKAGE = "api";
+    // handle types with value classes in API_PACKAGE
+    private static final Set<String> HANDLE_CLASSES = Set.of("Buffer", "Window", "Tabpage");
+
+    private static final Set<String> KEYWORDS =
+            Set.of(
+                    "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char",
+                    "class", "const", "continue", "default", "do", "double", "else", "enum",
+                    "extends", "final", "finally", "float", "for", "goto", "if", "implements",
+                    "import", "instanceof", "int", "interface", "long", "native", "new",
+                    "package", "private", "protected", "public", "return", "short", "static",
+                    "strictfp", "super", "switch", "synchronized", "this", "throw", "throws",
+                    "transient", "try", "void", "volatile", "while", "true", "false", "null",
+                    "var", "record", "yield",
+                    // locals and fields of generated methods
+                    "arguments", "rpcStreamer", "e");
+
+    private final String packageName;
+    private final long apiLevel;
+    // handle types (Buffer, Window, Tabpage) by name, with their extension type ids
+    private final Map<String, Long> handleTypes = new TreeMap<>();
+    private final List<Function> functions = new ArrayList<>();
+
+    /**
+     * Creates a new {@link NvimApiGenerator} for given API metadata
+     *
+     * @param apiInfo decoded API metadata - either the whole result of {@code nvim_get_api_info}
+     *     ([channel id, metadata]) or just the metadata map
+     * @param packageName package of the generated class
+     * @throws IllegalArgumentException if metadata has an unexpected shape
+     */
+    public NvimApiGenerator(Object apiInfo, String packageName) {
+        Objects.requireNonNull(packageName, "packageName may not be null");
+        this.packageName = packageName;
+        if (apiInfo instanceof List && ((List<?>) apiInfo).size() == 2) {
+            apiInfo = ((List<?>) apiInfo).get(1);
+        }
+        var metadata = asMap(apiInfo, "metadata");
+        var version = metadata.get("version");
+        this.apiLevel =
+                version instanceof Map ? asLong(((Map<?, ?>) version).get("api_level"), 0) : 0;
+        var types = metadata.get("types");
+        if (types instanceof Map) {
+            for (var type : ((Map<?, ?>) types).entrySet()) {
+                var id = asMap(type.getValue(), "type " + type.getKey()).get("id");
+                handleTypes.put((String) type.getKey(), asLong(id, -1));
+            }
+        }
+        for (var function : asList(metadata.get("functions"), "functions")) {
+            var parsed = Function.parse(asMap(function, "function"));
+            if (!parsed.deprecated) {
+                functions.add(parsed);
+            }
+        }
+        functions.sort((first, second) -> first.name.compareTo(second.name));
+    }
+
+    /**
+     * Reads the dump, generates the stubs and writes them into the package directory under given
+     * output directory
+     *
+     * @param args path of the dump, output directory and package name
+     * @throws IOException if reading or writing fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            throw new IllegalArgumentException(
+                    "Usage: NvimApiGenerator <api-info.mpack> <output directory> <package>");
+        }
+        var dump = Files.readAllBytes(Path.of(args[0]));
+        var apiInfo = new MessagePackReader(dump, 0, dump.length).readValue();
+        var generator = new NvimApiGenerator(apiInfo, args[2]);
+        var packageDirectory = Path.of(args[1]).resolve(args[2].replace('.', '/'));
+        Files.createDirectories(packageDirectory);
+        Files.writeString(
+                packageDirectory.resolve(CLASS_NAME + ".java"),
+                generator.generate(),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generates source of the stubs
+     *
+     * @return Java source of the {@code NvimApi} class
+     */
+    public String generate() {
+        var source = new StringBuilder();
+        source.append("// Generated by ")
+                .append(NvimApiGenerator.class.getName())
+                .append(" from nvim_get_api_info - do not edit\n");
+        source.append("package ").append(packageName).append(";\n\n");
+        if (!packageName.equals(API_PACKAGE)) {
+            source.append("import api.ApiArguments;\n");
+            for (var handleType : handleTypes.keySet()) {
+                if (HANDLE_CLASSES.contains(handleType)) {
+                    source.append("import api.").append(handleType).append(";\n");
+                }
+            }
+            source.append('\n');
+        }
+        source.append("import client.ResultDecoder;\n");
+        source.append("import client.RpcStreamer;\n\n");
+        source.append("import message.ExtensionCodec;\n");
+        source.append("import message.ExtensionRegistry;\n");
+        source.append("import message.MethodName;\n");
+        source.append("import message.RequestMessage;\n\n");
+        source.append("import java.io.IOException;\n");
+        source.append("import java.util.List;\n");
+        source.append("import java.util.Map;\n");
+        source.append("import java.util.Objects;\n");
+        source.append("import java.util.concurrent.CompletableFuture;\n\n");
+        source.append("/**\n");
+        source.append(" * Typed stubs of the Neovim API (level ").append(apiLevel).append(")\n");
+        source.append(" *\n");
+        source.append(" * <p>Each method sends a request through {@link RpcStreamer} and returns\n");
+        source.append(" * a future of its result, same as\n");
+        source.append(" * {@link RpcStreamer#sendAsync(RequestMessage.Builder, ResultDecoder)}\n");
+        source.append(" * Handles of buffers, windows and tabpages are decoded into their value\n");
+        source.append(" * classes when client is built with {@link #EXTENSIONS}\n");
+        source.append(" */\n");
+        source.append("@SuppressWarnings(\"unused\")\n");
+        source.append("public final class ").append(CLASS_NAME).append(" {\n");
+        for (var handleType : handleTypes.entrySet()) {
+            source.append("    private static final byte ")
+                    .append(constantName(handleType.getKey()))
+                    .append(" = ")
+                    .append(handleType.getValue())
+                    .append(";\n");
+        }
+        for (var handleType : handleTypes.keySet()) {
+            if (HANDLE_CLASSES.contains(handleType)) {
+                source.append("    private static final ExtensionCodec<")
+                        .append(handleType)
+                        .append("> ")
+                        .append(codecName(handleType))
+                        .append(" =\n            ")
+                        .append(handleType)
+                        .append(".codec(")
+                        .append(constantName(handleType))
+                        .append(");\n");
+            }
+        }
+        source.append('\n');
+        source.append("    /**\n");
+        source.append("     * Codecs of handles used by this API, to be registered with\n");
+        source.append("     * {@code RpcClient.Builder#withExtensions(ExtensionRegistry)}\n");
+        source.append("     */\n");
+        source.append("    public static final ExtensionRegistry EXTENSIONS =\n");
+        source.append("            new ExtensionRegistry.Builder()\n");
+        for (var handleType : handleTypes.keySet()) {
+            if (HANDLE_CLASSES.contains(handleType)) {
+                source.append("                    .register(")
+                        .append(codecName(handleType))
+                        .append(")\n");
+            }
+        }
+        source.append("                    .build();\n\n");
+        for (var function : functions) {
+            source.append("    private static final MethodName ")
+                    .append(constantName(function.name))
+                    .append(" =\n            MethodName.of(\"")
+                    .append(function.name)
+                    .append("\");\n");
+        }
+        source.append('\n');
+        source.append("    private final RpcStreamer rpcStreamer;\n\n");
+        source.append("    /**\n");
+        source.append("     * Creates a new {@link ")
+                .append(CLASS_NAME)
+                .append("} sending requests through given\n");
+        source.append("     * {@link RpcStreamer}\n");
+        source.append("     *\n");
+        source.append("     * @param rpcStreamer {@link RpcStreamer} of the connection\n");
+        source.append("     * @throws NullPointerException if rpcStreamer is null\n");
+        source.append("     */\n");
+        source.append("    public ").append(CLASS_NAME).append("(RpcStreamer rpcStreamer) {\n");
+        source.append(
+                "        Objects.requireNonNull(rpcStreamer, \"rpcStreamer may not be null\");\n");
+        source.append("        this.rpcStreamer = rpcStreamer;\n");
+        source.append("    }\n");
+        for (var function : functions) {
+            source.append('\n');
+            generateMethod(source, function);
+        }
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private void generateMethod(StringBuilder source, Function function) {
+        var result = resultType(function.returnType);
+        var parameterNames = new ArrayList<String>();
+        var needsMapper = false;
+        for (var parameter : function.parameters) {
+            parameterNames.add(parameterName(parameter.name));
+            needsMapper |= kind(parameter.type) == Kind.VALUE;
+        }
+
+        source.append("    /**\n");
+        source.append("     * Calls {@code ").append(function.name).append('}');
+        if (function.since > 0) {
+            source.append(", available since API level ").append(function.since);
+        }
+        source.append("\n     *\n");
+        for (int i = 0; i < function.parameters.size(); i++) {
+            source.append("     * @param ")
+                    .append(parameterNames.get(i))
+                    .append(' ')
+                    .append(function.parameters.get(i).type)
+                    .append('\n');
+        }
+        source.append("     * @return future of the ")
+                .append(function.returnType)
+                .append(" result\n");
+        source.append("     */\n");
+
+        var signature = new StringBuilder();
+        signature.append("    public CompletableFuture<")
+                .append(result.javaType)
+                .append("> ")
+                .append(methodName(function.name))
+                .append('(');
+        var parameters = new ArrayList<String>();
+        for (int i = 0; i < function.parameters.size(); i++) {
+            parameters.add(javaType(function.parameters.get(i).type) + " " + parameterNames.get(i));
+        }
+        var oneLine = signature + String.join(", ", parameters) + ") {";
+        if (oneLine.length() <= MAX_LINE_LENGTH) {
+            source.append(oneLine).append('\n');
+        } else {
+            source.append(signature).append('\n');
+            for (int i = 0; i < parameters.size(); i++) {
+                source.append("            ")
+                        .append(parameters.get(i))
+                        .append(i < parameters.size() - 1 ? ",\n" : ") {\n");
+            }
+        }
+
+        var indent = "        ";
+        if (needsMapper) {
+            source.append("        try {\n");
+            indent = "            ";
+        }
+        source.append(indent)
+                .append("var arguments = ApiArguments.start(EXTENSIONS, ")
+                .append(function.parameters.size())
+                .append(");\n");
+        for (int i = 0; i < function.parameters.size(); i++) {
+            source.append(indent)
+                    .append(writeStatement(function.parameters.get(i).type, parameterNames.get(i)))
+                    .append('\n');
+        }
+        source.append(indent).append("return rpcStreamer.sendAsync(\n");
+        source.append(indent).append("        new RequestMessage.Builder(\n");
+        source.append(indent)
+                .append("                ")
+                .append(constantName(function.name))
+                .append(", ApiArguments.finish(arguments)),\n");
+        source.append(indent)
+                .append("        ResultDecoder.")
+                .append(result.decoder)
+                .append(");\n");
+        if (needsMapper) {
+            source.append("        } catch (IOException e) {\n");
+            source.append("            return CompletableFuture.failedFuture(e);\n");
+            source.append("        }\n");
+        }
+        source.append("    }\n");
+    }
+
+    private String writeStatement(String type, String name) {
+        switch (kind(type)) {
+            case INTEGER:
+                return "arguments.writeLong(" + name + ");";
+            case FLOAT:
+                return "arguments.writeDouble(" + name + ");";
+            case BOOLEAN:
+                return "arguments.writeBoolean(" + name + ");";
+            case STRING:
+                return "arguments.writeString(" + name + ");";
+            case HANDLE:
+                var id = HANDLE_CLASSES.contains(type) ? name + ".getId()" : name;
+                return "arguments.writeExtension(" + constantName(type) + ", " + id + ");";
+            default:
+                return "arguments.writeValue(" + name + ");";
+        }
+    }
+
+    private String javaType(String type) {
+        switch (kind(type)) {
+            case INTEGER:
+                return "long";
+            case HANDLE:
+                return HANDLE_CLASSES.contains(type) ? type : "long";
+            case FLOAT:
+                return "double";
+            case BOOLEAN:
+                return "boolean";
+            case STRING:
+                return "String";
+            default:
+                if (isArray(type)) {
+                    return "List<?>";
+                }
+                if (isDictionary(type)) {
+                    return "Map<String, ?>";
+                }
+                return "Object";
+        }
+    }
+
+    private Result resultType(String type) {
+        if (type.equals("void")) {
+            return new Result("Void", "VOID");
+        }
+        switch (kind(type)) {
+            case INTEGER:
+                return new Result("Long", "LONG");
+            case FLOAT:
+                return new Result("Double", "DOUBLE");
+            case BOOLEAN:
+                return new Result("Boolean", "BOOLEAN");
+            case STRING:
+                return new Result("String", "STRING");
+            case HANDLE:
+                return HANDLE_CLASSES.contains(type)
+                        ? new Result(type, "of(" + codecName(type) + ")")
+                        : new Result("Object", "OBJECT");
+            default:
+                var elementType = elementType(type);
+                if (elementType != null
+                        && kind(elementType) == Kind.HANDLE
+                        && HANDLE_CLASSES.contains(elementType)) {
+                    return new Result(
+                            "List<" + elementType + ">", "listOf(" + codecName(elementType) + ")");
+                }
+                if (isArray(type)) {
+                    return new Result("List<Object>", "LIST");
+                }
+                if (isDictionary(type)) {
+                    return new Result("Map<String, Object>", "MAP");
+                }
+                return new Result("Object", "OBJECT");
+        }
+    }
+
+    private Kind kind(String type) {
+        switch (type) {
+            case "Integer":
+                return Kind.INTEGER;
+            case "Float":
+                return Kind.FLOAT;
+            case "Boolean":
+                return Kind.BOOLEAN;
+            case "String":
+                return Kind.STRING;
+            default:
+                return handleTypes.containsKey(type) ? Kind.HANDLE : Kind.VALUE;
+        }
+    }
+
+    private static boolean isArray(String type) {
+        return type.equals("Array") || type.startsWith("ArrayOf(");
+    }
+
+    // ArrayOf(Buffer) or ArrayOf(Integer, 2) -> Buffer or Integer
+    private static String elementType(String type) {
+        if (!type.startsWith("ArrayOf(") || !type.endsWith(")")) {
+            return null;
+        }
+        var element = type.substring("ArrayOf(".length(), type.length() - 1);
+        var comma = element.indexOf(',');
+        return (comma < 0 ? element : element.substring(0, comma)).trim();
+    }
+
+    private static boolean isDictionary(String type) {
+        return type.equals("Dictionary")
+                || type.equals("Dict")
+                || type.startsWith("Dict(")
+                || type.startsWith("DictOf(");
+    }
+
+    // nvim_buf_get_lines -> nvimBufGetLines
+    static String methodName(String name) {
+        var camelCase = new StringBuilder();
+        var upper = false;
+        for (int i = 0; i < name.length(); i++) {
+            var c = name.charAt(i);
+            if (c == '_') {
+                upper = camelCase.length() > 0;
+            } else {
+                camelCase.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return camelCase.toString();
+    }
+
+    static String parameterName(String name) {
+        var camelCase = methodName(name);
+        return KEYWORDS.contains(camelCase) || camelCase.isEmpty()
+                ? camelCase + "Value"
+                : camelCase;
+    }
+
+    // nvim_buf_get_lines -> NVIM_BUF_GET_LINES, Tabpage -> TABPAGE
+    private static String constantName(String name) {
+        return name.toUpperCase(Locale.ROOT);
+    }
+
+    // Buffer -> BUFFER_CODEC
+    private static String codecName(String handleType) {
+        return constantName(handleType) + "_CODEC";
+    }
+
+    private static Map<?, ?> asMap(Object value, String what) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException(what + " is not a map: " + value);
+        }
+        return (Map<?, ?>) value;
+    }
+
+    private static List<?> asList(Object value, String what) {
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException(what + " is not an array: " + value);
+        }
+        return (List<?>) value;
+    }
+
+    private static long asLong(Object value, long defaultValue) {
+        return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+    }
+
+    private enum Kind {
+        INTEGER,
+        FLOAT,
+        BOOLEAN,
+        STRING,
+        HANDLE,
+        VALUE
+    }
+
+    private static final class Result {
+        private final String javaType;
+        private final String decoder;
+
+        private Result(String javaType, String decoder) {
+            this.javaType = javaType;
+            this.decoder = decoder;
+        }
+    }
+
+    private static final class Parameter {
+        private final String type;
+        private final String name;
+
+        private Parameter(String type, String name) {
+            this.type = type;
+            this.name = name;
+        }
+    }
+
+    private static final class Function {
+        private final String name;
+        private final List<Parameter> parameters;
+        private final String returnType;
+        private final long since;
+        private final boolean deprecated;
+
+        private Function(
+                String name,
+                List<Parameter> parameters,
+                String returnType,
+                long since,
+                boolean deprecated) {
+            this.name = name;
+            this.parameters = parameters;
+            this.returnType = returnType;
+            this.since = since;
+            this.deprecated = deprecated;
+        }
+
+        private static Function parse(Map<?, ?> function) {
+            var name = (String) function.get("name");
+            if (name == null) {
+                throw new IllegalArgumentException("function has no name: " + function);
+            }
+            var parameters = new ArrayList<Parameter>();
+            for (var parameter : asList(function.get("parameters"), name + " parameters")) {
+                var typeAndName = asList(parameter, name + " parameter");
+                parameters.add(
+                        new Parameter((String) typeAndName.get(0), (String) typeAndName.get(1)));
+            }
+            var returnType = (String) function.get("return_type");
+            return new Function(
+                    name,
+                    parameters,
+                    returnType != null ? returnType : "void",
+                    asLong(function.get("since"), 0),
+                    function.get("deprecated_since") != null);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.ExtensionRegistry;
+import message.MessagePackValue;
+import message.MessagePackWriter;
+
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.util.Arrays;
+
+/**
+ * Encoding of arguments for generated API stubs
+ *
+ * <p>Arguments are written by each calling thread into its own reusable {@link MessagePackWriter}
+ * and then copied out into a single array, which is the only allocation of encoding Primitive
+ * arguments and handles are written straight into the writer, without boxing, while other values
+ * go through {@link MessagePackWriter#writeValue(Object)}
+ */
+public final class ApiArguments {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final ObjectMapper objectMapper = createObjectMapper();
+    private static final ThreadLocal<MessagePackWriter> writers =
+            ThreadLocal.withInitial(() -> new MessagePackWriter(objectMapper, INITIAL_CAPACITY));
+
+    private ApiArguments() {}
+
+    /**
+     * Prepares the writer of the calling thread for given number of arguments
+     *
+     * @param extensions {@link ExtensionRegistry} encoding handles passed inside other arguments
+     * @param count number of arguments
+     * @return writer with the array header already written
+     */
+    public static MessagePackWriter start(ExtensionRegistry extensions, int count) {
+        var writer = writers.get();
+        writer.reset();
+        writer.withExtensions(extensions);
+        writer.writeArrayHeader(count);
+        return writer;
+    }
+
+    /**
+     * Copies arguments written so far out of the writer
+     *
+     * @param writer writer returned by {@link #start(ExtensionRegistry, int)}
+     * @return raw msgpack array of arguments
+     */
+    public static MessagePackValue finish(MessagePackWriter writer) {
+        return new MessagePackValue(Arrays.copyOf(writer.buffer(), writer.size()), objectMapper);
+    }
+
+    private static ObjectMapper createObjectMapper() {
+        var factory = new MessagePackFactory();
+        factory.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return new ObjectMapper(factory);
+    }
+}
@@ -0,0 +1,30 @@
+package api;
+
+import message.ExtensionCodec;
+
+/**
+ * Handle of a Neovim buffer, sent over msgpack as an extension type holding its id
+ *
+ * <p>Instances are immutable and equal if their ids are equal - see {@link Handle}
+ */
+public final class Buffer extends Handle {
+    /**
+     * Creates a new {@link Buffer} handle
+     *
+     * @param id id of the buffer
+     */
+    public Buffer(long id) {
+        super(id);
+    }
+
+    /**
+     * Creates a codec of {@link Buffer} handles, to be registered in {@link
+     * message.ExtensionRegistry}
+     *
+     * @param type extension type of buffer handles, as reported by {@code nvim_get_api_info}
+     * @return a new codec
+     */
+    public static ExtensionCodec<Buffer> codec(byte type) {
+        return ExtensionCodec.ofLong(type, Buffer.class, Buffer::new, Buffer::getId);
+    }
+}
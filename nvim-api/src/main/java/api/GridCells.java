@@ -0,0 +1,195 @@
+package api;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Cells of a single {@code grid_line} redraw event, held in reusable primitive buffers
+ *
+ * <p>Each cell is a run of {@link #repeat(int)} screen columns showing the same text with the same
+ * highlight. Highlight ids omitted by Neovim are already filled in from the previous cell. Text is
+ * kept as raw UTF-8 bytes - it is decoded only by {@link #codePoint(int)} or {@link #text(int)}
+ *
+ * <p>A single instance is reused by {@link RedrawDecoder} for every line, so it must not be kept
+ * by {@link RedrawVisitor} after {@link RedrawVisitor#gridLine(int, int, int, GridCells, boolean)}
+ * returns
+ */
+public final class GridCells {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[] text = new byte[INITIAL_CAPACITY * 2];
+    private int[] textEnds = new int[INITIAL_CAPACITY];
+    private int[] highlights = new int[INITIAL_CAPACITY];
+    private int[] repeats = new int[INITIAL_CAPACITY];
+    private int size;
+    private int columns;
+
+    GridCells() {}
+
+    /**
+     * Gets number of cells
+     *
+     * @return number of cells in the line
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets number of screen columns covered by the cells, which is the sum of their repeats
+     *
+     * @return number of columns
+     */
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * Gets highlight id of given cell
+     *
+     * @param cell index of the cell
+     * @return id of the highlight, as defined by {@link RedrawVisitor#hlAttrDefine}
+     * @throws IndexOutOfBoundsException if cell is out of bounds
+     */
+    public int hlId(int cell) {
+        return highlights[Objects.checkIndex(cell, size)];
+    }
+
+    /**
+     * Gets number of times given cell is repeated
+     *
+     * @param cell index of the cell
+     * @return number of columns covered by the cell
+     * @throws IndexOutOfBoundsException if cell is out of bounds
+     */
+    public int repeat(int cell) {
+        return repeats[Objects.checkIndex(cell, size)];
+    }
+
+    /**
+     * Gets array holding UTF-8 text of all cells, to be read with {@link #textOffset(int)} and
+     * {@link #textLength(int)}
+     *
+     * @return backing array of the text, valid only until the visitor returns
+     */
+    public byte[] textBytes() {
+        return text;
+    }
+
+    /**
+     * Gets index of the first byte of text of given cell in {@link #textBytes()}
+     *
+     * @param cell index of the cell
+     * @return offset of the text
+     * @throws IndexOutOfBoundsException if cell is out of bounds
+     */
+    public int textOffset(int cell) {
+        return Objects.checkIndex(cell, size) == 0 ? 0 : textEnds[cell - 1];
+    }
+
+    /**
+     * Gets length of UTF-8 text of given cell
+     *
+     * @param cell index of the cell
+     * @return length of the text in bytes - zero for the right half of a double width character
+     * @throws IndexOutOfBoundsException if cell is out of bounds
+     */
+    public int textLength(int cell) {
+        return textEnds[cell] - textOffset(cell);
+    }
+
+    /**
+     * Decodes first code point of text of given cell, without allocating Most cells hold exactly
+     * one code point, while combining characters follow it in the same cell
+     *
+     * @param cell index of the cell
+     * @return the code point, U+FFFD if text is not valid UTF-8, or -1 if text is empty
+     * @throws IndexOutOfBoundsException if cell is out of bounds
+     */
+    public int codePoint(int cell) {
+        var offset = textOffset(cell);
+        var length = textEnds[cell] - offset;
+        if (length == 0) {
+            return -1;
+        }
+        var lead = text[offset] & 0xff;
+        if (lead < 0x80) {
+            return lead;
+        }
+        int continuations;
+        int codePoint;
+        if ((lead & 0xe0) == 0xc0) {
+            continuations = 1;
+            codePoint = lead & 0x1f;
+        } else if ((lead & 0xf0) == 0xe0) {
+            continuations = 2;
+            codePoint = lead & 0x0f;
+        } else if ((lead & 0xf8) == 0xf0) {
+            continuations = 3;
+            codePoint = lead & 0x07;
+        } else {
+            return 0xfffd;
+        }
+        if (continuations >= length) {
+            return 0xfffd;
+        }
+        for (int i = 1; i <= continuations; i++) {
+            var next = text[offset + i];
+            if ((next & 0xc0) != 0x80) {
+                return 0xfffd;
+            }
+            codePoint = (codePoint << 6) | (next & 0x3f);
+        }
+        return codePoint;
+    }
+
+    /**
+     * Decodes text of given cell into a new {@link String}
+     *
+     * @param cell index of the cell
+     * @return text of the cell
+     * @throws IndexOutOfBoundsException if cell is out of bounds
+     */
+    public String text(int cell) {
+        var offset = textOffset(cell);
+        return new String(text, offset, textEnds[cell] - offset, StandardCharsets.UTF_8);
+    }
+
+    void clear() {
+        size = 0;
+        columns = 0;
+    }
+
+    void add(byte[] buffer, int offset, int length, int hlId, int repeat) {
+        if (size == repeats.length) {
+            var capacity = size * 2;
+            textEnds = Arrays.copyOf(textEnds, capacity);
+            highlights = Arrays.copyOf(highlights, capacity);
+            repeats = Arrays.copyOf(repeats, capacity);
+        }
+        var textStart = size == 0 ? 0 : textEnds[size - 1];
+        if (textStart + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textStart + length));
+        }
+        System.arraycopy(buffer, offset, text, textStart, length);
+        textEnds[size] = textStart + length;
+        highlights[size] = hlId;
+        repeats[size] = repeat;
+        size++;
+        columns += repeat;
+    }
+
+    @Override
+    public String toString() {
+        var cells = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            cells.append(i == 0 ? "" : ", ").append('\'').append(text(i)).append('\'');
+            cells.append(':').append(highlights[i]);
+            if (repeats[i] != 1) {
+                cells.append('x').append(repeats[i]);
+            }
+        }
+        return "GridCells{" + "cells=[" + cells + "]}";
+    }
+}
@@ -0,0 +1,42 @@
+package api;
+
+/**
+ * Base of handles of Neovim objects ({@link Buffer}, {@link Window}, {@link Tabpage}), sent over
+ * msgpack as extension types holding their ids
+ *
+ * <p>Instances are immutable and equal if they are handles of the same type with equal ids
+ */
+public abstract class Handle {
+    private final long id;
+
+    Handle(long id) {
+        this.id = id;
+    }
+
+    /**
+     * Gets id of the object
+     *
+     * @return id of the object
+     */
+    public final long getId() {
+        return id;
+    }
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o != null && o.getClass() == getClass() && id == ((Handle) o).id;
+    }
+
+    @Override
+    public final int hashCode() {
+        return Long.hashCode(id);
+    }
+
+    @Override
+    public final String toString() {
+        return getClass().getSimpleName() + "{" + "id=" + id + '}';
+    }
+}
@@ -0,0 +1,327 @@
+package api;
+
+import message.MessagePackReader;
+import message.NotificationDecoder;
+import message.StringCache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * {@link NotificationDecoder} of Neovim {@code redraw} notifications, streaming their events to a
+ * {@link RedrawVisitor}
+ *
+ * <p>Events are read straight from the frame. Cells of {@code grid_line} are collected into a
+ * single reused {@link GridCells} and event names are matched by their raw bytes against names
+ * seen before using a {@link StringCache}, so a full screen repaint allocates next to nothing.
+ * Arguments added to events by newer versions of Neovim are skipped
+ *
+ * <p>Events are passed to the visitor as they are read, so when a later event of a batch turns out
+ * to be malformed, the events before it were already delivered - the rest of the batch is dropped
+ * then and the notification is reported as a bad message. Failures of the visitor are logged and
+ * do not stop decoding, so they are never mistaken for malformed notifications
+ *
+ * <p>Not thread safe - it is meant to be called by a single reading thread
+ *
+ * <p>Example:
+ *
+ * <pre>{@code
+ * RpcListener listener = new BackgroundRpcListener.Builder(executorService, objectMapper)
+ *         .withDecodeMode(BackgroundRpcListener.DecodeMode.STREAMING)
+ *         .withNotificationDecoder(RedrawDecoder.NOTIFICATION, new RedrawDecoder(visitor))
+ *         .build();
+ * }</pre>
+ */
+public final class RedrawDecoder implements NotificationDecoder {
+    private static final Logger log = LoggerFactory.getLogger(RedrawDecoder.class);
+
+    /** Name of the notification decoded by this decoder */
+    public static final String NOTIFICATION = "redraw";
+
+    private static final String GRID_LINE = "grid_line";
+    private static final String GRID_CURSOR_GOTO = "grid_cursor_goto";
+    private static final String GRID_SCROLL = "grid_scroll";
+    private static final String GRID_CLEAR = "grid_clear";
+    private static final String GRID_RESIZE = "grid_resize";
+    private static final String GRID_DESTROY = "grid_destroy";
+    private static final String DEFAULT_COLORS_SET = "default_colors_set";
+    private static final String HL_ATTR_DEFINE = "hl_attr_define";
+    private static final String FLUSH = "flush";
+
+    private final RedrawVisitor visitor;
+    private final GridCells cells = new GridCells();
+    private final StringCache names = new StringCache();
+
+    /**
+     * Creates a new {@link RedrawDecoder}
+     *
+     * @param visitor receiver of decoded events
+     * @throws NullPointerException if visitor is null
+     */
+    public RedrawDecoder(RedrawVisitor visitor) {
+        Objects.requireNonNull(visitor, "visitor may not be null");
+        this.visitor = new IsolatedVisitor(visitor);
+    }
+
+    /**
+     * Decodes arguments of a {@code redraw} notification - a batch of events, each of them as an
+     * array of its name followed by any number of argument arrays Events before a malformed one
+     * are already passed to the visitor
+     *
+     * @param arguments reader positioned at the arguments array of the notification
+     * @throws IllegalStateException if events are malformed
+     */
+    @Override
+    public void decode(MessagePackReader arguments) {
+        var events = arguments.readArrayHeader();
+        for (int i = 0; i < events; i++) {
+            var size = arguments.readArrayHeader();
+            if (size == 0) {
+                continue;
+            }
+            var event = arguments.readString(names);
+            for (int j = 1; j < size; j++) {
+                decodeEvent(event, arguments);
+            }
+        }
+    }
+
+    private void decodeEvent(String event, MessagePackReader reader) {
+        var start = reader.position();
+        var count = reader.readArrayHeader();
+        switch (event) {
+            case GRID_LINE:
+                checkCount(event, count, 4);
+                decodeGridLine(reader, count);
+                return;
+            case GRID_CURSOR_GOTO:
+                checkCount(event, count, 3);
+                visitor.gridCursorGoto(reader.readInt(), reader.readInt(), reader.readInt());
+                skip(reader, count - 3);
+                return;
+            case GRID_SCROLL:
+                checkCount(event, count, 7);
+                visitor.gridScroll(
+                        reader.readInt(),
+                        reader.readInt(),
+                        reader.readInt(),
+                        reader.readInt(),
+                        reader.readInt(),
+                        reader.readInt(),
+                        reader.readInt());
+                skip(reader, count - 7);
+                return;
+            case GRID_CLEAR:
+                checkCount(event, count, 1);
+                visitor.gridClear(reader.readInt());
+                skip(reader, count - 1);
+                return;
+            case GRID_RESIZE:
+                checkCount(event, count, 3);
+                visitor.gridResize(reader.readInt(), reader.readInt(), reader.readInt());
+                skip(reader, count - 3);
+                return;
+            case GRID_DESTROY:
+                checkCount(event, count, 1);
+                visitor.gridDestroy(reader.readInt());
+                skip(reader, count - 1);
+                return;
+            case DEFAULT_COLORS_SET:
+                checkCount(event, count, 5);
+                visitor.defaultColorsSet(
+                        reader.readInt(),
+                        reader.readInt(),
+                        reader.readInt(),
+                        reader.readInt(),
+                        reader.readInt());
+                skip(reader, count - 5);
+                return;
+            case HL_ATTR_DEFINE:
+                checkCount(event, count, 4);
+                visitor.hlAttrDefine(
+                        reader.readInt(),
+                        readMap(reader),
+                        readMap(reader),
+                        reader.readArray());
+                skip(reader, count - 4);
+                return;
+            case FLUSH:
+                visitor.flush();
+                skip(reader, count);
+                return;
+            default:
+                reader.position(start);
+                reader.skipValue();
+                var end = reader.position();
+                reader.position(start);
+                visitor.event(event, reader);
+                reader.position(end);
+        }
+    }
+
+    // [grid, row, col_start, cells, wrap] with cells as [text, hl_id, repeat], where hl_id is
+    // omitted if same as in the previous cell and repeat is omitted if 1
+    private void decodeGridLine(MessagePackReader reader, int count) {
+        var grid = reader.readInt();
+        var row = reader.readInt();
+        var columnStart = reader.readInt();
+        cells.clear();
+        var cellCount = reader.readArrayHeader();
+        var hlId = 0;
+        for (int i = 0; i < cellCount; i++) {
+            var size = reader.readArrayHeader();
+            if (size == 0) {
+                throw new IllegalStateException("grid_line cell has no text");
+            }
+            var length = reader.readStringHeader();
+            var offset = reader.position();
+            reader.position(offset + length);
+            if (size > 1) {
+                hlId = reader.readInt();
+            }
+            var repeat = size > 2 ? reader.readInt() : 1;
+            skip(reader, size - 3);
+            cells.add(reader.buffer(), offset, length, hlId, repeat);
+        }
+        var wrap = count > 4 && reader.readBoolean();
+        skip(reader, count - 5);
+        visitor.gridLine(grid, row, columnStart, cells, wrap);
+    }
+
+    private static Map<?, ?> readMap(MessagePackReader reader) {
+        var value = reader.readValue();
+        if (!(value instanceof Map)) {
+            throw new IllegalStateException("Expected a map, but found " + value);
+        }
+        return (Map<?, ?>) value;
+    }
+
+    private static void checkCount(String event, int count, int expected) {
+        if (count < expected) {
+            throw new IllegalStateException(
+                    String.format(
+                            "%s event has %d arguments, but needs %d", event, count, expected));
+        }
+    }
+
+    private static void skip(MessagePackReader reader, int count) {
+        for (int i = 0; i < count; i++) {
+            reader.skipValue();
+        }
+    }
+
+    /** {@link RedrawVisitor} logging failures of another one, so that they do not stop decoding */
+    private static final class IsolatedVisitor implements RedrawVisitor {
+        private final RedrawVisitor visitor;
+
+        private IsolatedVisitor(RedrawVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void gridResize(int grid, int width, int height) {
+            try {
+                visitor.gridResize(grid, width, height);
+            } catch (RuntimeException e) {
+                failed("grid_resize", e);
+            }
+        }
+
+        @Override
+        public void defaultColorsSet(
+                int rgbForeground,
+                int rgbBackground,
+                int rgbSpecial,
+                int ctermForeground,
+                int ctermBackground) {
+            try {
+                visitor.defaultColorsSet(
+                        rgbForeground, rgbBackground, rgbSpecial, ctermForeground, ctermBackground);
+            } catch (RuntimeException e) {
+                failed("default_colors_set", e);
+            }
+        }
+
+        @Override
+        public void hlAttrDefine(
+                int id, Map<?, ?> rgbAttributes, Map<?, ?> ctermAttributes, List<?> info) {
+            try {
+                visitor.hlAttrDefine(id, rgbAttributes, ctermAttributes, info);
+            } catch (RuntimeException e) {
+                failed("hl_attr_define", e);
+            }
+        }
+
+        @Override
+        public void gridClear(int grid) {
+            try {
+                visitor.gridClear(grid);
+            } catch (RuntimeException e) {
+                failed("grid_clear", e);
+            }
+        }
+
+        @Override
+        public void gridDestroy(int grid) {
+            try {
+                visitor.gridDestroy(grid);
+            } catch (RuntimeException e) {
+                failed("grid_destroy", e);
+            }
+        }
+
+        @Override
+        public void gridCursorGoto(int grid, int row, int column) {
+            try {
+                visitor.gridCursorGoto(grid, row, column);
+            } catch (RuntimeException e) {
+                failed("grid_cursor_goto", e);
+            }
+        }
+
+        @Override
+        public void gridScroll(
+                int grid, int top, int bottom, int left, int right, int rows, int columns) {
+            try {
+                visitor.gridScroll(grid, top, bottom, left, right, rows, columns);
+            } catch (RuntimeException e) {
+                failed("grid_scroll", e);
+            }
+        }
+
+        @Override
+        public void gridLine(int grid, int row, int columnStart, GridCells cells, boolean wrap) {
+            try {
+                visitor.gridLine(grid, row, columnStart, cells, wrap);
+            } catch (RuntimeException e) {
+                failed("grid_line", e);
+            }
+        }
+
+        @Override
+        public void flush() {
+            try {
+                visitor.flush();
+            } catch (RuntimeException e) {
+                failed("flush", e);
+            }
+        }
+
+        @Override
+        public void event(String name, MessagePackReader arguments) {
+            try {
+                visitor.event(name, arguments);
+            } catch (RuntimeException e) {
+                failed(name, e);
+            }
+        }
+
+        private static void failed(String event, RuntimeException e) {
+            log.error("Redraw visitor failed on {} event", event, e);
+        }
+    }
+}
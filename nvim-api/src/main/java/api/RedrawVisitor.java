@@ -0,0 +1,115 @@
+package api;
+
+import message.MessagePackReader;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receiver of events of Neovim {@code redraw} notifications, decoded by {@link RedrawDecoder}
+ *
+ * <p>Events of the line-based grid ({@code ext_linegrid}) are passed as primitives, while every
+ * other event goes to {@link #event(String, MessagePackReader)} Methods do nothing by default, so
+ * only events of interest need to be implemented
+ *
+ * <p>Methods are called on the reading thread of the connection, in the order events arrived
+ */
+public interface RedrawVisitor {
+
+    /**
+     * Called for {@code grid_resize}
+     *
+     * @param grid id of the grid
+     * @param width new width in columns
+     * @param height new height in rows
+     */
+    default void gridResize(int grid, int width, int height) {}
+
+    /**
+     * Called for {@code default_colors_set}
+     *
+     * @param rgbForeground default foreground color, or -1 if not set
+     * @param rgbBackground default background color, or -1 if not set
+     * @param rgbSpecial default special color, or -1 if not set
+     * @param ctermForeground default terminal foreground color
+     * @param ctermBackground default terminal background color
+     */
+    default void defaultColorsSet(
+            int rgbForeground,
+            int rgbBackground,
+            int rgbSpecial,
+            int ctermForeground,
+            int ctermBackground) {}
+
+    /**
+     * Called for {@code hl_attr_define} Highlights are defined rarely, so their attributes are
+     * decoded into generic objects
+     *
+     * @param id id of the highlight, referenced by {@link GridCells#hlId(int)}
+     * @param rgbAttributes attributes of the highlight in RGB mode
+     * @param ctermAttributes attributes of the highlight in terminal mode
+     * @param info information about highlight groups the highlight comes from
+     */
+    default void hlAttrDefine(
+            int id, Map<?, ?> rgbAttributes, Map<?, ?> ctermAttributes, List<?> info) {}
+
+    /**
+     * Called for {@code grid_clear}
+     *
+     * @param grid id of the grid
+     */
+    default void gridClear(int grid) {}
+
+    /**
+     * Called for {@code grid_destroy}
+     *
+     * @param grid id of the grid
+     */
+    default void gridDestroy(int grid) {}
+
+    /**
+     * Called for {@code grid_cursor_goto}
+     *
+     * @param grid id of the grid
+     * @param row row of the cursor
+     * @param column column of the cursor
+     */
+    default void gridCursorGoto(int grid, int row, int column) {}
+
+    /**
+     * Called for {@code grid_scroll}
+     *
+     * @param grid id of the grid
+     * @param top first row of the scrolled region
+     * @param bottom row after the last row of the scrolled region
+     * @param left first column of the scrolled region
+     * @param right column after the last column of the scrolled region
+     * @param rows number of rows to scroll by - positive moves contents up
+     * @param columns number of columns to scroll by, always 0 for now
+     */
+    default void gridScroll(
+            int grid, int top, int bottom, int left, int right, int rows, int columns) {}
+
+    /**
+     * Called for each line of {@code grid_line}
+     *
+     * @param grid id of the grid
+     * @param row row of the line
+     * @param columnStart first column of the line
+     * @param cells cells of the line, reused for the next line once this method returns
+     * @param wrap whether the line wraps to the next row, false if Neovim does not report it
+     */
+    default void gridLine(int grid, int row, int columnStart, GridCells cells, boolean wrap) {}
+
+    /** Called for {@code flush}, once all events of a screen update were passed */
+    default void flush() {}
+
+    /**
+     * Called for events without a method of their own
+     *
+     * @param name name of the event
+     * @param arguments reader positioned at the arguments array of the event It may be read
+     *     freely - the decoder skips the arguments afterwards
+     */
+    default void event(String name, MessagePackReader arguments) {}
+}
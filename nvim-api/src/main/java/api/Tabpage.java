@@ -0,0 +1,30 @@
+package api;
+
+import message.ExtensionCodec;
+
+/**
+ * Handle of a Neovim tabpage, sent over msgpack as an extension type holding its id
+ *
+ * <p>Instances are immutable and equal if their ids are equal - see {@link Handle}
+ */
+public final class Tabpage extends Handle {
+    /**
+     * Creates a new {@link Tabpage} handle
+     *
+     * @param id id of the tabpage
+     */
+    public Tabpage(long id) {
+        super(id);
+    }
+
+    /**
+     * Creates a codec of {@link Tabpage} handles, to be registered in {@link
+     * message.ExtensionRegistry}
+     *
+     * @param type extension type of tabpage handles, as reported by {@code nvim_get_api_info}
+     * @return a new codec
+     */
+    public static ExtensionCodec<Tabpage> codec(byte type) {
+        return ExtensionCodec.ofLong(type, Tabpage.class, Tabpage::new, Tabpage::getId);
+    }
+}
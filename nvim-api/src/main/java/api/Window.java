@@ -0,0 +1,30 @@
+package api;
+
+import message.ExtensionCodec;
+
+/**
+ * Handle of a Neovim window, sent over msgpack as an extension type holding its id
+ *
+ * <p>Instances are immutable and equal if their ids are equal - see {@link Handle}
+ */
+public final class Window extends Handle {
+    /**
+     * Creates a new {@link Window} handle
+     *
+     * @param id id of the window
+     */
+    public Window(long id) {
+        super(id);
+    }
+
+    /**
+     * Creates a codec of {@link Window} handles, to be registered in {@link
+     * message.ExtensionRegistry}
+     *
+     * @param type extension type of window handles, as reported by {@code nvim_get_api_info}
+     * @return a new codec
+     */
+    public static ExtensionCodec<Window> codec(byte type) {
+        return ExtensionCodec.ofLong(type, Window.class, Window::new, Window::getId);
+    }
+}
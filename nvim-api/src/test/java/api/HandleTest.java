@@ -0,0 +1,21 @@
+package api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class HandleTest {
+
+    @Test
+    public void handlesAreEqualByTypeAndId() {
+        assertEquals(new Buffer(1), new Buffer(1));
+        assertEquals(new Buffer(1).hashCode(), new Buffer(1).hashCode());
+        assertNotEquals(new Buffer(1), new Buffer(2));
+        // Same id of another type is another object
+        assertNotEquals(new Buffer(1), new Window(1));
+        assertNotEquals(new Window(1), new Tabpage(1));
+        assertEquals(3, new Tabpage(3).getId());
+        assertEquals("Window{id=4}", new Window(4).toString());
+    }
+}
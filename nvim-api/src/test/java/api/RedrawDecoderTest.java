@@ -0,0 +1,293 @@
+package api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.MessageDecoder;
+import message.MessagePackReader;
+import message.MessagePackWriter;
+import message.NotificationMessage;
+
+import org.junit.jupiter.api.Test;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class RedrawDecoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper(new MessagePackFactory());
+    private final List<String> events = new ArrayList<>();
+    private final RedrawDecoder decoder = new RedrawDecoder(new RecordingVisitor());
+
+    @Test
+    public void streamsEventsToVisitor() throws IOException {
+        // Given a redraw notification, as sent by Neovim
+        var batch =
+                List.of(
+                        List.of("grid_resize", List.of(1, 80, 24)),
+                        List.of("default_colors_set", List.of(0xffffff, 0, -1, 7, 0)),
+                        List.of(
+                                "hl_attr_define",
+                                List.of(5, Map.of("bold", true), Map.of(), List.of())),
+                        List.of(
+                                "grid_line",
+                                List.of(
+                                        1,
+                                        0,
+                                        0,
+                                        List.of(
+                                                List.of("a", 5),
+                                                List.of("b"),
+                                                List.of(" ", 0, 3),
+                                                List.of("\u00e9"),
+                                                List.of("", 0)),
+                                        false),
+                                List.of(1, 1, 2, List.of(List.of("x", 7, 2)))),
+                        List.of("grid_scroll", List.of(1, 0, 24, 0, 80, 1, 0)),
+                        List.of("grid_cursor_goto", List.of(1, 0, 3)),
+                        List.of("mode_change", List.of("normal", 0)),
+                        List.of("grid_clear", List.of(1, "added later")),
+                        List.of("grid_destroy", List.of(2)),
+                        List.of("flush", List.of()));
+
+        // When it is decoded
+        decoder.decode(reader(batch));
+
+        // Then each event reaches the visitor with its arguments, cells carrying highlights over
+        assertEquals(
+                List.of(
+                        "gridResize 1 80 24",
+                        "defaultColorsSet 16777215 0 -1 7 0",
+                        "hlAttrDefine 5 {bold=true} {} []",
+                        "gridLine 1 0 0 false 7 ['a':5, 'b':5, ' ':0x3, '\u00e9':0, '':0]",
+                        "gridLine 1 1 2 false 2 ['x':7x2]",
+                        "gridScroll 1 0 24 0 80 1 0",
+                        "gridCursorGoto 1 0 3",
+                        "event mode_change [normal, 0]",
+                        "gridClear 1",
+                        "gridDestroy 2",
+                        "flush"),
+                events);
+    }
+
+    @Test
+    public void cellsExposeText() throws IOException {
+        // Given a line with ASCII, multi-byte and empty cells
+        var captured = new ArrayList<Object>();
+        var redrawDecoder =
+                new RedrawDecoder(
+                        new RedrawVisitor() {
+                            @Override
+                            public void gridLine(
+                                    int grid,
+                                    int row,
+                                    int columnStart,
+                                    GridCells cells,
+                                    boolean wrap) {
+                                for (int i = 0; i < cells.size(); i++) {
+                                    captured.add(cells.codePoint(i));
+                                    captured.add(cells.textLength(i));
+                                }
+                                captured.add(cells.text(1));
+                                captured.add(wrap);
+                            }
+                        });
+        var line =
+                List.of(1, 0, 0, List.of(List.of("a", 1), List.of("\u754c"), List.of("", 1)), true);
+
+        // When it is decoded
+        redrawDecoder.decode(reader(List.of(List.of("grid_line", line))));
+
+        // Then text of cells is available as code points and bytes
+        assertEquals(List.of((int) 'a', 1, (int) '\u754c', 3, -1, 0, "\u754c", true), captured);
+    }
+
+    @Test
+    public void redrawNotificationsAreNotBound() throws IOException {
+        // Given a decoder registered for redraw notifications
+        var writer = new MessagePackWriter(objectMapper);
+        writer.writeMessage(
+                new NotificationMessage.Builder(RedrawDecoder.NOTIFICATION)
+                        .addArgument(List.of("flush", List.of()))
+                        .build());
+        var messageDecoder =
+                new MessageDecoder(objectMapper)
+                        .withNotificationDecoder(RedrawDecoder.NOTIFICATION, decoder);
+
+        // When a frame is decoded
+        var message = messageDecoder.decode(writer.buffer(), 0, writer.size());
+
+        // Then it is passed to the redraw decoder instead of becoming a message
+        assertNull(message);
+        assertEquals(List.of("flush"), events);
+    }
+
+    @Test
+    public void malformedEventsAreRejected() throws IOException {
+        var missingArguments = reader(List.of(List.of("grid_resize", List.of(1))));
+        var lineWithoutText = List.of(1, 0, 0, List.of(List.of()));
+        var emptyCell = reader(List.of(List.of("grid_line", lineWithoutText)));
+
+        assertThrows(IllegalStateException.class, () -> decoder.decode(missingArguments));
+        assertThrows(IllegalStateException.class, () -> decoder.decode(emptyCell));
+        assertThrows(NullPointerException.class, () -> new RedrawDecoder(null));
+    }
+
+    @Test
+    public void eventsBeforeMalformedOneAreDelivered() throws IOException {
+        // Given a batch with a malformed event after a valid one
+        var batch =
+                List.of(
+                        List.of("grid_clear", List.of(1)),
+                        List.of("grid_resize", List.of(1)),
+                        List.of("flush", List.of()));
+
+        // When it is decoded
+        assertThrows(IllegalStateException.class, () -> decoder.decode(reader(batch)));
+
+        // Then the valid event was already delivered, while the rest of the batch is dropped
+        assertEquals(List.of("gridClear 1"), events);
+    }
+
+    @Test
+    public void visitorFailuresDoNotStopDecoding() throws IOException {
+        // Given a visitor failing on some events
+        var redrawDecoder =
+                new RedrawDecoder(
+                        new RecordingVisitor() {
+                            @Override
+                            public void gridClear(int grid) {
+                                throw new IllegalStateException("not a parse error");
+                            }
+
+                            @Override
+                            public void event(String name, MessagePackReader arguments) {
+                                throw new UnsupportedOperationException(name);
+                            }
+                        });
+        var batch =
+                List.of(
+                        List.of("grid_clear", List.of(1)),
+                        List.of("mode_change", List.of("normal", 0)),
+                        List.of("grid_destroy", List.of(2)),
+                        List.of("flush", List.of()));
+
+        // When a batch is decoded
+        redrawDecoder.decode(reader(batch));
+
+        // Then failures are not reported as malformed events and later events are delivered
+        assertEquals(List.of("gridDestroy 2", "flush"), events);
+    }
+
+    @Test
+    public void resolvesManyEventNames() throws IOException {
+        // Given more distinct event names than are remembered
+        var batch = new ArrayList<Object>();
+        var expected = new ArrayList<String>();
+        for (int i = 0; i < 300; i++) {
+            batch.add(List.of("custom_" + i, List.of(i)));
+            expected.add("event custom_" + i + " [" + i + "]");
+        }
+
+        // When they are decoded twice
+        decoder.decode(reader(batch));
+        decoder.decode(reader(batch));
+
+        // Then each event keeps its own name
+        expected.addAll(List.copyOf(expected));
+        assertEquals(expected, events);
+    }
+
+    private MessagePackReader reader(Object arguments) throws IOException {
+        var writer = new MessagePackWriter(objectMapper);
+        writer.writeValue(arguments);
+        return new MessagePackReader(writer.buffer(), 0, writer.size());
+    }
+
+    private class RecordingVisitor implements RedrawVisitor {
+        @Override
+        public void gridResize(int grid, int width, int height) {
+            events.add("gridResize " + grid + " " + width + " " + height);
+        }
+
+        @Override
+        public void defaultColorsSet(
+                int rgbForeground,
+                int rgbBackground,
+                int rgbSpecial,
+                int ctermForeground,
+                int ctermBackground) {
+            events.add(
+                    String.join(
+                            " ",
+                            "defaultColorsSet",
+                            String.valueOf(rgbForeground),
+                            String.valueOf(rgbBackground),
+                            String.valueOf(rgbSpecial),
+                            String.valueOf(ctermForeground),
+                            String.valueOf(ctermBackground)));
+        }
+
+        @Override
+        public void hlAttrDefine(
+                int id, Map<?, ?> rgbAttributes, Map<?, ?> ctermAttributes, List<?> info) {
+            events.add(
+                    String.format(
+                            "hlAttrDefine %d %s %s %s", id, rgbAttributes, ctermAttributes, info));
+        }
+
+        @Override
+        public void gridClear(int grid) {
+            events.add("gridClear " + grid);
+        }
+
+        @Override
+        public void gridDestroy(int grid) {
+            events.add("gridDestroy " + grid);
+        }
+
+        @Override
+        public void gridCursorGoto(int grid, int row, int column) {
+            events.add("gridCursorGoto " + grid + " " + row + " " + column);
+        }
+
+        @Override
+        public void gridScroll(
+                int grid, int top, int bottom, int left, int right, int rows, int columns) {
+            events.add(
+                    String.format(
+                            "gridScroll %d %d %d %d %d %d %d",
+                            grid, top, bottom, left, right, rows, columns));
+        }
+
+        @Override
+        public void gridLine(int grid, int row, int columnStart, GridCells cells, boolean wrap) {
+            var cellsText = cells.toString();
+            events.add(
+                    String.format(
+                            "gridLine %d %d %d %b %d %s",
+                            grid,
+                            row,
+                            columnStart,
+                            wrap,
+                            cells.columns(),
+                            cellsText.substring(cellsText.indexOf('['), cellsText.length() - 1)));
+        }
+
+        @Override
+        public void flush() {
+            events.add("flush");
+        }
+
+        @Override
+        public void event(String name, MessagePackReader arguments) {
+            events.add("event " + name + " " + arguments.readValue());
+        }
+    }
+}
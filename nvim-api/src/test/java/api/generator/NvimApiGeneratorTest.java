@@ -0,0 +1,209 @@
+package api.generator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import api.Buffer;
+import api.Window;
+import api.fixture.NvimApi;
+
+import client.ResultDecoder;
+import client.RpcStreamer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import message.ExtensionRegistry;
+import message.MessagePackReader;
+import message.MessagePackWriter;
+import message.RequestMessage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.msgpack.jackson.dataformat.MessagePackExtensionType;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.tools.ToolProvider;
+
+public class NvimApiGeneratorTest {
+
+    @Test
+    public void generatedStubsPackArguments() throws Exception {
+        // Given stubs generated from the fixture and compiled by the build
+        var rpcStreamer = mock(RpcStreamer.class);
+        when(rpcStreamer.sendAsync(
+                        any(RequestMessage.Builder.class),
+                        ArgumentMatchers.<ResultDecoder<Void>>any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        var api = new NvimApi(rpcStreamer);
+
+        // When a function is called
+        api.nvimBufSetLines(new Buffer(3), 0, -1, true, List.of("line"));
+
+        // Then a request is sent with the name of the function and its arguments written with
+        // their types
+        ArgumentCaptor<RequestMessage.Builder> request = ArgumentCaptor.captor();
+        ArgumentCaptor<ResultDecoder<Void>> decoder = ArgumentCaptor.captor();
+        verify(rpcStreamer).sendAsync(request.capture(), decoder.capture());
+        assertSame(ResultDecoder.VOID, decoder.getValue());
+        var message = request.getValue().build();
+        assertEquals("nvim_buf_set_lines", message.getMethod());
+        assertEquals(5, message.argCount());
+        var buffer =
+                assertInstanceOf(
+                        MessagePackExtensionType.class,
+                        message.getPackedArguments().reader(0).readValue());
+        assertEquals(0, buffer.getType());
+        assertArrayEquals(new byte[] {3}, buffer.getData());
+        assertEquals(0, message.getLong(1));
+        assertEquals(-1, message.getLong(2));
+        assertTrue(message.getBoolean(3));
+        assertEquals(List.of("line"), message.getArguments().get(4));
+
+        // And results and parameters are typed
+        var getCursor = NvimApi.class.getMethod("nvimWinGetCursor", Window.class);
+        assertEquals(
+                "java.util.concurrent.CompletableFuture<java.util.List<java.lang.Object>>",
+                getCursor.getGenericReturnType().getTypeName());
+        assertEquals(
+                "java.util.concurrent.CompletableFuture<java.util.List<api.Buffer>>",
+                NvimApi.class.getMethod("nvimListBufs").getGenericReturnType().getTypeName());
+        assertEquals(
+                "java.util.concurrent.CompletableFuture<api.Window>",
+                NvimApi.class.getMethod("nvimGetCurrentWin").getGenericReturnType().getTypeName());
+        assertNotNull(NvimApi.class.getMethod("nvimSetVar", String.class, Object.class));
+        assertNotNull(NvimApi.class.getMethod("nvimGetOptionValue", String.class, Map.class));
+        assertThrows(
+                NoSuchMethodException.class,
+                () -> NvimApi.class.getMethod("nvimBufGetNumber", long.class));
+    }
+
+    @Test
+    public void generatesStubsWithTypedSignatures() {
+        // Given metadata as returned by nvim_get_api_info
+        var generator = new NvimApiGenerator(List.of(1, ApiInfoFixture.apiInfo()), "api");
+
+        // When source is generated
+        var source = generator.generate();
+
+        // Then functions have typed signatures and deprecated ones are skipped
+        assertTrue(source.contains("package api;"));
+        assertTrue(source.contains("Typed stubs of the Neovim API (level 12)"));
+        assertTrue(source.contains("private static final byte BUFFER = 0;"));
+        assertTrue(source.contains("private static final byte WINDOW = 1;"));
+        assertTrue(
+                source.contains(
+                        "public CompletableFuture<List<Object>> nvimWinGetCursor(Window window) {"));
+        assertTrue(source.contains("arguments.writeExtension(WINDOW, window.getId());"));
+        assertTrue(source.contains("ResultDecoder.listOf(BUFFER_CODEC));"));
+        assertTrue(source.contains(".register(TABPAGE_CODEC)"));
+        assertTrue(source.contains("var arguments = ApiArguments.start(EXTENSIONS, 1);"));
+        assertTrue(
+                source.contains(
+                        "CompletableFuture<Object> nvimSetVar(String name, Object value) {"));
+        assertTrue(source.contains("arguments.writeString(name);"));
+        assertTrue(
+                source.contains("public CompletableFuture<Double> nvimGetScale(long intValue) {"));
+        assertTrue(source.contains("return CompletableFuture.failedFuture(e);"));
+        assertFalse(source.contains("nvim_buf_get_number"));
+        assertFalse(source.contains("import api.ApiArguments;"));
+    }
+
+    @Test
+    public void otherPackagesImportApiArguments() {
+        var source = new NvimApiGenerator(ApiInfoFixture.apiInfo(), "org.example.nvim").generate();
+
+        assertTrue(source.contains("package org.example.nvim;"));
+        assertTrue(source.contains("import api.ApiArguments;"));
+        assertTrue(source.contains("import api.Buffer;"));
+    }
+
+    @Test
+    public void generatedRegistryDecodesHandles(@TempDir Path directory) throws Exception {
+        // Given stubs generated for handle types with ids other than the default ones
+        var apiInfo = new HashMap<>(ApiInfoFixture.apiInfo());
+        apiInfo.put("types", Map.of("Buffer", Map.of("id", 5), "Window", Map.of("id", 6)));
+        var sources = directory.resolve("sources");
+        var dump = directory.resolve("api-info.mpack");
+        Files.write(dump, new ObjectMapper(new MessagePackFactory()).writeValueAsBytes(apiInfo));
+        NvimApiGenerator.main(
+                new String[] {dump.toString(), sources.toString(), "org.example.nvim"});
+        var classes = Files.createDirectory(directory.resolve("classes"));
+        var result =
+                ToolProvider.getSystemJavaCompiler()
+                        .run(
+                                null,
+                                null,
+                                null,
+                                "-classpath",
+                                System.getProperty("java.class.path"),
+                                "-d",
+                                classes.toString(),
+                                sources.resolve("org/example/nvim/NvimApi.java").toString());
+        assertEquals(0, result);
+
+        try (var classLoader =
+                new URLClassLoader(
+                        new URL[] {classes.toUri().toURL()},
+                        getClass().getClassLoader())) {
+            // When a handle is written with the generated registry
+            var extensions =
+                    (ExtensionRegistry)
+                            classLoader
+                                    .loadClass("org.example.nvim.NvimApi")
+                                    .getField("EXTENSIONS")
+                                    .get(null);
+            var writer = new MessagePackWriter(new ObjectMapper(new MessagePackFactory()))
+                            .withExtensions(extensions);
+            writer.writeValue(List.of(new Buffer(7), new Window(8)));
+
+            // Then it uses type ids from metadata and is read back as the same handle
+            var reader =
+                    new MessagePackReader(writer.buffer(), 0, writer.size())
+                            .withExtensions(extensions);
+            assertEquals(List.of(new Buffer(7), new Window(8)), reader.readValue());
+            var raw = new MessagePackReader(writer.buffer(), 0, writer.size());
+            raw.readArrayHeader();
+            assertEquals(7, raw.readExtensionLong((byte) 5));
+        }
+    }
+
+    @Test
+    public void namesAreConvertedToJava() {
+        assertEquals("nvimBufGetLines", NvimApiGenerator.methodName("nvim_buf_get_lines"));
+        assertEquals("strictIndexing", NvimApiGenerator.parameterName("strict_indexing"));
+        assertEquals("defaultValue", NvimApiGenerator.parameterName("default"));
+        assertEquals("argumentsValue", NvimApiGenerator.parameterName("arguments"));
+    }
+
+    @Test
+    public void invalidMetadata() {
+        assertThrows(
+                NullPointerException.class,
+                () -> new NvimApiGenerator(ApiInfoFixture.apiInfo(), null));
+        assertThrows(IllegalArgumentException.class, () -> new NvimApiGenerator("info", "api"));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new NvimApiGenerator(Map.of("functions", "none"), "api"));
+    }
+}
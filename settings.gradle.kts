@@ -1,3 +1,5 @@
 rootProject.name = "jnvim"
 
 include("core-rpc")
+include("core-rpc-jmh")
+include("nvim-api")